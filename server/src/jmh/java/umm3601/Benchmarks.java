@@ -0,0 +1,84 @@
+package umm3601;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Helpers shared by the JMH benchmarks.
+ * <p>
+ * Benchmarks describe their queries as JMH parameters in query string form,
+ * e.g. `owner=Fry&status=complete`, so each combination shows up readably
+ * in the results; `all` is the query with no parameters. Datasets come
+ * from `SyntheticData`, 300 (the size of the bundled data) to 1M records by
+ * default (10M for `TodoLookupBenchmark`); larger ones, up to 10M, are
+ * chosen with e.g. `-Pjmh.params=rows=10000000 -Pjmh.heap=12g`.
+ */
+public final class Benchmarks {
+
+  private Benchmarks() {
+  }
+
+  /**
+   * Parse a query in query string form into query params, the way Javalin
+   * would.
+   *
+   * @param query e.g. `owner=Fry&status=complete`, or `all` for none; values
+   *              are URL encoded
+   * @return the query params
+   */
+  public static Map<String, List<String>> query(String query) {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    if (!query.equals("all")) {
+      for (String pair : query.split("&")) {
+        int equals = pair.indexOf('=');
+        queryParams.computeIfAbsent(pair.substring(0, equals), name -> new ArrayList<>())
+          .add(URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return queryParams;
+  }
+
+  /**
+   * Read a response body to the end, the way Javalin writes it out.
+   *
+   * @param body   the response body
+   * @param buffer a buffer to read into, reused between calls
+   * @return the number of bytes read
+   */
+  public static long drain(InputStream body, byte[] buffer) {
+    long length = 0;
+    try (InputStream in = body) {
+      for (int read; (read = in.read(buffer)) >= 0;) {
+        length += read;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return length;
+  }
+
+  /**
+   * Delete a directory and everything in it.
+   *
+   * @param directory the directory
+   * @throws IOException if something can't be deleted
+   */
+  public static void delete(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package umm3601;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH result files, such as the results of the same benchmarks
+ * run on two commits, and lists every benchmark whose score changed by more
+ * than the error of the two measurements.
+ * <p>
+ * Usage: `CompareResults baseline.json current.json`, or
+ * `./gradlew jmhCompare -Pbaseline=...` to compare against the results of
+ * the last `./gradlew jmh`. Allocation per operation, from the `gc`
+ * profiler, is compared too. Exits with status 1 if anything got worse.
+ */
+public class CompareResults {
+
+  // JMH names the allocation metric with a middle dot
+  private static final String ALLOCATION = "\u00b7gc.alloc.rate.norm";
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: CompareResults baseline.json current.json");
+      System.exit(2);
+    }
+    Map<String, JsonNode> baseline = read(new File(args[0]));
+    Map<String, JsonNode> current = read(new File(args[1]));
+
+    int worse = 0;
+    for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+      JsonNode before = baseline.get(entry.getKey());
+      if (before == null) {
+        System.out.println("new        " + entry.getKey());
+        continue;
+      }
+      JsonNode after = entry.getValue();
+      boolean higherIsBetter = after.path("mode").asText().equals("thrpt");
+      worse += compare(entry.getKey(), before.path("primaryMetric"), after.path("primaryMetric"), higherIsBetter);
+      JsonNode allocatedBefore = before.path("secondaryMetrics").path(ALLOCATION);
+      JsonNode allocatedAfter = after.path("secondaryMetrics").path(ALLOCATION);
+      if (!allocatedBefore.isMissingNode() && !allocatedAfter.isMissingNode()) {
+        worse += compare(entry.getKey() + " allocation", allocatedBefore, allocatedAfter, false);
+      }
+    }
+    for (String name : baseline.keySet()) {
+      if (!current.containsKey(name)) {
+        System.out.println("missing    " + name);
+      }
+    }
+    System.out.println(worse + " of " + current.size() + " benchmarks got worse");
+    System.exit(worse == 0 ? 0 : 1);
+  }
+
+  /**
+   * Print how a score changed, if it changed by more than its error.
+   *
+   * @return 1 if it got worse, otherwise 0
+   */
+  private static int compare(String name, JsonNode before, JsonNode after, boolean higherIsBetter) {
+    double from = before.path("score").asDouble();
+    double to = after.path("score").asDouble();
+    double error = finite(before.path("scoreError").asDouble()) + finite(after.path("scoreError").asDouble());
+    if (Math.abs(to - from) <= error || from == to) {
+      return 0;
+    }
+    boolean better = (to > from) == higherIsBetter;
+    double change = from == 0 ? Double.POSITIVE_INFINITY : (to - from) / from * 100;
+    System.out.printf("%-10s %s: %.3f -> %.3f %s (%+.1f%%)%n", better ? "better" : "WORSE", name, from, to,
+      after.path("scoreUnit").asText(), change);
+    return better ? 0 : 1;
+  }
+
+  /**
+   * JMH reports the error of a single measurement as NaN.
+   */
+  private static double finite(double error) {
+    return Double.isFinite(error) ? error : 0;
+  }
+
+  /**
+   * Read a JMH JSON result file, keyed by benchmark and parameters, e.g.
+   * `umm3601.todo.TodoQueryBenchmark.listTodos cached=true filter=all`.
+   */
+  private static Map<String, JsonNode> read(File file) throws IOException {
+    Map<String, JsonNode> results = new LinkedHashMap<>();
+    for (JsonNode result : new ObjectMapper().readTree(file)) {
+      StringJoiner name = new StringJoiner(" ");
+      name.add(result.path("benchmark").asText());
+      Map<String, String> params = new TreeMap<>();
+      for (Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields(); fields.hasNext();) {
+        Map.Entry<String, JsonNode> param = fields.next();
+        params.put(param.getKey(), param.getValue().asText());
+      }
+      params.forEach((param, value) -> name.add(param + "=" + value));
+      results.put(name.toString(), result);
+    }
+    return results;
+  }
+}
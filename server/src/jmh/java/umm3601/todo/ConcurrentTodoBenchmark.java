@@ -0,0 +1,93 @@
+package umm3601.todo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import umm3601.Benchmarks;
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks readers sharing the database, with and without a writer
+ * replacing todos at the same time. Readers never wait for writers, so
+ * reads should be about as fast either way.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConcurrentTodoBenchmark {
+
+  private static final int IDS = 1024;
+
+  @Param({ "300", "100000", "1000000" })
+  public int rows;
+
+  private DatabaseTD db;
+  private Todo[] todos;
+  private String[] ids;
+  private Map<String, List<String>> queryParams;
+
+  /**
+   * Where each thread is in the list of ids.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+
+    int next() {
+      next = (next + 1) & (IDS - 1);
+      return next;
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    todos = SyntheticData.todos(rows, SyntheticData.DEFAULT_SEED);
+    db = new DatabaseTD(todos);
+    ids = new String[IDS];
+    for (int i = 0; i < IDS; i++) {
+      ids[i] = todos[(int) ((long) i * rows / IDS)]._id;
+    }
+    queryParams = Benchmarks.query("owner=Fry&status=complete&limit=20");
+  }
+
+  private Object lookUp(Cursor cursor) {
+    int next = cursor.next();
+    // Mostly single todos, with a page of a query now and then
+    return (next & 7) == 0 ? db.listTodos(queryParams) : db.getTodoJson(ids[next]);
+  }
+
+  @Benchmark
+  @Group("readOnly")
+  @GroupThreads(4)
+  public Object readAlone(Cursor cursor) {
+    return lookUp(cursor);
+  }
+
+  @Benchmark
+  @Group("readWhileWriting")
+  @GroupThreads(3)
+  public Object read(Cursor cursor) {
+    return lookUp(cursor);
+  }
+
+  @Benchmark
+  @Group("readWhileWriting")
+  @GroupThreads(1)
+  public boolean write(Cursor cursor) {
+    // Replace existing todos, so the dataset stays the same size
+    int next = cursor.next();
+    return db.putTodo(ids[next], todos[(int) ((long) next * rows / IDS)]);
+  }
+}
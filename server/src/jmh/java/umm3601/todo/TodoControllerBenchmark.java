@@ -0,0 +1,72 @@
+package umm3601.todo;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.javalin.http.Context;
+import umm3601.Benchmarks;
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks answering `GET /api/todos` end to end, from the query params to
+ * the last byte of the (possibly gzipped) JSON response, without the HTTP
+ * server around it.
+ * <p>
+ * The Javalin context is a stub-only Mockito mock, as in the specs, so each
+ * call pays a little for the mock; that is the same for every parameter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TodoControllerBenchmark {
+
+  @Param({ "300", "100000", "1000000" })
+  public int rows;
+
+  @Param({ "ROWS", "COLUMNS" })
+  public DatabaseTD.Storage storage;
+
+  @Param({ "all", "owner=Fry", "status=complete&orderBy=body", "contains=sit&limit=20" })
+  public String query;
+
+  @Param({ "false", "true" })
+  public boolean gzip;
+
+  private TodoController controller;
+  private Context ctx;
+  private InputStream body;
+  private final byte[] buffer = new byte[64 * 1024];
+
+  @Setup
+  public void setUp() {
+    controller = new TodoController(new DatabaseTD(SyntheticData.todos(rows, SyntheticData.DEFAULT_SEED), storage));
+    ctx = mock(Context.class, withSettings().stubOnly());
+    when(ctx.queryParamMap()).thenReturn(Benchmarks.query(query));
+    when(ctx.header("Accept-Encoding")).thenReturn(gzip ? "gzip, deflate" : null);
+    doAnswer(invocation -> {
+      body = invocation.getArgument(0);
+      return ctx;
+    }).when(ctx).result(any(InputStream.class));
+  }
+
+  @Benchmark
+  public long getTodos() {
+    controller.getTodos(ctx);
+    return Benchmarks.drain(body, buffer);
+  }
+}
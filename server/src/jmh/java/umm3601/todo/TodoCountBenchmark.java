@@ -0,0 +1,49 @@
+package umm3601.todo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import umm3601.Benchmarks;
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks counting the todos that match each filter. Counts aren't
+ * cached, so every call runs the query; run with the `gc` profiler to see
+ * how much each one allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TodoCountBenchmark {
+
+  @Param({ "300", "100000", "1000000" })
+  public int rows;
+
+  @Param({ "all", "owner=Fry", "status=complete", "contains=sit", "owner=Fry&status=complete",
+    "category=groceries&contains=magna" })
+  public String filter;
+
+  private DatabaseTD db;
+  private Map<String, List<String>> queryParams;
+
+  @Setup
+  public void setUp() {
+    db = new DatabaseTD(SyntheticData.todos(rows, SyntheticData.DEFAULT_SEED));
+    queryParams = Benchmarks.query(filter);
+  }
+
+  @Benchmark
+  public int countTodos() {
+    return db.countTodos(queryParams);
+  }
+}
@@ -0,0 +1,98 @@
+package umm3601.todo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import umm3601.Benchmarks;
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks the work that is split across cores: building every index when
+ * todos are published, and scanning for text the trigram index can't narrow
+ * down. Each is run with the common fork-join pool capped at 1, 2 and 4
+ * threads and left at its default, to show how it scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TodoIndexBenchmark {
+
+  private static final String PARALLELISM = "-Djava.util.concurrent.ForkJoinPool.common.parallelism=";
+
+  @Param({ "100000", "1000000" })
+  public int rows;
+
+  private DatabaseTD db;
+  private Todo[] todos;
+  private Map<String, List<String>> scan;
+
+  @Setup
+  public void setUp() {
+    todos = SyntheticData.todos(rows, SyntheticData.DEFAULT_SEED);
+    db = new DatabaseTD(todos);
+    // Too short for a trigram, so every body is searched
+    scan = Benchmarks.query("contains=si");
+  }
+
+  private Todo[] scan() {
+    db.queryCache().invalidate();
+    return db.listTodos(scan);
+  }
+
+  @Benchmark
+  @Fork(jvmArgsAppend = PARALLELISM + "1")
+  public void publishOnOneThread() {
+    db.publish(todos);
+  }
+
+  @Benchmark
+  @Fork(jvmArgsAppend = PARALLELISM + "2")
+  public void publishOnTwoThreads() {
+    db.publish(todos);
+  }
+
+  @Benchmark
+  @Fork(jvmArgsAppend = PARALLELISM + "4")
+  public void publishOnFourThreads() {
+    db.publish(todos);
+  }
+
+  @Benchmark
+  public void publishOnEveryCore() {
+    db.publish(todos);
+  }
+
+  @Benchmark
+  @Fork(jvmArgsAppend = PARALLELISM + "1")
+  public Todo[] scanOnOneThread() {
+    return scan();
+  }
+
+  @Benchmark
+  @Fork(jvmArgsAppend = PARALLELISM + "2")
+  public Todo[] scanOnTwoThreads() {
+    return scan();
+  }
+
+  @Benchmark
+  @Fork(jvmArgsAppend = PARALLELISM + "4")
+  public Todo[] scanOnFourThreads() {
+    return scan();
+  }
+
+  @Benchmark
+  public Todo[] scanOnEveryCore() {
+    return scan();
+  }
+}
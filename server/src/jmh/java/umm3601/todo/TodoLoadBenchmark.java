@@ -0,0 +1,58 @@
+package umm3601.todo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import umm3601.Benchmarks;
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks loading todos from a JSON file into each kind of storage, and
+ * opening a binary snapshot of them. Each load parses and indexes the whole
+ * file, so this is also the time a reload takes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TodoLoadBenchmark {
+
+  @Param({ "300", "100000", "1000000" })
+  public int rows;
+
+  @Param({ "json-rows", "json-columns", "bin" })
+  public String source;
+
+  private Path directory;
+  private Path file;
+  private DatabaseTD.Storage storage;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("todo-load");
+    file = directory.resolve(source.equals("bin") ? "todos.bin" : "todos.json");
+    SyntheticData.main(new String[] { "todos", Integer.toString(rows), file.toString() });
+    storage = source.equals("json-rows") ? DatabaseTD.Storage.ROWS : DatabaseTD.Storage.COLUMNS;
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Benchmarks.delete(directory);
+  }
+
+  @Benchmark
+  public DatabaseTD loadTodos() throws IOException {
+    return new DatabaseTD(file, storage);
+  }
+}
@@ -0,0 +1,108 @@
+package umm3601.todo;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks looking up todos by id, one at a time and in batches, from
+ * row and columnar storage, against the linear scan over every todo that
+ * the id index replaced.
+ * <p>
+ * This is the one benchmark that includes 10M todos by default, since how
+ * the scan grows with the data is the point of it, so it always forks with
+ * a heap big enough for them.
+ */
+@State(Scope.Benchmark)
+@Fork(jvmArgsAppend = "-Xmx12g")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TodoLookupBenchmark {
+
+  private static final int IDS = 1024;
+  private static final int BATCH = 100;
+
+  @Param({ "300", "100000", "1000000", "10000000" })
+  public int rows;
+
+  @Param({ "ROWS", "COLUMNS" })
+  public DatabaseTD.Storage storage;
+
+  private DatabaseTD db;
+  private Todo[] todos;
+  private String[] ids;
+  private List<String> batch;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    todos = SyntheticData.todos(rows, SyntheticData.DEFAULT_SEED);
+    db = new DatabaseTD(todos, storage);
+    // Look up ids spread over the whole dataset, so the lookups aren't all
+    // served from the same few cache lines
+    ids = new String[IDS];
+    for (int i = 0; i < IDS; i++) {
+      ids[i] = todos[(int) ((long) i * rows / IDS)]._id;
+    }
+    batch = new ArrayList<>();
+    for (int i = 0; i < BATCH; i++) {
+      batch.add(ids[i * IDS / BATCH]);
+    }
+  }
+
+  private String nextId() {
+    next = (next + 1) & (IDS - 1);
+    return ids[next];
+  }
+
+  @Benchmark
+  public Todo getTodo() {
+    return db.getTodo(nextId());
+  }
+
+  /**
+   * The baseline: find the todo by comparing every id in turn, as `getTodo`
+   * did before todos were indexed by id. It doesn't depend on the storage.
+   */
+  @Benchmark
+  public Todo getTodoByScan() {
+    String id = nextId();
+    for (Todo todo : todos) {
+      if (todo._id.equals(id)) {
+        return todo;
+      }
+    }
+    return null;
+  }
+
+  @Benchmark
+  public byte[] getTodoJson() {
+    return db.getTodoJson(nextId());
+  }
+
+  @Benchmark
+  public void getTodosJson(Blackhole blackhole) {
+    for (Iterator<byte[]> todos = db.getTodosJson(batch); todos.hasNext();) {
+      blackhole.consume(todos.next());
+    }
+  }
+
+  @Benchmark
+  public Todo[] filterTodosByStatus() {
+    return db.filterTodosByStatus(todos, true);
+  }
+}
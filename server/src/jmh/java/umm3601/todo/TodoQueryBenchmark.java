@@ -0,0 +1,59 @@
+package umm3601.todo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import umm3601.Benchmarks;
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks listing todos under each filter and ordering, both answered
+ * from the query cache and worked out from scratch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TodoQueryBenchmark {
+
+  @Param({ "300", "100000", "1000000" })
+  public int rows;
+
+  @Param({ "all", "owner=Fry", "category=homework", "status=complete", "contains=sit", "owner=Fry&status=complete",
+    "category=groceries&contains=magna", "contains=magna+sit&containsMode=words" })
+  public String filter;
+
+  @Param({ "none", "owner", "category", "status", "body" })
+  public String orderBy;
+
+  @Param({ "true", "false" })
+  public boolean cached;
+
+  private DatabaseTD db;
+  private Map<String, List<String>> queryParams;
+
+  @Setup
+  public void setUp() {
+    db = new DatabaseTD(SyntheticData.todos(rows, SyntheticData.DEFAULT_SEED));
+    String query = orderBy.equals("none") ? filter
+      : filter.equals("all") ? "orderBy=" + orderBy : filter + "&orderBy=" + orderBy;
+    queryParams = Benchmarks.query(query);
+  }
+
+  @Benchmark
+  public Todo[] listTodos() {
+    if (!cached) {
+      db.queryCache().invalidate();
+    }
+    return db.listTodos(queryParams);
+  }
+}
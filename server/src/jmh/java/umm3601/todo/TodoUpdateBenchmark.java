@@ -0,0 +1,70 @@
+package umm3601.todo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks publishing a batch of updates to existing todos, without a log,
+ * so it measures only building the next snapshot and its indexes. Each
+ * update flips a todo's status and changes its body, cycling through a fixed
+ * set of todos so the number of patches stays bounded. Run it with
+ * `-prof gc` to see how much each batch allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TodoUpdateBenchmark {
+
+  private static final int IDS = 1024;
+
+  @Param({ "100000", "1000000" })
+  public int rows;
+
+  @Param({ "1", "256" })
+  public int batch;
+
+  @Param({ "ROWS", "COLUMNS" })
+  public DatabaseTD.Storage storage;
+
+  private DatabaseTD db;
+  private Todo[] updated;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    Todo[] todos = SyntheticData.todos(rows, SyntheticData.DEFAULT_SEED);
+    db = new DatabaseTD(todos, storage);
+    Random random = new Random(SyntheticData.DEFAULT_SEED);
+    updated = new Todo[IDS];
+    for (int i = 0; i < IDS; i++) {
+      updated[i] = TodoWriter.copy(todos[random.nextInt(rows)]);
+    }
+  }
+
+  @Benchmark
+  public void updateTodos() {
+    Map<String, Todo> changes = new LinkedHashMap<>();
+    for (int i = 0; i < batch; i++) {
+      next = (next + 1) & (IDS - 1);
+      Todo todo = TodoWriter.copy(updated[next]);
+      todo.status = !todo.status;
+      todo.body = todo.body + " again";
+      updated[next] = todo;
+      changes.put(todo._id, todo);
+    }
+    db.apply(changes);
+  }
+}
@@ -0,0 +1,61 @@
+package umm3601.todo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import umm3601.Benchmarks;
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks adding todos from many threads at once with a log on disk,
+ * syncing each write on its own and in batches. The log lives in a
+ * temporary directory, so what this measures depends on the disk it is on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class TodoWriteBenchmark {
+
+  @Param({ "300", "100000" })
+  public int rows;
+
+  @Param({ "1", "256" })
+  public int batch;
+
+  private DatabaseTD db;
+  private Path directory;
+  private Todo todo;
+
+  @Setup
+  public void setUp() throws IOException {
+    db = new DatabaseTD(SyntheticData.todos(rows, SyntheticData.DEFAULT_SEED));
+    directory = Files.createTempDirectory("todo-log");
+    db.openLog(directory, batch);
+    todo = SyntheticData.todos(1, SyntheticData.DEFAULT_SEED + 1)[0];
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    db.close();
+    Benchmarks.delete(directory);
+  }
+
+  @Benchmark
+  public Todo addTodo() {
+    return db.addTodo(todo);
+  }
+}
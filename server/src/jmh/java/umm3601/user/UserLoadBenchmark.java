@@ -0,0 +1,54 @@
+package umm3601.user;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import umm3601.Benchmarks;
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks loading users from a JSON file and from a binary snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UserLoadBenchmark {
+
+  @Param({ "300", "100000", "1000000" })
+  public int rows;
+
+  @Param({ "json", "bin" })
+  public String source;
+
+  private Path directory;
+  private Path file;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("user-load");
+    file = directory.resolve("users." + source);
+    SyntheticData.main(new String[] { "users", Integer.toString(rows), file.toString() });
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Benchmarks.delete(directory);
+  }
+
+  @Benchmark
+  public Database loadUsers() throws IOException {
+    return new Database(file);
+  }
+}
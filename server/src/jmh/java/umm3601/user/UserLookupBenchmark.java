@@ -0,0 +1,63 @@
+package umm3601.user;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks looking up users by id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserLookupBenchmark {
+
+  private static final int IDS = 1024;
+
+  @Param({ "300", "100000", "1000000" })
+  public int rows;
+
+  private Database db;
+  private User[] users;
+  private String[] ids;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    users = SyntheticData.users(rows, SyntheticData.DEFAULT_SEED);
+    db = new Database(users);
+    ids = new String[IDS];
+    for (int i = 0; i < IDS; i++) {
+      ids[i] = users[(int) ((long) i * rows / IDS)]._id;
+    }
+  }
+
+  private String nextId() {
+    next = (next + 1) & (IDS - 1);
+    return ids[next];
+  }
+
+  @Benchmark
+  public User getUser() {
+    return db.getUser(nextId());
+  }
+
+  @Benchmark
+  public byte[] getUserJson() {
+    return db.getUserJson(nextId());
+  }
+
+  @Benchmark
+  public User[] filterUsersByAge() {
+    return db.filterUsersByAge(users, 25);
+  }
+}
@@ -0,0 +1,60 @@
+package umm3601.user;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import umm3601.Benchmarks;
+import umm3601.SyntheticData;
+
+/**
+ * Benchmarks listing and counting users under each filter. Lists are timed
+ * both answered from the query cache and worked out from scratch; counts
+ * aren't cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserQueryBenchmark {
+
+  @Param({ "300", "100000", "1000000" })
+  public int rows;
+
+  @Param({ "all", "age=25", "age=25&age=35&age=45", "minAge=20&maxAge=29", "company=OHMNET",
+    "company=OHMNET&company=VINCH", "company=OHMNET&minAge=30" })
+  public String filter;
+
+  @Param({ "true", "false" })
+  public boolean cached;
+
+  private Database db;
+  private Map<String, List<String>> queryParams;
+
+  @Setup
+  public void setUp() {
+    db = new Database(SyntheticData.users(rows, SyntheticData.DEFAULT_SEED));
+    queryParams = Benchmarks.query(filter);
+  }
+
+  @Benchmark
+  public User[] listUsers() {
+    if (!cached) {
+      db.queryCache().invalidate();
+    }
+    return db.listUsers(queryParams);
+  }
+
+  @Benchmark
+  public int countUsers() {
+    return db.countUsers(queryParams);
+  }
+}
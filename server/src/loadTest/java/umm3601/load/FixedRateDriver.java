@@ -0,0 +1,125 @@
+package umm3601.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests at fixed rates, however fast the server answers them.
+ * <p>
+ * Each kind of request has its own schedule, one request every `1/rate`
+ * seconds, kept by its own thread. Requests are sent without waiting for
+ * earlier ones to be answered, up to a limit on how many are in flight at
+ * once (like the connections of a pool of clients). When the limit is
+ * reached the schedule falls behind, and requests go out late; their
+ * latency still counts from when they were due (see `Results`).
+ */
+final class FixedRateDriver {
+
+  private final HttpClient client;
+  private final String base;
+  private final int maxInFlight;
+  private final Semaphore inFlight;
+  private final Duration timeout;
+  private final boolean gzip;
+
+  /**
+   * @param client      the client to send requests with
+   * @param base        the server's URL, e.g. `http://localhost:4567`
+   * @param maxInFlight the most requests to have in flight at once
+   * @param timeout     how long to wait for a response before counting the
+   *                    request as failed
+   * @param gzip        whether to ask for gzipped responses, as browsers do
+   */
+  FixedRateDriver(HttpClient client, String base, int maxInFlight, Duration timeout, boolean gzip) {
+    this.client = client;
+    this.base = base;
+    this.maxInFlight = maxInFlight;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.timeout = timeout;
+    this.gzip = gzip;
+  }
+
+  /**
+   * Send every kind of request in a mix at its rate, first for a warmup
+   * whose requests aren't recorded, and then for the test itself.
+   *
+   * @param mix      the requests to send
+   * @param warmup   how long to warm up for
+   * @param duration how long to record for
+   * @return the results for each kind of request, in the mix's order
+   * @throws InterruptedException if interrupted while waiting for the
+   *                              schedules to finish
+   */
+  Map<String, Results> run(RequestMix mix, Duration warmup, Duration duration) throws InterruptedException {
+    long start = System.nanoTime();
+    long recordFrom = start + warmup.toNanos();
+    long end = recordFrom + duration.toNanos();
+    Map<String, Results> results = new LinkedHashMap<>();
+    List<Thread> schedules = new ArrayList<>();
+    for (RequestMix.Kind kind : mix.kinds()) {
+      Results kindResults = new Results(kind.name(), kind.rate());
+      results.put(kind.name(), kindResults);
+      Thread schedule = new Thread(() -> send(kind, kindResults, start, recordFrom, end), "load-" + kind.name());
+      schedule.start();
+      schedules.add(schedule);
+    }
+    for (Thread schedule : schedules) {
+      schedule.join();
+    }
+    // Let the last requests finish, or time out
+    if (inFlight.tryAcquire(maxInFlight, timeout.toMillis() + 1000, TimeUnit.MILLISECONDS)) {
+      inFlight.release(maxInFlight);
+    }
+    return results;
+  }
+
+  private void send(RequestMix.Kind kind, Results results, long start, long recordFrom, long end) {
+    double interval = TimeUnit.SECONDS.toNanos(1) / kind.rate();
+    for (long i = 0;; i++) {
+      long due = start + (long) (i * interval);
+      if (due - end >= 0) {
+        return;
+      }
+      for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+        LockSupport.parkNanos(wait);
+      }
+      boolean recorded = due - recordFrom >= 0;
+      if (System.nanoTime() - end > timeout.toNanos()) {
+        // The server is too far behind to ever catch up, so give up on the
+        // requests that are still to go rather than wait for them
+        if (recorded) {
+          results.unsent();
+        }
+        continue;
+      }
+      inFlight.acquireUninterruptibly();
+      long sent = System.nanoTime();
+      client.sendAsync(request(kind.next()), HttpResponse.BodyHandlers.discarding())
+        .whenComplete((response, failure) -> {
+          long done = System.nanoTime();
+          if (recorded) {
+            results.record(due, sent, done, response, failure);
+          }
+          inFlight.release();
+        });
+    }
+  }
+
+  private HttpRequest request(String path) {
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path)).timeout(timeout);
+    if (gzip) {
+      request.header("Accept-Encoding", "gzip");
+    }
+    return request.build();
+  }
+}
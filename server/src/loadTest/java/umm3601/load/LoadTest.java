@@ -0,0 +1,169 @@
+package umm3601.load;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import io.javalin.Javalin;
+import umm3601.Server;
+import umm3601.SyntheticData;
+
+/**
+ * A load test for the whole server over HTTP: it sends a mix of requests at
+ * fixed rates (see `RequestMix` and `FixedRateDriver`) and reports the
+ * latency percentiles, throughput and errors of each kind.
+ * <p>
+ * Unless `load.url` is given, the server is started in this JVM on a free
+ * port, with synthetic data (see `SyntheticData`) generated into
+ * `build/data` the first time each size is asked for. The server then
+ * shares this JVM's cores with the load, so for the most faithful numbers
+ * run the server elsewhere (e.g. `./gradlew run -Dtodo.file=...`) and point
+ * the test at it.
+ * <p>
+ * Run it with `./gradlew loadTest`, configured by these system properties:
+ * <ul>
+ * <li>`load.mix`: the requests per second of each kind, e.g. the default
+ * `todos=300,todo=600,users=100`</li>
+ * <li>`load.duration`, `load.warmup`: seconds to record for, and to warm up
+ * for beforehand (default 60 and 10)</li>
+ * <li>`load.rows`, `load.users`: the number of todos and users to start the
+ * server with (default 1000000 and 100000)</li>
+ * <li>`load.connections`: the most requests in flight at once (default 64)</li>
+ * <li>`load.timeout`: seconds before a request counts as failed (default 10)</li>
+ * <li>`load.queries`: how many different queries of each kind (default 1000)</li>
+ * <li>`load.gzip`: whether to ask for gzipped responses (default true)</li>
+ * <li>`load.url`: the URL of a server that is already running</li>
+ * <li>`load.results`: where to write each kind's latency histogram
+ * (default `build/results/loadtest`)</li>
+ * </ul>
+ * The histograms are written in HdrHistogram's percentile format, in
+ * milliseconds, so runs can be plotted and compared.
+ */
+public class LoadTest {
+
+  private static final String[] PERCENTILES = { "p50", "p99", "p99.9" };
+  private static final double[] PERCENTILE_VALUES = { 50, 99, 99.9 };
+
+  public static void main(String[] args) throws Exception {
+    Map<String, Double> rates = RequestMix.rates(System.getProperty("load.mix", "todos=300,todo=600,users=100"));
+    Duration duration = Duration.ofSeconds(Integer.getInteger("load.duration", 60));
+    Duration warmup = Duration.ofSeconds(Integer.getInteger("load.warmup", 10));
+    Duration timeout = Duration.ofSeconds(Integer.getInteger("load.timeout", 10));
+    int connections = Integer.getInteger("load.connections", 64);
+    int queries = Integer.getInteger("load.queries", 1000);
+    boolean gzip = Boolean.parseBoolean(System.getProperty("load.gzip", "true"));
+    Path resultsDirectory = Paths.get(System.getProperty("load.results", "build/results/loadtest"));
+
+    Javalin server = null;
+    String base = System.getProperty("load.url");
+    if (base == null) {
+      server = startServer(Integer.getInteger("load.rows", 1_000_000), Integer.getInteger("load.users", 100_000));
+      base = "http://localhost:" + server.port();
+    }
+
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+      .connectTimeout(timeout).build();
+    RequestMix mix = RequestMix.build(client, base, rates, queries);
+    System.out.printf("Load testing %s for %d s after a %d s warmup, at most %d requests in flight%n", base,
+      duration.getSeconds(), warmup.getSeconds(), connections);
+    Map<String, Results> results = new FixedRateDriver(client, base, connections, timeout, gzip)
+      .run(mix, warmup, duration);
+
+    Results total = Results.total("all", results.values());
+    report(System.out, results, total, duration);
+    Files.createDirectories(resultsDirectory);
+    for (Results kind : results.values()) {
+      write(resultsDirectory.resolve(kind.name() + ".hgrm"), kind.latency());
+    }
+    write(resultsDirectory.resolve("all.hgrm"), total.latency());
+    System.out.println("Latency histograms written to " + resultsDirectory);
+
+    if (server != null) {
+      server.stop();
+    }
+    // The data watchers don't stop by themselves
+    System.exit(0);
+  }
+
+  /**
+   * Start the server on a free port with synthetic data, generating the
+   * data files if they don't exist yet.
+   */
+  private static Javalin startServer(int rows, int users) throws IOException {
+    Path todoFile = Paths.get("build/data/todos-" + rows + ".bin");
+    Path userFile = Paths.get("build/data/users-" + users + ".bin");
+    if (!Files.exists(todoFile)) {
+      SyntheticData.main(new String[] { "todos", Integer.toString(rows), todoFile.toString() });
+    }
+    if (!Files.exists(userFile)) {
+      SyntheticData.main(new String[] { "users", Integer.toString(users), userFile.toString() });
+    }
+    System.setProperty(Server.TODO_FILE_PROPERTY, todoFile.toString());
+    System.setProperty(Server.USER_FILE_PROPERTY, userFile.toString());
+    return Server.start(0);
+  }
+
+  /**
+   * Print a table of each kind's throughput, errors and latencies, first
+   * counted from when requests were due and then from when they were sent.
+   */
+  private static void report(PrintStream out, Map<String, Results> results, Results total, Duration duration) {
+    double seconds = duration.toMillis() / 1000.0;
+    out.println();
+    out.printf("%-8s %10s %10s %10s %8s %8s%n", "", "target/s", "done/s", "requests", "errors", "error %");
+    for (Results kind : kindsAndTotal(results, total)) {
+      long requests = kind.requests();
+      out.printf(Locale.ROOT, "%-8s %10.1f %10.1f %10d %8d %8.2f%n", kind.name(), kind.rate(),
+        kind.completed() / seconds, requests, kind.errors(), requests == 0 ? 0.0 : 100.0 * kind.errors() / requests);
+    }
+    for (Map.Entry<String, Long> error : total.errorCounts().entrySet()) {
+      out.printf("  %d failed with %s%n", error.getValue(), error.getKey());
+    }
+
+    out.println();
+    out.println("Latency in ms, from when each request was due to be sent (corrected for coordinated omission):");
+    percentiles(out, results, total, true);
+    out.println();
+    out.println("Service time in ms, from when each request was actually sent:");
+    percentiles(out, results, total, false);
+  }
+
+  private static void percentiles(PrintStream out, Map<String, Results> results, Results total, boolean latency) {
+    out.printf("%-8s", "");
+    for (String percentile : PERCENTILES) {
+      out.printf(" %10s", percentile);
+    }
+    out.printf(" %10s%n", "max");
+    for (Results kind : kindsAndTotal(results, total)) {
+      Histogram histogram = latency ? kind.latency() : kind.serviceTime();
+      out.printf("%-8s", kind.name());
+      for (double percentile : PERCENTILE_VALUES) {
+        out.printf(Locale.ROOT, " %10.2f", histogram.getValueAtPercentile(percentile) / 1000.0);
+      }
+      out.printf(Locale.ROOT, " %10.2f%n", histogram.getMaxValue() / 1000.0);
+    }
+  }
+
+  private static Iterable<Results> kindsAndTotal(Map<String, Results> results, Results total) {
+    List<Results> rows = new ArrayList<>(results.values());
+    rows.add(total);
+    return rows;
+  }
+
+  private static void write(Path file, Histogram histogram) throws IOException {
+    try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8)) {
+      histogram.outputPercentileDistribution(out, 1000.0);
+    }
+  }
+}
@@ -0,0 +1,256 @@
+package umm3601.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The kinds of request a load test sends, and how many of each per second.
+ * <p>
+ * The kinds are:
+ * <ul>
+ * <li>`todos`: `/api/todos` with a mix of filters, orderings and pages</li>
+ * <li>`todo`: `/api/todos/:id`</li>
+ * <li>`users`: `/api/users` with age, age range and company filters</li>
+ * <li>`user`: `/api/users/:id`</li>
+ * </ul>
+ * Queries are drawn from a fixed pool built from the server's own data (its
+ * `_stats`, and the ids and words of the first page of todos and users), so
+ * the mix suits whatever dataset the server has and repeats queries about
+ * as often as real clients would.
+ */
+final class RequestMix {
+
+  static final List<String> KINDS = List.of("todos", "todo", "users", "user");
+
+  private static final long SEED = 3601;
+  private static final int SAMPLE = 10_000;
+  private static final int PAGE = 50;
+  private static final List<String> ORDERINGS = List.of("owner", "category", "status", "body");
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final Map<String, Kind> kinds;
+
+  private RequestMix(Map<String, Kind> kinds) {
+    this.kinds = kinds;
+  }
+
+  /**
+   * One kind of request, sent at a fixed rate.
+   */
+  static final class Kind {
+    private final String name;
+    private final double rate;
+    private final String[] paths;
+
+    Kind(String name, double rate, String[] paths) {
+      this.name = name;
+      this.rate = rate;
+      this.paths = paths;
+    }
+
+    String name() {
+      return name;
+    }
+
+    /**
+     * The number of requests to send per second.
+     */
+    double rate() {
+      return rate;
+    }
+
+    /**
+     * Pick the path and query of the next request, e.g.
+     * `/api/todos?owner=Fry&limit=50`.
+     */
+    String next() {
+      return paths[ThreadLocalRandom.current().nextInt(paths.length)];
+    }
+  }
+
+  /**
+   * Parse the rates of a mix, such as `todos=300,todo=600,users=100`.
+   *
+   * @param setting the kinds and their rates in requests per second
+   * @return the rate of each kind named, in order
+   * @throws IllegalArgumentException if a kind or rate isn't valid
+   */
+  static Map<String, Double> rates(String setting) {
+    Map<String, Double> rates = new LinkedHashMap<>();
+    for (String entry : setting.split(",")) {
+      String[] parts = entry.trim().split("=");
+      if (parts.length != 2 || !KINDS.contains(parts[0])) {
+        throw new IllegalArgumentException("'" + entry + "' should be a kind of request (one of "
+          + String.join(", ", KINDS) + ") and a rate, e.g. todos=300");
+      }
+      double rate;
+      try {
+        rate = Double.parseDouble(parts[1]);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("The rate of " + parts[0] + " '" + parts[1] + "' isn't a number");
+      }
+      if (rate > 0) {
+        rates.put(parts[0], rate);
+      }
+    }
+    if (rates.isEmpty()) {
+      throw new IllegalArgumentException("The mix '" + setting + "' doesn't send any requests");
+    }
+    return rates;
+  }
+
+  /**
+   * Build a mix of requests for a running server.
+   *
+   * @param client  the client to look the server's data up with
+   * @param base    the server's URL, e.g. `http://localhost:4567`
+   * @param rates   the rate of each kind of request (see `rates`)
+   * @param queries how many different queries to send of each kind
+   * @return the mix
+   * @throws IOException if the server's data can't be read
+   */
+  static RequestMix build(HttpClient client, String base, Map<String, Double> rates, int queries)
+      throws IOException, InterruptedException {
+    Random random = new Random(SEED);
+    Map<String, Kind> kinds = new LinkedHashMap<>();
+    for (Map.Entry<String, Double> rate : rates.entrySet()) {
+      String[] paths;
+      switch (rate.getKey()) {
+        case "todos":
+          paths = todoQueries(get(client, base, "/api/todos/_stats"),
+            get(client, base, "/api/todos?limit=" + SAMPLE), queries, random);
+          break;
+
+        case "todo":
+          paths = lookups("/api/todos/", get(client, base, "/api/todos?limit=" + SAMPLE));
+          break;
+
+        case "users":
+          paths = userQueries(get(client, base, "/api/users/_stats"), queries, random);
+          break;
+
+        default:
+          paths = lookups("/api/users/", get(client, base, "/api/users?limit=" + SAMPLE));
+          break;
+      }
+      kinds.put(rate.getKey(), new Kind(rate.getKey(), rate.getValue(), paths));
+    }
+    return new RequestMix(kinds);
+  }
+
+  /**
+   * Get the kinds of request in the mix, in the order they were given.
+   */
+  Iterable<Kind> kinds() {
+    return kinds.values();
+  }
+
+  private static String[] todoQueries(JsonNode stats, JsonNode todos, int count, Random random) {
+    List<String> owners = names(stats.path("owner"));
+    List<String> categories = names(stats.path("category"));
+    List<String> words = new ArrayList<>();
+    for (JsonNode todo : todos) {
+      for (String word : todo.path("body").asText().split("[^A-Za-z]+")) {
+        if (word.length() > 3) {
+          words.add(word.toLowerCase());
+        }
+      }
+    }
+    String[] paths = new String[count];
+    for (int i = 0; i < count; i++) {
+      StringJoiner query = new StringJoiner("&", "/api/todos?", "");
+      if (!owners.isEmpty() && random.nextInt(2) == 0) {
+        query.add("owner=" + encode(pick(owners, random)));
+      }
+      if (!categories.isEmpty() && random.nextInt(3) == 0) {
+        query.add("category=" + encode(pick(categories, random)));
+      }
+      if (random.nextInt(3) == 0) {
+        query.add("status=" + (random.nextBoolean() ? "complete" : "incomplete"));
+      }
+      if (!words.isEmpty() && random.nextInt(5) == 0) {
+        query.add("contains=" + encode(pick(words, random)));
+      }
+      if (random.nextInt(3) == 0) {
+        query.add("orderBy=" + pick(ORDERINGS, random));
+      }
+      query.add("limit=" + PAGE);
+      paths[i] = query.toString();
+    }
+    return paths;
+  }
+
+  private static String[] userQueries(JsonNode stats, int count, Random random) {
+    List<String> ages = names(stats.path("age"));
+    List<String> companies = names(stats.path("company"));
+    String[] paths = new String[count];
+    for (int i = 0; i < count; i++) {
+      StringJoiner query = new StringJoiner("&", "/api/users?", "");
+      int ageFilter = random.nextInt(3);
+      if (!ages.isEmpty() && ageFilter == 0) {
+        query.add("age=" + pick(ages, random));
+      } else if (!ages.isEmpty() && ageFilter == 1) {
+        int min = Integer.parseInt(pick(ages, random));
+        query.add("minAge=" + min).add("maxAge=" + (min + 9));
+      }
+      if (!companies.isEmpty() && random.nextInt(5) < 2) {
+        query.add("company=" + encode(pick(companies, random)));
+      }
+      query.add("limit=" + PAGE);
+      paths[i] = query.toString();
+    }
+    return paths;
+  }
+
+  private static String[] lookups(String prefix, JsonNode records) {
+    List<String> paths = new ArrayList<>();
+    for (JsonNode record : records) {
+      paths.add(prefix + encode(record.path("_id").asText()));
+    }
+    if (paths.isEmpty()) {
+      throw new IllegalStateException("The server has no records to look up at " + prefix);
+    }
+    return paths.toArray(new String[0]);
+  }
+
+  private static List<String> names(JsonNode counts) {
+    List<String> names = new ArrayList<>();
+    for (Iterator<String> fields = counts.fieldNames(); fields.hasNext();) {
+      names.add(fields.next());
+    }
+    return names;
+  }
+
+  private static String pick(List<String> values, Random random) {
+    return values.get(random.nextInt(values.size()));
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  private static JsonNode get(HttpClient client, String base, String path) throws IOException, InterruptedException {
+    HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create(base + path)).build(),
+      HttpResponse.BodyHandlers.ofByteArray());
+    if (response.statusCode() >= 400) {
+      throw new IOException("GET " + path + " failed with status " + response.statusCode());
+    }
+    return MAPPER.readTree(response.body());
+  }
+}
@@ -0,0 +1,160 @@
+package umm3601.load;
+
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * What happened to the requests of one kind during a load test.
+ * <p>
+ * Each request's latency is counted from when it was due to be sent, not
+ * from when it actually was. If the server stalls, requests that should
+ * have gone out during the stall are held back (they can't all be in
+ * flight at once), and timing them from when they finally went out would
+ * hide the stall, which is called coordinated omission. The time from
+ * actually sending each request is kept separately, as the service time.
+ * Times are recorded in microseconds.
+ */
+final class Results {
+
+  private static final String NOT_SENT = "not sent";
+
+  private final String name;
+  private final double rate;
+  private final Histogram latency = new ConcurrentHistogram(3);
+  private final Histogram serviceTime = new ConcurrentHistogram(3);
+  private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+  private final LongAdder unsent = new LongAdder();
+
+  Results(String name, double rate) {
+    this.name = name;
+    this.rate = rate;
+  }
+
+  /**
+   * Record a request that has finished.
+   *
+   * @param due      when the request was due to be sent, from `System.nanoTime`
+   * @param sent     when it was sent
+   * @param done     when its response was read, or it failed
+   * @param response the response, or `null` if it failed
+   * @param failure  why it failed, or `null` if it didn't
+   */
+  void record(long due, long sent, long done, HttpResponse<?> response, Throwable failure) {
+    latency.recordValue(TimeUnit.NANOSECONDS.toMicros(done - due));
+    serviceTime.recordValue(TimeUnit.NANOSECONDS.toMicros(done - sent));
+    String error = null;
+    if (failure != null) {
+      Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+      error = cause.getClass().getSimpleName();
+    } else if (response.statusCode() >= 400) {
+      error = "HTTP " + response.statusCode();
+    }
+    if (error != null) {
+      errors.computeIfAbsent(error, key -> new LongAdder()).increment();
+    }
+  }
+
+  /**
+   * Record a request that was never sent, because the test ended with the
+   * server too far behind. It counts as an error, but has no latency.
+   */
+  void unsent() {
+    unsent.increment();
+    errors.computeIfAbsent(NOT_SENT, key -> new LongAdder()).increment();
+  }
+
+  /**
+   * Add up several kinds of request.
+   *
+   * @param name    the name of the total
+   * @param results the results to add up
+   * @return the total
+   */
+  static Results total(String name, Iterable<Results> results) {
+    double rate = 0;
+    for (Results kind : results) {
+      rate += kind.rate;
+    }
+    Results total = new Results(name, rate);
+    for (Results kind : results) {
+      total.latency.add(kind.latency);
+      total.serviceTime.add(kind.serviceTime);
+      total.unsent.add(kind.unsent.sum());
+      kind.errors.forEach((error, count) ->
+        total.errors.computeIfAbsent(error, key -> new LongAdder()).add(count.sum()));
+    }
+    return total;
+  }
+
+  String name() {
+    return name;
+  }
+
+  /**
+   * The number of requests that were due to be sent per second.
+   */
+  double rate() {
+    return rate;
+  }
+
+  /**
+   * The number of requests that were due, including those that failed or
+   * were never sent.
+   */
+  long requests() {
+    return latency.getTotalCount() + unsent.sum();
+  }
+
+  /**
+   * The number of requests that were sent and finished, whether they
+   * succeeded or not.
+   */
+  long completed() {
+    return latency.getTotalCount();
+  }
+
+  /**
+   * The number of requests that failed or got an error status.
+   */
+  long errors() {
+    long count = 0;
+    for (LongAdder errors : errors.values()) {
+      count += errors.sum();
+    }
+    return count;
+  }
+
+  /**
+   * The number of each kind of error, e.g. `HTTP 500` or
+   * `HttpTimeoutException`.
+   */
+  Map<String, Long> errorCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    errors.forEach((error, count) -> counts.put(error, count.sum()));
+    return counts;
+  }
+
+  /**
+   * The time from when each request was due to be sent until its response,
+   * in microseconds.
+   */
+  Histogram latency() {
+    return latency;
+  }
+
+  /**
+   * The time from when each request was actually sent until its response,
+   * in microseconds.
+   */
+  Histogram serviceTime() {
+    return serviceTime;
+  }
+}
@@ -0,0 +1,42 @@
+package umm3601;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import umm3601.todo.DatabaseTD;
+import umm3601.user.Database;
+
+/**
+ * Converts the JSON data files into the binary snapshot files the server can
+ * memory-map at startup (see `Server.TODO_FILE_PROPERTY`).
+ * <p>
+ * Usage: `ConvertData todos|users input.json output.bin`, or run
+ * `./gradlew convertData` to convert both bundled data files into
+ * `build/data`.
+ */
+public class ConvertData {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 3 || !(args[0].equals("todos") || args[0].equals("users"))) {
+      System.err.println("Usage: ConvertData todos|users input.json output.bin");
+      System.exit(2);
+    }
+    Path input = Paths.get(args[1]);
+    Path output = Paths.get(args[2]);
+    if (output.toAbsolutePath().getParent() != null) {
+      Files.createDirectories(output.toAbsolutePath().getParent());
+    }
+
+    Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+    if (args[0].equals("todos")) {
+      new DatabaseTD(reader, DatabaseTD.Storage.COLUMNS).writeSnapshot(output);
+    } else {
+      new Database(reader).writeSnapshot(output);
+    }
+    System.out.println("Converted " + input + " to " + output);
+  }
+}
@@ -0,0 +1,126 @@
+package umm3601;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a data file and reloads it, on a background thread, whenever it is
+ * created or changed.
+ * <p>
+ * Writing a file usually shows up as several change events in a row, so the
+ * reload waits until the file has been quiet for a moment. If reloading fails,
+ * for instance because the file is only half written, the error is logged and
+ * the data that was already loaded stays in use; the next change will try
+ * again.
+ */
+public final class DataWatcher implements Closeable {
+
+  /**
+   * How long the file has to go without changing before it is reloaded.
+   */
+  public static final long DEFAULT_QUIET_MILLIS = 200;
+
+  /**
+   * Loads a data file, replacing whatever was loaded before.
+   */
+  @FunctionalInterface
+  public interface Reloader {
+    void reload(Path file) throws IOException;
+  }
+
+  private final Path file;
+  private final Reloader reloader;
+  private final long quietMillis;
+  private final WatchService watchService;
+  private final Thread thread;
+
+  private DataWatcher(Path file, Reloader reloader, long quietMillis) throws IOException {
+    this.file = file.toAbsolutePath();
+    this.reloader = reloader;
+    this.quietMillis = quietMillis;
+    Path directory = this.file.getParent();
+    watchService = FileSystems.getDefault().newWatchService();
+    try {
+      directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException e) {
+      watchService.close();
+      throw e;
+    }
+    thread = new Thread(this::run, "data-watcher-" + this.file.getFileName());
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Start watching a data file.
+   *
+   * @param file     the file to watch; it is reloaded whenever it changes
+   * @param reloader what to do with the changed file, e.g. `db::reload`
+   * @return the watcher, which should be closed to stop watching
+   * @throws IOException if the file's directory can't be watched
+   */
+  public static DataWatcher watch(Path file, Reloader reloader) throws IOException {
+    return watch(file, reloader, DEFAULT_QUIET_MILLIS);
+  }
+
+  static DataWatcher watch(Path file, Reloader reloader, long quietMillis) throws IOException {
+    DataWatcher watcher = new DataWatcher(file, reloader, quietMillis);
+    watcher.thread.start();
+    return watcher;
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        // Wait for the file to change, then for it to stop changing
+        if (!changed(watchService.take())) {
+          continue;
+        }
+        WatchKey key;
+        while ((key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS)) != null) {
+          changed(key);
+        }
+        reload();
+      }
+    } catch (ClosedWatchServiceException | InterruptedException e) {
+      // The watcher was closed; stop watching
+    }
+  }
+
+  /**
+   * Check whether a batch of events includes a change to the watched file,
+   * and re-arm the key for the next batch.
+   */
+  private boolean changed(WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+        changed = true;
+      }
+    }
+    key.reset();
+    return changed;
+  }
+
+  private void reload() {
+    try {
+      reloader.reload(file);
+      System.out.println("Reloaded " + file);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Failed to reload " + file + "; keeping the current data.");
+      e.printStackTrace(System.err);
+    }
+  }
+}
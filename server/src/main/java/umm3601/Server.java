@@ -1,9 +1,12 @@
 package umm3601;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Locale;
 
 import io.javalin.Javalin;
-import io.javalin.http.staticfiles.Location;
+import umm3601.http.ETags;
+import umm3601.http.StaticAssets;
 import umm3601.user.Database;
 import umm3601.user.UserController;
 import umm3601.todo.DatabaseTD;
@@ -14,21 +17,68 @@ public class Server {
   public static final String CLIENT_DIRECTORY = "../client";
   public static final String USER_DATA_FILE = "/users.json";
   public static final String TODO_DATA_FILE = "/todos.json";
+  /**
+   * Prefix of the system properties that override an endpoint's
+   * `Cache-Control` header, e.g. `-Dcache-control.todos="max-age=60"`.
+   * The endpoints are `users`, `user`, `todos`, `todo` and `static`.
+   */
+  public static final String CACHE_CONTROL_PROPERTY = "cache-control.";
+  /**
+   * System property choosing how todos are kept in memory: `rows` (the
+   * default) or `columns`, e.g. `-Dtodo.storage=columns`.
+   */
+  public static final String TODO_STORAGE_PROPERTY = "todo.storage";
+  /**
+   * System properties naming data files on disk to load instead of the
+   * bundled JSON, e.g. `-Dtodo.file=build/data/todos.bin`. A `.bin` file is a
+   * binary snapshot (see `ConvertData`); anything else is read as JSON. The
+   * file is watched, and reloaded without a restart whenever it changes.
+   */
+  public static final String TODO_FILE_PROPERTY = "todo.file";
+  public static final String USER_FILE_PROPERTY = "user.file";
+  /**
+   * System property naming a directory to log todo writes in, so they
+   * survive a restart, e.g. `-Dtodo.log=build/data/log`. Without it, writes
+   * are kept in memory only. `todo.log.batch` caps how many writes are
+   * synced to disk together; 1 syncs each write on its own. With a log, a
+   * `todo.file` only seeds the data and isn't watched.
+   */
+  public static final String TODO_LOG_PROPERTY = "todo.log";
+  public static final String TODO_LOG_BATCH_PROPERTY = "todo.log.batch";
+  /**
+   * System property choosing the port to listen on, e.g. `-Dserver.port=8080`;
+   * 0 picks any free port.
+   */
+  public static final String PORT_PROPERTY = "server.port";
+  public static final int DEFAULT_PORT = 4567;
   private static Database userDatabase;
   private static DatabaseTD todoDatabase;
 
   public static void main(String[] args) {
+    start(Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT));
+  }
+
+  /**
+   * Load the data and start the server, configured by the system properties
+   * above.
+   *
+   * @param port the port to listen on, or 0 for any free port
+   * @return the running server; its `port()` is the port it listens on
+   */
+  public static Javalin start(int port) {
 
     // Initialize dependencies
     UserController userController = buildUserController();
     TodoController todoController = buildTodoController();
+    StaticAssets staticAssets = buildStaticAssets();
 
     Javalin server = Javalin.create(config -> {
-      // This tells the server where to look for static files,
-      // like HTML and JavaScript.
-      config.addStaticFiles(CLIENT_DIRECTORY, Location.EXTERNAL);
-      // The next line starts the server listening on port 4567.
-    }).start(4567);
+      // Static files and API responses are compressed by our own handlers
+      // (see StaticAssets and Compression), so Javalin shouldn't gzip them
+      // a second time.
+      config.dynamicGzip = false;
+      // The next line starts the server listening on the port.
+    }).start(port);
 
     // Simple example route
     server.get("/hello", ctx -> ctx.result("Hello World"));
@@ -39,17 +89,49 @@ public class Server {
 
     // API endpoints
 
+    // Count users by age and company. This has to come before the route for
+    // a specific user, or "_stats" would be taken as a user's id.
+    server.get("/api/users/_stats", ctx -> userController.getUserStats(ctx));
+
     // Get specific user
     server.get("/api/users/:id", ctx -> userController.getUser(ctx));
 
     // List users, filtered using query parameters
     server.get("/api/users", ctx -> userController.getUsers(ctx));
 
+    // Get the users with the ids listed in the body
+    server.post("/api/users/_batch", ctx -> userController.getUsersByIds(ctx));
+
+    // Count todos by owner, category and status, before the route for a
+    // specific todo for the same reason
+    server.get("/api/todos/_stats", ctx -> todoController.getTodoStats(ctx));
+
     // Get specific todo
     server.get("/api/todos/:id", ctx -> todoController.getTodo(ctx));
 
     // List todos, filtered used query parameters
     server.get("/api/todos", ctx -> todoController.getTodos(ctx));
+
+    // Get the todos with the ids listed in the body
+    server.post("/api/todos/_batch", ctx -> todoController.getTodosByIds(ctx));
+
+    // Add a new todo
+    server.post("/api/todos", ctx -> todoController.addTodo(ctx));
+
+    // Replace (or add) a specific todo
+    server.put("/api/todos/:id", ctx -> todoController.putTodo(ctx));
+
+    // Change some fields of a specific todo
+    server.patch("/api/todos/:id", ctx -> todoController.patchTodo(ctx));
+
+    // Delete a specific todo
+    server.delete("/api/todos/:id", ctx -> todoController.deleteTodo(ctx));
+
+    // Everything else is a static file, like HTML and JavaScript, served
+    // from memory. This has to come last so it doesn't hide the routes above.
+    server.get("/*", ctx -> staticAssets.serve(ctx));
+
+    return server;
   }
 
   /***
@@ -64,8 +146,17 @@ public class Server {
     UserController userController = null;
 
     try {
-      userDatabase = new Database(USER_DATA_FILE);
+      String file = System.getProperty(USER_FILE_PROPERTY);
+      if (file != null) {
+        userDatabase = new Database(Paths.get(file));
+        DataWatcher.watch(Paths.get(file), userDatabase::reload);
+      } else {
+        userDatabase = new Database(USER_DATA_FILE);
+      }
+      System.out.println("Loaded users: " + userDatabase.loadReport());
       userController = new UserController(userDatabase);
+      userController.setListCacheControl(cacheControl("users"));
+      userController.setItemCacheControl(cacheControl("user"));
     } catch (IOException e) {
       System.err.println("The server failed to load the user data; shutting down.");
       e.printStackTrace(System.err);
@@ -89,8 +180,26 @@ public class Server {
     TodoController todoController = null;
 
     try {
-      todoDatabase = new DatabaseTD(TODO_DATA_FILE);
+      DatabaseTD.Storage storage = DatabaseTD.Storage.valueOf(
+        System.getProperty(TODO_STORAGE_PROPERTY, "rows").toUpperCase(Locale.ROOT));
+      String file = System.getProperty(TODO_FILE_PROPERTY);
+      String log = System.getProperty(TODO_LOG_PROPERTY);
+      if (file != null) {
+        todoDatabase = new DatabaseTD(Paths.get(file), storage);
+        if (log == null) {
+          DataWatcher.watch(Paths.get(file), todoDatabase::reload);
+        }
+      } else {
+        todoDatabase = new DatabaseTD(TODO_DATA_FILE, storage);
+      }
+      if (log != null) {
+        int batch = Integer.getInteger(TODO_LOG_BATCH_PROPERTY, DatabaseTD.DEFAULT_WRITE_BATCH);
+        todoDatabase.openLog(Paths.get(log), batch);
+      }
+      System.out.println("Loaded todos: " + todoDatabase.loadReport());
       todoController = new TodoController(todoDatabase);
+      todoController.setListCacheControl(cacheControl("todos"));
+      todoController.setItemCacheControl(cacheControl("todo"));
     } catch (IOException e) {
       System.err.println("The server failed to load the user data; shutting down.");
       e.printStackTrace(System.err);
@@ -101,4 +210,36 @@ public class Server {
 
     return todoController;
   }
+
+  /***
+   * Read the client's static files into memory, compressing them once up
+   * front rather than on every request.
+   *
+   * If the files can't be read we'll print out an error message and exit the
+   * program.
+   */
+  private static StaticAssets buildStaticAssets() {
+    StaticAssets staticAssets = null;
+
+    try {
+      staticAssets = StaticAssets.load(Paths.get(CLIENT_DIRECTORY), cacheControl("static"));
+    } catch (IOException e) {
+      System.err.println("The server failed to load the client files; shutting down.");
+      e.printStackTrace(System.err);
+
+      // Exit from the Java program
+      System.exit(1);
+    }
+
+    return staticAssets;
+  }
+
+  /**
+   * Look up the `Cache-Control` header configured for an endpoint. An empty
+   * setting turns the header off.
+   */
+  private static String cacheControl(String endpoint) {
+    String setting = System.getProperty(CACHE_CONTROL_PROPERTY + endpoint, ETags.DEFAULT_CACHE_CONTROL);
+    return setting.isEmpty() ? null : setting;
+  }
 }
@@ -0,0 +1,199 @@
+package umm3601;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import umm3601.todo.DatabaseTD;
+import umm3601.todo.Todo;
+import umm3601.user.Database;
+import umm3601.user.User;
+
+/**
+ * Generates todos and users that look like the bundled data, in any number,
+ * for benchmarking and load testing.
+ * <p>
+ * The same count and seed always give the same records. Todos keep the
+ * bundled owners and categories, so filters like `owner=Fry` match the same
+ * share of any dataset; users get the bundled companies and more besides,
+ * about one company for every 20 users.
+ * <p>
+ * Usage: `SyntheticData todos|users count output [seed]`. An output file
+ * ending in `.bin` is written as a binary snapshot (see `ConvertData`),
+ * anything else as JSON. `./gradlew syntheticData -Prows=1000000` writes
+ * both kinds into `build/data`.
+ */
+public class SyntheticData {
+
+  /**
+   * The seed used when none is given.
+   */
+  public static final long DEFAULT_SEED = 3601;
+
+  static final String[] OWNERS = { "Blanche", "Fry", "Barry", "Workman", "Dawn", "Roberta" };
+  static final String[] CATEGORIES = { "software design", "video games", "homework", "groceries" };
+  static final String[] COMPANIES = { "OHMNET", "NIQUENT", "DATAGENE", "ESCENTA", "KINETICUT", "MOMENTIA",
+    "RECOGNIA", "SURELOGIC", "VINCH" };
+
+  private static final String[] WORDS = { "in", "sunt", "ex", "non", "tempor", "cillum", "commodo", "amet",
+    "incididunt", "anim", "qui", "quis", "labore", "sint", "esse", "ipsum", "est", "ullamco", "magna",
+    "laborum", "officia", "deserunt", "veniam", "aute", "minim", "irure", "dolor", "occaecat", "adipisicing",
+    "eu", "nisi", "velit", "culpa", "fugiat", "nostrud", "elit", "dolore", "proident", "aliqua", "duis",
+    "consequat", "excepteur", "ad", "do", "et", "id", "lorem", "mollit", "pariatur", "reprehenderit", "sit",
+    "ut", "voluptate", "eiusmod", "exercitation", "enim", "cupidatat", "laboris", "nulla", "sed" };
+  private static final String[] FIRST_NAMES = { "Connie", "Lynn", "Roseann", "Leta", "Merrill", "Lynda",
+    "Pat", "Walker", "Kristen", "Marie", "Stokes", "Hazel", "Vera", "Mabel", "Otis", "Ruben", "Dale",
+    "Lucile", "Bernice", "Rocha" };
+  private static final String[] LAST_NAMES = { "Stewart", "Ferguson", "Roberson", "Jones", "Barnes",
+    "Mendez", "Hayes", "Pace", "Wells", "Curry", "Whitley", "Vaughn", "Baird", "Nash", "Holt", "Reyes",
+    "Bryant", "Pruitt", "Gamble", "Flores" };
+  private static final String[] SYLLABLES = { "ZO", "LEX", "QUI", "NET", "TRO", "GEN", "MAX", "ORB", "VIA",
+    "TEK", "PLEX", "ZEN", "ISO", "CORE", "RAM", "DYN" };
+  private static final int USERS_PER_COMPANY = 20;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3 || args.length > 4 || !(args[0].equals("todos") || args[0].equals("users"))) {
+      System.err.println("Usage: SyntheticData todos|users count output [seed]");
+      System.exit(2);
+    }
+    int count = Integer.parseInt(args[1]);
+    Path output = Paths.get(args[2]);
+    long seed = args.length == 4 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+    if (output.toAbsolutePath().getParent() != null) {
+      Files.createDirectories(output.toAbsolutePath().getParent());
+    }
+
+    boolean snapshot = output.getFileName().toString().endsWith(DatabaseTD.SNAPSHOT_SUFFIX);
+    if (args[0].equals("todos")) {
+      Todo[] todos = todos(count, seed);
+      if (snapshot) {
+        new DatabaseTD(todos, DatabaseTD.Storage.COLUMNS).writeSnapshot(output);
+      } else {
+        new ObjectMapper().writeValue(output.toFile(), todos);
+      }
+    } else {
+      User[] users = users(count, seed);
+      if (snapshot) {
+        new Database(users).writeSnapshot(output);
+      } else {
+        new ObjectMapper().writeValue(output.toFile(), users);
+      }
+    }
+    System.out.println("Wrote " + count + " " + args[0] + " to " + output);
+  }
+
+  /**
+   * Generate todos.
+   *
+   * @param count how many todos to make
+   * @param seed  the random seed
+   * @return the todos, with unique ids
+   */
+  public static Todo[] todos(int count, long seed) {
+    Random random = new Random(seed);
+    Todo[] todos = new Todo[count];
+    for (int i = 0; i < count; i++) {
+      Todo todo = new Todo();
+      todo._id = id(0x58895985, i);
+      todo.owner = OWNERS[random.nextInt(OWNERS.length)];
+      todo.status = random.nextBoolean();
+      todo.body = body(random);
+      todo.category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+      todos[i] = todo;
+    }
+    return todos;
+  }
+
+  /**
+   * Generate users, aged 20 to 59.
+   *
+   * @param count how many users to make
+   * @param seed  the random seed
+   * @return the users, with unique ids
+   */
+  public static User[] users(int count, long seed) {
+    Random random = new Random(seed);
+    String[] companies = companies(Math.max(COMPANIES.length, count / USERS_PER_COMPANY));
+    User[] users = new User[count];
+    for (int i = 0; i < count; i++) {
+      User user = new User();
+      String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+      String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+      user._id = id(0x588935f5, i);
+      user.name = first + " " + last;
+      user.age = 20 + random.nextInt(40);
+      user.company = companies[random.nextInt(companies.length)];
+      user.email = (first + last).toLowerCase() + "@" + user.company.toLowerCase() + ".com";
+      users[i] = user;
+    }
+    return users;
+  }
+
+  /**
+   * Name companies: the bundled ones first, then made-up ones.
+   */
+  private static String[] companies(int count) {
+    String[] companies = new String[count];
+    for (int i = 0; i < count; i++) {
+      if (i < COMPANIES.length) {
+        companies[i] = COMPANIES[i];
+      } else {
+        // Spell the number out in syllables, so every name is different
+        StringBuilder name = new StringBuilder();
+        for (int n = i - COMPANIES.length; name.length() == 0 || n > 0; n /= SYLLABLES.length) {
+          name.append(SYLLABLES[n % SYLLABLES.length]);
+        }
+        companies[i] = name.toString();
+      }
+    }
+    return companies;
+  }
+
+  /**
+   * Write a sentence or two of lorem ipsum, like the bundled todo bodies.
+   */
+  private static String body(Random random) {
+    StringBuilder body = new StringBuilder();
+    int sentences = 1 + random.nextInt(2);
+    for (int s = 0; s < sentences; s++) {
+      if (s > 0) {
+        body.append(' ');
+      }
+      int words = 5 + random.nextInt(9);
+      for (int w = 0; w < words; w++) {
+        String word = WORDS[random.nextInt(WORDS.length)];
+        if (w == 0) {
+          body.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        } else {
+          body.append(' ').append(word);
+        }
+      }
+      body.append('.');
+    }
+    return body.toString();
+  }
+
+  /**
+   * Make a 24 digit hex id like the bundled ones, a timestamp followed by a
+   * scrambled counter. Multiplying by an odd number can't map two counters
+   * to the same value, so the ids are unique but not in row order.
+   */
+  private static String id(int timestamp, int counter) {
+    long scrambled = (counter + 1) * 0x9E3779B97F4A7C15L;
+    char[] id = new char[24];
+    for (int i = 7; i >= 0; i--) {
+      id[i] = HEX[timestamp & 0xf];
+      timestamp >>>= 4;
+    }
+    for (int i = 23; i >= 8; i--) {
+      id[i] = HEX[(int) (scrambled & 0xf)];
+      scrambled >>>= 4;
+    }
+    return new String(id);
+  }
+}
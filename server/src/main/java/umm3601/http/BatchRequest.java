@@ -0,0 +1,64 @@
+package umm3601.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+
+/**
+ * Reads the body of a batch lookup request: a JSON array of the ids to look
+ * up, such as `["588935f52787254123f71fed", "588935f5556f992bf8f37c01"]`.
+ * <p>
+ * Resolving a list of ids in one request saves a round trip per id, and
+ * lets the whole response be served from a single snapshot of the data.
+ */
+public final class BatchRequest {
+
+  /**
+   * The most ids one request may look up.
+   */
+  public static final int MAX_IDS = 1000;
+
+  private BatchRequest() {
+  }
+
+  /**
+   * Get the ids listed in a request body.
+   *
+   * @param ctx a Javalin HTTP context
+   * @return the ids, in the order given
+   * @throws BadRequestResponse if the body isn't an array of at most
+   *                            `MAX_IDS` strings
+   */
+  public static List<String> ids(Context ctx) {
+    JsonArray array = null;
+    try {
+      JsonElement body = JsonParser.parseString(ctx.body());
+      if (body.isJsonArray()) {
+        array = body.getAsJsonArray();
+      }
+    } catch (JsonParseException e) {
+      // Reported below, like any other body that isn't an array
+    }
+    if (array == null) {
+      throw new BadRequestResponse("The request body must be a JSON array of ids");
+    }
+    if (array.size() > MAX_IDS) {
+      throw new BadRequestResponse("At most " + MAX_IDS + " ids can be looked up at once");
+    }
+    List<String> ids = new ArrayList<>(array.size());
+    for (JsonElement id : array) {
+      if (!id.isJsonPrimitive() || !id.getAsJsonPrimitive().isString()) {
+        throw new BadRequestResponse("Every id must be a string");
+      }
+      ids.add(id.getAsString());
+    }
+    return ids;
+  }
+}
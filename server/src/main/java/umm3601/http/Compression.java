@@ -0,0 +1,96 @@
+package umm3601.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+
+import io.javalin.http.Context;
+
+/**
+ * Content negotiation for compressed responses.
+ * <p>
+ * Responses are gzipped when the client accepts it and the body is at least
+ * `MIN_SIZE` bytes long; below that the gzip framing costs more than it
+ * saves. Streamed bodies don't know their length up front, so only their
+ * first `MIN_SIZE` bytes are read to decide, and the rest is compressed as
+ * it streams out.
+ * <p>
+ * Brotli would compress our JSON a little better, but the JDK has no
+ * encoder for it, so only gzip is offered.
+ */
+public final class Compression {
+
+  /**
+   * The smallest body worth compressing, in bytes.
+   */
+  public static final int MIN_SIZE = 1024;
+
+  public static final String GZIP = "gzip";
+  public static final String IDENTITY = "identity";
+
+  private Compression() {
+  }
+
+  /**
+   * Check whether an `Accept-Encoding` header allows gzip, taking `q=0`
+   * (meaning "not acceptable") and the `*` wildcard into account.
+   *
+   * @param acceptEncoding the header value, or `null` if it wasn't sent
+   * @return true if a gzipped response is acceptable
+   */
+  public static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    Boolean wildcard = null;
+    for (String part : acceptEncoding.split(",")) {
+      String[] fields = part.split(";");
+      String coding = fields[0].trim();
+      boolean acceptable = true;
+      for (int i = 1; i < fields.length; i++) {
+        String parameter = fields[i].trim();
+        if (parameter.startsWith("q=")) {
+          acceptable = !parameter.substring(2).trim().matches("0(\\.0*)?");
+        }
+      }
+      if (coding.equalsIgnoreCase(GZIP) || coding.equalsIgnoreCase("x-gzip")) {
+        return acceptable;
+      }
+      if (coding.equals("*")) {
+        wildcard = acceptable;
+      }
+    }
+    return wildcard != null && wildcard;
+  }
+
+  /**
+   * Send a response body, gzipping it if the client accepts that and it is
+   * big enough.
+   *
+   * @param ctx  a Javalin HTTP context
+   * @param body the uncompressed body
+   * @return the content coding used, `gzip` or `identity`
+   */
+  public static String result(Context ctx, InputStream body) {
+    ctx.header("Vary", "Accept-Encoding");
+    if (!acceptsGzip(ctx.header("Accept-Encoding"))) {
+      ctx.result(body);
+      return IDENTITY;
+    }
+    byte[] prefix;
+    try {
+      prefix = body.readNBytes(MIN_SIZE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (prefix.length < MIN_SIZE) {
+      ctx.result(new ByteArrayInputStream(prefix));
+      return IDENTITY;
+    }
+    ctx.header("Content-Encoding", GZIP);
+    ctx.result(new GzipEncodingStream(new SequenceInputStream(new ByteArrayInputStream(prefix), body)));
+    return GZIP;
+  }
+}
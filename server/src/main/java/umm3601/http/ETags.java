@@ -0,0 +1,142 @@
+package umm3601.http;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.Hashing;
+
+import io.javalin.http.Context;
+
+/**
+ * Helpers for answering conditional GET requests with entity tags.
+ * <p>
+ * Our tags are derived from the version of the data plus a canonical
+ * description of what was asked for, never from the response body. That
+ * makes them cheap enough to check before running a query at all, so a
+ * request whose `If-None-Match` still matches is answered with 304 Not
+ * Modified without running a query or serializing anything.
+ */
+public final class ETags {
+
+  /**
+   * The `Cache-Control` header sent by default: clients may keep responses
+   * but must revalidate them, cheaply thanks to the ETags, before every reuse.
+   */
+  public static final String DEFAULT_CACHE_CONTROL = "no-cache";
+
+  private ETags() {
+  }
+
+  /**
+   * Build a strong entity tag for a resource.
+   *
+   * @param key a string that changes whenever the representation may change,
+   *            such as a data version followed by a canonical query
+   * @return the quoted entity tag
+   */
+  public static String of(String key) {
+    return '"' + Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).toString() + '"';
+  }
+
+  /**
+   * Build a strong entity tag from the bytes of a representation.
+   *
+   * @param content the exact bytes that will be sent
+   * @return the quoted entity tag
+   */
+  public static String of(byte[] content) {
+    return '"' + Hashing.murmur3_128().hashBytes(content).toString() + '"';
+  }
+
+  /**
+   * Check whether an `If-None-Match` header matches an entity tag. As the
+   * HTTP spec requires for `If-None-Match`, this is a weak comparison, so a
+   * `W/` prefix on the client's tag is ignored. Tags for compressed copies
+   * (see `encoded`) match too. `*` matches any current representation, so
+   * only check once the resource is known to exist.
+   *
+   * @param ifNoneMatch the header value, or `null` if it wasn't sent
+   * @param etag        the current entity tag
+   * @return true if the client already has the current representation
+   */
+  public static boolean matches(String ifNoneMatch, String etag) {
+    return match(ifNoneMatch, etag) != null;
+  }
+
+  /**
+   * Find the tag in an `If-None-Match` header that matches, so a 304 can
+   * name the copy the client actually has.
+   */
+  private static String match(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return null;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return etag;
+      }
+      if (tag.startsWith(etag.substring(0, etag.length() - 1) + "-")) {
+        return tag;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the entity tag for a copy of a representation sent with a content
+   * coding. Strong tags must differ between byte-for-byte different
+   * responses, so a gzipped copy gets its own tag, e.g. `"abc-gzip"`.
+   *
+   * @param etag   the tag of the uncompressed representation
+   * @param coding the content coding, such as `gzip` or `identity`
+   * @return the tag for the encoded copy
+   */
+  public static String encoded(String etag, String coding) {
+    if (coding.equals(Compression.IDENTITY)) {
+      return etag;
+    }
+    return etag.substring(0, etag.length() - 1) + "-" + coding + '"';
+  }
+
+  /**
+   * Answer with 304 Not Modified if the client's cached copy is current.
+   * Call this only for a resource that exists, since `If-None-Match: *`
+   * matches it regardless of its tag.
+   * <p>
+   * Our responses may be gzipped (see `Compression`), so the 304 carries the
+   * same `Vary: Accept-Encoding` as a full response would, and caches keep
+   * the gzipped and plain copies apart when revalidating.
+   *
+   * @param ctx          a Javalin HTTP context
+   * @param etag         the current entity tag
+   * @param cacheControl the `Cache-Control` header to send, or `null` for none
+   * @return true if a 304 was sent and the handler has nothing left to do
+   */
+  public static boolean notModified(Context ctx, String etag, String cacheControl) {
+    String matched = match(ctx.header("If-None-Match"), etag);
+    if (matched == null) {
+      return false;
+    }
+    ctx.header("Vary", "Accept-Encoding");
+    tag(ctx, matched, cacheControl);
+    ctx.status(304);
+    return true;
+  }
+
+  /**
+   * Send the caching headers for a full response.
+   *
+   * @param ctx          a Javalin HTTP context
+   * @param etag         the current entity tag
+   * @param cacheControl the `Cache-Control` header to send, or `null` for none
+   */
+  public static void tag(Context ctx, String etag, String cacheControl) {
+    ctx.header("ETag", etag);
+    if (cacheControl != null) {
+      ctx.header("Cache-Control", cacheControl);
+    }
+  }
+}
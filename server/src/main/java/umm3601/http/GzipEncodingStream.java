@@ -0,0 +1,87 @@
+package umm3601.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Gzip-compresses another stream as it is read.
+ * <p>
+ * This is the pull-based counterpart of `GZIPOutputStream`: nothing is
+ * compressed until the servlet container asks for the next chunk, so a
+ * streamed response stays streamed when it is compressed.
+ */
+final class GzipEncodingStream extends InputStream {
+
+  // Magic number, deflate, no flags, no mtime, no extra flags, unknown OS
+  private static final byte[] HEADER = {
+    0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+  };
+
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+  private final CheckedInputStream source;
+  private final DeflaterInputStream body;
+
+  // Bytes waiting to be read before (the header) or after (the trailer) the body
+  private byte[] pending = HEADER;
+  private int position;
+  private boolean bodyDone;
+
+  GzipEncodingStream(InputStream source) {
+    this.source = new CheckedInputStream(source, new CRC32());
+    this.body = new DeflaterInputStream(this.source, deflater);
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] single = new byte[1];
+    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (pending != null) {
+      if (position < pending.length) {
+        int n = Math.min(len, pending.length - position);
+        System.arraycopy(pending, position, b, off, n);
+        position += n;
+        return n;
+      }
+      if (bodyDone) {
+        return -1;
+      }
+      pending = null;
+    }
+    int n = body.read(b, off, len);
+    if (n >= 0) {
+      return n;
+    }
+    // The body is finished, so the checksum and length are final
+    bodyDone = true;
+    pending = trailer(source.getChecksum().getValue(), deflater.getBytesRead());
+    position = 0;
+    deflater.end();
+    return read(b, off, len);
+  }
+
+  @Override
+  public void close() throws IOException {
+    deflater.end();
+    body.close();
+  }
+
+  private static byte[] trailer(long crc, long size) {
+    byte[] trailer = new byte[8];
+    for (int i = 0; i < 4; i++) {
+      trailer[i] = (byte) (crc >>> (8 * i));
+      trailer[4 + i] = (byte) (size >>> (8 * i));
+    }
+    return trailer;
+  }
+}
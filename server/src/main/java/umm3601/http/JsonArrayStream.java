@@ -0,0 +1,136 @@
+package umm3601.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * An `InputStream` that produces a JSON array one element at a time.
+ * <p>
+ * Handing one of these to `ctx.result` lets Javalin copy the array to the
+ * response as it is produced, with chunked transfer encoding, instead of
+ * serializing the whole list into one buffer first. Only one element is ever
+ * held in serialized form, so the memory a response needs doesn't grow with
+ * the number of results, and the first bytes go out as soon as the first
+ * element is ready.
+ */
+public class JsonArrayStream extends InputStream {
+
+  static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final byte[] OPEN = { '[' };
+  private static final byte[] SEPARATOR = { ',' };
+  private static final byte[] CLOSE = { ']' };
+
+  private final Iterator<byte[]> elements;
+  private boolean opened;
+  private boolean closed;
+  private boolean first = true;
+  private byte[] pending;
+  private byte[] buffer = new byte[0];
+  private int position;
+
+  /**
+   * Create a stream over already-serialized JSON elements.
+   *
+   * @param elements the JSON encoding of each element of the array
+   */
+  public JsonArrayStream(Iterator<byte[]> elements) {
+    this.elements = elements;
+  }
+
+  /**
+   * Create a stream that serializes each item with Jackson as it is reached.
+   *
+   * @param items the items to write out
+   * @return the stream
+   */
+  public static JsonArrayStream of(Iterator<?> items) {
+    return new JsonArrayStream(new Iterator<byte[]>() {
+      @Override
+      public boolean hasNext() {
+        return items.hasNext();
+      }
+
+      @Override
+      public byte[] next() {
+        try {
+          return MAPPER.writeValueAsBytes(items.next());
+        } catch (JsonProcessingException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    });
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return buffer[position++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    int copied = 0;
+    while (copied < len && fill()) {
+      int n = Math.min(len - copied, buffer.length - position);
+      System.arraycopy(buffer, position, b, off + copied, n);
+      position += n;
+      copied += n;
+    }
+    return copied == 0 ? -1 : copied;
+  }
+
+  /**
+   * Make sure there are unread bytes in the buffer, moving on to the next
+   * piece of the array if needed.
+   *
+   * @return false once the whole array has been read
+   */
+  private boolean fill() {
+    while (position >= buffer.length) {
+      byte[] next = nextPiece();
+      if (next == null) {
+        return false;
+      }
+      buffer = next;
+      position = 0;
+    }
+    return true;
+  }
+
+  private byte[] nextPiece() {
+    if (!opened) {
+      opened = true;
+      return OPEN;
+    }
+    if (pending != null) {
+      byte[] element = pending;
+      pending = null;
+      return element;
+    }
+    if (elements.hasNext()) {
+      byte[] element = elements.next();
+      if (first) {
+        first = false;
+        return element;
+      }
+      pending = element;
+      return SEPARATOR;
+    }
+    if (!closed) {
+      closed = true;
+      return CLOSE;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,121 @@
+package umm3601.http;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * A cache of the JSON encoding of each record in an immutable collection.
+ * <p>
+ * Each record is serialized the first time it is asked for and the bytes are
+ * kept, so later responses write those bytes straight out instead of running
+ * the record back through Jackson. The records must not change while the
+ * cache is in use.
+ * <p>
+ * The encodings are kept in chunks of `CHUNK` rows. A cache for a changed
+ * copy of the collection shares every chunk with this one except those
+ * holding the changed rows, so the encodings of unchanged rows stay cached
+ * without being copied.
+ */
+public final class JsonRecordCache {
+
+  static final int CHUNK = 1024;
+
+  private final AtomicReferenceArray<byte[]>[] chunks;
+  private final IntFunction<?> records;
+
+  /**
+   * Create an empty cache.
+   *
+   * @param size    the number of records
+   * @param records looks up the record stored at a row
+   */
+  public JsonRecordCache(int size, IntFunction<?> records) {
+    this(newChunks(size), records);
+    for (int i = 0; i < chunks.length; i++) {
+      chunks[i] = new AtomicReferenceArray<>(CHUNK);
+    }
+  }
+
+  private JsonRecordCache(AtomicReferenceArray<byte[]>[] chunks, IntFunction<?> records) {
+    this.chunks = chunks;
+    this.records = records;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static AtomicReferenceArray<byte[]>[] newChunks(int size) {
+    return new AtomicReferenceArray[(size + CHUNK - 1) / CHUNK];
+  }
+
+  /**
+   * Make a cache for a changed copy of the collection, keeping the encodings
+   * already cached for rows that didn't change.
+   *
+   * @param size    the number of records now
+   * @param records looks up the record stored at a row now
+   * @param changed the rows whose records changed
+   * @return the new cache
+   */
+  public JsonRecordCache update(int size, IntFunction<?> records, int[] changed) {
+    AtomicReferenceArray<byte[]>[] updated = newChunks(size);
+    System.arraycopy(chunks, 0, updated, 0, Math.min(chunks.length, updated.length));
+    // A chunk is copied the first time one of its rows is cleared; chunks
+    // past the end of this cache start out empty
+    boolean[] copied = new boolean[updated.length];
+    for (int i = chunks.length; i < updated.length; i++) {
+      updated[i] = new AtomicReferenceArray<>(CHUNK);
+      copied[i] = true;
+    }
+    for (int row : changed) {
+      if (row >= size) {
+        continue;
+      }
+      int chunk = row / CHUNK;
+      if (!copied[chunk]) {
+        AtomicReferenceArray<byte[]> copy = new AtomicReferenceArray<>(CHUNK);
+        for (int i = 0; i < CHUNK; i++) {
+          copy.set(i, updated[chunk].get(i));
+        }
+        updated[chunk] = copy;
+        copied[chunk] = true;
+      }
+      updated[chunk].set(row % CHUNK, null);
+    }
+    return new JsonRecordCache(updated, records);
+  }
+
+  /**
+   * Get the JSON encoding of the record at a row. The returned array is shared
+   * and must not be modified.
+   *
+   * @param row the row of the record
+   * @return the record's JSON encoding
+   */
+  public byte[] get(int row) {
+    AtomicReferenceArray<byte[]> chunk = chunks[row / CHUNK];
+    byte[] json = chunk.get(row % CHUNK);
+    if (json == null) {
+      // Two threads may both serialize the same record; either result is fine
+      json = encode(records.apply(row));
+      chunk.set(row % CHUNK, json);
+    }
+    return json;
+  }
+
+  /**
+   * Serialize a record without caching it, for records that are cheaper to
+   * re-encode than to keep around.
+   *
+   * @param record the record
+   * @return its JSON encoding
+   */
+  public static byte[] encode(Object record) {
+    try {
+      return JsonArrayStream.MAPPER.writeValueAsBytes(record);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
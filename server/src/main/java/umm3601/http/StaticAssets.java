@@ -0,0 +1,135 @@
+package umm3601.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import io.javalin.http.Context;
+import io.javalin.http.NotFoundResponse;
+
+/**
+ * The client's static files (HTML, JavaScript, CSS), held in memory.
+ * <p>
+ * Every file is read once at startup, along with a gzipped copy made at the
+ * highest compression level, since it only has to be made once. Requests are
+ * then answered straight from memory, without touching the disk, and each
+ * file carries an ETag of its contents.
+ */
+public final class StaticAssets {
+
+  private static final Map<String, String> CONTENT_TYPES = Map.of(
+    "html", "text/html; charset=utf-8",
+    "js", "application/javascript; charset=utf-8",
+    "css", "text/css; charset=utf-8",
+    "json", "application/json",
+    "svg", "image/svg+xml",
+    "png", "image/png",
+    "ico", "image/x-icon");
+
+  private final Map<String, Asset> assets;
+  private final String cacheControl;
+
+  private StaticAssets(Map<String, Asset> assets, String cacheControl) {
+    this.assets = assets;
+    this.cacheControl = cacheControl;
+  }
+
+  /**
+   * Read and compress every file under a directory.
+   *
+   * @param root         the directory to serve, e.g. `../client`
+   * @param cacheControl the `Cache-Control` header to send, or `null` for none
+   * @return the loaded assets
+   * @throws IOException if a file can't be read
+   */
+  public static StaticAssets load(Path root, String cacheControl) throws IOException {
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(root)) {
+      files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    Map<String, Asset> assets = new HashMap<>();
+    for (Path file : files) {
+      String path = "/" + root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+      assets.put(path, new Asset(path, Files.readAllBytes(file)));
+    }
+    return new StaticAssets(assets, cacheControl);
+  }
+
+  /**
+   * The number of files being served.
+   */
+  public int size() {
+    return assets.size();
+  }
+
+  /**
+   * Serve the file named by the request path; a directory means its
+   * `index.html`.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void serve(Context ctx) {
+    String path = ctx.path();
+    if (path.endsWith("/")) {
+      path += "index.html";
+    }
+    Asset asset = assets.get(path);
+    if (asset == null) {
+      throw new NotFoundResponse("No file " + path + " was found.");
+    }
+    if (ETags.notModified(ctx, asset.etag, cacheControl)) {
+      return;
+    }
+    ctx.contentType(asset.contentType);
+    ctx.header("Vary", "Accept-Encoding");
+    if (asset.gzipped != null && Compression.acceptsGzip(ctx.header("Accept-Encoding"))) {
+      ctx.header("Content-Encoding", Compression.GZIP);
+      ctx.result(new ByteArrayInputStream(asset.gzipped));
+      ETags.tag(ctx, ETags.encoded(asset.etag, Compression.GZIP), cacheControl);
+    } else {
+      ctx.result(new ByteArrayInputStream(asset.content));
+      ETags.tag(ctx, asset.etag, cacheControl);
+    }
+  }
+
+  /**
+   * One file, with its gzipped copy if that came out smaller.
+   */
+  private static final class Asset {
+    final byte[] content;
+    final byte[] gzipped;
+    final String contentType;
+    final String etag;
+
+    Asset(String path, byte[] content) throws IOException {
+      this.content = content;
+      byte[] compressed = gzip(content);
+      this.gzipped = compressed.length < content.length ? compressed : null;
+      String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+      this.contentType = CONTENT_TYPES.getOrDefault(extension, "application/octet-stream");
+      this.etag = ETags.of(content);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 32);
+      try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+        {
+          def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+      }) {
+        gzip.write(content);
+      }
+      return out.toByteArray();
+    }
+  }
+}
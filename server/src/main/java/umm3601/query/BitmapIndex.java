@@ -0,0 +1,387 @@
+package umm3601.query;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * A bitmap index over one field of a collection of rows.
+ * <p>
+ * For each distinct value of the field we keep the set of rows having that
+ * value (see `RowSet`): a bitmap with bit `i` set when row `i` has the value
+ * if many rows do, and a posting list of those rows if few do. Combining
+ * filters is then a bitwise AND of bitmaps, or a probe of a few rows, and
+ * counting matches needs no more than a population count, so neither has to
+ * touch the rows themselves.
+ * <p>
+ * Large indexes are built a segment of rows per core (see `Parallel`), and
+ * the per-segment sets are joined together.
+ * <p>
+ * The built sets are never changed. Writes after the build are kept as a
+ * list per value of the rows that joined or left its set, so a write costs
+ * a little for each value it touches however many rows there are. The set
+ * of a changed value is put together from the built one and its changes the
+ * first time it is looked up, and kept for the index's lifetime.
+ * <p>
+ * An index can be saved in a column file (see `write`) and loaded back with
+ * a bulk copy of its sets (see `read`), rather than built again row by row.
+ */
+public final class BitmapIndex<K> {
+
+  private static final RowSet EMPTY = new RowSet(0);
+
+  private final Map<K, RowSet> sets;
+  // The number of rows, which decides the form of changed sets
+  private final int size;
+  // The rows changed since the index was built, for each value they changed
+  private final Map<K, Changes> changes;
+  // The sets of changed values, put together as they are looked up
+  private final Map<K, RowSet> changedSets = new ConcurrentHashMap<>();
+
+  private BitmapIndex(Map<K, RowSet> sets, int size, Map<K, Changes> changes) {
+    this.sets = sets;
+    this.size = size;
+    this.changes = changes;
+  }
+
+  BitmapIndex(Map<K, RowSet> sets, int size) {
+    this(sets, size, Map.of());
+    for (RowSet set : sets.values()) {
+      set.trim();
+    }
+  }
+
+  /**
+   * Build a bitmap index over the given rows.
+   *
+   * @param size the number of rows
+   * @param key  extracts the indexed value from the row at a position
+   * @return the index
+   */
+  public static <K> BitmapIndex<K> build(int size, IntFunction<K> key) {
+    return new BitmapIndex<>(Parallel.compute(size, (from, to) -> {
+      Map<K, RowSet> sets = new HashMap<>();
+      Function<K, RowSet> newSet = k -> new RowSet(size);
+      for (int i = from; i < to; i++) {
+        sets.computeIfAbsent(key.apply(i), newSet).add(i);
+      }
+      return sets;
+    }, BitmapIndex::join), size);
+  }
+
+  /**
+   * Build a bitmap index over a field that can hold several values per row,
+   * such as the words of a text. A row is in the set of each of its values.
+   *
+   * @param size the number of rows
+   * @param keys extracts the indexed values from the row at a position
+   * @return the index
+   */
+  public static <K> BitmapIndex<K> buildMulti(int size, IntFunction<? extends Collection<K>> keys) {
+    return new BitmapIndex<>(Parallel.compute(size, (from, to) -> {
+      Map<K, RowSet> sets = new HashMap<>();
+      Function<K, RowSet> newSet = k -> new RowSet(size);
+      for (int i = from; i < to; i++) {
+        for (K key : keys.apply(i)) {
+          sets.computeIfAbsent(key, newSet).add(i);
+        }
+      }
+      return sets;
+    }, BitmapIndex::join), size);
+  }
+
+  /**
+   * Join the sets of two adjacent segments, the first map's rows coming
+   * first. The first map is modified and returned.
+   */
+  static <K> Map<K, RowSet> join(Map<K, RowSet> left, Map<K, RowSet> right) {
+    for (Map.Entry<K, RowSet> entry : right.entrySet()) {
+      left.merge(entry.getKey(), entry.getValue(), (first, second) -> {
+        first.addAll(second);
+        return first;
+      });
+    }
+    return left;
+  }
+
+  /**
+   * Writes a value of the indexed field to a column file.
+   */
+  @FunctionalInterface
+  public interface KeyWriter<K> {
+    void write(ColumnFileWriter out, K key) throws IOException;
+  }
+
+  /**
+   * Reads a value of the indexed field written by a `KeyWriter`.
+   */
+  @FunctionalInterface
+  public interface KeyReader<K> {
+    K read(ColumnFileReader in) throws IOException;
+  }
+
+  /**
+   * Write the index to a column file, with every write made since it was
+   * built. The values come first, then how many rows each has, then the
+   * posting lists of the rare values end to end, then the bitmaps of the
+   * common ones.
+   *
+   * @param out  the file to write to
+   * @param keys writes a value of the indexed field
+   */
+  public void write(ColumnFileWriter out, KeyWriter<K> keys) throws IOException {
+    List<K> values = new ArrayList<>();
+    List<RowSet> rowSets = new ArrayList<>();
+    int listed = 0;
+    int bitmaps = 0;
+    for (K value : values()) {
+      RowSet set = rows(value);
+      if (set.cardinality() == 0) {
+        continue;
+      }
+      values.add(value);
+      rowSets.add(set);
+      if (set.cardinality() > size / RowSet.DENSE) {
+        bitmaps++;
+      } else {
+        listed += set.cardinality();
+      }
+    }
+    int[] counts = new int[values.size()];
+    int[] lists = new int[listed];
+    long[] words = new long[bitmaps * words(size)];
+    int nextRow = 0;
+    int nextWord = 0;
+    for (int i = 0; i < counts.length; i++) {
+      RowSet set = rowSets.get(i);
+      counts[i] = set.cardinality();
+      if (counts[i] > size / RowSet.DENSE) {
+        long[] bits = (set.bitmap() != null ? set.bitmap() : set.toBitSet()).toLongArray();
+        System.arraycopy(bits, 0, words, nextWord, bits.length);
+        nextWord += words(size);
+      } else {
+        int[] rows = set.toArray();
+        System.arraycopy(rows, 0, lists, nextRow, rows.length);
+        nextRow += rows.length;
+      }
+    }
+    out.writeInt(size);
+    out.writeInt(counts.length);
+    for (K value : values) {
+      keys.write(out, value);
+    }
+    out.writeInts(counts);
+    out.writeInts(lists);
+    out.writeLongs(words);
+  }
+
+  /**
+   * Read an index written by `write`. Its sets are copied onto the heap a
+   * whole array at a time, which takes far less than building them from the
+   * rows.
+   *
+   * @param in   the file to read from
+   * @param keys reads a value of the indexed field
+   * @return the index
+   */
+  public static <K> BitmapIndex<K> read(ColumnFileReader in, KeyReader<K> keys) throws IOException {
+    int size = in.readInt();
+    List<K> values = new ArrayList<>();
+    for (int i = in.readInt(); i > 0; i--) {
+      values.add(keys.read(in));
+    }
+    int[] counts = new int[values.size()];
+    in.mapInts(counts.length).get(counts);
+    int listed = 0;
+    int bitmaps = 0;
+    for (int count : counts) {
+      if (count > size / RowSet.DENSE) {
+        bitmaps++;
+      } else {
+        listed += count;
+      }
+    }
+    IntBuffer lists = in.mapInts(listed);
+    LongBuffer words = in.mapLongs(bitmaps * words(size));
+    Map<K, RowSet> sets = new HashMap<>(counts.length * 4 / 3 + 1);
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > size / RowSet.DENSE) {
+        words.limit(words.position() + words(size));
+        sets.put(values.get(i), RowSet.of(BitSet.valueOf(words), size));
+        words.position(words.limit());
+      } else {
+        int[] rows = new int[counts[i]];
+        lists.get(rows);
+        sets.put(values.get(i), RowSet.of(rows, size));
+      }
+    }
+    return new BitmapIndex<>(sets, size);
+  }
+
+  private static int words(int size) {
+    return (size + Long.SIZE - 1) / Long.SIZE;
+  }
+
+  /**
+   * Make a copy of this index with some rows changed, for example after a
+   * write. Only the changes of the values those rows had or now have are
+   * copied, along with the map of values changed since the index was built;
+   * no set is copied, and this index is left as it was.
+   *
+   * @param rows      the rows that changed; rows past the end of this index
+   *                  are new
+   * @param oldValues the values each row used to have (none for new rows)
+   * @param newValues the values each row has now
+   * @return the updated index
+   */
+  public BitmapIndex<K> update(int[] rows, IntFunction<? extends Collection<K>> oldValues,
+      IntFunction<? extends Collection<K>> newValues) {
+    // Whether each row is now in each value's set; a row that keeps a value
+    // is taken out and then put back
+    Map<K, TreeMap<Integer, Boolean>> written = new HashMap<>();
+    int updatedSize = size;
+    for (int row : rows) {
+      updatedSize = Math.max(updatedSize, row + 1);
+      for (K key : oldValues.apply(row)) {
+        written.computeIfAbsent(key, k -> new TreeMap<>()).put(row, false);
+      }
+    }
+    for (int row : rows) {
+      for (K key : newValues.apply(row)) {
+        written.computeIfAbsent(key, k -> new TreeMap<>()).put(row, true);
+      }
+    }
+    Map<K, Changes> updated = new HashMap<>(changes);
+    for (Map.Entry<K, TreeMap<Integer, Boolean>> entry : written.entrySet()) {
+      Changes batch = new Changes(entry.getValue());
+      Changes previous = changes.get(entry.getKey());
+      updated.put(entry.getKey(), previous == null ? batch : previous.with(batch));
+    }
+    return new BitmapIndex<>(sets, updatedSize, updated);
+  }
+
+  /**
+   * Get the set of rows having the given value. It is shared by every caller.
+   */
+  RowSet rows(K value) {
+    Changes changed = changes.get(value);
+    if (changed == null) {
+      return sets.getOrDefault(value, EMPTY);
+    }
+    return changedSets.computeIfAbsent(value,
+      k -> sets.getOrDefault(k, EMPTY).with(changed.rows, changed.set, size));
+  }
+
+  /**
+   * Get a filter matching exactly the rows having the given value, answered
+   * from its bitmap or by probing its posting list.
+   *
+   * @param field the field filtered on, for showing the filter in a plan
+   * @param value the value to look up
+   * @return the filter
+   */
+  public Filter filter(String field, K value) {
+    return rows(value).filter(field, value);
+  }
+
+  /**
+   * Count the rows having the given value without materializing them.
+   */
+  public int count(K value) {
+    return rows(value).cardinality();
+  }
+
+  /**
+   * Count the rows having each value, straight from the sets' sizes or the
+   * bitmaps' population counts. Values left with no rows are omitted.
+   *
+   * @param excluded rows not to count, such as deleted ones
+   * @return the number of rows having each value, in no particular order
+   */
+  public Map<K, Integer> counts(BitSet excluded) {
+    Set<K> values = values();
+    Map<K, Integer> counts = new HashMap<>(values.size() * 4 / 3 + 1);
+    for (K value : values) {
+      int count = rows(value).countExcluding(excluded);
+      if (count > 0) {
+        counts.put(value, count);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Get every distinct value present in the index.
+   */
+  public Set<K> values() {
+    if (changes.isEmpty()) {
+      return sets.keySet();
+    }
+    Set<K> values = new HashSet<>(sets.keySet());
+    values.addAll(changes.keySet());
+    return values;
+  }
+
+  /**
+   * The rows of one value whose membership changed since the index was
+   * built, and whether each of them is now in the value's set.
+   */
+  private static final class Changes {
+    // In increasing order
+    private final int[] rows;
+    // Bit `i` is set if `rows[i]` is now in the value's set
+    private final BitSet set;
+
+    private Changes(int[] rows, BitSet set) {
+      this.rows = rows;
+      this.set = set;
+    }
+
+    Changes(TreeMap<Integer, Boolean> written) {
+      this(new int[written.size()], new BitSet(written.size()));
+      int i = 0;
+      for (Map.Entry<Integer, Boolean> entry : written.entrySet()) {
+        rows[i] = entry.getKey();
+        set.set(i, entry.getValue());
+        i++;
+      }
+    }
+
+    /**
+     * Merge in some later changes, which win for the rows in both.
+     */
+    Changes with(Changes later) {
+      int[] merged = new int[rows.length + later.rows.length];
+      BitSet mergedSet = new BitSet(merged.length);
+      int i = 0;
+      int j = 0;
+      int k = 0;
+      while (i < rows.length || j < later.rows.length) {
+        if (j == later.rows.length || (i < rows.length && rows[i] < later.rows[j])) {
+          mergedSet.set(k, set.get(i));
+          merged[k++] = rows[i++];
+        } else {
+          if (i < rows.length && rows[i] == later.rows[j]) {
+            i++;
+          }
+          mergedSet.set(k, later.set.get(j));
+          merged[k++] = later.rows[j++];
+        }
+      }
+      return new Changes(k == merged.length ? merged : Arrays.copyOf(merged, k), mergedSet);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package umm3601.query;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file written by `ColumnFileWriter`.
+ * <p>
+ * Scalars are read as usual, but arrays are memory-mapped rather than
+ * copied: each one comes back as a read-only buffer over the file itself.
+ * The operating system pages the data in as it is touched and can share
+ * it between processes, and because it lives outside the Java heap the
+ * garbage collector never has to scan it. The buffers stay valid after the
+ * reader is closed.
+ */
+public final class ColumnFileReader implements Closeable {
+
+  private final FileChannel channel;
+  private long position;
+
+  /**
+   * Open a column file.
+   *
+   * @param file  the file to read
+   * @param magic the eight characters the file must start with
+   * @throws IOException if the file can't be read or is of the wrong kind
+   */
+  public ColumnFileReader(Path file, String magic) throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+    byte[] found = new byte[ColumnFileWriter.ALIGNMENT];
+    read(found.length).get(found);
+    if (!new String(found, StandardCharsets.US_ASCII).equals(magic)) {
+      channel.close();
+      throw new IOException(file + " is not a " + magic + " file");
+    }
+  }
+
+  public int readInt() throws IOException {
+    return read(Integer.BYTES).getInt();
+  }
+
+  public long readLong() throws IOException {
+    return read(Long.BYTES).getLong();
+  }
+
+  public String readString() throws IOException {
+    int length = readInt();
+    byte[] bytes = new byte[length];
+    read(length).get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Map the next `count` ints of the file.
+   */
+  public IntBuffer mapInts(int count) throws IOException {
+    return map((long) count * Integer.BYTES).asIntBuffer();
+  }
+
+  /**
+   * Map the next `count` longs of the file.
+   */
+  public LongBuffer mapLongs(int count) throws IOException {
+    return map((long) count * Long.BYTES).asLongBuffer();
+  }
+
+  /**
+   * Map the next `count` bytes of the file.
+   */
+  public ByteBuffer mapBytes(int count) throws IOException {
+    return map(count);
+  }
+
+  private ByteBuffer map(long size) throws IOException {
+    position += -position & (ColumnFileWriter.ALIGNMENT - 1);
+    if (position + size > channel.size()) {
+      throw new EOFException("The column file is truncated");
+    }
+    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    position += size;
+    return mapped.order(ColumnFileWriter.ORDER);
+  }
+
+  private ByteBuffer read(int size) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(size).order(ColumnFileWriter.ORDER);
+    while (bytes.hasRemaining()) {
+      if (channel.read(bytes, position + bytes.position()) < 0) {
+        throw new EOFException("The column file is truncated");
+      }
+    }
+    position += size;
+    return bytes.flip();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,171 @@
+package umm3601.query;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a column file: a flat, little-endian binary file of scalars and
+ * arrays that `ColumnFileReader` can map straight back into memory.
+ * <p>
+ * Every array starts on an 8-byte boundary, so the reader can view it as an
+ * `IntBuffer` or `LongBuffer` in place.
+ */
+public final class ColumnFileWriter implements Closeable {
+
+  static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+  static final int ALIGNMENT = 8;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ORDER);
+  private long position;
+
+  /**
+   * Create (or replace) a column file.
+   *
+   * @param file  the file to write
+   * @param magic eight characters identifying the kind of file and its
+   *              format version, checked by `ColumnFileReader`
+   */
+  public ColumnFileWriter(Path file, String magic) throws IOException {
+    if (magic.length() != ALIGNMENT) {
+      throw new IllegalArgumentException("The magic string must be " + ALIGNMENT + " characters");
+    }
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING);
+    put(ByteBuffer.wrap(magic.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  public void writeInt(int value) throws IOException {
+    ensure(Integer.BYTES);
+    buffer.putInt(value);
+    position += Integer.BYTES;
+  }
+
+  public void writeLong(long value) throws IOException {
+    ensure(Long.BYTES);
+    buffer.putLong(value);
+    position += Long.BYTES;
+  }
+
+  /**
+   * Write a short string as a length followed by its UTF-8 bytes.
+   */
+  public void writeString(String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeInt(bytes.length);
+    put(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Write the remaining ints of a buffer as an aligned array.
+   */
+  public void writeInts(IntBuffer values) throws IOException {
+    align();
+    ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE).order(ORDER);
+    IntBuffer source = values.duplicate();
+    while (source.hasRemaining()) {
+      bytes.clear();
+      IntBuffer view = bytes.asIntBuffer();
+      int n = Math.min(view.capacity(), source.remaining());
+      IntBuffer slice = source.slice();
+      slice.limit(n);
+      view.put(slice);
+      source.position(source.position() + n);
+      bytes.limit(n * Integer.BYTES);
+      put(bytes);
+    }
+  }
+
+  public void writeInts(int[] values) throws IOException {
+    writeInts(IntBuffer.wrap(values));
+  }
+
+  /**
+   * Write the remaining longs of a buffer as an aligned array.
+   */
+  public void writeLongs(LongBuffer values) throws IOException {
+    align();
+    ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE).order(ORDER);
+    LongBuffer source = values.duplicate();
+    while (source.hasRemaining()) {
+      bytes.clear();
+      LongBuffer view = bytes.asLongBuffer();
+      int n = Math.min(view.capacity(), source.remaining());
+      LongBuffer slice = source.slice();
+      slice.limit(n);
+      view.put(slice);
+      source.position(source.position() + n);
+      bytes.limit(n * Long.BYTES);
+      put(bytes);
+    }
+  }
+
+  public void writeLongs(long[] values) throws IOException {
+    writeLongs(LongBuffer.wrap(values));
+  }
+
+  /**
+   * Write the remaining bytes of a buffer as an aligned array.
+   */
+  public void writeBytes(ByteBuffer values) throws IOException {
+    align();
+    put(values.duplicate());
+  }
+
+  /**
+   * Pad with zeros up to the next 8-byte boundary.
+   */
+  private void align() throws IOException {
+    int padding = (int) (-position & (ALIGNMENT - 1));
+    ensure(padding);
+    for (int i = 0; i < padding; i++) {
+      buffer.put((byte) 0);
+    }
+    position += padding;
+  }
+
+  private void ensure(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush();
+    }
+  }
+
+  private void put(ByteBuffer bytes) throws IOException {
+    position += bytes.remaining();
+    if (bytes.remaining() <= buffer.remaining()) {
+      buffer.put(bytes);
+      return;
+    }
+    flush();
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+  }
+
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+      channel.force(false);
+    } finally {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package umm3601.query;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A column of strings with few distinct values, stored as small integer
+ * codes into a dictionary of those values.
+ * <p>
+ * Each distinct value is kept once, however many rows share it, and each
+ * row costs a single `int`. The dictionary is sorted, so comparing two
+ * codes gives the same answer as comparing the strings they stand for.
+ */
+public final class DictionaryColumn {
+
+  private final String[] dictionary;
+  private final IntBuffer codes;
+
+  private DictionaryColumn(String[] dictionary, IntBuffer codes) {
+    this.dictionary = dictionary;
+    this.codes = codes;
+  }
+
+  /**
+   * The number of rows in the column.
+   */
+  public int size() {
+    return codes.limit();
+  }
+
+  /**
+   * Get the value at a row. The same `String` is returned for every row
+   * sharing that value.
+   */
+  public String get(int row) {
+    return dictionary[codes.get(row)];
+  }
+
+  /**
+   * Get the code of the value at a row. Codes are ordered like their values.
+   */
+  public int code(int row) {
+    return codes.get(row);
+  }
+
+  /**
+   * Get the number of distinct values.
+   */
+  public int cardinality() {
+    return dictionary.length;
+  }
+
+  /**
+   * Write the column to a column file.
+   */
+  public void write(ColumnFileWriter out) throws IOException {
+    out.writeInt(dictionary.length);
+    for (String value : dictionary) {
+      out.writeString(value);
+    }
+    out.writeInt(size());
+    out.writeInts(codes);
+  }
+
+  /**
+   * Read a column written by `write` from a column file. The dictionary is
+   * read onto the heap, but the codes are mapped straight from the file.
+   */
+  public static DictionaryColumn read(ColumnFileReader in) throws IOException {
+    String[] dictionary = new String[in.readInt()];
+    for (int i = 0; i < dictionary.length; i++) {
+      dictionary[i] = in.readString();
+    }
+    int size = in.readInt();
+    return new DictionaryColumn(dictionary, in.mapInts(size));
+  }
+
+  /**
+   * Appends strings to a new column.
+   */
+  public static final class Builder {
+    private final Map<String, Integer> provisional = new HashMap<>();
+    private int[] codes = new int[16];
+    private int size;
+
+    /**
+     * Append a value as the next row.
+     *
+     * @param value the value, which must not be `null`
+     * @return this builder
+     */
+    public Builder add(String value) {
+      Objects.requireNonNull(value, "column values must not be null");
+      if (size == codes.length) {
+        codes = Arrays.copyOf(codes, size * 2);
+      }
+      Integer code = provisional.get(value);
+      if (code == null) {
+        code = provisional.size();
+        provisional.put(value, code);
+      }
+      codes[size++] = code;
+      return this;
+    }
+
+    /**
+     * Finish the column. The builder must not be used afterwards.
+     */
+    public DictionaryColumn build() {
+      // Renumber the values in sorted order, so codes compare like strings
+      String[] dictionary = provisional.keySet().toArray(new String[0]);
+      Arrays.sort(dictionary);
+      int[] renumbered = new int[dictionary.length];
+      for (int i = 0; i < dictionary.length; i++) {
+        renumbered[provisional.get(dictionary[i])] = i;
+      }
+      int[] sorted = new int[size];
+      for (int row = 0; row < size; row++) {
+        sorted[row] = renumbered[codes[row]];
+      }
+      return new DictionaryColumn(dictionary, IntBuffer.wrap(sorted));
+    }
+  }
+}
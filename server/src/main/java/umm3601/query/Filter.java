@@ -0,0 +1,64 @@
+package umm3601.query;
+
+import java.util.BitSet;
+
+/**
+ * One condition of a query, such as `owner=Blanche`, over the rows of a
+ * snapshot.
+ * <p>
+ * A query's filters are all ANDed together. Each filter says roughly how
+ * many rows it matches, and whether an index can list those rows directly
+ * or they have to be checked one at a time; `QueryPlan` uses that to decide
+ * where to start and in what order to apply the rest. Filters are made with
+ * the factories in `Filters`.
+ */
+public interface Filter {
+
+  /**
+   * An upper bound on the number of rows that match, cheap to work out. The
+   * planner applies the most selective filters first.
+   */
+  int estimate();
+
+  /**
+   * The exact number of rows that match, if the index knows it without any
+   * work, or -1 if it doesn't.
+   */
+  int count();
+
+  /**
+   * Whether an index can list the rows that may match, through
+   * `addCandidates`. Filters without one can only be tested row by row.
+   */
+  boolean indexed();
+
+  /**
+   * Set every row that may match in a bitmap, from the index. Only called
+   * when `indexed` is true.
+   *
+   * @param rows the bitmap to add the rows to
+   */
+  void addCandidates(BitSet rows);
+
+  /**
+   * Get a bitmap of every row that may match, for ANDing into a result a
+   * word at a time, or `null` if the index doesn't keep one. The bitmap is
+   * shared and must not be modified.
+   */
+  BitSet candidates();
+
+  /**
+   * Whether the rows the index lists are exactly the matches. If not, each
+   * candidate still has to be checked with `test`.
+   */
+  boolean exact();
+
+  /**
+   * Check whether a single row matches. This must be safe to call from
+   * several threads at once.
+   *
+   * @param row the row
+   * @return whether it matches
+   */
+  boolean test(int row);
+}
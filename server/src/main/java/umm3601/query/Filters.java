@@ -0,0 +1,306 @@
+package umm3601.query;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Factories for the kinds of `Filter` the snapshots' indexes can answer.
+ */
+public final class Filters {
+
+  private Filters() {
+  }
+
+  /**
+   * A filter answered exactly by a bitmap, such as the entry of a
+   * `BitmapIndex` for one value.
+   *
+   * @param field the field filtered on, for showing the filter in a plan
+   * @param value the value filtered for, or `null`
+   * @param rows  the matching rows; shared, and never modified
+   * @return the filter
+   */
+  public static Filter bitmap(String field, Object value, BitSet rows) {
+    return new Indexed(field, value, rows.cardinality(), () -> rows, true, rows::get);
+  }
+
+  /**
+   * A filter answered exactly by a posting list (see `PostingLists`). Rows
+   * are checked one at a time with `test`, which should read the field where
+   * it can, as that is cheaper than searching the list.
+   *
+   * @param field the field filtered on, for showing the filter in a plan
+   * @param value the value filtered for, or `null`
+   * @param rows  the ascending matching rows; never modified
+   * @param test  checks whether a single row matches
+   * @return the filter
+   */
+  public static Filter postings(String field, Object value, int[] rows, IntPredicate test) {
+    return new Postings(field, value, rows, 0, rows.length, test);
+  }
+
+  /**
+   * A filter answered exactly by a run of a list of rows, such as the rows
+   * in a range of a `RangeIndex`. The rows needn't be in ascending order.
+   *
+   * @param field the field filtered on, for showing the filter in a plan
+   * @param value the value filtered for, or `null`
+   * @param rows  a list of rows; never modified
+   * @param from  the position in the list of the first matching row
+   * @param to    the position just past the last matching row
+   * @param test  checks whether a single row matches
+   * @return the filter
+   */
+  public static Filter postings(String field, Object value, int[] rows, int from, int to, IntPredicate test) {
+    return new Postings(field, value, rows, from, to, test);
+  }
+
+  /**
+   * A filter matching the rows that match any of some other filters, such
+   * as `company=A&company=B`.
+   *
+   * @param filters the alternatives; must not be empty
+   * @return the filter
+   */
+  public static Filter anyOf(List<Filter> filters) {
+    return filters.size() == 1 ? filters.get(0) : new AnyOf(filters.toArray(new Filter[0]));
+  }
+
+  /**
+   * A filter whose index only narrows the rows down to candidates, such as
+   * a `TextIndex`, so each candidate still has to be checked.
+   *
+   * @param field      the field filtered on, for showing the filter in a plan
+   * @param value      the value filtered for, or `null`
+   * @param estimate   an upper bound on the number of candidates
+   * @param candidates works out the candidate rows; only called if the plan
+   *                   needs them, and at most once
+   * @param test       checks whether a single row matches
+   * @return the filter
+   */
+  public static Filter candidates(String field, Object value, int estimate, Supplier<BitSet> candidates,
+      IntPredicate test) {
+    return new Indexed(field, value, estimate, candidates, false, test);
+  }
+
+  /**
+   * Show a filter in a plan. This is only done on demand, so that parsing a
+   * query doesn't build strings nobody reads.
+   */
+  private static String describe(String field, Object value) {
+    return value == null ? field : field + "=" + value;
+  }
+
+  private static final class Indexed implements Filter {
+    private final String field;
+    private final Object value;
+    private final int estimate;
+    private final Supplier<BitSet> source;
+    private final boolean exact;
+    private final IntPredicate test;
+    private BitSet candidates;
+
+    Indexed(String field, Object value, int estimate, Supplier<BitSet> source, boolean exact, IntPredicate test) {
+      this.field = field;
+      this.value = value;
+      this.estimate = estimate;
+      this.source = source;
+      this.exact = exact;
+      this.test = test;
+    }
+
+    @Override
+    public int estimate() {
+      return estimate;
+    }
+
+    @Override
+    public int count() {
+      return exact ? estimate : -1;
+    }
+
+    @Override
+    public boolean indexed() {
+      return true;
+    }
+
+    @Override
+    public void addCandidates(BitSet rows) {
+      rows.or(candidates());
+    }
+
+    @Override
+    public BitSet candidates() {
+      // Plans are run by one thread, so this needs no locking
+      if (candidates == null) {
+        candidates = source.get();
+      }
+      return candidates;
+    }
+
+    @Override
+    public boolean exact() {
+      return exact;
+    }
+
+    @Override
+    public boolean test(int row) {
+      return test.test(row);
+    }
+
+    @Override
+    public String toString() {
+      return describe(field, value);
+    }
+  }
+
+  private static final class Postings implements Filter {
+    private final String field;
+    private final Object value;
+    private final int[] rows;
+    private final int from;
+    private final int to;
+    private final IntPredicate test;
+
+    Postings(String field, Object value, int[] rows, int from, int to, IntPredicate test) {
+      this.field = field;
+      this.value = value;
+      this.rows = rows;
+      this.from = from;
+      this.to = to;
+      this.test = test;
+    }
+
+    @Override
+    public int estimate() {
+      return to - from;
+    }
+
+    @Override
+    public int count() {
+      return to - from;
+    }
+
+    @Override
+    public boolean indexed() {
+      return true;
+    }
+
+    @Override
+    public void addCandidates(BitSet bitmap) {
+      for (int i = from; i < to; i++) {
+        bitmap.set(rows[i]);
+      }
+    }
+
+    @Override
+    public BitSet candidates() {
+      return null;
+    }
+
+    @Override
+    public boolean exact() {
+      return true;
+    }
+
+    @Override
+    public boolean test(int row) {
+      return test.test(row);
+    }
+
+    @Override
+    public String toString() {
+      return describe(field, value);
+    }
+  }
+
+  private static final class AnyOf implements Filter {
+    private final Filter[] filters;
+    private BitSet candidates;
+
+    AnyOf(Filter[] filters) {
+      this.filters = filters;
+    }
+
+    @Override
+    public int estimate() {
+      long estimate = 0;
+      for (Filter filter : filters) {
+        estimate += filter.estimate();
+      }
+      return (int) Math.min(estimate, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int count() {
+      // The alternatives may overlap
+      return -1;
+    }
+
+    @Override
+    public boolean indexed() {
+      for (Filter filter : filters) {
+        if (!filter.indexed()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void addCandidates(BitSet rows) {
+      for (Filter filter : filters) {
+        filter.addCandidates(rows);
+      }
+    }
+
+    @Override
+    public BitSet candidates() {
+      // Only worth building when every alternative already has a bitmap
+      if (candidates == null) {
+        BitSet union = new BitSet();
+        for (Filter filter : filters) {
+          BitSet rows = filter.candidates();
+          if (rows == null) {
+            return null;
+          }
+          union.or(rows);
+        }
+        candidates = union;
+      }
+      return candidates;
+    }
+
+    @Override
+    public boolean exact() {
+      for (Filter filter : filters) {
+        if (!filter.exact()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public boolean test(int row) {
+      for (Filter filter : filters) {
+        if (filter.test(row)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      StringJoiner description = new StringJoiner(" or ", "(", ")");
+      for (Filter filter : filters) {
+        description.add(filter.toString());
+      }
+      return description.toString();
+    }
+  }
+}
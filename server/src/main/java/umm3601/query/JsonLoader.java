@@ -0,0 +1,54 @@
+package umm3601.query;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Reads a JSON array of records one record at a time.
+ * <p>
+ * Parsing the whole array with `Gson.fromJson(reader, Todo[].class)` holds
+ * every record in a growing list until the end of the document before the
+ * array is built, and only then can indexing start. Here each record is
+ * handed to the caller as soon as it has been parsed, so the caller can
+ * store or encode it straight away and the parser never holds more than one.
+ */
+public final class JsonLoader {
+
+  private static final Gson GSON = new Gson();
+
+  private JsonLoader() {
+  }
+
+  /**
+   * Parse a JSON array, passing each element to a consumer in order. The
+   * reader is not closed.
+   *
+   * @param reader the JSON text
+   * @param type   the class to parse each element as
+   * @param sink   receives each element, and may reject it by throwing an
+   *               `IllegalArgumentException`
+   * @return the number of elements read
+   * @throws IOException if the text can't be read, isn't an array of
+   *                     `type`, or an element was rejected
+   */
+  public static <T> int forEach(Reader reader, Class<T> type, Consumer<? super T> sink) throws IOException {
+    JsonReader in = new JsonReader(reader);
+    int count = 0;
+    try {
+      in.beginArray();
+      while (in.hasNext()) {
+        sink.accept(GSON.fromJson(in, type));
+        count++;
+      }
+      in.endArray();
+    } catch (JsonParseException | IllegalStateException | IllegalArgumentException e) {
+      throw new IOException("Malformed JSON at record " + count + ": " + e.getMessage(), e);
+    }
+    return count;
+  }
+}
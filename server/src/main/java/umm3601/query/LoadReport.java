@@ -0,0 +1,72 @@
+package umm3601.query;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * How long loading a data set took and how much heap it needed at its peak.
+ * <p>
+ * The peak is read from the JVM's per-pool peak usage counters, which are
+ * reset when measuring starts, so it includes garbage that was created and
+ * collected along the way. It is only meaningful if nothing else is
+ * allocating heavily at the same time, as is the case at startup.
+ */
+public final class LoadReport {
+
+  public final int records;
+  public final long nanos;
+  public final long peakHeapBytes;
+
+  private LoadReport(int records, long nanos, long peakHeapBytes) {
+    this.records = records;
+    this.nanos = nanos;
+    this.peakHeapBytes = peakHeapBytes;
+  }
+
+  /**
+   * Start measuring a load.
+   */
+  public static Probe start() {
+    return new Probe();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d records in %d ms, peak heap %d MB", records, nanos / 1_000_000,
+      peakHeapBytes / (1024 * 1024));
+  }
+
+  /**
+   * A load being measured.
+   */
+  public static final class Probe {
+    private final long startNanos;
+
+    private Probe() {
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP) {
+          pool.resetPeakUsage();
+        }
+      }
+      startNanos = System.nanoTime();
+    }
+
+    /**
+     * Finish measuring.
+     *
+     * @param records the number of records loaded
+     * @return the report
+     */
+    public LoadReport finish(int records) {
+      long nanos = System.nanoTime() - startNanos;
+      long peak = 0;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP) {
+          peak += pool.getPeakUsage().getUsed();
+        }
+      }
+      return new LoadReport(records, nanos, peak);
+    }
+  }
+}
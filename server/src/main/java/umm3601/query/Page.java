@@ -0,0 +1,54 @@
+package umm3601.query;
+
+import java.util.List;
+import java.util.Map;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * The window of results a query asks for: skip the first `offset` matches,
+ * then return at most `limit` of them.
+ * <p>
+ * Paging is applied while walking the matches in their final order, so a
+ * query only ever gathers the records on its page.
+ */
+public final class Page {
+
+  public final int offset;
+  public final int limit;
+
+  public Page(int offset, int limit) {
+    this.offset = offset;
+    this.limit = limit;
+  }
+
+  /**
+   * Read the `offset` and `limit` query parameters. A missing offset means
+   * start at the first match, and a missing limit means no limit.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the requested page
+   * @throws BadRequestResponse if either parameter isn't a non-negative integer
+   */
+  public static Page fromQuery(Map<String, List<String>> queryParams) {
+    return new Page(parse(queryParams, "offset", 0), parse(queryParams, "limit", Integer.MAX_VALUE));
+  }
+
+  private static int parse(Map<String, List<String>> queryParams, String name, int defaultValue) {
+    if (!queryParams.containsKey(name)) {
+      return defaultValue;
+    }
+    String target = queryParams.get(name).get(0);
+    int value;
+    try {
+      value = Integer.parseInt(target);
+    } catch (NumberFormatException e) {
+      throw new BadRequestResponse("The specified " + name + " '" + target +
+        "' cannot be converted to an integer");
+    }
+    if (value < 0) {
+      throw new BadRequestResponse("The specified " + name + " '" + target + "' must not be negative");
+    }
+    return value;
+  }
+}
@@ -0,0 +1,139 @@
+package umm3601.query;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Helpers for splitting work over rows across cores.
+ * <p>
+ * Work is split into one contiguous segment of rows per core of the common
+ * fork-join pool, and every segment is at least `MIN_SEGMENT` rows long, so
+ * small data sets (like the bundled ones) are still processed sequentially
+ * on the calling thread and don't pay for coordination they can't use.
+ */
+public final class Parallel {
+
+  /**
+   * The fewest rows worth handing to another core.
+   */
+  public static final int MIN_SEGMENT = 1 << 15;
+
+  private Parallel() {
+  }
+
+  /**
+   * A computation over the rows in `[from, to)`.
+   */
+  @FunctionalInterface
+  public interface Segment<R> {
+    R apply(int from, int to);
+  }
+
+  /**
+   * The number of segments to split `size` rows into.
+   */
+  public static int segments(int size) {
+    return Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), size / MIN_SEGMENT));
+  }
+
+  /**
+   * Compute something over every row, a segment per core, and combine the
+   * per-segment results in row order.
+   *
+   * @param size    the number of rows
+   * @param segment computes the result for a range of rows
+   * @param merge   combines the results of two adjacent ranges, left first;
+   *                it may modify and return its first argument
+   * @return the combined result
+   */
+  public static <R> R compute(int size, Segment<R> segment, BinaryOperator<R> merge) {
+    return compute(size, segments(size), segment, merge);
+  }
+
+  static <R> R compute(int size, int segments, Segment<R> segment, BinaryOperator<R> merge) {
+    if (segments == 1) {
+      return segment.apply(0, size);
+    }
+    List<R> results = IntStream.range(0, segments).parallel()
+      .mapToObj(i -> segment.apply(bound(size, segments, i), bound(size, segments, i + 1)))
+      .collect(Collectors.toList());
+    R result = results.get(0);
+    for (int i = 1; i < results.size(); i++) {
+      result = merge.apply(result, results.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Keep only the rows of a bitmap that pass a test, testing a segment of
+   * the bitmap per core. This is for checks that can't be answered from an
+   * index, like verifying substring matches.
+   *
+   * @param rows the rows to test; it is not modified
+   * @param keep the test, which must be safe to call from several threads
+   * @return a new bitmap of the rows that passed
+   */
+  public static BitSet filter(BitSet rows, IntPredicate keep) {
+    return filter(rows, keep, segments(rows.length()));
+  }
+
+  /**
+   * Like `filter`, but clear the rows that fail the test from the bitmap
+   * itself. Bitmaps too small to split are tested in place without copying
+   * them.
+   *
+   * @param rows the rows to test, which are narrowed down to those that pass
+   * @param keep the test, which must be safe to call from several threads
+   */
+  public static void retain(BitSet rows, IntPredicate keep) {
+    int segments = segments(rows.length());
+    if (segments > 1) {
+      rows.and(filter(rows, keep, segments));
+      return;
+    }
+    for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+      if (!keep.test(row)) {
+        rows.clear(row);
+      }
+    }
+  }
+
+  static BitSet filter(BitSet rows, IntPredicate keep, int requestedSegments) {
+    long[] words = rows.toLongArray();
+    // Segments are whole words, so no two threads ever write the same word
+    int segments = Math.max(1, Math.min(requestedSegments, words.length));
+    IntStream indexes = IntStream.range(0, segments);
+    (segments > 1 ? indexes.parallel() : indexes).forEach(i -> {
+      int to = bound(words.length, segments, i + 1);
+      for (int word = bound(words.length, segments, i); word < to; word++) {
+        for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+          int row = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+          if (!keep.test(row)) {
+            words[word] &= ~(1L << row);
+          }
+        }
+      }
+    });
+    return BitSet.valueOf(words);
+  }
+
+  /**
+   * Stream an array, in parallel if it is big enough to be worth it. For the
+   * remaining plain scans over arrays of records.
+   */
+  public static <T> Stream<T> stream(T[] rows) {
+    Stream<T> stream = Arrays.stream(rows);
+    return segments(rows.length) > 1 ? stream.parallel() : stream;
+  }
+
+  private static int bound(int size, int segments, int i) {
+    return (int) ((long) size * i / segments);
+  }
+}
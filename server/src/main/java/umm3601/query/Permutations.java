@@ -0,0 +1,43 @@
+package umm3601.query;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Helpers for precomputed sort orders.
+ * <p>
+ * A sort order is stored as a permutation: the row positions listed in the
+ * order the rows sort in. Computing it once at load time means an ordered
+ * query only has to walk the permutation and keep the rows it matched, which
+ * is linear, instead of sorting its results on every request. Permutations
+ * are wrapped in a `SortOrder` so writes can update them in place of sorting
+ * again.
+ */
+public final class Permutations {
+
+  private Permutations() {
+  }
+
+  /**
+   * Compute the permutation that sorts the given rows.
+   *
+   * @param size       the number of rows
+   * @param comparator compares the rows at two positions; it should never
+   *                   report two distinct rows as equal, so the order is
+   *                   fully deterministic
+   * @return the row positions in sorted order
+   */
+  public static int[] sort(int size, Comparator<Integer> comparator) {
+    Integer[] positions = new Integer[size];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = i;
+    }
+    // Sorts on the common fork-join pool, except for small arrays
+    Arrays.parallelSort(positions, comparator);
+    int[] order = new int[positions.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = positions[i];
+    }
+    return order;
+  }
+}
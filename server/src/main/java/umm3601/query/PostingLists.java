@@ -0,0 +1,69 @@
+package umm3601.query;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Helpers for building and combining inverted indexes.
+ * <p>
+ * An inverted index maps each distinct value of a field to its "posting
+ * list": the ascending positions of every row that has that value. A query
+ * for a rare value can then visit just those rows instead of scanning every
+ * row (see `Filters.postings`).
+ */
+public final class PostingLists {
+
+  private static final int[] EMPTY = new int[0];
+
+  private PostingLists() {
+  }
+
+  /**
+   * Build an inverted index over the given rows.
+   *
+   * @param rows the rows to index, in storage order
+   * @param key  extracts the indexed value from a row
+   * @return a map from each distinct value to the ascending positions of the
+   *         rows having it
+   */
+  public static <T, K> Map<K, int[]> build(T[] rows, Function<T, K> key) {
+    // Count first so every posting list is allocated exactly once
+    Map<K, int[]> counts = new HashMap<>();
+    for (T row : rows) {
+      counts.computeIfAbsent(key.apply(row), k -> new int[1])[0]++;
+    }
+    Map<K, int[]> postings = new HashMap<>(counts.size() * 4 / 3 + 1);
+    for (Map.Entry<K, int[]> entry : counts.entrySet()) {
+      postings.put(entry.getKey(), new int[entry.getValue()[0]]);
+      entry.getValue()[0] = 0;
+    }
+    for (int i = 0; i < rows.length; i++) {
+      K value = key.apply(rows[i]);
+      postings.get(value)[counts.get(value)[0]++] = i;
+    }
+    return postings;
+  }
+
+  /**
+   * Get the posting list for a value, or an empty list if no row has it.
+   */
+  public static <K> int[] lookup(Map<K, int[]> index, K value) {
+    return index.getOrDefault(value, EMPTY);
+  }
+
+  /**
+   * Count the rows having each value of an index: the lengths of its
+   * posting lists.
+   *
+   * @param index an inverted index built by `build`
+   * @return the number of rows having each value, in no particular order
+   */
+  public static <K> Map<K, Integer> counts(Map<K, int[]> index) {
+    Map<K, Integer> counts = new HashMap<>(index.size() * 4 / 3 + 1);
+    for (Map.Entry<K, int[]> entry : index.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().length);
+    }
+    return counts;
+  }
+}
@@ -0,0 +1,100 @@
+package umm3601.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded, least-recently-used cache of query results.
+ * <p>
+ * The cache is bounded both by number of entries and by the total weight
+ * (roughly, bytes) of the cached values, evicting the least recently used
+ * entries when either limit is exceeded. Results are computed outside the
+ * lock, so a slow query never blocks cache hits for other requests.
+ */
+public final class QueryCache<V> {
+
+  private final int maxEntries;
+  private final long maxWeight;
+  private final ToLongFunction<V> weigher;
+  private final LinkedHashMap<String, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long weight;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * @param maxEntries the most entries to keep
+   * @param maxWeight  the most total weight to keep
+   * @param weigher    computes the weight of a value
+   */
+  public QueryCache(int maxEntries, long maxWeight, ToLongFunction<V> weigher) {
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+  }
+
+  /**
+   * Get the cached value for a key, computing and caching it on a miss. If
+   * computing it throws, nothing is cached.
+   *
+   * @param key     the (canonical) cache key
+   * @param compute computes the value on a miss
+   * @return the cached or freshly computed value
+   */
+  public V get(String key, Supplier<V> compute) {
+    synchronized (this) {
+      V cached = entries.get(key);
+      if (cached != null) {
+        hits++;
+        return cached;
+      }
+      misses++;
+    }
+    V value = compute.get();
+    long valueWeight = weigher.applyAsLong(value);
+    if (valueWeight > maxWeight) {
+      return value;
+    }
+    synchronized (this) {
+      V previous = entries.put(key, value);
+      if (previous != null) {
+        weight -= weigher.applyAsLong(previous);
+      }
+      weight += valueWeight;
+      Iterator<Map.Entry<String, V>> eldest = entries.entrySet().iterator();
+      while (entries.size() > maxEntries || weight > maxWeight) {
+        weight -= weigher.applyAsLong(eldest.next().getValue());
+        eldest.remove();
+        evictions++;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Drop every cached value, for example because the data changed.
+   */
+  public synchronized void invalidate() {
+    entries.clear();
+    weight = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long hits() {
+    return hits;
+  }
+
+  public synchronized long misses() {
+    return misses;
+  }
+
+  public synchronized long evictions() {
+    return evictions;
+  }
+}
@@ -0,0 +1,49 @@
+package umm3601.query;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Turns query parameters into a canonical string, so that requests asking for
+ * the same thing map to the same cache key however they were written.
+ */
+public final class QueryKey {
+
+  private QueryKey() {
+  }
+
+  /**
+   * Build the canonical form of some query parameters. Parameter names are
+   * sorted, repeated values are dropped (keeping the first occurrence of
+   * each), and parameters outside `parameters` are ignored because they can't
+   * change the result.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @param parameters  the names of the parameters that affect the result
+   * @return a canonical query string such as `category=homework&owner=Fry`
+   */
+  public static String normalize(Map<String, List<String>> queryParams, Set<String> parameters) {
+    StringBuilder key = new StringBuilder();
+    for (String name : new TreeSet<>(queryParams.keySet())) {
+      if (!parameters.contains(name)) {
+        continue;
+      }
+      for (String value : new LinkedHashSet<>(queryParams.get(name))) {
+        if (key.length() > 0) {
+          key.append('&');
+        }
+        key.append(encode(name)).append('=').append(encode(value));
+      }
+    }
+    return key.toString();
+  }
+
+  private static String encode(String text) {
+    return URLEncoder.encode(text, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,153 @@
+package umm3601.query;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * How to evaluate the AND of some filters over a snapshot's rows.
+ * <p>
+ * The filters are ordered by their estimated number of matches, most
+ * selective first. The rows of the first filter with an index start the
+ * result (the "driver"); with no index at all, every row does. Each later
+ * filter is then either ANDed in a word at a time from its bitmap, while the
+ * result is still dense enough for that to beat checking rows, or left to be
+ * tested. Finally a single pass over the surviving rows runs every remaining
+ * test, most selective first, clearing rows that fail one. The only bitmap
+ * allocated is the result itself.
+ */
+public final class QueryPlan {
+
+  private static final Comparator<Filter> MOST_SELECTIVE_FIRST = Comparator.comparingInt(Filter::estimate);
+
+  private final int size;
+  private final Filter driver;
+  private final List<Filter> intersected = new ArrayList<>();
+  private final Filter[] tested;
+
+  private QueryPlan(List<Filter> filters, int size) {
+    this.size = size;
+    List<Filter> ordered = new ArrayList<>(filters);
+    ordered.sort(MOST_SELECTIVE_FIRST);
+    Filter first = null;
+    for (Filter filter : ordered) {
+      if (filter.indexed()) {
+        first = filter;
+        break;
+      }
+    }
+    driver = first;
+    List<Filter> tests = new ArrayList<>();
+    if (driver != null && !driver.exact()) {
+      tests.add(driver);
+    }
+    // An upper bound on the rows left after each step
+    int remaining = driver == null ? size : driver.estimate();
+    for (Filter filter : ordered) {
+      if (filter == driver) {
+        continue;
+      }
+      if (filter.indexed() && remaining >= size / Long.SIZE && filter.candidates() != null) {
+        // At least one row per word, so ANDing words is cheaper than testing rows
+        intersected.add(filter);
+        if (!filter.exact()) {
+          tests.add(filter);
+        }
+      } else {
+        tests.add(filter);
+      }
+      remaining = Math.min(remaining, filter.estimate());
+    }
+    tested = tests.toArray(new Filter[0]);
+  }
+
+  /**
+   * Plan the evaluation of a query.
+   *
+   * @param filters the filters to AND together; may be empty
+   * @param size    the number of rows
+   * @return the plan
+   */
+  public static QueryPlan plan(List<Filter> filters, int size) {
+    return new QueryPlan(filters, size);
+  }
+
+  /**
+   * Run the plan.
+   *
+   * @param excluded rows that never match, such as deleted ones
+   * @return a new bitmap of the matching rows, which the caller owns
+   */
+  public BitSet execute(BitSet excluded) {
+    return execute(excluded, new BitSet(size));
+  }
+
+  /**
+   * Count the matching rows without keeping them. A lone filter whose index
+   * knows how many rows it matches (see `Filter.count`) is answered without
+   * touching any rows. Anything else is run in this thread's scratch bitmap
+   * (see `ScratchRows`), so no result bitmap is allocated.
+   *
+   * @param excluded rows that never match, such as deleted ones
+   * @return the number of matching rows
+   */
+  public int count(BitSet excluded) {
+    if (driver == null && tested.length == 0) {
+      return size - excluded.cardinality();
+    }
+    if (driver != null && intersected.isEmpty() && tested.length == 0 && excluded.isEmpty()
+        && driver.count() >= 0) {
+      return driver.count();
+    }
+    return execute(excluded, ScratchRows.bitmap(size)).cardinality();
+  }
+
+  private BitSet execute(BitSet excluded, BitSet result) {
+    if (driver == null) {
+      result.set(0, size);
+    } else {
+      driver.addCandidates(result);
+    }
+    for (Filter filter : intersected) {
+      if (result.isEmpty()) {
+        return result;
+      }
+      result.and(filter.candidates());
+    }
+    result.andNot(excluded);
+    if (tested.length > 0 && !result.isEmpty()) {
+      Parallel.retain(result, row -> {
+        for (Filter filter : tested) {
+          if (!filter.test(row)) {
+            return false;
+          }
+        }
+        return true;
+      });
+    }
+    return result;
+  }
+
+  /**
+   * Describe the plan, e.g. `owner=Blanche and category=homework test
+   * contains=ipsum`, for tests and debugging.
+   */
+  @Override
+  public String toString() {
+    StringJoiner plan = new StringJoiner(" ");
+    plan.add(driver == null ? "all" : driver.toString());
+    for (Filter filter : intersected) {
+      plan.add("and " + filter);
+    }
+    if (tested.length > 0) {
+      StringJoiner tests = new StringJoiner(", ", "test ", "");
+      for (Filter filter : tested) {
+        tests.add(filter.toString());
+      }
+      plan.add(tests.toString());
+    }
+    return plan.toString();
+  }
+}
@@ -0,0 +1,139 @@
+package umm3601.query;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A sorted index over an integer field, for range filters like
+ * `minAge=20&maxAge=29`.
+ * <p>
+ * Every row is listed in order of its value (rows with equal values in
+ * storage order), next to a parallel array of the values themselves, so
+ * the rows in any range are one contiguous run found by two binary
+ * searches. The field is also kept as a plain column indexed by row, so a
+ * single row can be checked without looking anything up.
+ */
+public final class RangeIndex {
+
+  private final int[] column;
+  private final int[] sortedValues;
+  private final int[] sortedRows;
+
+  private RangeIndex(int[] column, int[] sortedValues, int[] sortedRows) {
+    this.column = column;
+    this.sortedValues = sortedValues;
+    this.sortedRows = sortedRows;
+  }
+
+  /**
+   * Build a range index over the given rows.
+   *
+   * @param size  the number of rows
+   * @param value extracts the indexed value from the row at a position
+   * @return the index
+   */
+  public static RangeIndex build(int size, IntUnaryOperator value) {
+    int[] column = new int[size];
+    // Sort each value together with its row as one primitive long, value in
+    // the high half, so ties stay in row order and nothing is boxed
+    long[] keys = new long[size];
+    for (int row = 0; row < size; row++) {
+      column[row] = value.applyAsInt(row);
+      keys[row] = ((long) column[row] << Integer.SIZE) | row;
+    }
+    Arrays.parallelSort(keys);
+    int[] sortedValues = new int[size];
+    int[] sortedRows = new int[size];
+    for (int i = 0; i < size; i++) {
+      sortedValues[i] = (int) (keys[i] >> Integer.SIZE);
+      sortedRows[i] = (int) keys[i];
+    }
+    return new RangeIndex(column, sortedValues, sortedRows);
+  }
+
+  /**
+   * Get the value of the field at a row.
+   */
+  public int value(int row) {
+    return column[row];
+  }
+
+  /**
+   * A filter matching the rows whose value is in `[min, max]`.
+   *
+   * @param field the field filtered on, for showing the filter in a plan
+   * @param min   the smallest value to match
+   * @param max   the largest value to match
+   * @return the filter
+   */
+  public Filter between(String field, int min, int max) {
+    int from = firstAtLeast(min);
+    int to = endOf(max);
+    Object shown = min == max ? (Object) min : new Range(min, max);
+    return Filters.postings(field, shown, sortedRows, from, Math.max(from, to), row -> {
+      int value = column[row];
+      return value >= min && value <= max;
+    });
+  }
+
+  /**
+   * Count the rows having each value.
+   *
+   * @return the number of rows having each value, in no particular order
+   */
+  public Map<Integer, Integer> counts() {
+    Map<Integer, Integer> counts = new HashMap<>();
+    for (int from = 0; from < sortedValues.length;) {
+      int to = endOf(sortedValues[from]);
+      counts.put(sortedValues[from], to - from);
+      from = to;
+    }
+    return counts;
+  }
+
+  /**
+   * Find the first position in sorted order whose value is greater than the
+   * target.
+   */
+  private int endOf(int target) {
+    return target == Integer.MAX_VALUE ? sortedValues.length : firstAtLeast(target + 1);
+  }
+
+  /**
+   * Find the first position in sorted order whose value is at least the
+   * target, or the number of rows if there is none.
+   */
+  private int firstAtLeast(int target) {
+    int low = 0;
+    int high = sortedValues.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sortedValues[middle] < target) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Shows a range in a plan, leaving out an open end, e.g. `20..29` or `30..`.
+   */
+  private static final class Range {
+    private final int min;
+    private final int max;
+
+    Range(int min, int max) {
+      this.min = min;
+      this.max = max;
+    }
+
+    @Override
+    public String toString() {
+      return (min == Integer.MIN_VALUE ? "" : min) + ".." + (max == Integer.MAX_VALUE ? "" : max);
+    }
+  }
+}
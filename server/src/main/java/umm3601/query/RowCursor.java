@@ -0,0 +1,104 @@
+package umm3601.query;
+
+import java.nio.IntBuffer;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Lazily walks the rows on one page of a query's results.
+ * <p>
+ * The rows are visited either in storage order or in a precomputed sort
+ * order (see `SortOrder`), skipping rows that didn't match, then the
+ * page's offset, and stopping once the page is full. Nothing is gathered up
+ * front, so a caller can stream the rows out one at a time.
+ */
+public final class RowCursor implements PrimitiveIterator.OfInt {
+
+  private final BitSet matches;
+  private final SortOrder order;
+  private final int remainingBound;
+  // The chunk of the sort order that `position` was last in
+  private IntBuffer chunk;
+  private int chunkIndex;
+  private int chunkStart;
+  private int position;
+  private int remaining;
+  private int next;
+
+  /**
+   * Create a cursor over one page of matching rows.
+   *
+   * @param matches the matching rows; must not be modified while the cursor
+   *                is in use
+   * @param order   a precomputed sort order to walk, or `null` for storage
+   *                order
+   * @param start   the position in that order to start walking from
+   * @param page    how many matches to skip and return
+   */
+  public RowCursor(BitSet matches, SortOrder order, int start, Page page) {
+    this.matches = matches;
+    this.order = order;
+    this.position = start;
+    if (order != null && start < order.size()) {
+      chunkIndex = order.chunkAt(start);
+      chunk = order.chunk(chunkIndex);
+      chunkStart = order.chunkStart(chunkIndex);
+    }
+    this.remaining = page.limit;
+    this.remainingBound = Math.min(page.limit, matches.cardinality());
+    for (int skipped = 0; skipped < page.offset && advance() >= 0; skipped++) {
+      position++;
+    }
+    next = remaining > 0 ? advance() : -1;
+  }
+
+  /**
+   * An upper bound on the number of rows this cursor will return, good for
+   * sizing a buffer.
+   */
+  public int sizeBound() {
+    return remainingBound;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return next >= 0;
+  }
+
+  @Override
+  public int nextInt() {
+    if (next < 0) {
+      throw new NoSuchElementException();
+    }
+    int row = next;
+    position++;
+    remaining--;
+    next = remaining > 0 ? advance() : -1;
+    return row;
+  }
+
+  /**
+   * Move `position` forward to the next matching row and return that row, or
+   * -1 if there are no more.
+   */
+  private int advance() {
+    if (order == null) {
+      int row = matches.nextSetBit(position);
+      position = row < 0 ? position : row;
+      return row;
+    }
+    for (; position < order.size(); position++) {
+      if (position - chunkStart >= chunk.limit()) {
+        chunkIndex++;
+        chunk = order.chunk(chunkIndex);
+        chunkStart = order.chunkStart(chunkIndex);
+      }
+      int row = chunk.get(position - chunkStart);
+      if (matches.get(row)) {
+        return row;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,283 @@
+package umm3601.query;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The rows having one value in an index (see `BitmapIndex`), kept as an
+ * ascending posting list (see `PostingLists`) while they are few and as a
+ * bitmap once there are enough of them for the bitmap to be smaller.
+ * <p>
+ * A posting list takes 4 bytes per row it holds, and a bitmap one bit per
+ * row of the whole collection, so a set becomes a bitmap once it holds more
+ * than one row in `DENSE`. At millions of rows most owners, words and
+ * trigrams are rare, and each takes a few kilobytes rather than a bitmap of
+ * a megabyte or more.
+ * <p>
+ * A set is only changed while its index is being built; after that it is
+ * shared, and must not be modified.
+ */
+final class RowSet {
+
+  /**
+   * A set holding more than `1 / DENSE` of the rows is kept as a bitmap.
+   */
+  static final int DENSE = 32;
+
+  private static final int[] NONE = new int[0];
+
+  // The rows in ascending order while the set is a posting list, else null
+  private int[] rows;
+  private int count;
+  // The last row added, to skip adding it again
+  private int last = -1;
+  // The rows once the set is a bitmap, else null
+  private BitSet bitmap;
+  private final int limit;
+
+  /**
+   * Start an empty set.
+   *
+   * @param size the number of rows in the collection
+   */
+  RowSet(int size) {
+    this.rows = NONE;
+    this.limit = size / DENSE;
+  }
+
+  /**
+   * Make a set holding the rows of a bitmap, in whichever form is smaller.
+   *
+   * @param bitmap the rows; the set takes ownership of it
+   * @param size   the number of rows in the collection
+   * @return the set
+   */
+  static RowSet of(BitSet bitmap, int size) {
+    RowSet set = new RowSet(size);
+    set.count = bitmap.cardinality();
+    if (set.count > set.limit) {
+      set.rows = null;
+      set.bitmap = bitmap;
+    } else {
+      set.rows = bitmap.stream().toArray();
+    }
+    return set;
+  }
+
+  /**
+   * Make a set holding an ascending list of rows, in whichever form is
+   * smaller.
+   *
+   * @param rows the rows; the set takes ownership of them
+   * @param size the number of rows in the collection
+   * @return the set
+   */
+  static RowSet of(int[] rows, int size) {
+    RowSet set = new RowSet(size);
+    set.rows = rows;
+    set.count = rows.length;
+    if (set.count > set.limit) {
+      set.toBitmap(set.count);
+    }
+    return set;
+  }
+
+  /**
+   * Add a row after every row already in the set. Adding the last row again,
+   * as when a value appears twice in one row, does nothing.
+   */
+  void add(int row) {
+    if (row == last) {
+      return;
+    }
+    last = row;
+    if (bitmap != null) {
+      bitmap.set(row);
+    } else {
+      if (count == rows.length) {
+        rows = Arrays.copyOf(rows, Math.max(4, count * 2));
+      }
+      rows[count] = row;
+      if (count + 1 > limit) {
+        toBitmap(count + 1);
+      }
+    }
+    count++;
+  }
+
+  /**
+   * Add every row of another set, all of which come after every row in this
+   * one, as when combining the sets of adjacent segments.
+   */
+  void addAll(RowSet later) {
+    if (later.bitmap != null && bitmap == null) {
+      toBitmap(count);
+    }
+    if (bitmap != null) {
+      later.addTo(bitmap);
+      count += later.count;
+      last = Math.max(last, later.last);
+    } else {
+      for (int i = 0; i < later.count; i++) {
+        add(later.rows[i]);
+      }
+    }
+  }
+
+  private void toBitmap(int length) {
+    bitmap = new BitSet(limit * DENSE);
+    for (int i = 0; i < length; i++) {
+      bitmap.set(rows[i]);
+    }
+    rows = null;
+  }
+
+  /**
+   * Drop the spare room left by `add`, once the set is complete.
+   */
+  RowSet trim() {
+    if (rows != null && rows.length > count) {
+      rows = Arrays.copyOf(rows, count);
+    }
+    return this;
+  }
+
+  /**
+   * The number of rows in the set.
+   */
+  int cardinality() {
+    return count;
+  }
+
+  /**
+   * Whether a row is in the set: a bit test or a binary search.
+   */
+  boolean contains(int row) {
+    return bitmap != null ? bitmap.get(row) : Arrays.binarySearch(rows, 0, count, row) >= 0;
+  }
+
+  /**
+   * The set's bitmap, or `null` if it is a posting list. The bitmap is shared
+   * and must not be modified.
+   */
+  BitSet bitmap() {
+    return bitmap;
+  }
+
+  /**
+   * Set every row of the set in a bitmap.
+   */
+  void addTo(BitSet target) {
+    if (bitmap != null) {
+      target.or(bitmap);
+    } else {
+      for (int i = 0; i < count; i++) {
+        target.set(rows[i]);
+      }
+    }
+  }
+
+  /**
+   * Get a private bitmap of the rows in the set.
+   */
+  BitSet toBitSet() {
+    if (bitmap != null) {
+      return (BitSet) bitmap.clone();
+    }
+    BitSet copy = new BitSet(count == 0 ? 0 : rows[count - 1] + 1);
+    addTo(copy);
+    return copy;
+  }
+
+  /**
+   * Get the rows in the set, in ascending order, in a new array.
+   */
+  int[] toArray() {
+    return bitmap != null ? bitmap.stream().toArray() : Arrays.copyOf(rows, count);
+  }
+
+  /**
+   * Keep only the rows of a bitmap that are also in this set.
+   */
+  void retainIn(BitSet target) {
+    if (bitmap != null) {
+      target.and(bitmap);
+      return;
+    }
+    for (int row = target.nextSetBit(0); row >= 0; row = target.nextSetBit(row + 1)) {
+      if (!contains(row)) {
+        target.clear(row);
+      }
+    }
+  }
+
+  /**
+   * Count the rows of the set that aren't in a bitmap.
+   */
+  int countExcluding(BitSet excluded) {
+    if (excluded.isEmpty()) {
+      return count;
+    }
+    if (bitmap != null) {
+      BitSet rows = (BitSet) bitmap.clone();
+      rows.andNot(excluded);
+      return rows.cardinality();
+    }
+    int kept = 0;
+    for (int i = 0; i < count; i++) {
+      if (!excluded.get(rows[i])) {
+        kept++;
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * A filter matching exactly the rows in the set.
+   *
+   * @param field the field filtered on, for showing the filter in a plan
+   * @param value the value filtered for
+   * @return the filter
+   */
+  Filter filter(String field, Object value) {
+    return bitmap != null ? Filters.bitmap(field, value, bitmap) : Filters.postings(field, value, rows, 0, count,
+      this::contains);
+  }
+
+  /**
+   * Make a copy of the set with some rows added or removed. The copy is a
+   * posting list or a bitmap depending on how many rows it ends up with.
+   *
+   * @param changed the rows whose membership changed, in ascending order
+   * @param set     bit `i` says whether `changed[i]` is now in the set
+   * @param size    the number of rows in the collection now
+   * @return the changed set
+   */
+  RowSet with(int[] changed, BitSet set, int size) {
+    if (bitmap != null) {
+      BitSet updated = (BitSet) bitmap.clone();
+      for (int i = 0; i < changed.length; i++) {
+        updated.set(changed[i], set.get(i));
+      }
+      return of(updated, size);
+    }
+    // Merge the two ascending lists, the changes winning for rows in both
+    RowSet updated = new RowSet(size);
+    int i = 0;
+    int j = 0;
+    while (i < count || j < changed.length) {
+      if (j == changed.length || (i < count && rows[i] < changed[j])) {
+        updated.add(rows[i++]);
+      } else {
+        if (i < count && rows[i] == changed[j]) {
+          i++;
+        }
+        if (set.get(j)) {
+          updated.add(changed[j]);
+        }
+        j++;
+      }
+    }
+    return updated.trim();
+  }
+}
@@ -0,0 +1,45 @@
+package umm3601.query;
+
+import java.util.BitSet;
+
+/**
+ * A bitmap of rows to work in while producing a result that isn't kept,
+ * such as a count, one per thread so it is reused from query to query
+ * instead of being allocated each time.
+ * <p>
+ * Only bitmaps of up to `MAX_ROWS` rows are kept, so each thread holds on
+ * to at most `MAX_ROWS / 8` bytes (128 KiB) however big the data it has
+ * worked on; bigger collections get a fresh bitmap every time, which costs
+ * little next to the work of filling it. Whatever a kept bitmap holds is
+ * only good until the same thread asks for one again, so it must never be
+ * stored, handed back to a caller or put in a cached `Selection`; copy out
+ * what needs to be kept.
+ */
+public final class ScratchRows {
+
+  /**
+   * The most rows a thread's kept bitmap is allowed to cover.
+   */
+  public static final int MAX_ROWS = 1 << 20;
+
+  private static final ThreadLocal<BitSet> BITMAPS = ThreadLocal.withInitial(BitSet::new);
+
+  private ScratchRows() {
+  }
+
+  /**
+   * Get an empty bitmap to work in.
+   *
+   * @param rows the number of rows it will cover
+   * @return this thread's scratch bitmap, emptied, or a new bitmap if
+   *         `rows` is more than `MAX_ROWS`
+   */
+  public static BitSet bitmap(int rows) {
+    if (rows > MAX_ROWS) {
+      return new BitSet(rows);
+    }
+    BitSet bitmap = BITMAPS.get();
+    bitmap.clear();
+    return bitmap;
+  }
+}
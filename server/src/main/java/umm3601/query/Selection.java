@@ -0,0 +1,56 @@
+package umm3601.query;
+
+import java.util.BitSet;
+
+/**
+ * The outcome of evaluating a query against one snapshot: which rows
+ * matched, which order to return them in, and which page of them was asked
+ * for.
+ * <p>
+ * A selection is immutable, so it can be cached and shared between requests.
+ * Each reader walks it with its own `RowCursor`.
+ */
+public final class Selection {
+
+  private final BitSet matches;
+  private final SortOrder order;
+  private final int start;
+  private final Page page;
+
+  /**
+   * @param matches the matching rows; the selection takes ownership, so the
+   *                caller must not modify it afterwards
+   * @param order   a precomputed sort order to walk, or `null` for storage
+   *                order
+   * @param start   the position in that order to start walking from
+   * @param page    how many matches to skip and return
+   */
+  public Selection(BitSet matches, SortOrder order, int start, Page page) {
+    this.matches = matches;
+    this.order = order;
+    this.start = start;
+    this.page = page;
+  }
+
+  /**
+   * Start a new walk over the rows on the page.
+   */
+  public RowCursor cursor() {
+    return new RowCursor(matches, order, start, page);
+  }
+
+  /**
+   * The number of matching rows, ignoring paging.
+   */
+  public int matchCount() {
+    return matches.cardinality();
+  }
+
+  /**
+   * Roughly how many bytes of heap this selection holds on to. The sort
+   * order is shared with the snapshot, so it isn't counted.
+   */
+  public long weight() {
+    return matches.size() / 8 + 64;
+  }
+}
@@ -0,0 +1,237 @@
+package umm3601.query;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A precomputed sort order (see `Permutations`) that can be updated after a
+ * write by touching only the rows that were written.
+ * <p>
+ * The row positions are kept in sorted chunks of up to `2 * CHUNK` rows.
+ * A freshly built order's chunks are views of the permutation it was built
+ * from, so an order mapped from a snapshot file stays in the file. Updating
+ * the order copies the list of chunks and the few chunks the changed rows
+ * leave or join onto the heap; every other chunk is shared with the order it
+ * was updated from, which is left as it was. Rather than keeping each row's
+ * rank, which a single insertion would shift for every later row, a row's
+ * place is found by a binary search with the comparator the order is sorted
+ * by.
+ */
+public final class SortOrder {
+
+  /**
+   * The number of rows in each chunk of a freshly built order.
+   */
+  static final int CHUNK = 1024;
+
+  private final IntBuffer[] chunks;
+  // The position of each chunk's first row, and then the size of the order
+  private final int[] starts;
+  private final Comparator<Integer> comparator;
+
+  private SortOrder(IntBuffer[] chunks, Comparator<Integer> comparator) {
+    this.chunks = chunks;
+    this.comparator = comparator;
+    starts = new int[chunks.length + 1];
+    for (int i = 0; i < chunks.length; i++) {
+      starts[i + 1] = starts[i] + chunks[i].limit();
+    }
+  }
+
+  /**
+   * Wrap a permutation computed by `Permutations.sort`.
+   *
+   * @param order      the row positions in sorted order, from the
+   *                   buffer's position to its limit; they are shared rather
+   *                   than copied, and must not be modified
+   * @param comparator compares the rows at two positions, as the order was
+   *                   sorted by; rows it reports as equal are taken to be in
+   *                   row order, as a stable sort leaves them
+   * @return the sort order
+   */
+  public static SortOrder of(IntBuffer order, Comparator<Integer> comparator) {
+    int size = order.remaining();
+    IntBuffer[] chunks = new IntBuffer[(size + CHUNK - 1) / CHUNK];
+    for (int i = 0; i < chunks.length; i++) {
+      IntBuffer chunk = order.duplicate();
+      chunk.position(order.position() + i * CHUNK);
+      chunk.limit(order.position() + Math.min(size, (i + 1) * CHUNK));
+      chunks[i] = chunk.slice();
+    }
+    return new SortOrder(chunks, total(comparator));
+  }
+
+  private static Comparator<Integer> total(Comparator<Integer> comparator) {
+    return comparator.thenComparing(Comparator.naturalOrder());
+  }
+
+  /**
+   * The number of rows in the order.
+   */
+  public int size() {
+    return starts[chunks.length];
+  }
+
+  /**
+   * Get the row at a position in the order. Walking the whole order is
+   * quicker with `chunk`.
+   */
+  public int get(int position) {
+    int chunk = chunkAt(position);
+    return chunks[chunk].get(position - starts[chunk]);
+  }
+
+  /**
+   * Find the chunk holding a position in the order.
+   *
+   * @param position a position, less than `size()`
+   * @return the index of its chunk
+   */
+  public int chunkAt(int position) {
+    // Chunks are never empty, so no two start at the same position
+    int chunk = Arrays.binarySearch(starts, 0, chunks.length, position);
+    return chunk >= 0 ? chunk : -chunk - 2;
+  }
+
+  /**
+   * Get the rows of a chunk, in order, from index 0 to the buffer's limit.
+   * The buffer is shared and must not be modified.
+   */
+  public IntBuffer chunk(int index) {
+    return chunks[index];
+  }
+
+  /**
+   * Get the position in the order of a chunk's first row.
+   */
+  public int chunkStart(int index) {
+    return starts[index];
+  }
+
+  /**
+   * Find the position just past a row, for resuming a walk after it. The row
+   * is located by its values, so it costs a binary search.
+   *
+   * @param row a row in the order
+   * @return the position of the next row in the order
+   */
+  public int positionAfter(int row) {
+    int chunk = chunkFor(Arrays.asList(chunks), row, comparator);
+    if (chunk < 0) {
+      return 0;
+    }
+    return starts[chunk] + insertionPoint(chunks[chunk], row, comparator);
+  }
+
+  /**
+   * Make a copy of this order with some rows changed, for example after a
+   * write, without sorting it again.
+   * <p>
+   * Each changed row is first taken out of the order, found by its old
+   * values, and then put back wherever its new values sort. Only the chunks
+   * they leave or join are copied; this order is left as it was.
+   *
+   * @param oldSize    the number of rows in this order
+   * @param rows       the rows that changed; rows from `oldSize` on are new
+   * @param comparator compares the rows at two positions, by their new
+   *                   values
+   * @return the updated order
+   */
+  public SortOrder update(int oldSize, int[] rows, Comparator<Integer> comparator) {
+    Comparator<Integer> newComparator = total(comparator);
+    List<IntBuffer> updated = new ArrayList<>(Arrays.asList(chunks));
+    // Once every changed row is out, the rows left have the same values in
+    // both the old and the new data, so either comparator orders them
+    for (int row : rows) {
+      if (row < oldSize) {
+        remove(updated, row, this.comparator);
+      }
+    }
+    for (int row : rows) {
+      insert(updated, row, newComparator);
+    }
+    return new SortOrder(updated.toArray(new IntBuffer[0]), newComparator);
+  }
+
+  private static void remove(List<IntBuffer> chunks, int row, Comparator<Integer> comparator) {
+    int index = chunkFor(chunks, row, comparator);
+    IntBuffer chunk = index < 0 ? null : chunks.get(index);
+    int position = chunk == null ? -1 : insertionPoint(chunk, row, comparator) - 1;
+    if (position < 0 || chunk.get(position) != row) {
+      throw new IllegalStateException("Row " + row + " isn't where its values say it should be");
+    }
+    if (chunk.limit() == 1) {
+      chunks.remove(index);
+      return;
+    }
+    int[] copy = new int[chunk.limit() - 1];
+    copy(chunk, 0, copy, 0, position);
+    copy(chunk, position + 1, copy, position, copy.length - position);
+    chunks.set(index, IntBuffer.wrap(copy));
+  }
+
+  private static void insert(List<IntBuffer> chunks, int row, Comparator<Integer> comparator) {
+    if (chunks.isEmpty()) {
+      chunks.add(IntBuffer.wrap(new int[] { row }));
+      return;
+    }
+    // Rows sorting before every other go at the front of the first chunk
+    int index = Math.max(0, chunkFor(chunks, row, comparator));
+    IntBuffer chunk = chunks.get(index);
+    int position = insertionPoint(chunk, row, comparator);
+    int[] copy = new int[chunk.limit() + 1];
+    copy(chunk, 0, copy, 0, position);
+    copy[position] = row;
+    copy(chunk, position, copy, position + 1, chunk.limit() - position);
+    if (copy.length <= 2 * CHUNK) {
+      chunks.set(index, IntBuffer.wrap(copy));
+    } else {
+      chunks.set(index, IntBuffer.wrap(Arrays.copyOfRange(copy, 0, copy.length / 2)));
+      chunks.add(index + 1, IntBuffer.wrap(Arrays.copyOfRange(copy, copy.length / 2, copy.length)));
+    }
+  }
+
+  private static void copy(IntBuffer chunk, int from, int[] to, int at, int length) {
+    IntBuffer source = chunk.duplicate();
+    source.position(from);
+    source.get(to, at, length);
+  }
+
+  /**
+   * Find the last chunk whose first row sorts no later than the given row,
+   * or -1 if every chunk's first row sorts after it.
+   */
+  private static int chunkFor(List<IntBuffer> chunks, int row, Comparator<Integer> comparator) {
+    int low = 0;
+    int high = chunks.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (comparator.compare(chunks.get(middle).get(0), row) <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low - 1;
+  }
+
+  /**
+   * Find the first position in a chunk whose row sorts after the given row.
+   */
+  private static int insertionPoint(IntBuffer chunk, int row, Comparator<Integer> comparator) {
+    int low = 0;
+    int high = chunk.limit();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (comparator.compare(chunk.get(middle), row) <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+}
@@ -0,0 +1,280 @@
+package umm3601.query;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A column of strings packed end to end into large shared byte buffers.
+ * <p>
+ * Storing millions of strings as `String` objects costs an object header,
+ * a separate array and a reference for each one. Here every string is just
+ * a run of bytes in a buffer plus a start position and a length, and a
+ * `String` is only created when a caller asks for one. Comparisons and
+ * substring checks can run against the buffer without creating one at all.
+ * <p>
+ * Like `String` itself, a string whose characters all fit in a byte is kept
+ * as Latin-1, one byte per character, and any other string as UTF-16, two
+ * bytes per character. Ids and bodies are nearly always plain text, so this
+ * halves the column next to a buffer of `char`s.
+ * <p>
+ * A single buffer holds at most 2^31 elements, so the bytes are spread over
+ * fixed-size chunks; a string never straddles two chunks. The buffers are
+ * either on the heap (see `Builder`) or mapped from a column file (see
+ * `read`).
+ */
+public final class StringColumn {
+
+  static final int CHUNK_BITS = 24;
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  // Set in the start of a string kept as UTF-16
+  private static final long WIDE = Long.MIN_VALUE;
+
+  private final ByteBuffer[] chunks;
+  // The chunk and offset of each string, and whether it is UTF-16
+  private final LongBuffer starts;
+  // The length of each string in characters
+  private final IntBuffer lengths;
+
+  private StringColumn(ByteBuffer[] chunks, LongBuffer starts, IntBuffer lengths) {
+    this.chunks = chunks;
+    this.starts = starts;
+    this.lengths = lengths;
+  }
+
+  /**
+   * The number of strings in the column.
+   */
+  public int size() {
+    return lengths.limit();
+  }
+
+  /**
+   * Create a `String` holding the value at a row.
+   */
+  public String get(int row) {
+    boolean wide = wide(row);
+    byte[] bytes = new byte[wide ? 2 * lengths.get(row) : lengths.get(row)];
+    ByteBuffer chunk = chunk(row).duplicate();
+    chunk.position(offset(row));
+    chunk.get(bytes);
+    return new String(bytes, wide ? StandardCharsets.UTF_16LE : StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Compare the value at a row with a string, as `String.compareTo` would,
+   * without creating a `String` for the row.
+   */
+  public int compare(int row, String other) {
+    ByteBuffer chunk = chunk(row);
+    int offset = offset(row);
+    boolean wide = wide(row);
+    int length = lengths.get(row);
+    int shared = Math.min(length, other.length());
+    for (int i = 0; i < shared; i++) {
+      int difference = charAt(chunk, offset, wide, i) - other.charAt(i);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return length - other.length();
+  }
+
+  /**
+   * Compare the values at two rows, as `String.compareTo` would.
+   */
+  public int compare(int row, int otherRow) {
+    ByteBuffer chunk = chunk(row);
+    ByteBuffer otherChunk = chunk(otherRow);
+    int offset = offset(row);
+    int otherOffset = offset(otherRow);
+    boolean wide = wide(row);
+    boolean otherWide = wide(otherRow);
+    int length = lengths.get(row);
+    int otherLength = lengths.get(otherRow);
+    int shared = Math.min(length, otherLength);
+    for (int i = 0; i < shared; i++) {
+      int difference = charAt(chunk, offset, wide, i) - charAt(otherChunk, otherOffset, otherWide, i);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return length - otherLength;
+  }
+
+  /**
+   * Check whether the value at a row contains a substring, as
+   * `String.contains` would, without creating a `String` for the row.
+   */
+  public boolean contains(int row, String needle) {
+    ByteBuffer chunk = chunk(row);
+    int offset = offset(row);
+    int last = lengths.get(row) - needle.length();
+    if (wide(row)) {
+      for (int start = 0; start <= last; start++) {
+        int i = 0;
+        while (i < needle.length() && chunk.getChar(offset + 2 * (start + i)) == needle.charAt(i)) {
+          i++;
+        }
+        if (i == needle.length()) {
+          return true;
+        }
+      }
+      return false;
+    }
+    // Every character of a Latin-1 string is a single byte
+    for (int start = offset; start <= offset + last; start++) {
+      int i = 0;
+      while (i < needle.length() && (chunk.get(start + i) & 0xFF) == needle.charAt(i)) {
+        i++;
+      }
+      if (i == needle.length()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static char charAt(ByteBuffer chunk, int offset, boolean wide, int i) {
+    return wide ? chunk.getChar(offset + 2 * i) : (char) (chunk.get(offset + i) & 0xFF);
+  }
+
+  private ByteBuffer chunk(int row) {
+    return chunks[(int) ((starts.get(row) & ~WIDE) >>> CHUNK_BITS)];
+  }
+
+  private int offset(int row) {
+    return (int) (starts.get(row) & (CHUNK_SIZE - 1));
+  }
+
+  private boolean wide(int row) {
+    return (starts.get(row) & WIDE) != 0;
+  }
+
+  /**
+   * Write the column to a column file.
+   */
+  public void write(ColumnFileWriter out) throws IOException {
+    out.writeInt(size());
+    out.writeInt(chunks.length);
+    for (ByteBuffer chunk : chunks) {
+      out.writeInt(chunk.limit());
+    }
+    out.writeLongs(starts);
+    out.writeInts(lengths);
+    for (ByteBuffer chunk : chunks) {
+      out.writeBytes(chunk);
+    }
+  }
+
+  /**
+   * Map a column written by `write` straight from a column file.
+   */
+  public static StringColumn read(ColumnFileReader in) throws IOException {
+    int size = in.readInt();
+    int[] chunkSizes = new int[in.readInt()];
+    for (int i = 0; i < chunkSizes.length; i++) {
+      chunkSizes[i] = in.readInt();
+    }
+    LongBuffer starts = in.mapLongs(size);
+    IntBuffer lengths = in.mapInts(size);
+    ByteBuffer[] chunks = new ByteBuffer[chunkSizes.length];
+    for (int i = 0; i < chunks.length; i++) {
+      chunks[i] = in.mapBytes(chunkSizes[i]);
+    }
+    return new StringColumn(chunks, starts, lengths);
+  }
+
+  /**
+   * Appends strings to a new column on the heap.
+   */
+  public static final class Builder {
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] current = new byte[0];
+    private int used;
+    private long[] starts = new long[16];
+    private int[] lengths = new int[16];
+    private int size;
+
+    /**
+     * Append a value as the next row.
+     *
+     * @param value the value, which must not be `null`
+     * @return this builder
+     */
+    public Builder add(String value) {
+      Objects.requireNonNull(value, "column values must not be null");
+      if (size == lengths.length) {
+        starts = Arrays.copyOf(starts, size * 2);
+        lengths = Arrays.copyOf(lengths, size * 2);
+      }
+      boolean wide = !latin1(value);
+      int length = wide ? 2 * value.length() : value.length();
+      if (chunks.isEmpty() || used + length > current.length) {
+        grow(length);
+      }
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (wide) {
+          // Little-endian, like the column file the chunks are written to
+          current[used + 2 * i] = (byte) c;
+          current[used + 2 * i + 1] = (byte) (c >>> 8);
+        } else {
+          current[used + i] = (byte) c;
+        }
+      }
+      starts[size] = ((long) (chunks.size() - 1) << CHUNK_BITS) | used | (wide ? WIDE : 0);
+      lengths[size] = value.length();
+      used += length;
+      size++;
+      return this;
+    }
+
+    private static boolean latin1(String value) {
+      for (int i = 0; i < value.length(); i++) {
+        if (value.charAt(i) > 0xFF) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Make room for `length` more bytes, doubling the current chunk until it
+     * is full size and then starting a new one.
+     */
+    private void grow(int length) {
+      if (!chunks.isEmpty() && used + length <= CHUNK_SIZE) {
+        current = Arrays.copyOf(current, Math.min(CHUNK_SIZE, Math.max(current.length * 2, used + length)));
+        chunks.set(chunks.size() - 1, current);
+      } else {
+        // A string longer than a chunk gets a chunk of its own
+        current = new byte[Math.max(Math.min(CHUNK_SIZE, 1024), length)];
+        chunks.add(current);
+        used = 0;
+      }
+    }
+
+    /**
+     * Finish the column. The builder must not be used afterwards.
+     */
+    public StringColumn build() {
+      ByteBuffer[] packed = new ByteBuffer[chunks.size()];
+      for (int i = 0; i < packed.length; i++) {
+        packed[i] = ByteBuffer.wrap(chunks.get(i)).order(ColumnFileWriter.ORDER);
+      }
+      if (packed.length > 0) {
+        // Drop the unused tail of the last chunk
+        packed[packed.length - 1] = ByteBuffer.wrap(Arrays.copyOf(current, used)).order(ColumnFileWriter.ORDER);
+      }
+      return new StringColumn(packed, LongBuffer.wrap(Arrays.copyOf(starts, size)),
+        IntBuffer.wrap(Arrays.copyOf(lengths, size)));
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package umm3601.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * A trigram index for substring search over one text field.
+ * <p>
+ * Every run of three consecutive characters ("trigram") in each row's text
+ * gets the set of rows containing it. Any row containing a needle of three
+ * or more characters must contain every trigram of that needle, so
+ * intersecting those sets gives a small candidate set that the caller then
+ * verifies with an exact check. Needles shorter than a trigram can't be
+ * narrowed down, so every row is a candidate for them.
+ * <p>
+ * The trigrams' sets are kept in a `BitmapIndex`, so common trigrams get a
+ * bitmap and rare ones a posting list, and it keeps track of the changes
+ * written since the index was built.
+ */
+public final class TextIndex {
+
+  public static final int GRAM_LENGTH = 3;
+
+  private final BitmapIndex<Long> grams;
+  private final int size;
+
+  private TextIndex(BitmapIndex<Long> grams, int size) {
+    this.grams = grams;
+    this.size = size;
+  }
+
+  /**
+   * Build a trigram index over the given rows.
+   *
+   * @param size the number of rows
+   * @param text extracts the indexed text from the row at a position
+   * @return the index
+   */
+  public static TextIndex build(int size, IntFunction<String> text) {
+    Map<Long, RowSet> grams = Parallel.compute(size, (from, to) -> {
+      Map<Long, RowSet> segment = new HashMap<>();
+      // Made once rather than for every trigram, as it captures the size
+      Function<Long, RowSet> newSet = k -> new RowSet(size);
+      for (int i = from; i < to; i++) {
+        String value = text.apply(i);
+        for (int start = 0; start + GRAM_LENGTH <= value.length(); start++) {
+          segment.computeIfAbsent(gram(value, start), newSet).add(i);
+        }
+      }
+      return segment;
+    }, BitmapIndex::join);
+    return new TextIndex(new BitmapIndex<>(grams, size), size);
+  }
+
+  /**
+   * Write the index to a column file. See `BitmapIndex.write`.
+   */
+  public void write(ColumnFileWriter out) throws IOException {
+    out.writeInt(size);
+    grams.write(out, ColumnFileWriter::writeLong);
+  }
+
+  /**
+   * Read an index written by `write`, without looking at the text it was
+   * built from. See `BitmapIndex.read`.
+   */
+  public static TextIndex read(ColumnFileReader in) throws IOException {
+    int size = in.readInt();
+    return new TextIndex(BitmapIndex.read(in, ColumnFileReader::readLong), size);
+  }
+
+  /**
+   * Make a copy of this index with some rows changed, for example after a
+   * write. See `BitmapIndex.update`; the values are the trigrams of the
+   * rows' old and new text. This index is left as it was.
+   *
+   * @param size    the number of rows after the change
+   * @param rows    the rows that changed; rows past the end of this index are
+   *                new
+   * @param oldText the text each row used to have, or `null` for new rows
+   * @param newText the text each row has now
+   * @return the updated index
+   */
+  public TextIndex update(int size, int[] rows, IntFunction<String> oldText, IntFunction<String> newText) {
+    return new TextIndex(grams.update(rows, row -> grams(oldText.apply(row)), row -> grams(newText.apply(row))), size);
+  }
+
+  /**
+   * Get every trigram of a text, or none if the text is `null`.
+   */
+  private static List<Long> grams(String text) {
+    List<Long> grams = new ArrayList<>();
+    for (int start = 0; text != null && start + GRAM_LENGTH <= text.length(); start++) {
+      grams.add(gram(text, start));
+    }
+    return grams;
+  }
+
+  /**
+   * Get the rows whose text might contain the given needle. Every row that
+   * does contain it is included, but some included rows may not, so the
+   * caller must still verify each candidate.
+   *
+   * @param needle the text to search for
+   * @return a private bitmap of candidate rows that the caller may modify
+   */
+  public BitSet candidates(String needle) {
+    if (needle.length() < GRAM_LENGTH) {
+      BitSet all = new BitSet(size);
+      all.set(0, size);
+      return all;
+    }
+    // Start from the rarest trigram, so every later step works on the
+    // smallest possible set of candidates
+    List<RowSet> sets = new ArrayList<>();
+    for (int start = 0; start + GRAM_LENGTH <= needle.length(); start++) {
+      sets.add(grams.rows(gram(needle, start)));
+    }
+    sets.sort(Comparator.comparingInt(RowSet::cardinality));
+    BitSet result = sets.get(0).toBitSet();
+    for (int i = 1; i < sets.size() && !result.isEmpty(); i++) {
+      sets.get(i).retainIn(result);
+    }
+    return result;
+  }
+
+  /**
+   * Get an upper bound on the number of rows whose text contains the given
+   * needle, without working out which rows they are: the fewest rows any of
+   * its trigrams appears in.
+   *
+   * @param needle the text to search for
+   * @return at least the number of rows containing the needle
+   */
+  public int estimate(String needle) {
+    int estimate = size;
+    for (int start = 0; start + GRAM_LENGTH <= needle.length(); start++) {
+      estimate = Math.min(estimate, grams.count(gram(needle, start)));
+    }
+    return estimate;
+  }
+
+  /**
+   * Split text into lower-case words, using every character that isn't a
+   * letter or digit as a separator.
+   *
+   * @param text the text to split
+   * @return the words, in the order they appear
+   */
+  public static List<String> words(String text) {
+    List<String> words = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+    return words;
+  }
+
+  private static Long gram(String text, int start) {
+    long chars = ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    // Mix the characters into every bit, as `Long.hashCode` XORs the first
+    // into the last and most trigrams of a text would share a hash bucket.
+    // Multiplying by an odd number keeps distinct trigrams distinct. Saved
+    // indexes hold these keys, so changing them changes the file format.
+    return chars * 0x9E3779B97F4A7C15L;
+  }
+}
@@ -0,0 +1,120 @@
+package umm3601.query;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of records on disk, for making writes durable before
+ * they are applied.
+ * <p>
+ * Each record is written as its length, a CRC-32 of its bytes and then the
+ * bytes themselves, little-endian like `ColumnFileWriter`. Appending only
+ * hands the record to the operating system; `sync` forces everything
+ * appended so far onto the disk. Syncing is the slow part, so callers should
+ * append a whole batch of records and then sync once (group commit).
+ * <p>
+ * A crash can leave the last record half written. `replay` notices that from
+ * the length or checksum and stops there, so such a record is simply lost;
+ * it was never synced, so nobody was told it had been saved.
+ */
+public final class WriteAheadLog implements Closeable {
+
+  private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+  private final FileChannel channel;
+
+  private WriteAheadLog(FileChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Open a log for appending, creating it if it doesn't exist.
+   *
+   * @param file the log file
+   * @return the log
+   * @throws IOException if the file can't be opened
+   */
+  public static WriteAheadLog open(Path file) throws IOException {
+    return new WriteAheadLog(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.APPEND));
+  }
+
+  /**
+   * Append a record. It isn't durable until `sync` returns.
+   *
+   * @param record the record's bytes
+   * @throws IOException if the record can't be written
+   */
+  public void append(byte[] record) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + record.length).order(ColumnFileWriter.ORDER);
+    bytes.putInt(record.length);
+    bytes.putInt(checksum(record, record.length));
+    bytes.put(record);
+    bytes.flip();
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+  }
+
+  /**
+   * Force every record appended so far onto the disk.
+   *
+   * @throws IOException if the records can't be synced
+   */
+  public void sync() throws IOException {
+    channel.force(false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Read back every complete record of a log, in the order they were
+   * appended.
+   *
+   * @param file    the log file
+   * @param records receives each record's bytes
+   * @return the number of records read
+   * @throws IOException if the file can't be read
+   */
+  public static int replay(Path file, Consumer<byte[]> records) throws IOException {
+    int count = 0;
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+      byte[] header = new byte[HEADER_BYTES];
+      while (in.readNBytes(header, 0, HEADER_BYTES) == HEADER_BYTES) {
+        ByteBuffer fields = ByteBuffer.wrap(header).order(ColumnFileWriter.ORDER);
+        int length = fields.getInt();
+        int checksum = fields.getInt();
+        if (length < 0) {
+          break;
+        }
+        byte[] record = in.readNBytes(length);
+        if (record.length != length || checksum(record, length) != checksum) {
+          // A torn write at the end of the log
+          break;
+        }
+        records.accept(record);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static int checksum(byte[] bytes, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, length);
+    return (int) crc.getValue();
+  }
+}
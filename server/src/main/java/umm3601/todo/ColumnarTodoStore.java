@@ -0,0 +1,310 @@
+package umm3601.todo;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import umm3601.query.BitmapIndex;
+import umm3601.query.ColumnFileReader;
+import umm3601.query.ColumnFileWriter;
+import umm3601.query.DictionaryColumn;
+import umm3601.query.Permutations;
+import umm3601.query.StringColumn;
+import umm3601.query.TextIndex;
+
+/**
+ * A `TodoStore` that keeps each field in its own column instead of keeping
+ * `Todo` objects.
+ * <p>
+ * Owners and categories have only a handful of distinct values, so they are
+ * dictionary-encoded as one `int` per todo. Status is one bit per todo. Ids
+ * and bodies are packed into shared byte buffers. That is a few dozen
+ * bytes per todo and a fixed number of objects however many todos there
+ * are, where `Todo` objects cost an object plus four strings each, all of
+ * which the garbage collector has to trace. The price is that `get` builds
+ * a new `Todo` on every call.
+ * <p>
+ * A columnar store can also be saved as a snapshot file and mapped back into
+ * memory (see `write` and `read`), in which case its columns and sort orders
+ * live off the heap, in the operating system's page cache, and its indexes
+ * are loaded rather than built.
+ */
+final class ColumnarTodoStore implements TodoStore {
+
+  /**
+   * Identifies todo snapshot files, and their format version.
+   */
+  static final String MAGIC = "UMMTODO3";
+
+  private final StringColumn ids;
+  private final DictionaryColumn owners;
+  private final DictionaryColumn categories;
+  private final BitSet statuses;
+  private final StringColumn bodies;
+  // Rows sorted by id (then by row), for finding a todo by id
+  private final IntBuffer idOrder;
+  // The sort orders and indexes saved in a snapshot file, if the store was
+  // read from one, else null
+  private final Saved saved;
+
+  private ColumnarTodoStore(StringColumn ids, DictionaryColumn owners, DictionaryColumn categories,
+      BitSet statuses, StringColumn bodies, IntBuffer idOrder, Saved saved) {
+    this.ids = ids;
+    this.owners = owners;
+    this.categories = categories;
+    this.statuses = statuses;
+    this.bodies = bodies;
+    this.idOrder = idOrder != null ? idOrder : IntBuffer.wrap(Permutations.sort(ids.size(), (a, b) -> {
+      int byId = ids.compare(a, b);
+      return byId != 0 ? byId : Integer.compare(a, b);
+    }));
+    this.saved = saved;
+  }
+
+  /**
+   * Copy an array of todos into columns.
+   *
+   * @param todos the todos, in storage order
+   * @return the store
+   */
+  static ColumnarTodoStore of(Todo[] todos) {
+    Builder builder = new Builder();
+    for (Todo todo : todos) {
+      builder.add(todo);
+    }
+    return builder.build();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public Todo get(int row) {
+    Todo todo = new Todo();
+    todo._id = ids.get(row);
+    todo.owner = owners.get(row);
+    todo.status = statuses.get(row);
+    todo.body = bodies.get(row);
+    todo.category = categories.get(row);
+    return todo;
+  }
+
+  @Override
+  public String id(int row) {
+    return ids.get(row);
+  }
+
+  @Override
+  public String owner(int row) {
+    return owners.get(row);
+  }
+
+  @Override
+  public String category(int row) {
+    return categories.get(row);
+  }
+
+  @Override
+  public boolean status(int row) {
+    return statuses.get(row);
+  }
+
+  @Override
+  public String body(int row) {
+    return bodies.get(row);
+  }
+
+  @Override
+  public boolean bodyContains(int row, String needle) {
+    return bodies.contains(row, needle);
+  }
+
+  @Override
+  public int find(String id) {
+    // Binary search for the first row in id order whose id isn't below the target
+    int low = 0;
+    int high = idOrder.limit();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (ids.compare(idOrder.get(middle), id) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    if (low < idOrder.limit() && ids.compare(idOrder.get(low), id) == 0) {
+      return idOrder.get(low);
+    }
+    return -1;
+  }
+
+  @Override
+  public Comparator<Integer> ordering(String field) {
+    Comparator<Integer> byField;
+    switch (field) {
+      case "owner":
+        byField = (a, b) -> Integer.compare(owners.code(a), owners.code(b));
+        break;
+      case "category":
+        byField = (a, b) -> Integer.compare(categories.code(a), categories.code(b));
+        break;
+      case "status":
+        byField = (a, b) -> Boolean.compare(statuses.get(a), statuses.get(b));
+        break;
+      case "body":
+        byField = bodies::compare;
+        break;
+      default:
+        throw new IllegalArgumentException("Todos can't be ordered by " + field);
+    }
+    return byField.thenComparing(ids::compare);
+  }
+
+  @Override
+  public IntBuffer sortOrder(String field) {
+    IntBuffer order = saved == null ? null : saved.orders.get(field);
+    return order != null ? order : TodoStore.super.sortOrder(field);
+  }
+
+  @Override
+  public BitmapIndex<String> ownerIndex() {
+    return saved != null ? saved.ownerIndex : TodoStore.super.ownerIndex();
+  }
+
+  @Override
+  public BitmapIndex<String> categoryIndex() {
+    return saved != null ? saved.categoryIndex : TodoStore.super.categoryIndex();
+  }
+
+  @Override
+  public BitmapIndex<Boolean> statusIndex() {
+    return saved != null ? saved.statusIndex : TodoStore.super.statusIndex();
+  }
+
+  @Override
+  public TextIndex bodyIndex() {
+    return saved != null ? saved.bodyIndex : TodoStore.super.bodyIndex();
+  }
+
+  /**
+   * Save the store, with its id lookup order, every sort order and the
+   * indexes every snapshot needs, as a snapshot file that `read` can map
+   * back in without parsing, sorting or indexing.
+   *
+   * @param file the file to write
+   */
+  void write(Path file) throws IOException {
+    try (ColumnFileWriter out = new ColumnFileWriter(file, MAGIC)) {
+      out.writeInt(size());
+      ids.write(out);
+      owners.write(out);
+      categories.write(out);
+      // toLongArray drops trailing zero words, but the reader expects them all
+      out.writeLongs(Arrays.copyOf(statuses.toLongArray(), (size() + Long.SIZE - 1) / Long.SIZE));
+      bodies.write(out);
+      out.writeInts(idOrder);
+      out.writeInt(DatabaseTD.ORDERINGS.size());
+      for (String field : DatabaseTD.ORDERINGS.keySet()) {
+        out.writeString(field);
+        out.writeInts(sortOrder(field));
+      }
+      ownerIndex().write(out, ColumnFileWriter::writeString);
+      categoryIndex().write(out, ColumnFileWriter::writeString);
+      statusIndex().write(out, (writer, status) -> writer.writeInt(status ? 1 : 0));
+      bodyIndex().write(out);
+    }
+  }
+
+  /**
+   * Map a snapshot file written by `write`.
+   * <p>
+   * The ids, bodies, codes and sort orders are queried in place in the
+   * mapped file. Only the small dictionaries, the status bits and the
+   * indexes are copied onto the heap, each a whole array at a time. The
+   * indexes for case-insensitive and word searches aren't saved; a snapshot
+   * builds those when a query first needs them.
+   *
+   * @param file the file to read
+   * @return the store
+   * @throws IOException if the file can't be read or isn't a todo snapshot
+   */
+  static ColumnarTodoStore read(Path file) throws IOException {
+    try (ColumnFileReader in = new ColumnFileReader(file, MAGIC)) {
+      int size = in.readInt();
+      StringColumn ids = StringColumn.read(in);
+      DictionaryColumn owners = DictionaryColumn.read(in);
+      DictionaryColumn categories = DictionaryColumn.read(in);
+      BitSet statuses = BitSet.valueOf(in.mapLongs((size + Long.SIZE - 1) / Long.SIZE));
+      StringColumn bodies = StringColumn.read(in);
+      IntBuffer idOrder = in.mapInts(size);
+      Map<String, IntBuffer> orders = new HashMap<>();
+      int orderCount = in.readInt();
+      for (int i = 0; i < orderCount; i++) {
+        String field = in.readString();
+        orders.put(field, in.mapInts(size));
+      }
+      Saved saved = new Saved(orders, BitmapIndex.read(in, ColumnFileReader::readString),
+        BitmapIndex.read(in, ColumnFileReader::readString), BitmapIndex.read(in, reader -> reader.readInt() != 0),
+        TextIndex.read(in));
+      return new ColumnarTodoStore(ids, owners, categories, statuses, bodies, idOrder, saved);
+    }
+  }
+
+  /**
+   * Appends todos to a new columnar store, one at a time, so the todos never
+   * all have to exist as objects at once.
+   */
+  static final class Builder {
+    private final StringColumn.Builder ids = new StringColumn.Builder();
+    private final DictionaryColumn.Builder owners = new DictionaryColumn.Builder();
+    private final DictionaryColumn.Builder categories = new DictionaryColumn.Builder();
+    private final BitSet statuses = new BitSet();
+    private final StringColumn.Builder bodies = new StringColumn.Builder();
+    private int size;
+
+    Builder add(Todo todo) {
+      if (todo._id == null || todo.owner == null || todo.category == null || todo.body == null) {
+        throw new IllegalArgumentException("Todo " + todo._id + " is missing a field");
+      }
+      ids.add(todo._id);
+      owners.add(todo.owner);
+      categories.add(todo.category);
+      statuses.set(size, todo.status);
+      bodies.add(todo.body);
+      size++;
+      return this;
+    }
+
+    ColumnarTodoStore build() {
+      return new ColumnarTodoStore(ids.build(), owners.build(), categories.build(), statuses, bodies.build(),
+        null, null);
+    }
+  }
+
+  /**
+   * The sort orders and indexes read from a snapshot file.
+   */
+  private static final class Saved {
+    final Map<String, IntBuffer> orders;
+    final BitmapIndex<String> ownerIndex;
+    final BitmapIndex<String> categoryIndex;
+    final BitmapIndex<Boolean> statusIndex;
+    final TextIndex bodyIndex;
+
+    Saved(Map<String, IntBuffer> orders, BitmapIndex<String> ownerIndex, BitmapIndex<String> categoryIndex,
+        BitmapIndex<Boolean> statusIndex, TextIndex bodyIndex) {
+      this.orders = orders;
+      this.ownerIndex = ownerIndex;
+      this.categoryIndex = categoryIndex;
+      this.statusIndex = statusIndex;
+      this.bodyIndex = bodyIndex;
+    }
+  }
+}
@@ -1,14 +1,35 @@
 package umm3601.todo;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
-import com.google.gson.Gson;
-import io.javalin.http.BadRequestResponse;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import umm3601.query.JsonLoader;
+import umm3601.query.LoadReport;
+import umm3601.query.Parallel;
+import umm3601.query.QueryCache;
+import umm3601.query.QueryKey;
+import umm3601.query.ScratchRows;
+import umm3601.query.Selection;
 
 
 /**
@@ -22,73 +43,564 @@ import io.javalin.http.BadRequestResponse;
 
  public class DatabaseTD {
 
-  private Todo[] allTodos;
+  /**
+   * The orders `orderBy` can sort todos in. Ties are broken by `_id`, so every
+   * ordering is total and the same query always returns the same order.
+   */
+  static final Map<String, Comparator<Todo>> ORDERINGS = Map.of(
+    "owner", Comparator.comparing((Todo todo) -> todo.owner).thenComparing(todo -> todo._id),
+    "category", Comparator.comparing((Todo todo) -> todo.category).thenComparing(todo -> todo._id),
+    "status", Comparator.comparing((Todo todo) -> todo.status).thenComparing(todo -> todo._id),
+    "body", Comparator.comparing((Todo todo) -> todo.body).thenComparing(todo -> todo._id));
+
+  /**
+   * How a `DatabaseTD` keeps its todos in memory.
+   */
+  public enum Storage {
+    /**
+     * Keep the `Todo` objects, and cache each one's JSON once it has been
+     * served. Fastest, but every todo costs an object and several strings.
+     */
+    ROWS(true),
+    /**
+     * Keep each field in a compact column, building `Todo` objects (and
+     * their JSON) only when they are returned. Uses a fraction of the heap
+     * for large data sets, at some cost per returned todo.
+     */
+    COLUMNS(false);
+
+    final boolean cachesJson;
+
+    Storage(boolean cachesJson) {
+      this.cachesJson = cachesJson;
+    }
+
+    TodoStore store(Todo[] todos) {
+      return this == ROWS ? new RowTodoStore(todos) : ColumnarTodoStore.of(todos);
+    }
+
+    /**
+     * Stream a JSON array of todos straight into a store, one todo at a time.
+     */
+    TodoStore load(Reader reader) throws IOException {
+      if (this == COLUMNS) {
+        // The columns are dictionary-encoded already, so each parsed todo
+        // can be dropped as soon as it has been appended
+        ColumnarTodoStore.Builder columns = new ColumnarTodoStore.Builder();
+        JsonLoader.forEach(reader, Todo.class, columns::add);
+        return columns.build();
+      }
+      // Share one copy of each owner and category instead of keeping the
+      // separate copy Gson makes for every todo
+      Interner<String> strings = Interners.newStrongInterner();
+      List<Todo> todos = new ArrayList<>();
+      JsonLoader.forEach(reader, Todo.class, todo -> {
+        todo.owner = intern(strings, todo.owner);
+        todo.category = intern(strings, todo.category);
+        todos.add(todo);
+      });
+      return new RowTodoStore(todos.toArray(new Todo[0]));
+    }
+
+    /**
+     * Open a binary snapshot file written by `writeSnapshot`. Columnar
+     * storage queries the mapped file in place; row storage copies the todos
+     * out of it, so their JSON can be cached like that of todos read from
+     * JSON.
+     */
+    TodoStore read(Path snapshotFile) throws IOException {
+      ColumnarTodoStore columns = ColumnarTodoStore.read(snapshotFile);
+      if (this == COLUMNS) {
+        return columns;
+      }
+      Todo[] todos = new Todo[columns.size()];
+      for (int row = 0; row < todos.length; row++) {
+        todos[row] = columns.get(row);
+      }
+      return new RowTodoStore(todos);
+    }
+  }
+
+  /**
+   * The file name suffix of binary snapshot files.
+   */
+  public static final String SNAPSHOT_SUFFIX = ".bin";
+
+  /**
+   * The most writes synced to the log together, unless `openLog` is told
+   * otherwise.
+   */
+  public static final int DEFAULT_WRITE_BATCH = 256;
+
+  private static final int CACHE_ENTRIES = 1024;
+  private static final long CACHE_WEIGHT = 64L * 1024 * 1024;
+
+  private final AtomicLong versions = new AtomicLong();
+  private final QueryCache<Selection> queryCache = new QueryCache<>(CACHE_ENTRIES, CACHE_WEIGHT, Selection::weight);
+  private final Storage storage;
+  private volatile TodoSnapshot snapshot;
+  private volatile LoadReport loadReport;
+  private TodoWriter writer;
 
   public DatabaseTD(String todoDataFile) throws IOException {
-    Gson gson = new Gson();
-    InputStreamReader reader = new InputStreamReader(getClass().getResourceAsStream(todoDataFile));
-    allTodos = gson.fromJson(reader, Todo[].class);
+    this(todoDataFile, Storage.ROWS);
+  }
+
+  public DatabaseTD(String todoDataFile, Storage storage) throws IOException {
+    this(openResource(todoDataFile), storage);
+  }
+
+  /**
+   * Load todos from a JSON array, streaming them into storage one at a time
+   * and then indexing them. How long that took and how much memory it used
+   * is available from `loadReport`.
+   *
+   * @param reader  the JSON text; it is closed once it has been read
+   * @param storage how to store the todos
+   * @throws IOException if the text can't be read or isn't an array of todos
+   */
+  public DatabaseTD(Reader reader, Storage storage) throws IOException {
+    this.storage = storage;
+    LoadReport.Probe probe = LoadReport.start();
+    try (Reader in = reader) {
+      publish(storage.load(in));
+    }
+    loadReport = probe.finish(size());
+  }
+
+  public DatabaseTD(Todo[] todos) {
+    this(todos, Storage.ROWS);
+  }
+
+  public DatabaseTD(Todo[] todos, Storage storage) {
+    this.storage = storage;
+    publish(todos);
+  }
+
+  /**
+   * Open a binary snapshot file written by `writeSnapshot`, using columnar
+   * storage. See `reload`.
+   *
+   * @param snapshotFile the snapshot file
+   * @throws IOException if the file can't be read or isn't a todo snapshot
+   */
+  public DatabaseTD(Path snapshotFile) throws IOException {
+    this(snapshotFile, Storage.COLUMNS);
+  }
+
+  /**
+   * Load todos from a data file on disk. See `reload`.
+   *
+   * @param dataFile a binary snapshot (`.bin`) or JSON file
+   * @param storage  how to store the todos
+   * @throws IOException if the file can't be read or doesn't hold todos
+   */
+  public DatabaseTD(Path dataFile, Storage storage) throws IOException {
+    this.storage = storage;
+    reload(dataFile);
+  }
+
+  /**
+   * Replace the todos with the contents of a data file, like `publish`.
+   * <p>
+   * A file whose name ends in `.bin` is a binary snapshot written by
+   * `writeSnapshot`. With columnar storage it is memory-mapped and queried
+   * in place rather than parsed, and the todos and sort orders stay off the
+   * Java heap. The indexes saved with it are copied onto the heap, not built
+   * again (see `ColumnarTodoStore.read`). Replace a mapped file by renaming a
+   * new file over it, never by rewriting it in place, or queries still
+   * running against the old data may fail. With row storage the todos are
+   * copied out of the file instead, and indexed and sorted as they would be
+   * from JSON.
+   * <p>
+   * Any other file is read as JSON. If the file can't be loaded, the
+   * current todos stay in place.
+   *
+   * @param dataFile a binary snapshot (`.bin`) or JSON file
+   * @throws IOException if the file can't be read or doesn't hold todos
+   */
+  public void reload(Path dataFile) throws IOException {
+    LoadReport.Probe probe = LoadReport.start();
+    if (dataFile.getFileName().toString().endsWith(SNAPSHOT_SUFFIX)) {
+      publish(storage.read(dataFile));
+    } else {
+      try (Reader reader = Files.newBufferedReader(dataFile, StandardCharsets.UTF_8)) {
+        publish(storage.load(reader));
+      }
+    }
+    loadReport = probe.finish(size());
+  }
+
+  /**
+   * Replace the todo data, rebuilding every index over it.
+   * <p>
+   * The new data is indexed off to the side and then swapped in with a
+   * single write, so readers never see a half-built index. Queries that are
+   * already running finish against the data they started with.
+   *
+   * @param todos the new todos, in storage order
+   */
+  public void publish(Todo[] todos) {
+    publish(storage.store(todos.clone()));
+  }
+
+  private void publish(TodoStore todos) {
+    publish(new TodoSnapshot(todos, storage, nextVersion()));
+  }
+
+  synchronized void publish(TodoSnapshot next) {
+    snapshot = next;
+    queryCache.invalidate();
+  }
+
+  /**
+   * Apply a batch of writes straight to the current snapshot, without
+   * logging them. See `TodoSnapshot.apply`.
+   */
+  synchronized void apply(Map<String, Todo> changes) {
+    publish(snapshot.apply(changes, nextVersion()));
+  }
+
+  TodoSnapshot snapshot() {
+    return snapshot;
+  }
+
+  long nextVersion() {
+    return versions.incrementAndGet();
+  }
+
+  /**
+   * Keep a log of every write in a directory, so that writes survive a
+   * restart. Call this before making any writes.
+   * <p>
+   * If the directory already holds a log, the todos it saved replace the
+   * ones loaded so far; otherwise those become the starting point. Every
+   * write is synced to the log before it returns, but concurrent writes
+   * are synced together, up to `maxBatch` at a time. The log is compacted
+   * into a snapshot file in the same directory from time to time (see
+   * `TodoWriter`). Publishing or reloading data replaces logged writes in
+   * memory but not on disk, so don't combine them with a log.
+   *
+   * @param directory the directory for the log and its snapshot
+   * @param maxBatch  the most writes to sync together; 1 syncs each write on
+   *                  its own
+   * @throws IOException if the log can't be read or created
+   */
+  public void openLog(Path directory, int maxBatch) throws IOException {
+    openLog(directory, maxBatch, TodoWriter.DEFAULT_COMPACT_AFTER, TodoWriter.DEFAULT_COMPACT_MILLIS);
+  }
+
+  /**
+   * Like `openLog(Path, int)`, but choosing when to compact; a `null`
+   * directory keeps writes in memory only.
+   */
+  synchronized void openLog(Path directory, int maxBatch, int compactAfter, long compactMillis)
+      throws IOException {
+    if (writer != null) {
+      throw new IllegalStateException("The todo log must be opened before any write");
+    }
+    writer = new TodoWriter(this, directory, maxBatch, compactAfter, compactMillis);
+  }
+
+  /**
+   * Finish the writes in progress and close the log, if there is one.
+   *
+   * @throws IOException if the log can't be closed
+   */
+  public void close() throws IOException {
+    TodoWriter current;
+    synchronized (this) {
+      current = writer;
+    }
+    if (current != null) {
+      current.close();
+    }
+  }
+
+  private synchronized TodoWriter writer() {
+    if (writer == null) {
+      try {
+        writer = new TodoWriter(this, null, DEFAULT_WRITE_BATCH, TodoWriter.DEFAULT_COMPACT_AFTER,
+          TodoWriter.DEFAULT_COMPACT_MILLIS);
+      } catch (IOException e) {
+        // Nothing is read or written without a log directory
+        throw new UncheckedIOException(e);
+      }
+    }
+    return writer;
+  }
+
+  /**
+   * Add a new todo, giving it a new id.
+   * <p>
+   * Like every write, this returns once the todo is logged (if there is a
+   * log) and can be read back. The indexes are updated for the written todo
+   * only, not rebuilt.
+   *
+   * @param todo the todo; its `_id` is ignored
+   * @return a copy of the todo as stored, with its new id
+   * @throws IllegalArgumentException if the todo is missing a field
+   */
+  public Todo addTodo(Todo todo) {
+    return writer().write(TodoWriter.newId(), current -> TodoWriter.copy(todo)).after;
+  }
+
+  /**
+   * Store a todo under the given id, replacing the todo that has that id, or
+   * adding it if there is none.
+   *
+   * @param id   the id to store the todo under; the todo's own `_id` is
+   *             ignored
+   * @param todo the todo
+   * @return true if the todo was added, false if it replaced another
+   * @throws IllegalArgumentException if the todo is missing a field
+   */
+  public boolean putTodo(String id, Todo todo) {
+    return writer().write(id, current -> TodoWriter.copy(todo)).before == null;
+  }
+
+  /**
+   * Change the todo with the given id, if there is one.
+   *
+   * @param id     the id of the todo
+   * @param change given a private copy of the todo, returns the changed
+   *               todo; it sees every write committed before it
+   * @return the changed todo, or `null` if there is no todo with that id
+   * @throws IllegalArgumentException if the changed todo is missing a field
+   */
+  public Todo updateTodo(String id, UnaryOperator<Todo> change) {
+    return writer().write(id,
+      current -> current == null ? null : Objects.requireNonNull(change.apply(current))).after;
+  }
+
+  /**
+   * Delete the todo with the given id, if there is one.
+   *
+   * @param id the id of the todo
+   * @return true if there was a todo with that id
+   */
+  public boolean deleteTodo(String id) {
+    return writer().write(id, current -> null).before != null;
+  }
+
+  /**
+   * Save the current todos as a binary snapshot file that can be opened
+   * with `DatabaseTD(Path)`. This is how `todos.json` is converted.
+   *
+   * <p>
+   * The snapshot is written to a temporary file and then renamed into place,
+   * so a server that has the old file mapped keeps working.
+   *
+   * @param snapshotFile the file to write
+   * @throws IOException if the file can't be written
+   */
+  public void writeSnapshot(Path snapshotFile) throws IOException {
+    TodoSnapshot current = snapshot;
+    TodoStore todos = current.store();
+    if (todos instanceof ColumnarTodoStore) {
+      writeSnapshot((ColumnarTodoStore) todos, snapshotFile);
+    } else {
+      writeSnapshot(ColumnarTodoStore.of(current.liveTodos()), snapshotFile);
+    }
+  }
+
+  static void writeSnapshot(ColumnarTodoStore todos, Path snapshotFile) throws IOException {
+    Path directory = snapshotFile.toAbsolutePath().getParent();
+    Path temporary = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+    try {
+      todos.write(temporary);
+      Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private static String intern(Interner<String> strings, String value) {
+    return value == null ? null : strings.intern(value);
+  }
+
+  private static Reader openResource(String resource) throws IOException {
+    InputStream stream = DatabaseTD.class.getResourceAsStream(resource);
+    if (stream == null) {
+      throw new IOException("There is no todo data file " + resource);
+    }
+    return new InputStreamReader(stream, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Get how long loading the todos took and how much memory it needed, or
+   * `null` if they weren't loaded from a file.
+   */
+  public LoadReport loadReport() {
+    return loadReport;
+  }
+
+  /**
+   * Get how this database stores its todos.
+   */
+  public Storage storage() {
+    return storage;
+  }
+
+  /**
+   * Get the cache of query results, for example to check its hit rate. It is
+   * emptied every time new data is published.
+   */
+  public QueryCache<Selection> queryCache() {
+    return queryCache;
+  }
+
+  /**
+   * Get the version number of the current data. It changes every time new
+   * data is published.
+   */
+  public long version() {
+    return snapshot.version;
+  }
+
+  /**
+   * Get a key identifying the result of a query against the current data:
+   * the data version plus the query in canonical form. Two calls return the
+   * same key only if the query would return the same todos.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the key
+   */
+  public String queryKey(Map<String, List<String>> queryParams) {
+    return queryKey(snapshot, queryParams);
   }
 
   public int size() {
-    return allTodos.length;
+    return snapshot.size();
   }
 
+  /**
+   * Get the single todo specified by the given ID. Return `null` if there is no
+   * todo with that ID.
+   *
+   * @param id the ID of the desired todo
+   * @return the todo with the given ID, or null if there is no todo with that ID
+   */
   public Todo getTodo(String id) {
-    return Arrays.stream(allTodos).filter(x -> x._id.equals(id)).findFirst().orElse(null);
+    return snapshot.getTodo(id);
   }
 
-    /**
+  /**
+   * Get the JSON encoding of the single todo specified by the given ID, or
+   * `null` if there is no todo with that ID. Each todo is only serialized once,
+   * so repeated requests just reuse the same bytes.
+   *
+   * @param id the ID of the desired todo
+   * @return the todo's JSON encoding, or null if there is no todo with that ID
+   */
+  public byte[] getTodoJson(String id) {
+    return snapshot.getTodoJson(id);
+  }
+
+  /**
+   * Get the JSON encoding of each todo whose id is listed, looking each id up
+   * once, all in the same version of the data. The todos come back in the
+   * order their ids are listed; ids of missing todos are skipped, and a todo
+   * listed twice is only returned once.
+   *
+   * @param ids the ids of the desired todos
+   * @return an iterator over the JSON of the todos found
+   */
+  public Iterator<byte[]> getTodosJson(List<String> ids) {
+    return snapshot.getTodosJson(ids);
+  }
+
+  /**
+   * Get the JSON encoding of how many todos there are in total, for each
+   * owner, in each category and with each status, like
+   * `{"total": 3, "owner": {"Blanche": 3}, "category": {"groceries": 1,
+   * "homework": 2}, "status": {"complete": 1, "incomplete": 2}}`. The counts
+   * are population counts of the bitmap indexes, so no todo is looked at, and
+   * they are only worked out once for each version of the data.
+   *
+   * @return the counts' JSON encoding
+   */
+  public byte[] getStatsJson() {
+    return snapshot.getStatsJson();
+  }
+
+  /**
+   * Count the todos matching the owner, category, status and contains filters
+   * in the params, without materializing any of them. Paging and ordering
+   * parameters are ignored.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the number of todos matching the given criteria
+   */
+  public int countTodos(Map<String, List<String>> queryParams) {
+    return snapshot.countTodos(queryParams);
+  }
+
+  /**
    * Gets an array of all the todos satisfying the queries in the params.
+   * <p>
+   * Results come back in storage order, or in the order named by `orderBy`.
+   * A page of them can be picked either with `offset`, or with `after`, a
+   * cursor naming the `_id` of the last todo on the previous page. Cursors
+   * stay correct when the data changes between pages; offsets do not. That
+   * includes deleting the cursor's own todo: paging resumes from where it
+   * was, until the data is next compacted. After that, like an id that
+   * never existed, the cursor is rejected with a 400.
+   * `limit` caps the size of the page and is applied after ordering.
    *
    * @param queryParams map of key-value pairs for the query
    * @return an array of all the todos matching the given criteria
    */
   public Todo[] listTodos(Map<String, List<String>> queryParams) {
-    Todo[] filteredTodos = allTodos;
-    // Filter owner if defined
-    if (queryParams.containsKey("owner")) {
-      String targetOwner = queryParams.get("owner").get(0);
-      filteredTodos = filterTodosByOwner(filteredTodos, targetOwner);
-    }
-    // Filter category if defined
-    if (queryParams.containsKey("category")) {
-      String targetCategory = queryParams.get("category").get(0);
-      filteredTodos = filterTodosByCategory(filteredTodos, targetCategory);
-    }
-    // Filter status if defined
-    if (queryParams.containsKey("status")) {
-      String targetStatus = queryParams.get("status").get(0);
-      boolean type= true;
-      if(targetStatus.equals("incomplete")) {
-        type = false;
-      }
-      filteredTodos = filterTodosByStatus(filteredTodos, type);
-    }
-    //Filter by the body's contents if defined
-    if (queryParams.containsKey("contains")) {
-      String targetContent = queryParams.get("contains").get(0);
-      filteredTodos = filterTodosByContent(filteredTodos, targetContent);
-    }
-    // filter by limit if defined
-    if (queryParams.containsKey("limit")) {
-      String targetLimit = queryParams.get("limit").get(0);
-      try{
-        int intConversion = Integer.parseInt(targetLimit);
-        filteredTodos = filterTodosByLimit(filteredTodos, intConversion);
-      }
-      catch (NumberFormatException e) {
-        throw new BadRequestResponse("The specified limit '" + targetLimit +
-        "' cannot be converted to an integer");
-      }
-    }
-    if (queryParams.containsKey("orderBy")) {
-      String targetOrder = queryParams.get("orderBy").get(0);
-      filteredTodos = filterTodosByOrder(filteredTodos, targetOrder);
-    }
-    // Process other query parameters here...
+    TodoSnapshot current = snapshot;
+    return current.listTodos(select(current, queryParams));
+  }
 
-    return filteredTodos;
+  /**
+   * Lazily produce the todos that `listTodos` would return, in the same order.
+   * <p>
+   * The params are validated before this returns, but each todo is only looked
+   * up when the iterator reaches it, so callers can write results out as they
+   * go instead of holding the whole list in memory. The iterator keeps
+   * reading from the data that was current when it was created.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return an iterator over the todos matching the given criteria
+   */
+  public Iterator<Todo> streamTodos(Map<String, List<String>> queryParams) {
+    TodoSnapshot current = snapshot;
+    return current.streamTodos(select(current, queryParams));
+  }
+
+  /**
+   * Like `streamTodos`, but produce the JSON encoding of each todo. Each todo is
+   * only serialized once, so list responses just join cached bytes together.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return an iterator over the JSON of the todos matching the given criteria
+   */
+  public Iterator<byte[]> streamTodosJson(Map<String, List<String>> queryParams) {
+    return streamTodosJson(snapshot, queryParams);
+  }
+
+  /**
+   * Like `streamTodosJson`, but against a snapshot the caller already has, so
+   * the response can be tagged with the version of the data it came from.
+   */
+  Iterator<byte[]> streamTodosJson(TodoSnapshot current, Map<String, List<String>> queryParams) {
+    return current.streamTodosJson(select(current, queryParams));
+  }
+
+  /**
+   * Evaluate a query against a snapshot, reusing a cached result when the
+   * same query (in canonical form) was already run against that snapshot.
+   */
+  private Selection select(TodoSnapshot current, Map<String, List<String>> queryParams) {
+    return queryCache.get(queryKey(current, queryParams), () -> current.selectTodos(queryParams));
+  }
+
+  static String queryKey(TodoSnapshot current, Map<String, List<String>> queryParams) {
+    return current.version + ":" + QueryKey.normalize(queryParams, TodoSnapshot.PARAMETERS);
   }
 
   /**
@@ -99,7 +611,7 @@ import io.javalin.http.BadRequestResponse;
    * @return an array of all the todos from the given list that have the target owner
    */
   public Todo[] filterTodosByOwner(Todo[] todos, String targetOwner) {
-    return Arrays.stream(todos).filter(x -> x.owner.equals(targetOwner)).toArray(Todo[]::new);
+    return Parallel.stream(todos).filter(x -> x.owner.equals(targetOwner)).toArray(Todo[]::new);
   }
 
   /**
@@ -110,7 +622,7 @@ import io.javalin.http.BadRequestResponse;
    * @return an array of all the todos from the given list that have the target category
    */
   public Todo[] filterTodosByCategory(Todo[] todos, String targetCategory) {
-    return Arrays.stream(todos).filter(x -> x.category.equals(targetCategory)).toArray(Todo[]::new);
+    return Parallel.stream(todos).filter(x -> x.category.equals(targetCategory)).toArray(Todo[]::new);
   }
 
   /**
@@ -121,7 +633,24 @@ import io.javalin.http.BadRequestResponse;
    * @return an array of all the todos from the given list that have the target status type
    */
   public Todo[] filterTodosByStatus(Todo[] todos, boolean targetStatus) {
-    return Arrays.stream(todos).filter(x -> x.status == targetStatus).toArray(Todo[]::new);
+    if (Parallel.segments(todos.length) > 1) {
+      // Big enough to be worth scanning on every core
+      return Parallel.stream(todos).filter(x -> x.status == targetStatus).toArray(Todo[]::new);
+    }
+    // Compare the primitive statuses in a plain loop, marking matches in a
+    // reused bitmap, so the only thing allocated is the exactly-sized result
+    BitSet matches = ScratchRows.bitmap(todos.length);
+    for (int i = 0; i < todos.length; i++) {
+      if (todos[i].status == targetStatus) {
+        matches.set(i);
+      }
+    }
+    Todo[] results = new Todo[matches.cardinality()];
+    int count = 0;
+    for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+      results[count++] = todos[i];
+    }
+    return results;
   }
 
   /**
@@ -132,7 +661,7 @@ import io.javalin.http.BadRequestResponse;
    * @return an array of all todos from the given list that have the target content
    */
   public Todo[] filterTodosByContent(Todo[] todos, String targetContent) {
-    return Arrays.stream(todos).filter(x -> x.body.contains(targetContent) == true).toArray(Todo[]::new);
+    return Parallel.stream(todos).filter(x -> x.body.contains(targetContent) == true).toArray(Todo[]::new);
   }
 
   /**
@@ -142,7 +671,7 @@ import io.javalin.http.BadRequestResponse;
    * @return a trimmed copy of the array of todos containing the specified limit of todos
    */
   public Todo[] filterTodosByLimit(Todo[] todos, int targetLimit) {
-    return Arrays.copyOfRange(todos, 0, targetLimit);
+    return Arrays.copyOfRange(todos, 0, Math.min(targetLimit, todos.length));
   }
 
   /**
@@ -153,75 +682,13 @@ import io.javalin.http.BadRequestResponse;
    * @return an array of all todos from the given list in the specified order.
    */
   public Todo[] filterTodosByOrder(Todo[] todos, String targetOrder){
-    Todo[] newOrder = todos;
-    // The following switch statement chooses the order from the one specified by the client
-    // and runs helper methods where appropriate.
-    switch(targetOrder) {
-      case "owner":
-        newOrder = orderByOwner(todos);
-      break;
-
-      case "category":
-        newOrder = orderByCategory(todos);
-      break;
-
-      case "status":
-        newOrder = orderByStatus(todos);
-      break;
-
-      case "body":
-        newOrder = orderByBody(todos);
-      break;
-
-      default:
-      break;
+    // Sort a copy, so the caller's array is never reordered underneath it.
+    // Unknown orders leave the todos as they are.
+    Todo[] newOrder = todos.clone();
+    Comparator<Todo> ordering = ORDERINGS.get(targetOrder);
+    if (ordering != null) {
+      Arrays.sort(newOrder, ordering);
     }
     return newOrder;
   }
-
-  /*
-  The following section contains four helper methods that are used for sorting the todos
-  in different ways.
-  */
-  private Todo[] orderByOwner (Todo[] todos) {
-    Arrays.sort(todos, new Comparator<Todo>() {
-      public int compare(Todo firstOwner, Todo secondOwner) {
-        return firstOwner.owner.compareTo(secondOwner.owner);
-      }
-     }
-     );
-    return todos;
-  }
-
-  private Todo[] orderByCategory (Todo[] todos) {
-    Arrays.sort(todos, new Comparator<Todo>() {
-      public int compare(Todo firstCategory, Todo secondCategory) {
-        return firstCategory.category.compareTo(secondCategory.category);
-      }
-     }
-     );
-    return todos;
-  }
-
-  private Todo[] orderByStatus (Todo[] todos) {
-    Arrays.sort(todos, new Comparator<Todo>() {
-      public int compare(Todo firstStatus, Todo secondStatus) {
-        String fStatus = String.valueOf(firstStatus.status); // Each boolean value is stringified
-        String sStatus = String.valueOf(secondStatus.status); // to be compared.
-        return fStatus.compareTo(sStatus);
-      }
-    }
-    );
-    return todos;
-  }
-
-  private Todo[] orderByBody (Todo[] todos) {
-    Arrays.sort(todos, new Comparator<Todo>() {
-      public int compare(Todo firstBody, Todo secondBody) {
-        return firstBody.body.compareTo(secondBody.body);
-      }
-    }
-    );
-    return todos;
-  }
  }
@@ -0,0 +1,218 @@
+package umm3601.todo;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A `TodoStore` made of another store plus the writes made since it was
+ * loaded.
+ * <p>
+ * The base store is never changed. A todo that was replaced is looked up in
+ * a small map instead, new todos are appended after the base rows, and
+ * deleted todos keep their rows but are marked in `deleted`. No row ever
+ * moves, so indexes over the base rows stay valid and only the rows that
+ * were written have to be indexed again. The patches are folded back into a
+ * fresh store when the database is compacted.
+ */
+final class PatchedTodoStore implements TodoStore {
+
+  private final TodoStore base;
+  private final int baseSize;
+  // Base rows whose todo was replaced, and their new todos
+  private final BitSet replacedRows;
+  private final Map<Integer, Todo> replaced;
+  private final Todo[] appended;
+  // Ids whose row differs from the base store's, or -1 if they were deleted
+  private final Map<String, Integer> rowsById;
+  private final BitSet deleted;
+  // The rows of deleted ids, for resuming paging cursors
+  private final Map<String, Integer> deletedRows;
+
+  private PatchedTodoStore(Builder builder) {
+    this.base = builder.base;
+    this.baseSize = base.size();
+    this.replacedRows = builder.replacedRows;
+    this.replaced = builder.replaced;
+    this.appended = builder.appended.toArray(new Todo[0]);
+    this.rowsById = builder.rowsById;
+    this.deleted = builder.deleted;
+    this.deletedRows = builder.deletedRows;
+  }
+
+  /**
+   * The number of todos written since the base store was loaded, a measure
+   * of how much compacting the store would save.
+   */
+  int patches() {
+    return replaced.size() + appended.length + deleted.cardinality();
+  }
+
+  @Override
+  public int size() {
+    return baseSize + appended.length;
+  }
+
+  @Override
+  public BitSet deleted() {
+    return deleted;
+  }
+
+  /**
+   * Get the todo written to a row, or `null` if the base store still holds
+   * it.
+   */
+  private Todo patch(int row) {
+    if (row >= baseSize) {
+      return appended[row - baseSize];
+    }
+    return replacedRows.get(row) ? replaced.get(row) : null;
+  }
+
+  @Override
+  public Todo get(int row) {
+    Todo todo = patch(row);
+    return todo != null ? todo : base.get(row);
+  }
+
+  @Override
+  public String id(int row) {
+    Todo todo = patch(row);
+    return todo != null ? todo._id : base.id(row);
+  }
+
+  @Override
+  public String owner(int row) {
+    Todo todo = patch(row);
+    return todo != null ? todo.owner : base.owner(row);
+  }
+
+  @Override
+  public String category(int row) {
+    Todo todo = patch(row);
+    return todo != null ? todo.category : base.category(row);
+  }
+
+  @Override
+  public boolean status(int row) {
+    Todo todo = patch(row);
+    return todo != null ? todo.status : base.status(row);
+  }
+
+  @Override
+  public String body(int row) {
+    Todo todo = patch(row);
+    return todo != null ? todo.body : base.body(row);
+  }
+
+  @Override
+  public boolean bodyContains(int row, String needle) {
+    Todo todo = patch(row);
+    return todo != null ? todo.body.contains(needle) : base.bodyContains(row, needle);
+  }
+
+  @Override
+  public int find(String id) {
+    Integer row = rowsById.get(id);
+    return row != null ? row : base.find(id);
+  }
+
+  @Override
+  public int findDeleted(String id) {
+    return deletedRows.getOrDefault(id, -1);
+  }
+
+  @Override
+  public Comparator<Integer> ordering(String field) {
+    Comparator<Todo> ordering = DatabaseTD.ORDERINGS.get(field);
+    return (a, b) -> ordering.compare(get(a), get(b));
+  }
+
+  /**
+   * Collects writes on top of a store.
+   */
+  static final class Builder {
+    private final TodoStore base;
+    private final BitSet replacedRows;
+    private final Map<Integer, Todo> replaced;
+    private final List<Todo> appended;
+    private final Map<String, Integer> rowsById;
+    private final BitSet deleted;
+    private final Map<String, Integer> deletedRows;
+
+    /**
+     * Start from a store, keeping any writes it already has. The store
+     * itself is left unchanged.
+     */
+    Builder(TodoStore store) {
+      if (store instanceof PatchedTodoStore) {
+        PatchedTodoStore patched = (PatchedTodoStore) store;
+        base = patched.base;
+        replacedRows = (BitSet) patched.replacedRows.clone();
+        replaced = new HashMap<>(patched.replaced);
+        appended = new ArrayList<>(List.of(patched.appended));
+        rowsById = new HashMap<>(patched.rowsById);
+        deleted = (BitSet) patched.deleted.clone();
+        deletedRows = new HashMap<>(patched.deletedRows);
+      } else {
+        base = store;
+        replacedRows = new BitSet();
+        replaced = new HashMap<>();
+        appended = new ArrayList<>();
+        rowsById = new HashMap<>();
+        deleted = new BitSet();
+        deletedRows = new HashMap<>();
+      }
+    }
+
+    private int find(String id) {
+      Integer row = rowsById.get(id);
+      return row != null ? row : base.find(id);
+    }
+
+    /**
+     * Store a todo, replacing the one with the same id if there is one.
+     *
+     * @param todo the todo; the store takes ownership of it
+     * @return the row it was stored in
+     */
+    int put(Todo todo) {
+      int row = find(todo._id);
+      if (row < 0) {
+        row = base.size() + appended.size();
+        appended.add(todo);
+        rowsById.put(todo._id, row);
+        deletedRows.remove(todo._id);
+      } else if (row >= base.size()) {
+        appended.set(row - base.size(), todo);
+      } else {
+        replacedRows.set(row);
+        replaced.put(row, todo);
+      }
+      return row;
+    }
+
+    /**
+     * Delete the todo with the given id, if there is one.
+     *
+     * @param id the todo's id
+     * @return the row it was stored in, or -1 if there was no such todo
+     */
+    int delete(String id) {
+      int row = find(id);
+      if (row >= 0) {
+        deleted.set(row);
+        rowsById.put(id, -1);
+        deletedRows.put(id, row);
+      }
+      return row;
+    }
+
+    PatchedTodoStore build() {
+      return new PatchedTodoStore(this);
+    }
+  }
+}
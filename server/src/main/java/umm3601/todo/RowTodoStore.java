@@ -0,0 +1,81 @@
+package umm3601.todo;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A `TodoStore` that simply keeps an array of `Todo` objects. This is the
+ * fastest to build and to read, at the cost of an object (and strings) per
+ * todo.
+ */
+final class RowTodoStore implements TodoStore {
+
+  private final Todo[] todos;
+  private final Map<String, Integer> rowsById;
+
+  /**
+   * @param todos the todos, in storage order; the store takes ownership of
+   *              the array, so the caller must not change it afterwards
+   */
+  RowTodoStore(Todo[] todos) {
+    this.todos = todos;
+    rowsById = new HashMap<>(todos.length * 4 / 3 + 1);
+    for (int row = 0; row < todos.length; row++) {
+      // Keep the first todo for a duplicated id, matching the old linear scan
+      rowsById.putIfAbsent(todos[row]._id, row);
+    }
+  }
+
+  @Override
+  public int size() {
+    return todos.length;
+  }
+
+  @Override
+  public Todo get(int row) {
+    return todos[row];
+  }
+
+  @Override
+  public String id(int row) {
+    return todos[row]._id;
+  }
+
+  @Override
+  public String owner(int row) {
+    return todos[row].owner;
+  }
+
+  @Override
+  public String category(int row) {
+    return todos[row].category;
+  }
+
+  @Override
+  public boolean status(int row) {
+    return todos[row].status;
+  }
+
+  @Override
+  public String body(int row) {
+    return todos[row].body;
+  }
+
+  @Override
+  public boolean bodyContains(int row, String needle) {
+    return todos[row].body.contains(needle);
+  }
+
+  @Override
+  public int find(String id) {
+    Integer row = rowsById.get(id);
+    return row == null ? -1 : row;
+  }
+
+  @Override
+  public Comparator<Integer> ordering(String field) {
+    Comparator<Todo> ordering = DatabaseTD.ORDERINGS.get(field);
+    return (a, b) -> ordering.compare(todos[a], todos[b]);
+  }
+}
@@ -1,13 +1,32 @@
 package umm3601.todo;
 
+import java.io.ByteArrayInputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import io.javalin.http.BadRequestResponse;
 import io.javalin.http.Context;
 import io.javalin.http.NotFoundResponse;
+import umm3601.http.BatchRequest;
+import umm3601.http.Compression;
+import umm3601.http.ETags;
+import umm3601.http.JsonArrayStream;
 
 /**
  * Controller that manages requests for info about todos.
  */
 public class TodoController {
+  private static final List<String> REQUIRED_FIELDS = List.of("owner", "status", "body", "category");
+
   private DatabaseTD database;
+  private String listCacheControl = ETags.DEFAULT_CACHE_CONTROL;
+  private String itemCacheControl = ETags.DEFAULT_CACHE_CONTROL;
 
   /**
    * Construct a controller for todos.
@@ -22,29 +41,242 @@ public class TodoController {
     this.database = database;
   }
 
+  /**
+   * Set the `Cache-Control` header sent with todo list responses.
+   *
+   * @param cacheControl the header value, or `null` to send none
+   */
+  public void setListCacheControl(String cacheControl) {
+    this.listCacheControl = cacheControl;
+  }
+
+  /**
+   * Set the `Cache-Control` header sent with single-todo responses.
+   *
+   * @param cacheControl the header value, or `null` to send none
+   */
+  public void setItemCacheControl(String cacheControl) {
+    this.itemCacheControl = cacheControl;
+  }
+
   /**
    * Get the single todo specified by the `id` parameter in the request.
+   * <p>
+   * The response is tagged with an ETag, and a request whose `If-None-Match`
+   * still matches gets a 304 without the todo being sent. The todo is looked
+   * up first, so a missing todo is a 404 even for `If-None-Match: *`, and the
+   * tag and the todo come from the same version of the data.
    *
    * @param ctx a Javalin HTTP context
    */
   public void getTodo(Context ctx) {
     String id = ctx.pathParam("id", String.class).get();
-    Todo todo = database.getTodo(id);
-    if (todo != null) {
-      ctx.json(todo);
-      ctx.status(201);
-    } else {
+    TodoSnapshot current = database.snapshot();
+    byte[] todo = current.getTodoJson(id);
+    if (todo == null) {
       throw new NotFoundResponse("No todo with id " + id + " was found.");
     }
+    String etag = ETags.of(current.version + ":" + id);
+    if (ETags.notModified(ctx, etag, itemCacheControl)) {
+      return;
+    }
+    ctx.contentType("application/json");
+    String coding = Compression.result(ctx, new ByteArrayInputStream(todo));
+    ETags.tag(ctx, ETags.encoded(etag, coding), itemCacheControl);
+    ctx.status(201);
+  }
+
+  /**
+   * Get a JSON response with the todos whose ids are listed in the request
+   * body (see `BatchRequest`), in one round trip instead of one request per
+   * id. The todos found are streamed out in the order they were asked for;
+   * ids that match no todo are left out.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getTodosByIds(Context ctx) {
+    Iterator<byte[]> todos = database.getTodosJson(BatchRequest.ids(ctx));
+    ctx.contentType("application/json");
+    Compression.result(ctx, new JsonArrayStream(todos));
+  }
+
+  /**
+   * Get a JSON response with the number of todos for each value of each indexed
+   * field (see `DatabaseTD.getStatsJson`), so clients don't have to download every
+   * todo just to count them. Like single todos, the response is tagged with the
+   * data version and unchanged counts are answered with 304.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getTodoStats(Context ctx) {
+    TodoSnapshot current = database.snapshot();
+    String etag = ETags.of(current.version + ":_stats");
+    if (ETags.notModified(ctx, etag, listCacheControl)) {
+      return;
+    }
+    byte[] stats = current.getStatsJson();
+    ctx.contentType("application/json");
+    String coding = Compression.result(ctx, new ByteArrayInputStream(stats));
+    ETags.tag(ctx, ETags.encoded(etag, coding), listCacheControl);
   }
 
   /**
    * Get a JSON response with a list of all the todos in the "database".
+   * <p>
+   * The list is streamed out as it is produced rather than built up in
+   * memory first, so large results don't need a large buffer. Each todo's
+   * JSON is cached, so the response is mostly copying bytes. As with
+   * single todos, the response carries an ETag and unchanged results are
+   * answered with 304 before the query runs. Large lists are gzipped on
+   * the fly for clients that accept it.
    *
    * @param ctx a Javalin HTTP context
    */
   public void getTodos(Context ctx) {
-    Todo[] todos = database.listTodos(ctx.queryParamMap());
-    ctx.json(todos);
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    // Tag and run the query against the same version of the data
+    TodoSnapshot current = database.snapshot();
+    String etag = ETags.of(DatabaseTD.queryKey(current, queryParams));
+    if (ETags.notModified(ctx, etag, listCacheControl)) {
+      return;
+    }
+    // Only tag the response once the query is known to be valid
+    Iterator<byte[]> todos = database.streamTodosJson(current, queryParams);
+    ctx.contentType("application/json");
+    String coding = Compression.result(ctx, new JsonArrayStream(todos));
+    ETags.tag(ctx, ETags.encoded(etag, coding), listCacheControl);
+  }
+
+  /**
+   * Add a new todo from the JSON object in the request body, which must give
+   * every field except `_id`. The todo gets a new id, and the response is
+   * the stored todo with a 201 status.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void addTodo(Context ctx) {
+    Todo added = database.addTodo(wholeTodo(ctx));
+    ctx.json(added);
+    ctx.status(201);
+  }
+
+  /**
+   * Store the todo in the request body under the `id` parameter, replacing
+   * the todo with that id. The body must give every field except `_id`.
+   * Responds with the stored todo, with a 201 status if it is new.
+   * <p>
+   * The id must be 24 lowercase hex digits, like the ids of added todos, so
+   * that paths such as `/api/todos/_stats` can't be taken by a todo.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void putTodo(Context ctx) {
+    String id = ctx.pathParam("id", String.class).get();
+    if (!TodoWriter.isId(id)) {
+      throw new BadRequestResponse("The specified id '" + id + "' is not 24 lowercase hex digits");
+    }
+    Todo todo = wholeTodo(ctx);
+    boolean added = database.putTodo(id, todo);
+    todo._id = id;
+    ctx.json(todo);
+    ctx.status(added ? 201 : 200);
+  }
+
+  /**
+   * Change the fields given in the request body of the todo specified by the
+   * `id` parameter, for example `{"status": true}`, leaving its other fields
+   * as they are. Responds with the changed todo.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void patchTodo(Context ctx) {
+    String id = ctx.pathParam("id", String.class).get();
+    JsonObject fields = bodyFields(ctx);
+    // Check the fields before queueing the write
+    setFields(new Todo(), fields);
+    Todo updated = database.updateTodo(id, todo -> setFields(todo, fields));
+    if (updated == null) {
+      throw new NotFoundResponse("No todo with id " + id + " was found.");
+    }
+    ctx.json(updated);
+  }
+
+  /**
+   * Delete the todo specified by the `id` parameter. Responds with a 204
+   * status and no body.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void deleteTodo(Context ctx) {
+    String id = ctx.pathParam("id", String.class).get();
+    if (!database.deleteTodo(id)) {
+      throw new NotFoundResponse("No todo with id " + id + " was found.");
+    }
+    ctx.status(204);
+  }
+
+  /**
+   * Read a complete todo from the request body.
+   */
+  private static Todo wholeTodo(Context ctx) {
+    JsonObject fields = bodyFields(ctx);
+    for (String name : REQUIRED_FIELDS) {
+      if (!fields.has(name)) {
+        throw new BadRequestResponse("The todo has no '" + name + "'");
+      }
+    }
+    return setFields(new Todo(), fields);
+  }
+
+  private static JsonObject bodyFields(Context ctx) {
+    try {
+      JsonElement body = JsonParser.parseString(ctx.body());
+      if (body.isJsonObject()) {
+        return body.getAsJsonObject();
+      }
+    } catch (JsonParseException e) {
+      // Reported below, like any other body that isn't an object
+    }
+    throw new BadRequestResponse("The request body must be a JSON object");
+  }
+
+  /**
+   * Copy the fields in a request body onto a todo, checking their types.
+   */
+  private static Todo setFields(Todo todo, JsonObject fields) {
+    for (Map.Entry<String, JsonElement> field : fields.entrySet()) {
+      String name = field.getKey();
+      JsonElement value = field.getValue();
+      switch (name) {
+        case "_id":
+          // The id comes from the URL, or is made up for new todos
+          break;
+        case "owner":
+          todo.owner = string(name, value);
+          break;
+        case "category":
+          todo.category = string(name, value);
+          break;
+        case "body":
+          todo.body = string(name, value);
+          break;
+        case "status":
+          if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isBoolean()) {
+            throw new BadRequestResponse("The todo's 'status' must be true or false");
+          }
+          todo.status = value.getAsBoolean();
+          break;
+        default:
+          throw new BadRequestResponse("Todos have no '" + name + "' field");
+      }
+    }
+    return todo;
+  }
+
+  private static String string(String name, JsonElement value) {
+    if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isString()) {
+      throw new BadRequestResponse("The todo's '" + name + "' must be a string");
+    }
+    return value.getAsString();
   }
 }
@@ -0,0 +1,547 @@
+package umm3601.todo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+import io.javalin.http.BadRequestResponse;
+import umm3601.http.JsonRecordCache;
+import umm3601.query.BitmapIndex;
+import umm3601.query.Filter;
+import umm3601.query.Filters;
+import umm3601.query.Page;
+import umm3601.query.QueryPlan;
+import umm3601.query.RowCursor;
+import umm3601.query.Selection;
+import umm3601.query.SortOrder;
+import umm3601.query.TextIndex;
+
+/**
+ * An immutable, versioned snapshot of the todo data together with every index
+ * built over it.
+ * <p>
+ * Nothing in a snapshot changes after it is constructed, so any number of
+ * request threads can query one at the same time without locking. Changing
+ * the data means building a new snapshot and publishing it in its place (see
+ * `DatabaseTD.publish`); queries already running keep using the snapshot
+ * they started with.
+ */
+final class TodoSnapshot {
+
+  /**
+   * The query parameters that can change a query's result.
+   */
+  static final Set<String> PARAMETERS = Set.of("owner", "category", "status", "contains", "containsMode", "orderBy", "limit", "offset", "after");
+
+  final long version;
+
+  private final TodoStore todos;
+  private final DatabaseTD.Storage storage;
+  private final int liveSize;
+  // Cached JSON for each row, or null if JSON is encoded on every request
+  private final JsonRecordCache json;
+  private final BitmapIndex<String> ownerIndex;
+  private final BitmapIndex<String> categoryIndex;
+  private final BitmapIndex<Boolean> statusIndex;
+  private final TextIndex bodyIndex;
+  // The indexes for the opt-in `ignoreCase` and `words` modes, built the
+  // first time a query uses them; see `lowerCaseBodyIndex()`
+  private volatile TextIndex lowerCaseBodyIndex;
+  private volatile BitmapIndex<String> bodyWordIndex;
+  private final Map<String, SortOrder> sortOrders;
+  // The JSON of the counts per field, worked out the first time it is asked for
+  private volatile byte[] statsJson;
+
+  /**
+   * Build a snapshot and its indexes, except those that are built when
+   * they are first used. A store saved with its indexes and sort orders
+   * (see `ColumnarTodoStore.read`) provides them instead.
+   *
+   * @param todos   the stored todos
+   * @param storage how the todos are stored
+   * @param version the version number of this snapshot
+   */
+  TodoSnapshot(TodoStore todos, DatabaseTD.Storage storage, long version) {
+    this.version = version;
+    this.todos = todos;
+    this.storage = storage;
+    int size = todos.size();
+    liveSize = size - todos.deleted().cardinality();
+    json = storage.cachesJson ? new JsonRecordCache(size, todos::get) : null;
+    ownerIndex = todos.ownerIndex();
+    categoryIndex = todos.categoryIndex();
+    statusIndex = todos.statusIndex();
+    bodyIndex = todos.bodyIndex();
+    sortOrders = new HashMap<>();
+    for (String field : DatabaseTD.ORDERINGS.keySet()) {
+      sortOrders.put(field, SortOrder.of(todos.sortOrder(field), todos.ordering(field)));
+    }
+  }
+
+  /**
+   * Build the snapshot after a batch of writes, updating the indexes of the
+   * rows that were written rather than building them again. Everything that
+   * isn't touched by those rows is shared with the previous snapshot. Indexes
+   * the previous snapshot hadn't built yet are left for this one to build
+   * when they are first used.
+   *
+   * @param previous the snapshot the writes were made to
+   * @param todos    the todos after the writes
+   * @param changed  the rows that were replaced or added; deleted rows are
+   *                 only marked in `todos.deleted()`
+   * @param liveSize the number of todos after the writes, not counting
+   *                 deleted ones
+   * @param version  the version number of this snapshot
+   */
+  private TodoSnapshot(TodoSnapshot previous, TodoStore todos, int[] changed, int liveSize, long version) {
+    this.version = version;
+    this.todos = todos;
+    this.storage = previous.storage;
+    this.liveSize = liveSize;
+    int size = todos.size();
+    json = previous.json == null ? null : previous.json.update(size, todos::get, changed);
+    TodoStore old = previous.todos;
+    ownerIndex = previous.ownerIndex.update(changed, before(old, old::owner), after(todos::owner));
+    categoryIndex = previous.categoryIndex.update(changed, before(old, old::category), after(todos::category));
+    statusIndex = previous.statusIndex.update(changed, before(old, old::status), after(todos::status));
+    bodyIndex = previous.bodyIndex.update(size, changed, row -> row < old.size() ? old.body(row) : null,
+      todos::body);
+    TextIndex previousLowerCase = previous.lowerCaseBodyIndex;
+    if (previousLowerCase != null) {
+      lowerCaseBodyIndex = previousLowerCase.update(size, changed,
+        row -> row < old.size() ? old.body(row).toLowerCase(Locale.ROOT) : null,
+        row -> todos.body(row).toLowerCase(Locale.ROOT));
+    }
+    BitmapIndex<String> previousWords = previous.bodyWordIndex;
+    if (previousWords != null) {
+      bodyWordIndex = previousWords.update(changed,
+        row -> row < old.size() ? TextIndex.words(old.body(row)) : List.of(),
+        row -> TextIndex.words(todos.body(row)));
+    }
+    sortOrders = new HashMap<>();
+    for (String field : DatabaseTD.ORDERINGS.keySet()) {
+      sortOrders.put(field, previous.sortOrders.get(field).update(old.size(), changed, todos.ordering(field)));
+    }
+  }
+
+  /**
+   * Get the trigram index of the lower-cased bodies, building it if no query
+   * has needed it yet.
+   */
+  private TextIndex lowerCaseBodyIndex() {
+    TextIndex index = lowerCaseBodyIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = lowerCaseBodyIndex;
+        if (index == null) {
+          index = TextIndex.build(todos.size(), row -> todos.body(row).toLowerCase(Locale.ROOT));
+          lowerCaseBodyIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Get the index of the words in the bodies, building it if no query has
+   * needed it yet.
+   */
+  private BitmapIndex<String> bodyWordIndex() {
+    BitmapIndex<String> index = bodyWordIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = bodyWordIndex;
+        if (index == null) {
+          index = BitmapIndex.buildMulti(todos.size(), row -> TextIndex.words(todos.body(row)));
+          bodyWordIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
+  private static <K> IntFunction<List<K>> before(TodoStore old, IntFunction<K> field) {
+    return row -> row < old.size() ? Collections.singletonList(field.apply(row)) : List.of();
+  }
+
+  private static <K> IntFunction<List<K>> after(IntFunction<K> field) {
+    return row -> Collections.singletonList(field.apply(row));
+  }
+
+  /**
+   * Apply a batch of writes, giving a new snapshot; this one is unchanged.
+   *
+   * @param changes the new todo for each id written, or `null` for the ids
+   *                that were deleted
+   * @param version the version number of the new snapshot
+   * @return the new snapshot
+   */
+  TodoSnapshot apply(Map<String, Todo> changes, long version) {
+    PatchedTodoStore.Builder patched = new PatchedTodoStore.Builder(todos);
+    int[] changed = new int[changes.size()];
+    int count = 0;
+    int live = liveSize;
+    for (Map.Entry<String, Todo> change : changes.entrySet()) {
+      if (change.getValue() == null) {
+        if (patched.delete(change.getKey()) >= 0) {
+          live--;
+        }
+      } else {
+        int row = patched.put(change.getValue());
+        changed[count++] = row;
+        if (row >= todos.size()) {
+          live++;
+        }
+      }
+    }
+    return new TodoSnapshot(this, patched.build(), Arrays.copyOf(changed, count), live, version);
+  }
+
+  /**
+   * The number of writes made since the todos were last loaded or
+   * compacted.
+   */
+  int patches() {
+    return todos instanceof PatchedTodoStore ? ((PatchedTodoStore) todos).patches() : 0;
+  }
+
+  /**
+   * Get every todo that hasn't been deleted, in storage order.
+   */
+  Todo[] liveTodos() {
+    BitSet deleted = todos.deleted();
+    Todo[] live = new Todo[liveSize];
+    int i = 0;
+    for (int row = 0; row < todos.size(); row++) {
+      if (!deleted.get(row)) {
+        live[i++] = todos.get(row);
+      }
+    }
+    return live;
+  }
+
+  /**
+   * The number of todos, not counting deleted ones.
+   */
+  int size() {
+    return liveSize;
+  }
+
+  DatabaseTD.Storage storage() {
+    return storage;
+  }
+
+  TodoStore store() {
+    return todos;
+  }
+
+  /**
+   * See `DatabaseTD.getTodo`.
+   */
+  Todo getTodo(String id) {
+    int row = todos.find(id);
+    return row < 0 ? null : todos.get(row);
+  }
+
+  /**
+   * See `DatabaseTD.getTodoJson`.
+   */
+  byte[] getTodoJson(String id) {
+    int row = todos.find(id);
+    return row < 0 ? null : json(row);
+  }
+
+  /**
+   * See `DatabaseTD.getTodosJson`.
+   */
+  Iterator<byte[]> getTodosJson(List<String> ids) {
+    int[] rows = new int[ids.size()];
+    int count = 0;
+    BitSet seen = new BitSet();
+    for (String id : ids) {
+      int row = todos.find(id);
+      if (row >= 0 && !seen.get(row)) {
+        seen.set(row);
+        rows[count++] = row;
+      }
+    }
+    return rowsJson(rows, count);
+  }
+
+  private Iterator<byte[]> rowsJson(int[] rows, int count) {
+    return new Iterator<byte[]>() {
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        return next < count;
+      }
+
+      @Override
+      public byte[] next() {
+        if (next >= count) {
+          throw new NoSuchElementException();
+        }
+        return json(rows[next++]);
+      }
+    };
+  }
+
+  /**
+   * See `DatabaseTD.countTodos`.
+   */
+  int countTodos(Map<String, List<String>> queryParams) {
+    return QueryPlan.plan(parseFilters(queryParams), todos.size()).count(todos.deleted());
+  }
+
+  /**
+   * See `DatabaseTD.getStatsJson`.
+   */
+  byte[] getStatsJson() {
+    byte[] stats = statsJson;
+    if (stats == null) {
+      // Two threads may both count the todos; either result is fine
+      BitSet deleted = todos.deleted();
+      Map<Boolean, Integer> statuses = statusIndex.counts(deleted);
+      Map<String, Integer> status = new LinkedHashMap<>();
+      status.put("complete", statuses.getOrDefault(true, 0));
+      status.put("incomplete", statuses.getOrDefault(false, 0));
+      Map<String, Object> counts = new LinkedHashMap<>();
+      counts.put("total", liveSize);
+      counts.put("owner", new TreeMap<>(ownerIndex.counts(deleted)));
+      counts.put("category", new TreeMap<>(categoryIndex.counts(deleted)));
+      counts.put("status", status);
+      stats = JsonRecordCache.encode(counts);
+      statsJson = stats;
+    }
+    return stats;
+  }
+
+  private byte[] json(int row) {
+    return json != null ? json.get(row) : JsonRecordCache.encode(todos.get(row));
+  }
+
+  /**
+   * See `DatabaseTD.listTodos`.
+   */
+  Todo[] listTodos(Selection selection) {
+    RowCursor rows = selection.cursor();
+    Todo[] results = new Todo[rows.sizeBound()];
+    int i = 0;
+    while (rows.hasNext()) {
+      results[i++] = todos.get(rows.nextInt());
+    }
+    return i == results.length ? results : Arrays.copyOf(results, i);
+  }
+
+  /**
+   * See `DatabaseTD.streamTodos`.
+   */
+  Iterator<Todo> streamTodos(Selection selection) {
+    RowCursor rows = selection.cursor();
+    return new Iterator<Todo>() {
+      @Override
+      public boolean hasNext() {
+        return rows.hasNext();
+      }
+
+      @Override
+      public Todo next() {
+        return todos.get(rows.nextInt());
+      }
+    };
+  }
+
+  /**
+   * See `DatabaseTD.streamTodosJson`.
+   */
+  Iterator<byte[]> streamTodosJson(Selection selection) {
+    RowCursor rows = selection.cursor();
+    return new Iterator<byte[]>() {
+      @Override
+      public boolean hasNext() {
+        return rows.hasNext();
+      }
+
+      @Override
+      public byte[] next() {
+        return json(rows.nextInt());
+      }
+    };
+  }
+
+  /**
+   * Work out which rows are on the page the params ask for, and in what
+   * order. Every parameter is validated here, before any result is produced.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the rows on the requested page
+   */
+  Selection selectTodos(Map<String, List<String>> queryParams) {
+    BitSet matches = matchTodos(queryParams);
+    if (matches == null) {
+      matches = new BitSet(todos.size());
+      matches.set(0, todos.size());
+      matches.andNot(todos.deleted());
+    }
+    Page page = Page.fromQuery(queryParams);
+    SortOrder order = null;
+    if (queryParams.containsKey("orderBy")) {
+      String targetOrder = queryParams.get("orderBy").get(0);
+      order = sortOrders.get(targetOrder);
+    }
+    // Start the walk just past the cursor if one was given. A cursor todo
+    // that has been deleted still has its row, and its place in the sort
+    // orders, until the data is compacted.
+    int start = 0;
+    if (queryParams.containsKey("after")) {
+      String afterId = queryParams.get("after").get(0);
+      int afterRow = todos.find(afterId);
+      if (afterRow < 0) {
+        afterRow = todos.findDeleted(afterId);
+      }
+      if (afterRow < 0) {
+        throw new BadRequestResponse("The specified cursor '" + afterId + "' is not the id of a todo");
+      }
+      start = order == null ? afterRow + 1 : order.positionAfter(afterRow);
+    }
+    // Process other query parameters here...
+
+    return new Selection(matches, order, start, page);
+  }
+
+  /**
+   * Evaluate the filters in the params as a bitmap of matching rows.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the matching rows, or `null` if no filter was given
+   */
+  private BitSet matchTodos(Map<String, List<String>> queryParams) {
+    List<Filter> filters = parseFilters(queryParams);
+    if (filters.isEmpty()) {
+      return null;
+    }
+    // Deleted todos keep their rows, and their index entries, until the data
+    // is compacted
+    return QueryPlan.plan(filters, todos.size()).execute(todos.deleted());
+  }
+
+  /**
+   * Work out how the filters in the params would be evaluated. See
+   * `QueryPlan`.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the plan
+   */
+  QueryPlan planTodos(Map<String, List<String>> queryParams) {
+    return QueryPlan.plan(parseFilters(queryParams), todos.size());
+  }
+
+  /**
+   * Parse the filters in the params, each backed by the index that can
+   * answer it. The order they are given in doesn't matter; `QueryPlan`
+   * chooses the order to apply them in.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the filters, all of which a todo has to match
+   */
+  private List<Filter> parseFilters(Map<String, List<String>> queryParams) {
+    List<Filter> filters = new ArrayList<>();
+    // Filter owner if defined
+    if (queryParams.containsKey("owner")) {
+      String targetOwner = queryParams.get("owner").get(0);
+      filters.add(ownerIndex.filter("owner", targetOwner));
+    }
+    // Filter category if defined
+    if (queryParams.containsKey("category")) {
+      String targetCategory = queryParams.get("category").get(0);
+      filters.add(categoryIndex.filter("category", targetCategory));
+    }
+    // Filter status if defined
+    if (queryParams.containsKey("status")) {
+      String targetStatus = queryParams.get("status").get(0);
+      boolean type= true;
+      if(targetStatus.equals("incomplete")) {
+        type = false;
+      }
+      filters.add(statusIndex.filter("status", type));
+    }
+    //Filter by the body's contents if defined
+    if (queryParams.containsKey("contains")) {
+      String targetContent = queryParams.get("contains").get(0);
+      String mode = "exact";
+      if (queryParams.containsKey("containsMode")) {
+        mode = queryParams.get("containsMode").get(0);
+      }
+      addContentFilters(filters, targetContent, mode);
+    }
+    return filters;
+  }
+
+  /**
+   * Add the filters matching todos whose body contains the target.
+   * <p>
+   * The supported modes are:
+   * <ul>
+   * <li>`exact`: a case-sensitive substring match, like `String.contains`</li>
+   * <li>`ignoreCase`: a substring match ignoring case</li>
+   * <li>`words`: every word of the target appears as a whole word in the
+   * body, ignoring case and punctuation; a target with no words at all is
+   * rejected</li>
+   * </ul>
+   * The substring modes take their candidates from a trigram index, and each
+   * candidate is then verified (spread across cores when there are many, as
+   * there are for needles too short for the index); the `words` mode is a
+   * filter per word answered entirely from the index. The indexes for
+   * `ignoreCase` and `words` are only built once a query uses that mode, so
+   * the first such query takes as long as building them.
+   *
+   * @param filters       the filters to add to
+   * @param targetContent the content to look for in each todo's body
+   * @param mode          how the content should be matched
+   */
+  private void addContentFilters(List<Filter> filters, String targetContent, String mode) {
+    switch (mode) {
+      case "exact":
+        filters.add(Filters.candidates("contains", targetContent, bodyIndex.estimate(targetContent),
+          () -> bodyIndex.candidates(targetContent), row -> todos.bodyContains(row, targetContent)));
+        break;
+
+      case "ignoreCase":
+        String lowerCaseContent = targetContent.toLowerCase(Locale.ROOT);
+        TextIndex lowerCaseIndex = lowerCaseBodyIndex();
+        filters.add(Filters.candidates("containsIgnoreCase", lowerCaseContent,
+          lowerCaseIndex.estimate(lowerCaseContent), () -> lowerCaseIndex.candidates(lowerCaseContent),
+          row -> todos.body(row).toLowerCase(Locale.ROOT).contains(lowerCaseContent)));
+        break;
+
+      case "words":
+        List<String> words = TextIndex.words(targetContent);
+        if (words.isEmpty()) {
+          // With no words to look for, every todo would match
+          throw new BadRequestResponse("The specified content '" + targetContent +
+          "' has no words to match");
+        }
+        BitmapIndex<String> wordIndex = bodyWordIndex();
+        for (String word : words) {
+          filters.add(wordIndex.filter("word", word));
+        }
+        break;
+
+      default:
+        throw new BadRequestResponse("The specified containsMode '" + mode +
+        "' is not one of exact, ignoreCase or words");
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package umm3601.todo;
+
+import java.nio.IntBuffer;
+import java.util.BitSet;
+import java.util.Comparator;
+
+import umm3601.query.BitmapIndex;
+import umm3601.query.Permutations;
+import umm3601.query.TextIndex;
+
+/**
+ * Storage for the todos of one snapshot, addressed by row position.
+ * <p>
+ * A store can keep whole `Todo` objects (see `RowTodoStore`) or keep each
+ * field in its own compact column (see `ColumnarTodoStore`). Indexes are
+ * built from the per-field accessors, so they work the same over either,
+ * and `Todo` objects are only needed when a todo is actually returned.
+ */
+interface TodoStore {
+
+  /**
+   * The `deleted` bitmap of stores that never delete anything.
+   */
+  BitSet NONE = new BitSet();
+
+  /**
+   * The number of rows stored, including deleted ones.
+   */
+  int size();
+
+  /**
+   * Get the rows whose todo has been deleted. Deleting a todo keeps its row
+   * (see `PatchedTodoStore`) so no other row has to move, but the row must be
+   * left out of every result. The returned bitmap must not be modified.
+   */
+  default BitSet deleted() {
+    return NONE;
+  }
+
+  /**
+   * Get the todo at a row. Columnar stores create a new `Todo` every time.
+   */
+  Todo get(int row);
+
+  String id(int row);
+
+  String owner(int row);
+
+  String category(int row);
+
+  boolean status(int row);
+
+  String body(int row);
+
+  /**
+   * Check whether the body at a row contains a substring, as
+   * `String.contains` would.
+   */
+  boolean bodyContains(int row, String needle);
+
+  /**
+   * Find the row of the todo with the given id. If several todos share the
+   * id, the first one wins. Deleted todos are never found.
+   *
+   * @param id the id to look for
+   * @return the row, or -1 if there is no todo with that id
+   */
+  int find(String id);
+
+  /**
+   * Find the row a deleted todo was stored in. Deleted rows keep their
+   * place in the sort orders until the store is compacted, so a paging
+   * cursor naming a todo that has since been deleted can resume from where
+   * it was.
+   *
+   * @param id the id to look for
+   * @return the row, or -1 if no todo with that id was deleted from this
+   *         store
+   */
+  default int findDeleted(String id) {
+    return -1;
+  }
+
+  /**
+   * Get a comparator over row positions that orders the todos at those rows
+   * like `DatabaseTD.ORDERINGS.get(field)` orders the todos themselves.
+   *
+   * @param field one of the keys of `DatabaseTD.ORDERINGS`
+   * @return the comparator
+   */
+  Comparator<Integer> ordering(String field);
+
+  /**
+   * Get the permutation that sorts the rows by `ordering(field)`. Stores
+   * that were saved with their sort orders can return them instead of
+   * sorting again.
+   *
+   * @param field one of the keys of `DatabaseTD.ORDERINGS`
+   * @return the row positions in sorted order
+   */
+  default IntBuffer sortOrder(String field) {
+    return IntBuffer.wrap(Permutations.sort(size(), ordering(field)));
+  }
+
+  /**
+   * Get an index of the rows by owner. Stores that were saved with their
+   * indexes can return them instead of building them again.
+   */
+  default BitmapIndex<String> ownerIndex() {
+    return BitmapIndex.build(size(), this::owner);
+  }
+
+  /**
+   * Get an index of the rows by category, like `ownerIndex`.
+   */
+  default BitmapIndex<String> categoryIndex() {
+    return BitmapIndex.build(size(), this::category);
+  }
+
+  /**
+   * Get an index of the rows by status, like `ownerIndex`.
+   */
+  default BitmapIndex<Boolean> statusIndex() {
+    return BitmapIndex.build(size(), this::status);
+  }
+
+  /**
+   * Get a trigram index of the bodies, like `ownerIndex`.
+   */
+  default TextIndex bodyIndex() {
+    return TextIndex.build(size(), this::body);
+  }
+}
@@ -0,0 +1,461 @@
+package umm3601.todo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.Gson;
+
+import umm3601.http.JsonRecordCache;
+import umm3601.query.WriteAheadLog;
+
+/**
+ * Applies writes to a `DatabaseTD` on a single committer thread, logging
+ * them first so they survive a restart.
+ * <p>
+ * Request threads queue their writes and wait. The committer takes every
+ * write that is waiting (up to `maxBatch`) as one batch: it works out each
+ * todo's new value, appends the values to the log, syncs the log once for
+ * the whole batch (group commit), and then publishes one new snapshot with
+ * the batch applied. The snapshot's indexes are updated only for the todos
+ * that were written, and only then are the writers told they succeeded, so
+ * a todo can be read back as soon as writing it returns.
+ * <p>
+ * The log lives in a directory as numbered segments, `todos-N.log`, next to
+ * a snapshot file, `todos.bin`, holding everything older than the oldest
+ * segment. Once enough writes have built up, or some time has passed since
+ * the last compaction, the committer starts a new segment and a background
+ * thread writes out a fresh snapshot, deletes the segments it covers, and
+ * builds fresh indexes without the patches. Writes go on meanwhile; they are
+ * applied to the compacted snapshot before it is published. Log records
+ * hold a todo's whole new value (or its deletion), so replaying a record
+ * that the snapshot already includes does no harm.
+ * <p>
+ * Without a directory nothing is logged, but writes are still batched,
+ * applied and compacted the same way.
+ */
+final class TodoWriter implements Closeable {
+
+  static final String SNAPSHOT_FILE = "todos" + DatabaseTD.SNAPSHOT_SUFFIX;
+  static final int DEFAULT_COMPACT_AFTER = 10_000;
+  static final long DEFAULT_COMPACT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private static final Pattern SEGMENT = Pattern.compile("todos-(\\d+)\\.log");
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  private static final Gson GSON = new Gson();
+  private static final AtomicLong IDS = new AtomicLong(ThreadLocalRandom.current().nextLong());
+  private static final Pattern ID = Pattern.compile("[0-9a-f]{24}");
+
+  // Queued by `close` and by the compactor to wake the committer
+  private static final Write CLOSE = new Write(null, null);
+  private static final Write COMPACTED = new Write(null, null);
+
+  private final DatabaseTD database;
+  private final Path directory;
+  private final int maxBatch;
+  private final int compactAfter;
+  private final long compactMillis;
+  private final BlockingQueue<Write> pending = new LinkedBlockingQueue<>();
+  private final Thread committer;
+  private boolean closed;
+
+  // Only used by the committer thread once it has started
+  private WriteAheadLog log;
+  private long segment;
+  private IOException failure;
+  private long lastCompaction = System.currentTimeMillis();
+  private CompletableFuture<TodoSnapshot> compaction;
+  private TodoSnapshot latest;
+  private Map<String, Todo> sinceCompaction;
+
+  /**
+   * A write waiting to be committed, and then its outcome.
+   */
+  static final class Write {
+    final String id;
+    final UnaryOperator<Todo> change;
+    final CompletableFuture<Write> done = new CompletableFuture<>();
+    Todo before;
+    Todo after;
+
+    Write(String id, UnaryOperator<Todo> change) {
+      this.id = id;
+      this.change = change;
+    }
+  }
+
+  /**
+   * Start applying writes to a database.
+   *
+   * @param database      the database
+   * @param directory     the directory of the log, or `null` to keep writes
+   *                      in memory only; if it already holds a snapshot and
+   *                      log, they are loaded into the database first
+   * @param maxBatch      the most writes to commit together; 1 syncs every
+   *                      write on its own
+   * @param compactAfter  how many todos can be written before compacting
+   * @param compactMillis how long to wait before compacting fewer writes
+   * @throws IOException if the log can't be read or opened
+   */
+  TodoWriter(DatabaseTD database, Path directory, int maxBatch, int compactAfter, long compactMillis)
+      throws IOException {
+    this.database = database;
+    this.directory = directory;
+    this.maxBatch = maxBatch;
+    this.compactAfter = compactAfter;
+    this.compactMillis = compactMillis;
+    if (directory != null) {
+      recover();
+    }
+    committer = new Thread(this::run, "todo-committer");
+    committer.setDaemon(true);
+    committer.start();
+  }
+
+  /**
+   * Load the snapshot and replay the log, then start a new segment.
+   */
+  private void recover() throws IOException {
+    Files.createDirectories(directory);
+    Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+    if (Files.exists(snapshotFile)) {
+      database.reload(snapshotFile);
+    }
+    Map<String, Todo> changes = new LinkedHashMap<>();
+    for (long n : segments()) {
+      WriteAheadLog.replay(segmentFile(n), record -> decode(record, changes));
+      segment = n;
+    }
+    if (!changes.isEmpty()) {
+      database.apply(changes);
+    }
+    segment++;
+    log = WriteAheadLog.open(segmentFile(segment));
+  }
+
+  /**
+   * Queue a write and wait for it to be committed.
+   *
+   * @param id     the id of the todo to write
+   * @param change given a copy of the todo (or `null` if there is none),
+   *               returns its new value (or `null` to delete it); its `_id`
+   *               is set to `id`
+   * @return the outcome of the write
+   * @throws UncheckedIOException if the write couldn't be logged
+   */
+  Write write(String id, UnaryOperator<Todo> change) {
+    Write write = new Write(id, change);
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("The todo writer is closed");
+      }
+      pending.add(write);
+    }
+    try {
+      return write.done.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw new UncheckedIOException((IOException) e.getCause());
+      }
+      throw (RuntimeException) e.getCause();
+    }
+  }
+
+  /**
+   * Commit the writes already queued, finish any compaction, and stop.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      pending.add(CLOSE);
+    }
+    try {
+      committer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (log != null) {
+      log.close();
+    }
+  }
+
+  private void run() {
+    List<Write> batch = new ArrayList<>();
+    while (true) {
+      Write first;
+      try {
+        first = pending.poll(compactMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      batch.clear();
+      if (first != null) {
+        batch.add(first);
+        pending.drainTo(batch, maxBatch - 1);
+      }
+      boolean close = batch.remove(CLOSE);
+      batch.remove(COMPACTED);
+      if (!batch.isEmpty()) {
+        commit(batch);
+      }
+      if (close) {
+        if (compaction != null) {
+          compaction.handle((compacted, e) -> null).join();
+          finishCompaction();
+        }
+        return;
+      }
+      if (compaction != null && compaction.isDone()) {
+        finishCompaction();
+      }
+      if (compaction == null && compactionDue()) {
+        startCompaction();
+      }
+    }
+  }
+
+  private void commit(List<Write> writes) {
+    List<Write> accepted = new ArrayList<>(writes.size());
+    synchronized (database) {
+      TodoSnapshot current = database.snapshot();
+      // The new value of each todo written, or null for deleted ones
+      Map<String, Todo> changes = new LinkedHashMap<>();
+      for (Write write : writes) {
+        Todo before = changes.containsKey(write.id) ? changes.get(write.id) : current.getTodo(write.id);
+        try {
+          Todo after = write.change.apply(before == null ? null : copy(before));
+          if (after != null) {
+            after._id = write.id;
+            validate(after);
+          }
+          write.before = before;
+          write.after = after;
+        } catch (RuntimeException e) {
+          write.done.completeExceptionally(e);
+          continue;
+        }
+        if (write.before != null || write.after != null) {
+          changes.put(write.id, write.after);
+        }
+        accepted.add(write);
+      }
+      try {
+        if (failure != null) {
+          // Part of a batch may have reached a log that then failed; nothing
+          // after it can be trusted to replay correctly
+          throw failure;
+        }
+        if (log != null && !changes.isEmpty()) {
+          for (Map.Entry<String, Todo> change : changes.entrySet()) {
+            log.append(encode(change.getKey(), change.getValue()));
+          }
+          log.sync();
+        }
+      } catch (IOException e) {
+        failure = e;
+        accepted.forEach(write -> write.done.completeExceptionally(e));
+        return;
+      }
+      if (!changes.isEmpty()) {
+        try {
+          TodoSnapshot next = current.apply(changes, database.nextVersion());
+          database.publish(next);
+          if (compaction != null) {
+            latest = next;
+            sinceCompaction.putAll(changes);
+          }
+        } catch (RuntimeException e) {
+          // The log now holds writes the data doesn't
+          failure = new IOException("Failed to apply logged writes", e);
+          accepted.forEach(write -> write.done.completeExceptionally(e));
+          return;
+        }
+      }
+    }
+    accepted.forEach(write -> write.done.complete(write));
+  }
+
+  private boolean compactionDue() {
+    int patches = database.snapshot().patches();
+    return patches >= compactAfter
+      || (patches > 0 && System.currentTimeMillis() - lastCompaction >= compactMillis);
+  }
+
+  /**
+   * Start a new log segment, and compact everything before it in the
+   * background.
+   */
+  private void startCompaction() {
+    synchronized (database) {
+      TodoSnapshot base = database.snapshot();
+      long upTo = segment;
+      if (log != null) {
+        try {
+          log.close();
+          segment++;
+          log = WriteAheadLog.open(segmentFile(segment));
+        } catch (IOException e) {
+          failure = e;
+          return;
+        }
+      }
+      CompletableFuture<TodoSnapshot> result = new CompletableFuture<>();
+      compaction = result;
+      latest = base;
+      sinceCompaction = new LinkedHashMap<>();
+      Thread compactor = new Thread(() -> {
+        try {
+          result.complete(compact(base, upTo));
+        } catch (IOException | RuntimeException e) {
+          result.completeExceptionally(e);
+        }
+        pending.add(COMPACTED);
+      }, "todo-compactor");
+      compactor.setDaemon(true);
+      compactor.start();
+    }
+  }
+
+  /**
+   * Build a snapshot holding the same todos as `base` but none of its
+   * patches, saving it and dropping the log segments it covers.
+   */
+  private TodoSnapshot compact(TodoSnapshot base, long upTo) throws IOException {
+    Todo[] live = base.liveTodos();
+    DatabaseTD.Storage storage = base.storage();
+    TodoStore store;
+    if (directory != null) {
+      Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+      DatabaseTD.writeSnapshot(ColumnarTodoStore.of(live), snapshotFile);
+      for (long n : segments()) {
+        if (n <= upTo) {
+          Files.delete(segmentFile(n));
+        }
+      }
+      store = storage == DatabaseTD.Storage.COLUMNS ? ColumnarTodoStore.read(snapshotFile) : storage.store(live);
+    } else {
+      store = storage.store(live);
+    }
+    return new TodoSnapshot(store, storage, database.nextVersion());
+  }
+
+  /**
+   * Publish a finished compaction, with the writes made while it ran.
+   */
+  private void finishCompaction() {
+    synchronized (database) {
+      try {
+        TodoSnapshot compacted = compaction.join();
+        // Data published by someone else (say a reload) replaces ours
+        if (database.snapshot() == latest) {
+          if (!sinceCompaction.isEmpty()) {
+            compacted = compacted.apply(sinceCompaction, database.nextVersion());
+          }
+          database.publish(compacted);
+        }
+      } catch (CompletionException e) {
+        System.err.println("Failed to compact the todos; keeping the current data and log.");
+        e.getCause().printStackTrace(System.err);
+      } finally {
+        compaction = null;
+        latest = null;
+        sinceCompaction = null;
+        lastCompaction = System.currentTimeMillis();
+      }
+    }
+  }
+
+  private List<Long> segments() throws IOException {
+    List<Long> segments = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Matcher matcher = SEGMENT.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+          segments.add(Long.parseLong(matcher.group(1)));
+        }
+      }
+    }
+    segments.sort(null);
+    return segments;
+  }
+
+  private Path segmentFile(long n) {
+    return directory.resolve("todos-" + n + ".log");
+  }
+
+  private static byte[] encode(String id, Todo todo) {
+    byte[] payload = todo != null ? JsonRecordCache.encode(todo) : id.getBytes(StandardCharsets.UTF_8);
+    byte[] record = new byte[payload.length + 1];
+    record[0] = todo != null ? PUT : DELETE;
+    System.arraycopy(payload, 0, record, 1, payload.length);
+    return record;
+  }
+
+  private static void decode(byte[] record, Map<String, Todo> changes) {
+    String payload = new String(record, 1, record.length - 1, StandardCharsets.UTF_8);
+    if (record[0] == PUT) {
+      Todo todo = GSON.fromJson(payload, Todo.class);
+      changes.put(todo._id, todo);
+    } else if (record[0] == DELETE) {
+      changes.put(payload, null);
+    } else {
+      throw new IllegalStateException("Unknown todo log record type " + record[0]);
+    }
+  }
+
+  /**
+   * Make an id for a new todo, in the same 24 hex digit format as the ids
+   * in the bundled data: a timestamp followed by a counter.
+   */
+  static String newId() {
+    return String.format("%08x%016x", System.currentTimeMillis() / 1000, IDS.incrementAndGet());
+  }
+
+  /**
+   * Check whether a todo could have an id, i.e. whether it is 24 lowercase
+   * hex digits like the ids `newId` makes. Anything else, such as `_stats`,
+   * would be shadowed by another route or never be found again.
+   */
+  static boolean isId(String id) {
+    return ID.matcher(id).matches();
+  }
+
+  static Todo copy(Todo todo) {
+    Todo copy = new Todo();
+    copy._id = todo._id;
+    copy.owner = todo.owner;
+    copy.status = todo.status;
+    copy.body = todo.body;
+    copy.category = todo.category;
+    return copy;
+  }
+
+  private static void validate(Todo todo) {
+    if (todo.owner == null || todo.category == null || todo.body == null) {
+      throw new IllegalArgumentException("A todo needs an owner, a category and a body");
+    }
+  }
+}
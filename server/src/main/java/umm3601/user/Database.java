@@ -1,14 +1,34 @@
 package umm3601.user;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
-import com.google.gson.Gson;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
-import io.javalin.http.BadRequestResponse;
+import umm3601.query.ColumnFileReader;
+import umm3601.query.ColumnFileWriter;
+import umm3601.query.JsonLoader;
+import umm3601.query.LoadReport;
+import umm3601.query.Parallel;
+import umm3601.query.QueryCache;
+import umm3601.query.QueryKey;
+import umm3601.query.ScratchRows;
+import umm3601.query.Selection;
 
 /**
  * A fake "database" of user info
@@ -20,16 +40,209 @@ import io.javalin.http.BadRequestResponse;
  */
 public class Database {
 
-  private User[] allUsers;
+  /**
+   * Identifies user snapshot files, and their format version.
+   */
+  static final String SNAPSHOT_MAGIC = "UMMUSER1";
+
+  /**
+   * The file name suffix of binary snapshot files.
+   */
+  public static final String SNAPSHOT_SUFFIX = ".bin";
+
+  private static final int CACHE_ENTRIES = 1024;
+  private static final long CACHE_WEIGHT = 64L * 1024 * 1024;
+
+  private final AtomicLong versions = new AtomicLong();
+  private final QueryCache<Selection> queryCache = new QueryCache<>(CACHE_ENTRIES, CACHE_WEIGHT, Selection::weight);
+  private volatile UserSnapshot snapshot;
+  private volatile LoadReport loadReport;
 
   public Database(String userDataFile) throws IOException {
-    Gson gson = new Gson();
-    InputStreamReader reader = new InputStreamReader(getClass().getResourceAsStream(userDataFile));
-    allUsers = gson.fromJson(reader, User[].class);
+    this(openResource(userDataFile));
+  }
+
+  /**
+   * Load users from a JSON array, streaming them in one at a time. How long
+   * that took and how much memory it used is available from `loadReport`.
+   *
+   * @param reader the JSON text; it is closed once it has been read
+   * @throws IOException if the text can't be read or isn't an array of users
+   */
+  public Database(Reader reader) throws IOException {
+    LoadReport.Probe probe = LoadReport.start();
+    publish(readJson(reader), false);
+    loadReport = probe.finish(size());
+  }
+
+  public Database(User[] users) {
+    publish(users);
+  }
+
+  /**
+   * Load users from a data file on disk. See `reload`.
+   *
+   * @param dataFile a binary snapshot (`.bin`) or JSON file
+   * @throws IOException if the file can't be read or doesn't hold users
+   */
+  public Database(Path dataFile) throws IOException {
+    reload(dataFile);
+  }
+
+  /**
+   * Replace the users with the contents of a data file, like `publish`.
+   * <p>
+   * A file whose name ends in `.bin` is a binary snapshot written by
+   * `writeSnapshot`. There are few enough users that they are simply read
+   * back into `User` objects, which is still much quicker than parsing JSON;
+   * unlike todos they aren't queried in place. Any other file is read as
+   * JSON. If the file can't be loaded, the current users stay in place.
+   *
+   * @param dataFile a binary snapshot (`.bin`) or JSON file
+   * @throws IOException if the file can't be read or doesn't hold users
+   */
+  public void reload(Path dataFile) throws IOException {
+    LoadReport.Probe probe = LoadReport.start();
+    if (dataFile.getFileName().toString().endsWith(SNAPSHOT_SUFFIX)) {
+      publish(readSnapshot(dataFile), false);
+    } else {
+      publish(readJson(Files.newBufferedReader(dataFile, StandardCharsets.UTF_8)), false);
+    }
+    loadReport = probe.finish(size());
+  }
+
+  /**
+   * Save the current users as a binary snapshot file that can be opened
+   * with `Database(Path)`. This is how `users.json` is converted.
+   * <p>
+   * The snapshot is written to a temporary file and then renamed into place,
+   * so a server watching the old file never reads a half-written one.
+   *
+   * @param snapshotFile the file to write
+   * @throws IOException if the file can't be written
+   */
+  public void writeSnapshot(Path snapshotFile) throws IOException {
+    User[] users = listUsers(new HashMap<>());
+    Path directory = snapshotFile.toAbsolutePath().getParent();
+    Path temporary = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+    try {
+      try (ColumnFileWriter out = new ColumnFileWriter(temporary, SNAPSHOT_MAGIC)) {
+        out.writeInt(users.length);
+        for (User user : users) {
+          out.writeString(user._id);
+          out.writeString(user.name);
+          out.writeInt(user.age);
+          out.writeString(user.company);
+          out.writeString(user.email);
+        }
+      }
+      Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Replace the user data, rebuilding every index over it.
+   * <p>
+   * The new data is indexed off to the side and then swapped in with a
+   * single write, so readers never see a half-built index. Queries that are
+   * already running finish against the data they started with.
+   *
+   * @param users the new users, in storage order
+   */
+  public void publish(User[] users) {
+    publish(users, true);
+  }
+
+  private synchronized void publish(User[] users, boolean copy) {
+    snapshot = new UserSnapshot(copy ? users.clone() : users, versions.incrementAndGet());
+    queryCache.invalidate();
+  }
+
+  UserSnapshot snapshot() {
+    return snapshot;
+  }
+
+  private static User[] readJson(Reader reader) throws IOException {
+    // Share one copy of each company instead of one per user
+    Interner<String> companies = Interners.newStrongInterner();
+    List<User> users = new ArrayList<>();
+    try (Reader in = reader) {
+      JsonLoader.forEach(in, User.class, user -> {
+        user.company = intern(companies, user.company);
+        users.add(user);
+      });
+    }
+    return users.toArray(new User[0]);
+  }
+
+  private static User[] readSnapshot(Path snapshotFile) throws IOException {
+    try (ColumnFileReader in = new ColumnFileReader(snapshotFile, SNAPSHOT_MAGIC)) {
+      User[] users = new User[in.readInt()];
+      for (int i = 0; i < users.length; i++) {
+        User user = new User();
+        user._id = in.readString();
+        user.name = in.readString();
+        user.age = in.readInt();
+        user.company = in.readString();
+        user.email = in.readString();
+        users[i] = user;
+      }
+      return users;
+    }
+  }
+
+  private static String intern(Interner<String> strings, String value) {
+    return value == null ? null : strings.intern(value);
+  }
+
+  private static Reader openResource(String resource) throws IOException {
+    InputStream stream = Database.class.getResourceAsStream(resource);
+    if (stream == null) {
+      throw new IOException("There is no user data file " + resource);
+    }
+    return new InputStreamReader(stream, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Get how long loading the users took and how much memory it needed, or
+   * `null` if they weren't loaded from a file.
+   */
+  public LoadReport loadReport() {
+    return loadReport;
+  }
+
+  /**
+   * Get the cache of query results, for example to check its hit rate. It is
+   * emptied every time new data is published.
+   */
+  public QueryCache<Selection> queryCache() {
+    return queryCache;
+  }
+
+  /**
+   * Get the version number of the current data. It changes every time new
+   * data is published.
+   */
+  public long version() {
+    return snapshot.version;
+  }
+
+  /**
+   * Get a key identifying the result of a query against the current data:
+   * the data version plus the query in canonical form. Two calls return the
+   * same key only if the query would return the same users.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the key
+   */
+  public String queryKey(Map<String, List<String>> queryParams) {
+    return queryKey(snapshot, queryParams);
   }
 
   public int size() {
-    return allUsers.length;
+    return snapshot.size();
   }
 
   /**
@@ -40,36 +253,126 @@ public class Database {
    * @return the user with the given ID, or null if there is no user with that ID
    */
   public User getUser(String id) {
-    return Arrays.stream(allUsers).filter(x -> x._id.equals(id)).findFirst().orElse(null);
+    return snapshot.getUser(id);
+  }
+
+  /**
+   * Get the JSON encoding of the single user specified by the given ID, or
+   * `null` if there is no user with that ID. Each user is only serialized once,
+   * so repeated requests just reuse the same bytes.
+   *
+   * @param id the ID of the desired user
+   * @return the user's JSON encoding, or null if there is no user with that ID
+   */
+  public byte[] getUserJson(String id) {
+    return snapshot.getUserJson(id);
+  }
+
+  /**
+   * Get the JSON encoding of each user whose id is listed, looking each id up
+   * once, all in the same version of the data. The users come back in the
+   * order their ids are listed; ids of missing users are skipped, and a user
+   * listed twice is only returned once.
+   *
+   * @param ids the ids of the desired users
+   * @return an iterator over the JSON of the users found
+   */
+  public Iterator<byte[]> getUsersJson(List<String> ids) {
+    return snapshot.getUsersJson(ids);
+  }
+
+  /**
+   * Get the JSON encoding of how many users there are in total, of each age
+   * and at each company, like
+   * `{"total": 3, "age": {"25": 2, "40": 1}, "company": {"OHMNET": 3}}`.
+   * The counts come straight from the indexes without looking at any user,
+   * and are only worked out once for each version of the data.
+   *
+   * @return the counts' JSON encoding
+   */
+  public byte[] getStatsJson() {
+    return snapshot.getStatsJson();
+  }
+
+  /**
+   * Count the users matching the age and company filters in the params,
+   * without materializing any of them. Paging parameters are ignored. A
+   * single age range or company is counted straight from its index; other
+   * queries are worked out in a reused per-thread bitmap, so counting
+   * allocates next to nothing.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the number of users matching the given criteria
+   */
+  public int countUsers(Map<String, List<String>> queryParams) {
+    return snapshot.countUsers(queryParams);
   }
 
   /**
    * Get an array of all the users satisfying the queries in the params.
+   * <p>
+   * `age` and `company` can each be given several times to match users with
+   * any of the values, and `minAge` and `maxAge` match an inclusive range of
+   * ages; either can be left out. Ranges are looked up in a sorted index, so
+   * they cost the same however many ages they cover.
+   * <p>
+   * A page of the results can be picked either with `offset`, or with
+   * `after`, a cursor naming the `_id` of the last user on the previous page.
+   * `limit` caps the size of the page.
    *
    * @param queryParams map of key-value pairs for the query
    * @return an array of all the users matching the given criteria
    */
   public User[] listUsers(Map<String, List<String>> queryParams) {
-    User[] filteredUsers = allUsers;
-
-    // Filter age if defined
-    if (queryParams.containsKey("age")) {
-      String ageParam = queryParams.get("age").get(0);
-      try {
-        int targetAge = Integer.parseInt(ageParam);
-        filteredUsers = filterUsersByAge(filteredUsers, targetAge);
-      } catch (NumberFormatException e) {
-        throw new BadRequestResponse("Specified age '" + ageParam + "' can't be parsed to an integer");
-      }
-    }
-    // Filter company if defined
-    if (queryParams.containsKey("company")) {
-      String targetCompany = queryParams.get("company").get(0);
-      filteredUsers = filterUsersByCompany(filteredUsers, targetCompany);
-    }
-    // Process other query parameters here...
+    UserSnapshot current = snapshot;
+    return current.listUsers(select(current, queryParams));
+  }
+
+  /**
+   * Lazily produce the users that `listUsers` would return, in the same order.
+   * <p>
+   * The params are validated before this returns, but each user is only looked
+   * up when the iterator reaches it, so callers can write results out as they
+   * go instead of holding the whole list in memory. The iterator keeps
+   * reading from the data that was current when it was created.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return an iterator over the users matching the given criteria
+   */
+  public Iterator<User> streamUsers(Map<String, List<String>> queryParams) {
+    UserSnapshot current = snapshot;
+    return current.streamUsers(select(current, queryParams));
+  }
 
-    return filteredUsers;
+  /**
+   * Like `streamUsers`, but produce the JSON encoding of each user. Each user is
+   * only serialized once, so list responses just join cached bytes together.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return an iterator over the JSON of the users matching the given criteria
+   */
+  public Iterator<byte[]> streamUsersJson(Map<String, List<String>> queryParams) {
+    return streamUsersJson(snapshot, queryParams);
+  }
+
+  /**
+   * Like `streamUsersJson`, but against a snapshot the caller already has, so
+   * the response can be tagged with the version of the data it came from.
+   */
+  Iterator<byte[]> streamUsersJson(UserSnapshot current, Map<String, List<String>> queryParams) {
+    return current.streamUsersJson(select(current, queryParams));
+  }
+
+  /**
+   * Evaluate a query against a snapshot, reusing a cached result when the
+   * same query (in canonical form) was already run against that snapshot.
+   */
+  private Selection select(UserSnapshot current, Map<String, List<String>> queryParams) {
+    return queryCache.get(queryKey(current, queryParams), () -> current.selectUsers(queryParams));
+  }
+
+  static String queryKey(UserSnapshot current, Map<String, List<String>> queryParams) {
+    return current.version + ":" + QueryKey.normalize(queryParams, UserSnapshot.PARAMETERS);
   }
 
   /**
@@ -81,7 +384,24 @@ public class Database {
    *         age
    */
   public User[] filterUsersByAge(User[] users, int targetAge) {
-    return Arrays.stream(users).filter(x -> x.age == targetAge).toArray(User[]::new);
+    if (Parallel.segments(users.length) > 1) {
+      // Big enough to be worth scanning on every core
+      return Parallel.stream(users).filter(x -> x.age == targetAge).toArray(User[]::new);
+    }
+    // Compare the primitive ages in a plain loop, marking matches in a
+    // reused bitmap, so the only thing allocated is the exactly-sized result
+    BitSet matches = ScratchRows.bitmap(users.length);
+    for (int i = 0; i < users.length; i++) {
+      if (users[i].age == targetAge) {
+        matches.set(i);
+      }
+    }
+    User[] results = new User[matches.cardinality()];
+    int count = 0;
+    for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+      results[count++] = users[i];
+    }
+    return results;
   }
 
   /**
@@ -93,7 +413,20 @@ public class Database {
    *         company
    */
   public User[] filterUsersByCompany(User[] users, String targetCompany) {
-    return Arrays.stream(users).filter(x -> x.company.equals(targetCompany)).toArray(User[]::new);
+    return Parallel.stream(users).filter(x -> x.company.equals(targetCompany)).toArray(User[]::new);
+  }
+
+  /**
+   * Get an array of all the users whose age is in a range.
+   *
+   * @param users  the list of users to filter by age
+   * @param minAge the youngest age to keep
+   * @param maxAge the oldest age to keep
+   * @return an array of all the users from the given list that are between
+   *         the two ages, inclusive
+   */
+  public User[] filterUsersByAgeRange(User[] users, int minAge, int maxAge) {
+    return Parallel.stream(users).filter(x -> x.age >= minAge && x.age <= maxAge).toArray(User[]::new);
   }
 
 }
@@ -1,7 +1,16 @@
 package umm3601.user;
 
+import java.io.ByteArrayInputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 import io.javalin.http.Context;
 import io.javalin.http.NotFoundResponse;
+import umm3601.http.BatchRequest;
+import umm3601.http.Compression;
+import umm3601.http.ETags;
+import umm3601.http.JsonArrayStream;
 
 /**
  * Controller that manages requests for info about users.
@@ -9,6 +18,8 @@ import io.javalin.http.NotFoundResponse;
 public class UserController {
 
   private Database database;
+  private String listCacheControl = ETags.DEFAULT_CACHE_CONTROL;
+  private String itemCacheControl = ETags.DEFAULT_CACHE_CONTROL;
 
   /**
    * Construct a controller for users.
@@ -23,30 +34,110 @@ public class UserController {
     this.database = database;
   }
 
+  /**
+   * Set the `Cache-Control` header sent with user list responses.
+   *
+   * @param cacheControl the header value, or `null` to send none
+   */
+  public void setListCacheControl(String cacheControl) {
+    this.listCacheControl = cacheControl;
+  }
+
+  /**
+   * Set the `Cache-Control` header sent with single-user responses.
+   *
+   * @param cacheControl the header value, or `null` to send none
+   */
+  public void setItemCacheControl(String cacheControl) {
+    this.itemCacheControl = cacheControl;
+  }
+
   /**
    * Get the single user specified by the `id` parameter in the request.
+   * <p>
+   * The response is tagged with an ETag, and a request whose `If-None-Match`
+   * still matches gets a 304 without the user being sent. The user is looked
+   * up first, so a missing user is a 404 even for `If-None-Match: *`, and the
+   * tag and the user come from the same version of the data.
    *
    * @param ctx a Javalin HTTP context
    */
   public void getUser(Context ctx) {
     String id = ctx.pathParam("id", String.class).get();
-    User user = database.getUser(id);
-    if (user != null) {
-      ctx.json(user);
-      ctx.status(201);
-    } else {
+    UserSnapshot current = database.snapshot();
+    byte[] user = current.getUserJson(id);
+    if (user == null) {
       throw new NotFoundResponse("No user with id " + id + " was found.");
     }
+    String etag = ETags.of(current.version + ":" + id);
+    if (ETags.notModified(ctx, etag, itemCacheControl)) {
+      return;
+    }
+    ctx.contentType("application/json");
+    String coding = Compression.result(ctx, new ByteArrayInputStream(user));
+    ETags.tag(ctx, ETags.encoded(etag, coding), itemCacheControl);
+    ctx.status(201);
+  }
+
+  /**
+   * Get a JSON response with the users whose ids are listed in the request
+   * body (see `BatchRequest`), in one round trip instead of one request per
+   * id. The users found are streamed out in the order they were asked for;
+   * ids that match no user are left out.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getUsersByIds(Context ctx) {
+    Iterator<byte[]> users = database.getUsersJson(BatchRequest.ids(ctx));
+    ctx.contentType("application/json");
+    Compression.result(ctx, new JsonArrayStream(users));
+  }
+
+  /**
+   * Get a JSON response with the number of users for each value of each indexed
+   * field (see `Database.getStatsJson`), so clients don't have to download every
+   * user just to count them. Like single users, the response is tagged with the
+   * data version and unchanged counts are answered with 304.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getUserStats(Context ctx) {
+    UserSnapshot current = database.snapshot();
+    String etag = ETags.of(current.version + ":_stats");
+    if (ETags.notModified(ctx, etag, listCacheControl)) {
+      return;
+    }
+    byte[] stats = current.getStatsJson();
+    ctx.contentType("application/json");
+    String coding = Compression.result(ctx, new ByteArrayInputStream(stats));
+    ETags.tag(ctx, ETags.encoded(etag, coding), listCacheControl);
   }
 
   /**
    * Get a JSON response with a list of all the users in the "database".
+   * <p>
+   * The list is streamed out as it is produced rather than built up in
+   * memory first, so large results don't need a large buffer. Each user's
+   * JSON is cached, so the response is mostly copying bytes. As with
+   * single users, the response carries an ETag and unchanged results are
+   * answered with 304 before the query runs. Large lists are gzipped on
+   * the fly for clients that accept it.
    *
    * @param ctx a Javalin HTTP context
    */
   public void getUsers(Context ctx) {
-    User[] users = database.listUsers(ctx.queryParamMap());
-    ctx.json(users);
+    Map<String, List<String>> queryParams = ctx.queryParamMap();
+    // Tag and run the query against the same version of the data
+    UserSnapshot current = database.snapshot();
+    String etag = ETags.of(Database.queryKey(current, queryParams));
+    if (ETags.notModified(ctx, etag, listCacheControl)) {
+      return;
+    }
+    // Only tag the response once the query is known to be valid
+    Iterator<byte[]> users = database.streamUsersJson(current, queryParams);
+    ctx.contentType("application/json");
+    String coding = Compression.result(ctx, new JsonArrayStream(users));
+    ETags.tag(ctx, ETags.encoded(etag, coding), listCacheControl);
   }
 
 }
@@ -0,0 +1,284 @@
+package umm3601.user;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import io.javalin.http.BadRequestResponse;
+import umm3601.http.JsonRecordCache;
+import umm3601.query.Filter;
+import umm3601.query.Filters;
+import umm3601.query.Page;
+import umm3601.query.PostingLists;
+import umm3601.query.QueryPlan;
+import umm3601.query.RangeIndex;
+import umm3601.query.RowCursor;
+import umm3601.query.Selection;
+
+/**
+ * An immutable, versioned snapshot of the user data together with every index
+ * built over it.
+ * <p>
+ * Nothing in a snapshot changes after it is constructed, so any number of
+ * request threads can query one at the same time without locking. Changing
+ * the data means building a new snapshot and publishing it in its place (see
+ * `Database.publish`).
+ */
+final class UserSnapshot {
+
+  /**
+   * The query parameters that can change a query's result.
+   */
+  static final Set<String> PARAMETERS = Set.of("age", "minAge", "maxAge", "company", "limit", "offset", "after");
+
+  // Users are never deleted in place, so no rows are excluded from queries
+  private static final BitSet NONE = new BitSet();
+
+  final long version;
+
+  private final User[] users;
+  private final JsonRecordCache json;
+  private final Map<String, Integer> rowsById;
+  private final RangeIndex ageIndex;
+  private final Map<String, int[]> companyIndex;
+  // The JSON of the counts per field, worked out the first time it is asked for
+  private volatile byte[] statsJson;
+
+  /**
+   * Build a snapshot and all of its indexes.
+   *
+   * @param users   the users, in storage order; the snapshot takes ownership
+   *                of the array, so the caller must not change it afterwards
+   * @param version the version number of this snapshot
+   */
+  UserSnapshot(User[] users, long version) {
+    this.version = version;
+    this.users = users;
+    this.json = new JsonRecordCache(users.length, row -> users[row]);
+    rowsById = new HashMap<>(users.length * 4 / 3 + 1);
+    for (int row = 0; row < users.length; row++) {
+      // Keep the first user for a duplicated id, matching the old linear scan
+      rowsById.putIfAbsent(users[row]._id, row);
+    }
+    ageIndex = RangeIndex.build(users.length, row -> users[row].age);
+    companyIndex = PostingLists.build(users, user -> user.company);
+  }
+
+  int size() {
+    return users.length;
+  }
+
+  /**
+   * See `Database.getUser`.
+   */
+  User getUser(String id) {
+    Integer row = rowsById.get(id);
+    return row == null ? null : users[row];
+  }
+
+  /**
+   * See `Database.getUserJson`.
+   */
+  byte[] getUserJson(String id) {
+    Integer row = rowsById.get(id);
+    return row == null ? null : json.get(row);
+  }
+
+  /**
+   * See `Database.getUsersJson`.
+   */
+  Iterator<byte[]> getUsersJson(List<String> ids) {
+    int[] rows = new int[ids.size()];
+    int count = 0;
+    BitSet seen = new BitSet();
+    for (String id : ids) {
+      Integer row = rowsById.get(id);
+      if (row != null && !seen.get(row)) {
+        seen.set(row);
+        rows[count++] = row;
+      }
+    }
+    int found = count;
+    return new Iterator<byte[]>() {
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        return next < found;
+      }
+
+      @Override
+      public byte[] next() {
+        if (next >= found) {
+          throw new NoSuchElementException();
+        }
+        return json.get(rows[next++]);
+      }
+    };
+  }
+
+  /**
+   * See `Database.getStatsJson`.
+   */
+  byte[] getStatsJson() {
+    byte[] stats = statsJson;
+    if (stats == null) {
+      // Two threads may both count the users; either result is fine
+      Map<String, Object> counts = new LinkedHashMap<>();
+      counts.put("total", users.length);
+      counts.put("age", new TreeMap<>(ageIndex.counts()));
+      counts.put("company", new TreeMap<>(PostingLists.counts(companyIndex)));
+      stats = JsonRecordCache.encode(counts);
+      statsJson = stats;
+    }
+    return stats;
+  }
+
+  /**
+   * See `Database.countUsers`.
+   */
+  int countUsers(Map<String, List<String>> queryParams) {
+    return QueryPlan.plan(parseFilters(queryParams), users.length).count(NONE);
+  }
+
+  /**
+   * See `Database.listUsers`.
+   */
+  User[] listUsers(Selection selection) {
+    RowCursor rows = selection.cursor();
+    User[] results = new User[rows.sizeBound()];
+    int i = 0;
+    while (rows.hasNext()) {
+      results[i++] = users[rows.nextInt()];
+    }
+    return i == results.length ? results : Arrays.copyOf(results, i);
+  }
+
+  /**
+   * See `Database.streamUsers`.
+   */
+  Iterator<User> streamUsers(Selection selection) {
+    RowCursor rows = selection.cursor();
+    return new Iterator<User>() {
+      @Override
+      public boolean hasNext() {
+        return rows.hasNext();
+      }
+
+      @Override
+      public User next() {
+        return users[rows.nextInt()];
+      }
+    };
+  }
+
+  /**
+   * See `Database.streamUsersJson`.
+   */
+  Iterator<byte[]> streamUsersJson(Selection selection) {
+    RowCursor rows = selection.cursor();
+    return new Iterator<byte[]>() {
+      @Override
+      public boolean hasNext() {
+        return rows.hasNext();
+      }
+
+      @Override
+      public byte[] next() {
+        return json.get(rows.nextInt());
+      }
+    };
+  }
+
+  /**
+   * Work out how the filters in the params would be evaluated. See
+   * `QueryPlan`.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the plan
+   */
+  QueryPlan planUsers(Map<String, List<String>> queryParams) {
+    return QueryPlan.plan(parseFilters(queryParams), users.length);
+  }
+
+  /**
+   * Parse the filters in the params, each answered from an inverted index
+   * and checked against a single row by reading its field. `QueryPlan`
+   * chooses the order to apply them in.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the filters, all of which a user has to match
+   */
+  private List<Filter> parseFilters(Map<String, List<String>> queryParams) {
+    List<Filter> filters = new ArrayList<>();
+    // Filter age if defined; a user can have any of several ages given
+    if (queryParams.containsKey("age")) {
+      List<Filter> ages = new ArrayList<>();
+      for (String ageParam : new LinkedHashSet<>(queryParams.get("age"))) {
+        int targetAge = parseAge("age", ageParam);
+        ages.add(ageIndex.between("age", targetAge, targetAge));
+      }
+      filters.add(Filters.anyOf(ages));
+    }
+    // Filter an age range if defined; either end can be left open
+    if (queryParams.containsKey("minAge") || queryParams.containsKey("maxAge")) {
+      int minAge = queryParams.containsKey("minAge")
+        ? parseAge("minAge", queryParams.get("minAge").get(0)) : Integer.MIN_VALUE;
+      int maxAge = queryParams.containsKey("maxAge")
+        ? parseAge("maxAge", queryParams.get("maxAge").get(0)) : Integer.MAX_VALUE;
+      filters.add(ageIndex.between("age", minAge, maxAge));
+    }
+    // Filter company if defined; a user can work at any of several given
+    if (queryParams.containsKey("company")) {
+      List<Filter> companies = new ArrayList<>();
+      for (String targetCompany : new LinkedHashSet<>(queryParams.get("company"))) {
+        companies.add(Filters.postings("company", targetCompany, PostingLists.lookup(companyIndex, targetCompany),
+          row -> targetCompany.equals(users[row].company)));
+      }
+      filters.add(Filters.anyOf(companies));
+    }
+    return filters;
+  }
+
+  private static int parseAge(String name, String ageParam) {
+    try {
+      return Integer.parseInt(ageParam);
+    } catch (NumberFormatException e) {
+      throw new BadRequestResponse("Specified " + name + " '" + ageParam + "' can't be parsed to an integer");
+    }
+  }
+
+  /**
+   * Work out which rows are on the page the params ask for. Every parameter
+   * is validated here, before any result is produced.
+   *
+   * @param queryParams map of key-value pairs for the query
+   * @return the rows on the requested page
+   */
+  Selection selectUsers(Map<String, List<String>> queryParams) {
+    BitSet matches = QueryPlan.plan(parseFilters(queryParams), users.length).execute(NONE);
+    Page page = Page.fromQuery(queryParams);
+    // Start just past the cursor if one was given
+    int start = 0;
+    if (queryParams.containsKey("after")) {
+      String afterId = queryParams.get("after").get(0);
+      Integer afterRow = rowsById.get(afterId);
+      if (afterRow == null) {
+        throw new BadRequestResponse("The specified cursor '" + afterId + "' is not the id of a user");
+      }
+      start = afterRow + 1;
+    }
+    // Process other query parameters here...
+
+    return new Selection(matches, null, start, page);
+  }
+}
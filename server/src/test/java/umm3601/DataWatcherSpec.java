@@ -0,0 +1,78 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests watching data files with umm3601.DataWatcher
+ */
+public class DataWatcherSpec {
+
+  private static final long TIMEOUT_SECONDS = 30;
+
+  @Test
+  public void changesAreReloadedOnceTheFileIsQuiet() throws Exception {
+    Path directory = Files.createTempDirectory("data");
+    Path file = directory.resolve("todos.json");
+    Files.write(file, "[]".getBytes());
+    BlockingQueue<String> reloads = new LinkedBlockingQueue<>();
+    DataWatcher watcher = DataWatcher.watch(file, changed -> reloads.add(Files.readString(changed)), 50);
+    try {
+      // Replace the file the way a deploy would, by renaming a new one over it
+      Path next = directory.resolve("todos.json.tmp");
+      Files.write(next, "[1]".getBytes());
+      Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+      String reloaded = reloads.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      assertNotNull(reloaded, "The change was never reloaded");
+      assertEquals("[1]", reloaded);
+    } finally {
+      watcher.close();
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(directory);
+    }
+  }
+
+  @Test
+  public void otherFilesAndFailedReloadsAreIgnored() throws Exception {
+    Path directory = Files.createTempDirectory("data");
+    Path file = directory.resolve("users.json");
+    Path other = directory.resolve("notes.txt");
+    Files.write(file, "[]".getBytes());
+    BlockingQueue<String> reloads = new LinkedBlockingQueue<>();
+    DataWatcher.Reloader reloader = changed -> {
+      String content = Files.readString(changed);
+      reloads.add(content);
+      if (content.equals("bad")) {
+        throw new IOException("Malformed JSON");
+      }
+    };
+    DataWatcher watcher = DataWatcher.watch(file, reloader, 50);
+    try {
+      Files.write(other, "ignored".getBytes());
+      Files.write(file, "bad".getBytes());
+      assertEquals("bad", reloads.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+      // The watcher survives a failed reload and picks up the next change
+      Files.write(file, "[2]".getBytes());
+      assertEquals("[2]", reloads.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      assertTrue(reloads.isEmpty());
+    } finally {
+      watcher.close();
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(other);
+      Files.deleteIfExists(directory);
+    }
+  }
+}
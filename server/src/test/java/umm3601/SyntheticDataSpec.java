@@ -0,0 +1,95 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import umm3601.todo.DatabaseTD;
+import umm3601.todo.Todo;
+import umm3601.user.Database;
+import umm3601.user.User;
+
+/**
+ * Tests generating benchmark data with umm3601.SyntheticData
+ */
+public class SyntheticDataSpec {
+
+  @Test
+  public void sameSeedGivesSameTodos() {
+    Todo[] first = SyntheticData.todos(1000, 42);
+    Todo[] second = SyntheticData.todos(1000, 42);
+    for (int i = 0; i < first.length; i++) {
+      assertEquals(first[i]._id, second[i]._id);
+      assertEquals(first[i].owner, second[i].owner);
+      assertEquals(first[i].status, second[i].status);
+      assertEquals(first[i].body, second[i].body);
+      assertEquals(first[i].category, second[i].category);
+    }
+  }
+
+  @Test
+  public void todosLookLikeTheBundledOnes() {
+    Todo[] todos = SyntheticData.todos(10_000, SyntheticData.DEFAULT_SEED);
+    assertEquals(10_000, Arrays.stream(todos).map(todo -> todo._id).distinct().count(), "Ids should be unique");
+    for (Todo todo : todos) {
+      assertEquals(24, todo._id.length());
+      assertTrue(todo._id.startsWith("58895985"), "Unexpected id " + todo._id);
+      assertTrue(Arrays.asList(SyntheticData.OWNERS).contains(todo.owner), "Unexpected owner " + todo.owner);
+      assertTrue(Arrays.asList(SyntheticData.CATEGORIES).contains(todo.category));
+      assertTrue(todo.body.endsWith("."));
+    }
+
+    // Every owner gets its share, so owner filters scale with the data
+    DatabaseTD db = new DatabaseTD(todos);
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    int fry = db.countTodos(queryParams);
+    assertTrue(fry > 10_000 / 6 - 300 && fry < 10_000 / 6 + 300, "Unexpected number of Fry's todos " + fry);
+  }
+
+  @Test
+  public void usersAreSpreadOverMoreCompaniesAsTheyGrow() {
+    User[] users = SyntheticData.users(10_000, SyntheticData.DEFAULT_SEED);
+    assertEquals(10_000, Arrays.stream(users).map(user -> user._id).distinct().count(), "Ids should be unique");
+    long companies = Arrays.stream(users).map(user -> user.company).distinct().count();
+    assertTrue(companies > 400 && companies <= 500, "Unexpected number of companies " + companies);
+    for (User user : users) {
+      assertTrue(user.age >= 20 && user.age < 60, "Unexpected age " + user.age);
+      assertTrue(user.email.endsWith("@" + user.company.toLowerCase() + ".com"), "Unexpected email " + user.email);
+    }
+  }
+
+  @Test
+  public void writesFilesTheDatabasesLoad() throws IOException {
+    Path directory = Files.createTempDirectory("synthetic");
+    Path json = directory.resolve("todos.json");
+    Path bin = directory.resolve("users.bin");
+    try {
+      SyntheticData.main(new String[] { "todos", "500", json.toString() });
+      SyntheticData.main(new String[] { "users", "500", bin.toString() });
+
+      DatabaseTD todos = new DatabaseTD(json, DatabaseTD.Storage.ROWS);
+      assertEquals(500, todos.size());
+      Todo expected = SyntheticData.todos(500, SyntheticData.DEFAULT_SEED)[123];
+      assertEquals(expected.body, todos.getTodo(expected._id).body);
+
+      Database users = new Database(bin);
+      assertEquals(500, users.size());
+      User user = SyntheticData.users(500, SyntheticData.DEFAULT_SEED)[77];
+      assertEquals(user.email, users.getUser(user._id).email);
+    } finally {
+      Files.deleteIfExists(json);
+      Files.deleteIfExists(bin);
+      Files.deleteIfExists(directory);
+    }
+  }
+}
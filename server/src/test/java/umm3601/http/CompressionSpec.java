@@ -0,0 +1,93 @@
+package umm3601.http;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.javalin.http.Context;
+import io.javalin.http.NotFoundResponse;
+
+import umm3601.Server;
+
+/**
+ * Tests negotiating compressed responses and serving the static client files
+ */
+public class CompressionSpec {
+
+  private Context ctx = mock(Context.class);
+
+  private InputStream sentBody() {
+    ArgumentCaptor<InputStream> body = ArgumentCaptor.forClass(InputStream.class);
+    verify(ctx).result(body.capture());
+    return body.getValue();
+  }
+
+  @Test
+  public void largeBodiesAreGzipped() throws IOException {
+    byte[] original = new byte[Compression.MIN_SIZE * 4];
+    Arrays.fill(original, (byte) 'x');
+    when(ctx.header("Accept-Encoding")).thenReturn("gzip, deflate");
+
+    assertEquals(Compression.GZIP, Compression.result(ctx, new ByteArrayInputStream(original)));
+    verify(ctx).header("Content-Encoding", "gzip");
+    verify(ctx).header("Vary", "Accept-Encoding");
+    assertArrayEquals(original, new GZIPInputStream(sentBody()).readAllBytes());
+  }
+
+  @Test
+  public void smallBodiesAreSentAsIs() throws IOException {
+    byte[] original = "[]".getBytes();
+    when(ctx.header("Accept-Encoding")).thenReturn("gzip");
+
+    assertEquals(Compression.IDENTITY, Compression.result(ctx, new ByteArrayInputStream(original)));
+    verify(ctx, never()).header(eq("Content-Encoding"), anyString());
+    assertArrayEquals(original, sentBody().readAllBytes());
+  }
+
+  @Test
+  public void bodiesAreSentAsIsWithoutAcceptEncoding() throws IOException {
+    byte[] original = new byte[Compression.MIN_SIZE * 4];
+
+    assertEquals(Compression.IDENTITY, Compression.result(ctx, new ByteArrayInputStream(original)));
+    verify(ctx, never()).header(eq("Content-Encoding"), anyString());
+    assertArrayEquals(original, sentBody().readAllBytes());
+  }
+
+  @Test
+  public void staticAssetsAreServedGzippedFromMemory() throws IOException {
+    StaticAssets assets = StaticAssets.load(Paths.get(Server.CLIENT_DIRECTORY), ETags.DEFAULT_CACHE_CONTROL);
+    when(ctx.path()).thenReturn("/");
+    when(ctx.header("Accept-Encoding")).thenReturn("gzip");
+
+    assets.serve(ctx);
+    verify(ctx).contentType("text/html; charset=utf-8");
+    verify(ctx).header("Content-Encoding", "gzip");
+    byte[] index = Files.readAllBytes(Paths.get(Server.CLIENT_DIRECTORY, "index.html"));
+    assertArrayEquals(index, new GZIPInputStream(sentBody()).readAllBytes());
+  }
+
+  @Test
+  public void missingStaticAssetsAreNotFound() throws IOException {
+    StaticAssets assets = StaticAssets.load(Paths.get(Server.CLIENT_DIRECTORY), ETags.DEFAULT_CACHE_CONTROL);
+    when(ctx.path()).thenReturn("/nonexistent.html");
+
+    assertThrows(NotFoundResponse.class, () -> assets.serve(ctx));
+  }
+}
@@ -0,0 +1,33 @@
+package umm3601.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the entity tags used for conditional requests
+ */
+public class ETagsSpec {
+
+  @Test
+  public void tagsAreQuotedAndStable() {
+    String etag = ETags.of("1:owner=Blanche");
+    assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+    assertEquals(etag, ETags.of("1:owner=Blanche"));
+    assertNotEquals(etag, ETags.of("2:owner=Blanche"));
+  }
+
+  @Test
+  public void matchesListsWildcardsAndWeakTags() {
+    String etag = ETags.of("1:");
+    assertFalse(ETags.matches(null, etag));
+    assertTrue(ETags.matches(etag, etag));
+    assertTrue(ETags.matches("\"other\", " + etag, etag));
+    assertTrue(ETags.matches("W/" + etag, etag));
+    assertTrue(ETags.matches("*", etag));
+    assertFalse(ETags.matches("\"other\"", etag));
+  }
+}
@@ -0,0 +1,78 @@
+package umm3601.http;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the on-the-fly gzip encoding of streamed responses
+ */
+public class GzipEncodingStreamSpec {
+
+  private byte[] readAll(InputStream stream, int chunkSize) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[chunkSize];
+    int n;
+    while ((n = stream.read(chunk, 0, chunkSize)) >= 0) {
+      out.write(chunk, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  private byte[] gunzip(byte[] compressed) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return readAll(in, 4096);
+    }
+  }
+
+  @Test
+  public void roundTripsRepetitiveContent() throws IOException {
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < 2000; i++) {
+      json.append("{\"owner\":\"Blanche\",\"category\":\"homework\",\"status\":false},");
+    }
+    byte[] original = json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+
+    byte[] compressed = readAll(new GzipEncodingStream(new ByteArrayInputStream(original)), 512);
+    assertTrue(compressed.length < original.length / 10);
+    assertArrayEquals(original, gunzip(compressed));
+  }
+
+  @Test
+  public void roundTripsOneByteAtATime() throws IOException {
+    byte[] original = "Hello, gzip".getBytes(StandardCharsets.UTF_8);
+    InputStream stream = new GzipEncodingStream(new ByteArrayInputStream(original));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int b;
+    while ((b = stream.read()) >= 0) {
+      out.write(b);
+    }
+    assertArrayEquals(original, gunzip(out.toByteArray()));
+  }
+
+  @Test
+  public void roundTripsEmptyContent() throws IOException {
+    byte[] compressed = readAll(new GzipEncodingStream(new ByteArrayInputStream(new byte[0])), 7);
+    assertArrayEquals(new byte[0], gunzip(compressed));
+  }
+
+  @Test
+  public void acceptsGzipHonorsQualityValues() {
+    assertTrue(Compression.acceptsGzip("gzip, deflate, br"));
+    assertTrue(Compression.acceptsGzip("br;q=1.0, gzip;q=0.8"));
+    assertTrue(Compression.acceptsGzip("*"));
+    assertFalse(Compression.acceptsGzip(null));
+    assertFalse(Compression.acceptsGzip("identity"));
+    assertFalse(Compression.acceptsGzip("gzip;q=0"));
+    assertFalse(Compression.acceptsGzip("*;q=0.5, gzip;q=0.0"));
+  }
+}
@@ -0,0 +1,69 @@
+package umm3601.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import umm3601.todo.Todo;
+
+/**
+ * Tests the streamed JSON arrays used for list responses
+ */
+public class JsonArrayStreamSpec {
+
+  private String readAll(InputStream stream, int chunkSize) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[chunkSize];
+    int n;
+    while ((n = stream.read(chunk, 0, chunkSize)) >= 0) {
+      out.write(chunk, 0, n);
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void emptyArray() throws IOException {
+    assertEquals("[]", readAll(JsonArrayStream.of(Collections.emptyIterator()), 16));
+  }
+
+  @Test
+  public void separatesElements() throws IOException {
+    assertEquals("[1,\"two\",3]", readAll(JsonArrayStream.of(Arrays.asList(1, "two", 3).iterator()), 16));
+  }
+
+  @Test
+  public void sameBytesForAnyReadSize() throws IOException {
+    Todo todo = new Todo();
+    todo._id = "abc";
+    todo.owner = "Fry";
+    todo.body = "Buy a \"banana\"";
+    todo.category = "groceries";
+    String expected = null;
+    for (int chunkSize : new int[] { 1, 3, 7, 64, 4096 }) {
+      String json = readAll(JsonArrayStream.of(Arrays.asList(todo, todo, todo).iterator()), chunkSize);
+      if (expected == null) {
+        expected = json;
+      }
+      assertEquals(expected, json, "Different output when reading " + chunkSize + " bytes at a time");
+    }
+    assertEquals(true, expected.startsWith("[{") && expected.endsWith("}]"), "Not a JSON array of objects: " + expected);
+  }
+
+  @Test
+  public void singleByteReads() throws IOException {
+    InputStream stream = JsonArrayStream.of(Arrays.asList(1, 2).iterator());
+    StringBuilder json = new StringBuilder();
+    int b;
+    while ((b = stream.read()) >= 0) {
+      json.append((char) b);
+    }
+    assertEquals("[1,2]", json.toString());
+  }
+}
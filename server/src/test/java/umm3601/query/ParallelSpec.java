@@ -0,0 +1,90 @@
+package umm3601.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests splitting work over rows into segments
+ */
+public class ParallelSpec {
+
+  private static final int SIZE = 10_007;
+
+  @Test
+  public void segmentsCoverEveryRowInOrder() {
+    for (int segments : new int[] { 1, 2, 7, 64 }) {
+      List<Integer> rows = Parallel.compute(SIZE, segments, (from, to) -> {
+        List<Integer> segment = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+          segment.add(i);
+        }
+        return segment;
+      }, (left, right) -> {
+        left.addAll(right);
+        return left;
+      });
+      assertEquals(SIZE, rows.size());
+      for (int i = 0; i < SIZE; i++) {
+        assertEquals(i, (int) rows.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void segmentedIndexesMatchSequentialOnes() {
+    Map<Integer, BitSet> expected = new HashMap<>();
+    for (int i = 0; i < SIZE; i++) {
+      expected.computeIfAbsent(i % 13, k -> new BitSet()).set(i);
+    }
+    Map<Integer, BitSet> actual = Parallel.compute(SIZE, 5, (from, to) -> {
+      Map<Integer, BitSet> bitmaps = new HashMap<>();
+      for (int i = from; i < to; i++) {
+        bitmaps.computeIfAbsent(i % 13, k -> new BitSet()).set(i);
+      }
+      return bitmaps;
+    }, (left, right) -> {
+      right.forEach((key, rows) -> left.merge(key, rows, (a, b) -> {
+        a.or(b);
+        return a;
+      }));
+      return left;
+    });
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void filterKeepsRowsThatPass() {
+    BitSet rows = new BitSet();
+    rows.set(3, SIZE);
+    BitSet expected = new BitSet();
+    for (int i = 3; i < SIZE; i++) {
+      if (i % 3 == 0) {
+        expected.set(i);
+      }
+    }
+    for (int segments : new int[] { 1, 3, 1000 }) {
+      BitSet before = (BitSet) rows.clone();
+      assertEquals(expected, Parallel.filter(rows, row -> row % 3 == 0, segments));
+      assertEquals(before, rows);
+    }
+    assertEquals(new BitSet(), Parallel.filter(new BitSet(), row -> true));
+  }
+
+  @Test
+  public void retainNarrowsTheBitmapItself() {
+    for (int size : new int[] { 100, SIZE }) {
+      BitSet rows = new BitSet();
+      rows.set(3, size);
+      BitSet expected = Parallel.filter(rows, row -> row % 3 == 0);
+      Parallel.retain(rows, row -> row % 3 == 0);
+      assertEquals(expected, rows);
+    }
+  }
+}
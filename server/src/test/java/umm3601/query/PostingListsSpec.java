@@ -0,0 +1,24 @@
+package umm3601.query;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the building of posting lists
+ */
+public class PostingListsSpec {
+
+  @Test
+  public void buildGroupsPositionsByValue() {
+    String[] rows = { "a", "b", "a", "c", "a" };
+    Map<String, int[]> index = PostingLists.build(rows, row -> row);
+    assertEquals(3, index.size());
+    assertArrayEquals(new int[] { 0, 2, 4 }, index.get("a"));
+    assertArrayEquals(new int[] { 1 }, index.get("b"));
+    assertArrayEquals(new int[0], PostingLists.lookup(index, "missing"));
+  }
+}
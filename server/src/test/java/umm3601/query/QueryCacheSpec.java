@@ -0,0 +1,88 @@
+package umm3601.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the query result cache and its canonical keys
+ */
+public class QueryCacheSpec {
+
+  @Test
+  public void normalizeIgnoresOrderDuplicatesAndUnknownParameters() {
+    Set<String> parameters = Set.of("owner", "category");
+    Map<String, List<String>> first = new LinkedHashMap<>();
+    first.put("owner", Arrays.asList(new String[] { "Fry" }));
+    first.put("category", Arrays.asList(new String[] { "video games", "video games" }));
+    Map<String, List<String>> second = new LinkedHashMap<>();
+    second.put("utm_source", Arrays.asList(new String[] { "dashboard" }));
+    second.put("category", Arrays.asList(new String[] { "video games" }));
+    second.put("owner", Arrays.asList(new String[] { "Fry" }));
+
+    assertEquals("category=video+games&owner=Fry", QueryKey.normalize(first, parameters));
+    assertEquals(QueryKey.normalize(first, parameters), QueryKey.normalize(second, parameters));
+  }
+
+  @Test
+  public void countsHitsAndMisses() {
+    QueryCache<String> cache = new QueryCache<>(10, 1000, value -> value.length());
+    assertEquals("a", cache.get("k", () -> "a"));
+    assertEquals("a", cache.get("k", () -> "b"));
+    assertEquals(1, cache.hits());
+    assertEquals(1, cache.misses());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedEntry() {
+    QueryCache<String> cache = new QueryCache<>(2, 1000, value -> value.length());
+    cache.get("a", () -> "a");
+    cache.get("b", () -> "b");
+    cache.get("a", () -> "unused");
+    cache.get("c", () -> "c");
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.evictions());
+    // "b" was least recently used, so it was the one evicted
+    assertEquals("a", cache.get("a", () -> "unused"));
+    assertEquals("c", cache.get("c", () -> "unused"));
+    assertEquals("b2", cache.get("b", () -> "b2"));
+  }
+
+  @Test
+  public void evictsByWeight() {
+    QueryCache<String> cache = new QueryCache<>(100, 10, value -> value.length());
+    cache.get("a", () -> "aaaa");
+    cache.get("b", () -> "bbbb");
+    cache.get("c", () -> "cccc");
+    assertEquals(2, cache.size());
+    // Values heavier than the whole cache are returned but never kept
+    cache.get("d", () -> "ddddddddddddddd");
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void failuresAreNotCached() {
+    QueryCache<String> cache = new QueryCache<>(10, 1000, value -> value.length());
+    Assertions.assertThrows(IllegalStateException.class, () -> {
+      cache.get("k", () -> {
+        throw new IllegalStateException();
+      });
+    });
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void invalidateEmptiesTheCache() {
+    QueryCache<String> cache = new QueryCache<>(10, 1000, value -> value.length());
+    cache.get("k", () -> "a");
+    cache.invalidate();
+    assertEquals("b", cache.get("k", () -> "b"));
+  }
+}
@@ -0,0 +1,177 @@
+package umm3601.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the planning and running of queries over filters
+ */
+public class QueryPlanSpec {
+
+  private static final int SIZE = 10_000;
+
+  private static BitSet rows(IntPredicate test) {
+    BitSet rows = new BitSet();
+    IntStream.range(0, SIZE).filter(test).forEach(rows::set);
+    return rows;
+  }
+
+  private static Filter multiplesOf(int n) {
+    return Filters.bitmap("multipleOf", n, rows(row -> row % n == 0));
+  }
+
+  private static Filter hundreds() {
+    return Filters.postings("hundreds", null, rows(row -> row % 100 == 0).stream().toArray(), row -> row % 100 == 0);
+  }
+
+  private static Filter endsInThree() {
+    return new Unindexed();
+  }
+
+  private static Filter roughlyUnder500() {
+    // The index overshoots, like a trigram index, so every candidate is checked
+    return Filters.candidates("under500", null, 600, () -> rows(row -> row < 600), row -> row < 500);
+  }
+
+  @Test
+  public void plansMatchScans() {
+    BitSet excluded = rows(row -> row % 9 == 0);
+    for (int subset = 0; subset < 1 << 5; subset++) {
+      List<Filter> filters = new ArrayList<>();
+      List<IntPredicate> tests = new ArrayList<>();
+      if ((subset & 1) != 0) {
+        filters.add(multiplesOf(2));
+        tests.add(row -> row % 2 == 0);
+      }
+      if ((subset & 2) != 0) {
+        filters.add(multiplesOf(3));
+        tests.add(row -> row % 3 == 0);
+      }
+      if ((subset & 4) != 0) {
+        filters.add(hundreds());
+        tests.add(row -> row % 100 == 0);
+      }
+      if ((subset & 8) != 0) {
+        filters.add(endsInThree());
+        tests.add(row -> row % 10 == 3);
+      }
+      if ((subset & 16) != 0) {
+        filters.add(roughlyUnder500());
+        tests.add(row -> row < 500);
+      }
+      BitSet expected = rows(row -> !excluded.get(row) && tests.stream().allMatch(test -> test.test(row)));
+
+      QueryPlan plan = QueryPlan.plan(filters, SIZE);
+      assertEquals(expected, plan.execute(excluded), "Incorrect rows for " + plan);
+      assertEquals(expected.cardinality(), plan.count(excluded), "Incorrect count for " + plan);
+    }
+  }
+
+  @Test
+  public void theMostSelectiveIndexDrivesTheQuery() {
+    QueryPlan plan = QueryPlan.plan(List.of(multiplesOf(2), endsInThree(), multiplesOf(7), hundreds()), SIZE);
+    // 100 rows left is fewer than one per word, so the rest are tested row by row
+    assertEquals("hundreds test multipleOf=7, multipleOf=2, endsInThree", plan.toString());
+  }
+
+  @Test
+  public void denseResultsAreIntersectedWordByWord() {
+    QueryPlan plan = QueryPlan.plan(List.of(multiplesOf(2), multiplesOf(7)), SIZE);
+    assertEquals("multipleOf=7 and multipleOf=2", plan.toString());
+  }
+
+  @Test
+  public void inexactIndexesAreStillChecked() {
+    QueryPlan plan = QueryPlan.plan(List.of(multiplesOf(2), roughlyUnder500()), SIZE);
+    assertEquals("under500 and multipleOf=2 test under500", plan.toString());
+    assertEquals(250, plan.execute(new BitSet()).cardinality());
+  }
+
+  @Test
+  public void filtersWithoutIndexesScanEveryRow() {
+    QueryPlan plan = QueryPlan.plan(List.of(endsInThree()), SIZE);
+    assertEquals("all test endsInThree", plan.toString());
+    assertEquals(1000, plan.execute(new BitSet()).cardinality());
+  }
+
+  @Test
+  public void noFiltersMatchEveryRowNotExcluded() {
+    QueryPlan plan = QueryPlan.plan(List.of(), SIZE);
+    assertEquals("all", plan.toString());
+    assertEquals(rows(row -> row % 2 == 1), plan.execute(rows(row -> row % 2 == 0)));
+  }
+
+  @Test
+  public void anyOfMatchesEitherAlternative() {
+    Filter either = Filters.anyOf(List.of(hundreds(), Filters.postings("sevens", null,
+      rows(row -> row % 7 == 0).stream().toArray(), row -> row % 7 == 0)));
+    QueryPlan plan = QueryPlan.plan(List.of(either, multiplesOf(2)), SIZE);
+    assertEquals("(hundreds or sevens) and multipleOf=2", plan.toString());
+    assertEquals(rows(row -> row % 2 == 0 && (row % 100 == 0 || row % 7 == 0)), plan.execute(new BitSet()));
+  }
+
+  @Test
+  public void countsUseTheIndexOrScratchSpace() {
+    assertEquals(100, QueryPlan.plan(List.of(hundreds()), SIZE).count(new BitSet()));
+    assertEquals(5000, QueryPlan.plan(List.of(multiplesOf(2)), SIZE).count(new BitSet()));
+
+    // Counting runs in the scratch bitmap, which mustn't leak into results
+    QueryPlan plan = QueryPlan.plan(List.of(multiplesOf(2), multiplesOf(3)), SIZE);
+    BitSet kept = plan.execute(new BitSet());
+    assertEquals(1667, plan.count(new BitSet()));
+    assertEquals(1000, QueryPlan.plan(List.of(endsInThree()), SIZE).count(new BitSet()));
+    assertEquals(rows(row -> row % 6 == 0), kept);
+  }
+
+  /**
+   * A filter with no index, which can only be checked row by row
+   */
+  private static final class Unindexed implements Filter {
+    @Override
+    public int estimate() {
+      return SIZE;
+    }
+
+    @Override
+    public int count() {
+      return -1;
+    }
+
+    @Override
+    public boolean indexed() {
+      return false;
+    }
+
+    @Override
+    public void addCandidates(BitSet rows) {
+      rows.or(rows(this::test));
+    }
+
+    @Override
+    public BitSet candidates() {
+      return null;
+    }
+
+    @Override
+    public boolean exact() {
+      return false;
+    }
+
+    @Override
+    public boolean test(int row) {
+      return row % 10 == 3;
+    }
+
+    @Override
+    public String toString() {
+      return "endsInThree";
+    }
+  }
+}
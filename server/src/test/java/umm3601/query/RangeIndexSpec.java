@@ -0,0 +1,68 @@
+package umm3601.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests range lookups in a sorted index
+ */
+public class RangeIndexSpec {
+
+  private static final int SIZE = 5_000;
+
+  private static BitSet scan(int[] values, int min, int max) {
+    BitSet rows = new BitSet();
+    for (int row = 0; row < values.length; row++) {
+      if (values[row] >= min && values[row] <= max) {
+        rows.set(row);
+      }
+    }
+    return rows;
+  }
+
+  @Test
+  public void rangesMatchScans() {
+    Random random = new Random(42);
+    int[] values = new int[SIZE];
+    for (int row = 0; row < SIZE; row++) {
+      values[row] = random.nextInt(100) - 20;
+    }
+    values[7] = Integer.MIN_VALUE;
+    values[8] = Integer.MAX_VALUE;
+    RangeIndex index = RangeIndex.build(SIZE, row -> values[row]);
+
+    int[][] ranges = { { 0, 0 }, { -5, 30 }, { 50, 49 }, { 200, 300 },
+      { Integer.MIN_VALUE, 10 }, { 60, Integer.MAX_VALUE }, { Integer.MIN_VALUE, Integer.MAX_VALUE } };
+    for (int[] range : ranges) {
+      Filter filter = index.between("value", range[0], range[1]);
+      BitSet expected = scan(values, range[0], range[1]);
+      BitSet found = new BitSet();
+      filter.addCandidates(found);
+      assertEquals(expected, found, "Incorrect rows from the index for " + range[0] + ".." + range[1]);
+      assertEquals(expected.cardinality(), filter.estimate());
+      for (int row = 0; row < SIZE; row++) {
+        assertEquals(expected.get(row), filter.test(row), "Incorrect test of row " + row);
+      }
+    }
+  }
+
+  @Test
+  public void countsGroupRowsByValue() {
+    int[] values = { 3, 1, 3, Integer.MAX_VALUE, 1, 3 };
+    RangeIndex index = RangeIndex.build(values.length, row -> values[row]);
+    Map<Integer, Integer> expected = new HashMap<>();
+    expected.put(1, 2);
+    expected.put(3, 3);
+    expected.put(Integer.MAX_VALUE, 1);
+    assertEquals(expected, index.counts());
+    assertEquals(3, index.value(2));
+    assertEquals("value=3", index.between("value", 3, 3).toString());
+    assertEquals("value=2..", index.between("value", 2, Integer.MAX_VALUE).toString());
+  }
+}
@@ -0,0 +1,127 @@
+package umm3601.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests keeping an index's rows as a posting list or a bitmap
+ */
+public class RowSetSpec {
+
+  private static final int SIZE = 64 * RowSet.DENSE;
+
+  private static RowSet every(int step) {
+    RowSet set = new RowSet(SIZE);
+    for (int row = 0; row < SIZE; row += step) {
+      set.add(row);
+    }
+    return set.trim();
+  }
+
+  private static BitSet rows(int... rows) {
+    BitSet bitmap = new BitSet();
+    for (int row : rows) {
+      bitmap.set(row);
+    }
+    return bitmap;
+  }
+
+  @Test
+  public void rareRowsStayAPostingList() {
+    RowSet set = every(2 * RowSet.DENSE);
+
+    assertNull(set.bitmap());
+    assertEquals(32, set.cardinality());
+    assertTrue(set.contains(2 * RowSet.DENSE));
+    assertFalse(set.contains(2 * RowSet.DENSE + 1));
+    assertEquals(32, set.toBitSet().cardinality());
+  }
+
+  @Test
+  public void commonRowsBecomeABitmap() {
+    RowSet set = every(RowSet.DENSE / 2);
+
+    assertNotNull(set.bitmap());
+    assertEquals(128, set.cardinality());
+    assertEquals(set.bitmap(), set.toBitSet());
+  }
+
+  @Test
+  public void addAllJoinsSegmentsOfEitherForm() {
+    RowSet first = new RowSet(SIZE);
+    first.add(1);
+    RowSet second = new RowSet(SIZE);
+    for (int row = 100; row < 100 + SIZE / RowSet.DENSE + 1; row++) {
+      second.add(row);
+    }
+    first.addAll(second);
+
+    assertNotNull(first.bitmap());
+    assertEquals(second.cardinality() + 1, first.cardinality());
+    assertTrue(first.contains(1));
+    assertTrue(first.contains(100));
+  }
+
+  @Test
+  public void withAddsAndRemovesRows() {
+    RowSet set = RowSet.of(rows(1, 5, 9), SIZE);
+    BitSet nowIn = rows(0, 2);
+
+    RowSet changed = set.with(new int[] { 3, 5, 20 }, nowIn, SIZE);
+
+    assertEquals(rows(1, 3, 9, 20), changed.toBitSet());
+    assertEquals(rows(1, 5, 9), set.toBitSet());
+    // Enough new rows turn the list into a bitmap, and removing them turns it back
+    int[] many = new int[SIZE / RowSet.DENSE + 1];
+    BitSet all = new BitSet();
+    for (int i = 0; i < many.length; i++) {
+      many[i] = 100 + i;
+    }
+    all.set(0, many.length);
+    RowSet grown = set.with(many, all, SIZE);
+    assertNotNull(grown.bitmap());
+    assertEquals(many.length + 3, grown.cardinality());
+    RowSet shrunk = grown.with(many, new BitSet(), SIZE);
+    assertNull(shrunk.bitmap());
+    assertEquals(rows(1, 5, 9), shrunk.toBitSet());
+  }
+
+  @Test
+  public void retainAndCountAgreeAcrossForms() {
+    BitSet target = rows(1, 2, 3, 64, 65);
+    BitSet excluded = rows(3, 64);
+    for (RowSet set : new RowSet[] { every(2 * RowSet.DENSE), every(1) }) {
+      BitSet expected = (BitSet) target.clone();
+      expected.and(set.toBitSet());
+      BitSet retained = (BitSet) target.clone();
+      set.retainIn(retained);
+      assertEquals(expected, retained);
+
+      BitSet kept = set.toBitSet();
+      kept.andNot(excluded);
+      assertEquals(kept.cardinality(), set.countExcluding(excluded));
+    }
+  }
+
+  @Test
+  public void filterIsExactInEitherForm() {
+    for (RowSet set : new RowSet[] { every(2 * RowSet.DENSE), every(RowSet.DENSE / 2) }) {
+      Filter filter = set.filter("field", "value");
+      assertTrue(filter.exact());
+      assertEquals(set.cardinality(), filter.count());
+      BitSet candidates = new BitSet();
+      filter.addCandidates(candidates);
+      assertEquals(set.toBitSet(), candidates);
+      for (int row = 0; row < SIZE; row++) {
+        assertEquals(set.contains(row), filter.test(row));
+      }
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package umm3601.query;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the per-thread scratch bitmaps
+ */
+public class ScratchRowsSpec {
+
+  @Test
+  public void smallBitmapsAreReusedEmpty() {
+    BitSet first = ScratchRows.bitmap(300);
+    first.set(0, 300);
+    BitSet second = ScratchRows.bitmap(ScratchRows.MAX_ROWS);
+    assertSame(first, second);
+    assertTrue(second.isEmpty());
+  }
+
+  @Test
+  public void bigBitmapsAreNotKept() {
+    BitSet big = ScratchRows.bitmap(ScratchRows.MAX_ROWS + 1);
+    big.set(ScratchRows.MAX_ROWS);
+    assertNotSame(big, ScratchRows.bitmap(ScratchRows.MAX_ROWS + 1));
+    assertNotSame(big, ScratchRows.bitmap(300));
+    // The kept bitmap never grew past the bound
+    assertTrue(ScratchRows.bitmap(300).size() <= ScratchRows.MAX_ROWS);
+  }
+}
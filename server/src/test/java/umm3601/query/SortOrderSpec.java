@@ -0,0 +1,130 @@
+package umm3601.query;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests updating sort orders in place of sorting them again
+ */
+public class SortOrderSpec {
+
+  private static Comparator<Integer> byValue(int[] values) {
+    return (a, b) -> Integer.compare(values[a], values[b]);
+  }
+
+  private static SortOrder sorted(int size, Comparator<Integer> ordering) {
+    return SortOrder.of(IntBuffer.wrap(Permutations.sort(size, ordering)), ordering);
+  }
+
+  private static int[] rows(SortOrder order) {
+    int[] rows = new int[order.size()];
+    for (int position = 0; position < rows.length; position++) {
+      rows[position] = order.get(position);
+    }
+    return rows;
+  }
+
+  @Test
+  public void updatesMatchSortingAgain() {
+    Random random = new Random(42);
+    int[] values = new int[5_000];
+    for (int row = 0; row < values.length; row++) {
+      values[row] = random.nextInt(300);
+    }
+    SortOrder order = sorted(values.length, byValue(values));
+
+    for (int round = 0; round < 20; round++) {
+      int oldSize = values.length;
+      int added = random.nextInt(300);
+      int[] updated = Arrays.copyOf(values, oldSize + added);
+      // Change the values of some old rows, then add some rows
+      int replaced = random.nextInt(700);
+      int[] changed = Arrays.copyOf(random.ints(0, oldSize).distinct().limit(replaced).toArray(), replaced + added);
+      for (int i = 0; i < added; i++) {
+        changed[replaced + i] = oldSize + i;
+      }
+      for (int row : changed) {
+        updated[row] = random.nextInt(300);
+      }
+      int[] before = rows(order);
+
+      SortOrder next = order.update(oldSize, changed, byValue(updated));
+
+      assertArrayEquals(Permutations.sort(updated.length, byValue(updated)), rows(next),
+        "Incorrect order after round " + round);
+      assertArrayEquals(before, rows(order), "The old order changed");
+      values = updated;
+      order = next;
+    }
+  }
+
+  @Test
+  public void chunksStayBounded() {
+    int[] values = new int[10 * SortOrder.CHUNK];
+    Comparator<Integer> ordering = byValue(values);
+    SortOrder order = sorted(SortOrder.CHUNK, ordering);
+    // Every new row sorts to the end, so the last chunk keeps splitting
+    int[] rows = new int[values.length - SortOrder.CHUNK];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = SortOrder.CHUNK + i;
+      values[rows[i]] = 1;
+    }
+    order = order.update(SortOrder.CHUNK, rows, ordering);
+
+    assertEquals(values.length, order.size());
+    for (int chunk = 0; order.chunkStart(chunk) < order.size(); chunk++) {
+      int length = order.chunk(chunk).limit();
+      assertTrue(length > 0 && length <= 2 * SortOrder.CHUNK, "Chunk " + chunk + " has " + length + " rows");
+      assertEquals(chunk, order.chunkAt(order.chunkStart(chunk)));
+    }
+    for (int position = 0; position < order.size(); position++) {
+      assertEquals(position, order.get(position));
+    }
+  }
+
+  @Test
+  public void positionsAfterRows() {
+    int[] values = { 5, 3, 5, 1, 3, 9 };
+    SortOrder order = sorted(values.length, byValue(values));
+
+    assertArrayEquals(new int[] { 3, 1, 4, 0, 2, 5 }, rows(order));
+    for (int position = 0; position < order.size(); position++) {
+      assertEquals(position + 1, order.positionAfter(order.get(position)));
+    }
+  }
+
+  @Test
+  public void ordersReadTheirBufferInPlace() {
+    int[] values = new int[3 * SortOrder.CHUNK];
+    for (int row = 0; row < values.length; row++) {
+      values[row] = values.length - row;
+    }
+    int[] sorted = Permutations.sort(values.length, byValue(values));
+    // Off the heap, like an order mapped from a snapshot file, after a header
+    IntBuffer buffer = ByteBuffer.allocateDirect((values.length + 2) * Integer.BYTES).asIntBuffer();
+    buffer.put(new int[] { -1, -1 }).put(sorted).position(2);
+    SortOrder order = SortOrder.of(buffer, byValue(values));
+
+    assertArrayEquals(sorted, rows(order));
+    assertTrue(order.chunk(1).isDirect());
+    assertEquals(2, buffer.position());
+
+    int[] changed = values.clone();
+    changed[0] = 0;
+    SortOrder updated = order.update(values.length, new int[] { 0 }, byValue(changed));
+    assertEquals(0, updated.get(0));
+    assertFalse(updated.chunk(0).isDirect());
+    assertTrue(updated.chunk(1).isDirect());
+    assertArrayEquals(sorted, rows(order));
+  }
+}
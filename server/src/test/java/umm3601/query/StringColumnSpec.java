@@ -0,0 +1,101 @@
+package umm3601.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the packed string and dictionary columns used for columnar storage
+ */
+public class StringColumnSpec {
+
+  private static final String[] VALUES = { "Lorem ipsum", "", "dolor", "sit amet", "Lorem", "na\u00efve caf\u00e9",
+    "Lorem \u65e5\u672c\u8a9e", "\ud83d\ude00 emoji" };
+
+  @Test
+  public void stringColumnsRoundTripAndCompareLikeStrings() {
+    StringColumn.Builder builder = new StringColumn.Builder();
+    for (String value : VALUES) {
+      builder.add(value);
+    }
+    StringColumn column = builder.build();
+
+    assertEquals(VALUES.length, column.size());
+    for (int row = 0; row < VALUES.length; row++) {
+      assertEquals(VALUES[row], column.get(row));
+      for (int other = 0; other < VALUES.length; other++) {
+        assertEquals(Integer.signum(VALUES[row].compareTo(VALUES[other])),
+          Integer.signum(column.compare(row, other)));
+        assertEquals(Integer.signum(VALUES[row].compareTo(VALUES[other])),
+          Integer.signum(column.compare(row, VALUES[other])));
+      }
+    }
+    assertTrue(column.contains(0, "m ip"));
+    assertTrue(column.contains(1, ""));
+    assertFalse(column.contains(4, "Lorem "));
+    assertFalse(column.contains(2, "dolor sit"));
+    assertTrue(column.contains(5, "\u00efve"));
+    assertTrue(column.contains(6, "m \u65e5\u672c"));
+    assertFalse(column.contains(6, "\u672c\u65e5"));
+    assertTrue(column.contains(7, "\ude00 e"));
+  }
+
+  @Test
+  public void stringColumnsMapBackFromAFile() throws IOException {
+    StringColumn.Builder builder = new StringColumn.Builder();
+    for (String value : VALUES) {
+      builder.add(value);
+    }
+    Path file = Files.createTempFile("strings", ".bin");
+    try {
+      try (ColumnFileWriter out = new ColumnFileWriter(file, "STRINGS1")) {
+        builder.build().write(out);
+      }
+      try (ColumnFileReader in = new ColumnFileReader(file, "STRINGS1")) {
+        StringColumn column = StringColumn.read(in);
+        for (int row = 0; row < VALUES.length; row++) {
+          assertEquals(VALUES[row], column.get(row));
+          assertEquals(0, column.compare(row, VALUES[row]));
+        }
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void stringColumnsSpanSeveralChunks() {
+    StringColumn.Builder builder = new StringColumn.Builder();
+    String big = "x".repeat(StringColumn.CHUNK_SIZE / 2 + 1);
+    for (int i = 0; i < 3; i++) {
+      builder.add(big).add(Integer.toString(i));
+    }
+    StringColumn column = builder.build();
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(big, column.get(2 * i));
+      assertEquals(Integer.toString(i), column.get(2 * i + 1));
+    }
+  }
+
+  @Test
+  public void dictionaryCodesAreOrderedLikeValues() {
+    DictionaryColumn.Builder builder = new DictionaryColumn.Builder();
+    for (String value : new String[] { "video games", "groceries", "homework", "groceries" }) {
+      builder.add(value);
+    }
+    DictionaryColumn column = builder.build();
+
+    assertEquals(3, column.cardinality());
+    assertEquals("groceries", column.get(3));
+    assertEquals(column.code(1), column.code(3));
+    assertTrue(column.code(1) < column.code(2));
+    assertTrue(column.code(2) < column.code(0));
+  }
+}
@@ -0,0 +1,48 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that umm3601.todo.DatabaseTD caches query results and drops them when
+ * the data changes
+ */
+public class CachedTodoQueriesFromDBTD {
+
+  @Test
+  public void reorderedParametersHitTheCache() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> first = new LinkedHashMap<>();
+    first.put("owner", Arrays.asList(new String[] { "Fry" }));
+    first.put("category", Arrays.asList(new String[] { "homework" }));
+    Map<String, List<String>> second = new LinkedHashMap<>();
+    second.put("category", Arrays.asList(new String[] { "homework" }));
+    second.put("owner", Arrays.asList(new String[] { "Fry", "Fry" }));
+
+    Todo[] todos = db.listTodos(first);
+    assertArrayEquals(todos, db.listTodos(second), "Cached result differs");
+    assertEquals(1, db.queryCache().misses(), "Incorrect number of cache misses");
+    assertEquals(1, db.queryCache().hits(), "Incorrect number of cache hits");
+  }
+
+  @Test
+  public void publishingInvalidatesTheCache() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    assertEquals(61, db.listTodos(queryParams).length, "Incorrect number of todos owned by Fry");
+
+    Todo[] allTodos = db.listTodos(new HashMap<>());
+    db.publish(db.filterTodosByOwner(allTodos, "Blanche"));
+    assertEquals(0, db.listTodos(queryParams).length, "Stale cached result after publishing");
+  }
+}
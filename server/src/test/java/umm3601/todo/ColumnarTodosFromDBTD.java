@@ -0,0 +1,96 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static umm3601.todo.TodoFixtures.query;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import umm3601.http.JsonRecordCache;
+
+/**
+ * Tests that umm3601.todo.DatabaseTD answers every kind of query the same way
+ * whether its todos are stored as rows or as columns
+ */
+public class ColumnarTodosFromDBTD {
+
+  private static final String[][] QUERIES = {
+    {},
+    { "owner", "Blanche" },
+    { "category", "homework", "status", "complete" },
+    { "owner", "Fry", "status", "incomplete", "orderBy", "body" },
+    { "contains", "Lorem" },
+    { "contains", "lorem", "containsMode", "ignoreCase" },
+    { "contains", "esse cillum", "containsMode", "words" },
+    { "orderBy", "owner", "limit", "7" },
+    { "orderBy", "category", "offset", "290" },
+    { "orderBy", "status", "after", "58895985a22c04e761776d54", "limit", "5" },
+    { "after", "5889598504f1c08ba942bddf" },
+    { "owner", "Nobody" },
+  };
+
+  private static String json(Todo[] todos) {
+    StringBuilder json = new StringBuilder();
+    for (Todo todo : todos) {
+      json.append(new String(JsonRecordCache.encode(todo), StandardCharsets.UTF_8)).append('\n');
+    }
+    return json.toString();
+  }
+
+  @Test
+  public void columnsAnswerQueriesLikeRows() throws IOException {
+    DatabaseTD rows = new DatabaseTD("/todos.json", DatabaseTD.Storage.ROWS);
+    DatabaseTD columns = new DatabaseTD("/todos.json", DatabaseTD.Storage.COLUMNS);
+    assertEquals(DatabaseTD.Storage.COLUMNS, columns.storage());
+    assertEquals(rows.size(), columns.size());
+
+    for (String[] nameValues : QUERIES) {
+      Map<String, List<String>> queryParams = query(nameValues);
+      assertEquals(json(rows.listTodos(queryParams)), json(columns.listTodos(queryParams)),
+        "Different todos for " + queryParams);
+      assertEquals(rows.countTodos(queryParams), columns.countTodos(queryParams),
+        "Different count for " + queryParams);
+    }
+  }
+
+  @Test
+  public void columnsFindTodosById() throws IOException {
+    DatabaseTD rows = new DatabaseTD("/todos.json", DatabaseTD.Storage.ROWS);
+    DatabaseTD columns = new DatabaseTD("/todos.json", DatabaseTD.Storage.COLUMNS);
+
+    for (Todo todo : rows.listTodos(new HashMap<>())) {
+      Todo found = columns.getTodo(todo._id);
+      assertNotNull(found, "No todo found for " + todo._id);
+      assertEquals(json(new Todo[] { todo }), json(new Todo[] { found }));
+      assertArrayEquals(rows.getTodoJson(todo._id), columns.getTodoJson(todo._id));
+    }
+    assertNull(columns.getTodo("nonexistent"));
+    assertNull(columns.getTodo(""));
+    assertNull(columns.getTodo("zzzzzzzzzzzzzzzzzzzzzzzz"));
+  }
+
+  @Test
+  public void columnsKeepTheFirstTodoForADuplicatedId() {
+    Todo first = new Todo();
+    first._id = "same";
+    first.owner = "Blanche";
+    first.category = "homework";
+    first.body = "first";
+    Todo second = new Todo();
+    second._id = "same";
+    second.owner = "Fry";
+    second.category = "groceries";
+    second.body = "second";
+
+    DatabaseTD columns = new DatabaseTD(new Todo[] { second, first, second }, DatabaseTD.Storage.COLUMNS);
+    assertEquals("second", columns.getTodo("same").body);
+  }
+}
@@ -0,0 +1,82 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress tests umm3601.todo.DatabaseTD with many threads querying while new
+ * snapshots are being published
+ */
+public class ConcurrentTodoReadsFromDBTD {
+
+  private static final String[] ORDERS = { "owner", "category", "status", "body" };
+  private static final int READS_PER_THREAD = 200;
+  private static final int PUBLISHES = 50;
+
+  @Test
+  public void concurrentReadsSeeConsistentData() throws Exception {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Todo[] expected = db.listTodos(new HashMap<>());
+    int readers = Math.max(4, Runtime.getRuntime().availableProcessors());
+    ExecutorService pool = Executors.newFixedThreadPool(readers + 1);
+    try {
+      List<Future<?>> tasks = new ArrayList<>();
+      for (int t = 0; t < readers; t++) {
+        int offset = t;
+        tasks.add(pool.submit(() -> {
+          for (int i = 0; i < READS_PER_THREAD; i++) {
+            String order = ORDERS[(i + offset) % ORDERS.length];
+            Map<String, List<String>> queryParams = new HashMap<>();
+            queryParams.put("orderBy", Arrays.asList(new String[] { order }));
+            Todo[] ordered = db.listTodos(queryParams);
+            assertEquals(expected.length, ordered.length, "Incorrect number of todos ordered by " + order);
+            Comparator<Todo> comparator = DatabaseTD.ORDERINGS.get(order);
+            for (int j = 0; j < ordered.length - 1; j++) {
+              assertTrue(comparator.compare(ordered[j], ordered[j + 1]) < 0, "Todos out of order by " + order);
+            }
+            // Sorting a result must never reorder the stored data
+            db.filterTodosByOrder(db.listTodos(new HashMap<>()), order);
+            assertArrayEquals(expected, db.listTodos(new HashMap<>()), "Stored todos were reordered");
+          }
+          return null;
+        }));
+      }
+      tasks.add(pool.submit(() -> {
+        for (int i = 0; i < PUBLISHES; i++) {
+          db.publish(expected);
+        }
+        return null;
+      }));
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    assertArrayEquals(expected, db.listTodos(new HashMap<>()), "Stored todos changed");
+    assertEquals(PUBLISHES + 1, db.version(), "Incorrect version after publishing");
+  }
+
+  @Test
+  public void filterTodosByOrderLeavesInputAlone() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Todo[] allTodos = db.listTodos(new HashMap<>());
+    Todo[] copy = allTodos.clone();
+    db.filterTodosByOrder(allTodos, "body");
+    assertArrayEquals(copy, allTodos, "filterTodosByOrder reordered its input");
+  }
+}
@@ -0,0 +1,79 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests umm3601.todo.DatabaseTD listTodos and countTodos with _owner_,
+ * _category_ and _status_ query parameters, checking the indexed results
+ * against the plain filterTodosBy* scans
+ */
+public class FilterTodosByCombinedFiltersFromDBTD {
+
+  private static final String[] OWNERS = { "Blanche", "Fry", "Barry", "Workman", "Dawn", "Roberta", "Nobody" };
+  private static final String[] CATEGORIES = { "software design", "video games", "homework", "groceries", "none" };
+
+  @Test
+  public void listTodosMatchesScans() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Todo[] allTodos = db.listTodos(new HashMap<>());
+    Map<String, List<String>> queryParams = new HashMap<>();
+
+    for (String owner : OWNERS) {
+      for (String category : CATEGORIES) {
+        for (boolean status : new boolean[] { true, false }) {
+          queryParams.put("owner", Arrays.asList(new String[] { owner }));
+          queryParams.put("category", Arrays.asList(new String[] { category }));
+          queryParams.put("status", Arrays.asList(new String[] { status ? "complete" : "incomplete" }));
+
+          Todo[] expected = db.filterTodosByStatus(
+            db.filterTodosByCategory(db.filterTodosByOwner(allTodos, owner), category), status);
+          assertArrayEquals(expected, db.listTodos(queryParams),
+            "Incorrect todos for " + owner + ", " + category + ", " + status);
+          assertEquals(expected.length, db.countTodos(queryParams),
+            "Incorrect count for " + owner + ", " + category + ", " + status);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void listTodosWithOwnerAndContains() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Todo[] allTodos = db.listTodos(new HashMap<>());
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+    queryParams.put("contains", Arrays.asList(new String[] { "sit" }));
+
+    Todo[] expected = db.filterTodosByContent(db.filterTodosByOwner(allTodos, "Fry"), "sit");
+    assertArrayEquals(expected, db.listTodos(queryParams), "Incorrect todos owned by Fry containing sit");
+    assertEquals(expected.length, db.countTodos(queryParams), "Incorrect count owned by Fry containing sit");
+  }
+
+  @Test
+  public void countAllTodos() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    assertEquals(300, db.countTodos(new HashMap<>()), "Incorrect total number of todos");
+  }
+
+  @Test
+  public void mostSelectiveFilterIsAppliedFirst() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("status", Arrays.asList(new String[] { "complete" }));
+    queryParams.put("contains", Arrays.asList(new String[] { "sit" }));
+    queryParams.put("owner", Arrays.asList(new String[] { "Fry" }));
+
+    // The trigram candidates for "sit" still have to be checked
+    assertEquals("owner=Fry and contains=sit and status=true test contains=sit",
+      db.snapshot().planTodos(queryParams).toString(), "Filters applied in the wrong order");
+  }
+}
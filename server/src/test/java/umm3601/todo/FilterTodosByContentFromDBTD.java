@@ -0,0 +1,100 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Tests umm3601.todo.DatabaseTD filterTodosByContent and listTodos with
+ * _contains_ and _containsMode_ query parameters
+ */
+public class FilterTodosByContentFromDBTD {
+
+  private static final String[] TARGETS = {
+    "", "a", "Ex", "sit", "Sit", "amet", "non labore", "In sunt ex non", "esse.", "banana", "zzz" };
+
+  private Todo[] listContaining(DatabaseTD db, String target, String mode) {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("contains", Arrays.asList(new String[] { target }));
+    if (mode != null) {
+      queryParams.put("containsMode", Arrays.asList(new String[] { mode }));
+    }
+    return db.listTodos(queryParams);
+  }
+
+  @Test
+  public void containsMatchesStringContains() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Todo[] allTodos = db.listTodos(new HashMap<>());
+    for (String target : TARGETS) {
+      assertArrayEquals(db.filterTodosByContent(allTodos, target), listContaining(db, target, null),
+        "Incorrect todos containing '" + target + "'");
+    }
+  }
+
+  @Test
+  public void containsEveryBodyFragment() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Todo[] allTodos = db.listTodos(new HashMap<>());
+    for (int i = 0; i < allTodos.length; i += 7) {
+      String body = allTodos[i].body;
+      String target = body.substring(i % 10, Math.min(body.length(), i % 10 + 4 + i % 13));
+      assertArrayEquals(db.filterTodosByContent(allTodos, target), listContaining(db, target, "exact"),
+        "Incorrect todos containing '" + target + "'");
+    }
+  }
+
+  @Test
+  public void containsIgnoringCase() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Todo[] allTodos = db.listTodos(new HashMap<>());
+    for (String target : TARGETS) {
+      Todo[] expected = Arrays.stream(allTodos)
+        .filter(x -> x.body.toLowerCase(Locale.ROOT).contains(target.toLowerCase(Locale.ROOT)))
+        .toArray(Todo[]::new);
+      assertArrayEquals(expected, listContaining(db, target, "ignoreCase"),
+        "Incorrect todos containing '" + target + "' ignoring case");
+    }
+  }
+
+  @Test
+  public void containsWords() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Todo[] wordTodos = listContaining(db, "NON, labore", "words");
+    assertEquals(true, wordTodos.length > 0, "Expected some todos with the words non and labore");
+    for (Todo todo : wordTodos) {
+      List<String> words = Arrays.asList(todo.body.toLowerCase(Locale.ROOT).split("[^a-z0-9]+"));
+      assertEquals(true, words.contains("non") && words.contains("labore"),
+        "Todo " + todo._id + " doesn't have the words non and labore");
+    }
+    // "labor" is a prefix of "labore", which is not a whole-word match
+    assertEquals(0, listContaining(db, "labor", "words").length, "Incorrect todos with the word labor");
+  }
+
+  @Test
+  public void containsNoWords() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      listContaining(db, "!!!", "words");
+    });
+  }
+
+  @Test
+  public void illegalContainsMode() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      listContaining(db, "sit", "fuzzy");
+    });
+  }
+}
@@ -0,0 +1,56 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests umm3601.todo.DatabaseTD filterTodosByOrder and listTodos with _orderBy_
+ * query parameters
+ */
+public class FilterTodosByOrderFromDBTD {
+
+  private static final String[] ORDERS = { "owner", "category", "status", "body" };
+
+  @Test
+  public void listTodosMatchesSortedScan() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    for (String order : ORDERS) {
+      queryParams.put("orderBy", Arrays.asList(new String[] { order }));
+      Todo[] expected = db.filterTodosByOrder(db.listTodos(new HashMap<>()), order);
+      assertArrayEquals(expected, db.listTodos(queryParams), "Incorrect todos ordered by " + order);
+    }
+  }
+
+  @Test
+  public void ownerTiesAreOrderedById() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList(new String[] { "owner" }));
+    Todo[] todos = db.listTodos(queryParams);
+    for (int i = 0; i < todos.length - 1; i++) {
+      int byOwner = todos[i].owner.compareTo(todos[i + 1].owner);
+      assertTrue(byOwner < 0 || byOwner == 0 && todos[i]._id.compareTo(todos[i + 1]._id) < 0,
+        "Todos " + todos[i]._id + " and " + todos[i + 1]._id + " are out of order");
+    }
+  }
+
+  @Test
+  public void filteredTodosByStatus() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("category", Arrays.asList(new String[] { "homework" }));
+    queryParams.put("orderBy", Arrays.asList(new String[] { "status" }));
+    Todo[] homework = db.filterTodosByCategory(db.listTodos(new HashMap<>()), "homework");
+    Todo[] expected = db.filterTodosByOrder(homework, "status");
+    assertArrayEquals(expected, db.listTodos(queryParams), "Incorrect homework todos ordered by status");
+  }
+}
@@ -1,5 +1,6 @@
 package umm3601.todo;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.io.IOException;
@@ -10,6 +11,8 @@ import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 
+import umm3601.SyntheticData;
+
 /**
  * Tests umm3601.todo.DatabaseTD filterTodosByOwner and listTodos with _owner_ query
  * parameters
@@ -27,4 +30,29 @@ public class FilterTodosByStatusFromDBTD {
     Todo[] FalseTodos = db.filterTodosByStatus(allTodos, false);
     assertEquals(157, FalseTodos.length, "Incorrect number of todos that are incomplete");
   }
+
+  @Test
+  public void filterManyTodosByStatus() {
+    // Enough todos to be split across cores where there are several
+    Todo[] todos = SyntheticData.todos(200_000, SyntheticData.DEFAULT_SEED);
+    DatabaseTD db = new DatabaseTD(todos);
+    for (boolean status : new boolean[] { true, false }) {
+      Todo[] expected = Arrays.stream(todos).filter(todo -> todo.status == status).toArray(Todo[]::new);
+      assertArrayEquals(expected, db.filterTodosByStatus(todos, status));
+    }
+  }
+
+  @Test
+  public void countTodosByStatus() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("status", Arrays.asList(new String[] { "complete" }));
+    assertEquals(143, db.countTodos(queryParams), "Incorrect count of todos that are complete");
+
+    // Deleted todos are still in the status bitmap, and mustn't be counted
+    String id = db.listTodos(queryParams)[0]._id;
+    db.deleteTodo(id);
+    assertEquals(142, db.countTodos(queryParams), "Deleted todo was counted");
+    assertEquals(142, db.listTodos(queryParams).length, "Deleted todo was listed");
+  }
 }
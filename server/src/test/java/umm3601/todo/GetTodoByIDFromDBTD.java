@@ -0,0 +1,65 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests umm3601.todo.DatabaseTD getTodo functionality
+ */
+public class GetTodoByIDFromDBTD {
+
+  @Test
+  public void getFirstTodo() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Todo todo = db.getTodo("58895985a22c04e761776d54");
+    assertEquals("Blanche", todo.owner, "Incorrect owner");
+    assertEquals("software design", todo.category, "Incorrect category");
+  }
+
+  @Test
+  public void getEveryTodoById() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    for (Todo todo : db.listTodos(new HashMap<>())) {
+      assertEquals(todo, db.getTodo(todo._id), "Incorrect todo for id " + todo._id);
+    }
+  }
+
+  @Test
+  public void getMissingTodo() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    assertNull(db.getTodo("nonexistent"), "Found a todo for a nonexistent id");
+  }
+
+  @Test
+  public void getTodoJsonIsCached() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    byte[] json = db.getTodoJson("58895985a22c04e761776d54");
+    Todo todo = new ObjectMapper().readValue(json, Todo.class);
+    assertEquals("Blanche", todo.owner, "Incorrect owner");
+    assertSame(json, db.getTodoJson("58895985a22c04e761776d54"), "JSON was serialized twice");
+    assertNull(db.getTodoJson("nonexistent"), "Found JSON for a nonexistent id");
+  }
+
+  @Test
+  public void getTodosJsonByIds() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    List<String> ids = List.of("58895985f0a4bbea24084abf", "nonexistent", "58895985a22c04e761776d54",
+      "58895985f0a4bbea24084abf");
+    List<byte[]> found = new ArrayList<>();
+    db.getTodosJson(ids).forEachRemaining(found::add);
+
+    assertEquals(2, found.size(), "Missing ids should be skipped and repeated ones returned once");
+    assertSame(db.getTodoJson("58895985f0a4bbea24084abf"), found.get(0), "Wrong todo or order");
+    assertSame(db.getTodoJson("58895985a22c04e761776d54"), found.get(1), "Wrong todo or order");
+  }
+}
@@ -0,0 +1,97 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * Tests umm3601.todo.DatabaseTD listTodos with _limit_, _offset_ and _after_
+ * query parameters
+ */
+public class PageTodosFromDBTD {
+
+  @Test
+  public void limitAppliesAfterOrdering() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("orderBy", Arrays.asList(new String[] { "body" }));
+    Todo[] ordered = db.listTodos(queryParams);
+
+    queryParams.put("limit", Arrays.asList(new String[] { "20" }));
+    assertArrayEquals(Arrays.copyOf(ordered, 20), db.listTodos(queryParams), "Incorrect first 20 todos by body");
+  }
+
+  @Test
+  public void limitLargerThanResults() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Blanche" }));
+    queryParams.put("limit", Arrays.asList(new String[] { "1000" }));
+    assertEquals(43, db.listTodos(queryParams).length, "Incorrect number of todos owned by Blanche");
+  }
+
+  @Test
+  public void offsetPagesThroughOrderedTodos() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("status", Arrays.asList(new String[] { "complete" }));
+    queryParams.put("orderBy", Arrays.asList(new String[] { "owner" }));
+    Todo[] ordered = db.listTodos(queryParams);
+
+    queryParams.put("limit", Arrays.asList(new String[] { "10" }));
+    queryParams.put("offset", Arrays.asList(new String[] { "30" }));
+    assertArrayEquals(Arrays.copyOfRange(ordered, 30, 40), db.listTodos(queryParams), "Incorrect fourth page");
+
+    queryParams.put("offset", Arrays.asList(new String[] { "140" }));
+    assertArrayEquals(Arrays.copyOfRange(ordered, 140, 143), db.listTodos(queryParams), "Incorrect last page");
+  }
+
+  @Test
+  public void cursorPagesThroughTodos() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    for (String order : new String[] { null, "category" }) {
+      Map<String, List<String>> queryParams = new HashMap<>();
+      if (order != null) {
+        queryParams.put("orderBy", Arrays.asList(new String[] { order }));
+      }
+      Todo[] all = db.listTodos(queryParams);
+
+      queryParams.put("limit", Arrays.asList(new String[] { "25" }));
+      int seen = 0;
+      Todo[] page = db.listTodos(queryParams);
+      while (page.length > 0) {
+        assertArrayEquals(Arrays.copyOfRange(all, seen, seen + page.length), page, "Incorrect page at " + seen);
+        seen += page.length;
+        queryParams.put("after", Arrays.asList(new String[] { page[page.length - 1]._id }));
+        page = db.listTodos(queryParams);
+      }
+      assertEquals(all.length, seen, "Cursor paging didn't visit every todo");
+    }
+  }
+
+  @Test
+  public void illegalPaging() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("offset", Arrays.asList(new String[] { "-3" }));
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      db.listTodos(queryParams);
+    });
+
+    queryParams.clear();
+    queryParams.put("after", Arrays.asList(new String[] { "nonexistent" }));
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      db.listTodos(queryParams);
+    });
+  }
+}
@@ -0,0 +1,93 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests reloading umm3601.todo.DatabaseTD from data files on disk
+ */
+public class ReloadTodosFromDBTD {
+
+  private static final String ONE_TODO =
+    "[{\"_id\": \"only\", \"owner\": \"Fry\", \"status\": true, \"body\": \"Deliver\", \"category\": \"work\"}]";
+
+  @Test
+  public void reloadSwapsInTheNewData() throws IOException {
+    Path file = Files.createTempFile("todos", ".json");
+    try {
+      Files.write(file, ONE_TODO.getBytes());
+      DatabaseTD db = new DatabaseTD("/todos.json");
+      long version = db.version();
+      Iterator<Todo> before = db.streamTodos(new HashMap<>());
+
+      db.reload(file);
+
+      assertNotEquals(version, db.version());
+      assertEquals(1, db.size());
+      assertNotNull(db.getTodo("only"));
+      assertEquals(1, db.loadReport().records);
+      // A query that was already running finishes on the old data
+      int count = 0;
+      while (before.hasNext()) {
+        before.next();
+        count++;
+      }
+      assertEquals(300, count);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void snapshotsCanBeReplacedWhileMapped() throws IOException {
+    Path file = Files.createTempFile("todos", ".bin");
+    try {
+      new DatabaseTD("/todos.json").writeSnapshot(file);
+      DatabaseTD db = new DatabaseTD(file);
+      Iterator<byte[]> before = db.streamTodosJson(new HashMap<>());
+
+      DatabaseTD one = new DatabaseTD(new StringReader(ONE_TODO), DatabaseTD.Storage.ROWS);
+      one.writeSnapshot(file);
+      db.reload(file);
+
+      assertEquals(1, db.size());
+      int count = 0;
+      while (before.hasNext()) {
+        assertNotNull(before.next());
+        count++;
+      }
+      assertEquals(300, count);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void badFilesKeepTheCurrentData() throws IOException {
+    Path file = Files.createTempFile("todos", ".json");
+    try {
+      Files.write(file, "[{\"_id\": ".getBytes());
+      DatabaseTD db = new DatabaseTD("/todos.json");
+      long version = db.version();
+
+      assertThrows(IOException.class, () -> db.reload(file));
+      assertEquals(version, db.version());
+      assertEquals(300, db.size());
+      assertNull(db.getTodo("only"));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
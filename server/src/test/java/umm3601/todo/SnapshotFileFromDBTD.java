@@ -0,0 +1,151 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static umm3601.todo.TodoFixtures.query;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import umm3601.query.BitmapIndex;
+import umm3601.query.TextIndex;
+
+/**
+ * Tests saving umm3601.todo.DatabaseTD as a binary snapshot file and
+ * querying the mapped file in place
+ */
+public class SnapshotFileFromDBTD {
+
+  private static final String[][] QUERIES = {
+    {},
+    { "owner", "Blanche", "status", "complete" },
+    { "category", "video games", "orderBy", "body" },
+    { "contains", "Lorem", "orderBy", "owner", "limit", "10" },
+    { "orderBy", "category", "after", "58895985a22c04e761776d54" },
+  };
+
+  @Test
+  public void mappedSnapshotAnswersQueriesLikeJson() throws IOException {
+    DatabaseTD json = new DatabaseTD("/todos.json");
+    Path file = Files.createTempFile("todos", ".bin");
+    try {
+      json.writeSnapshot(file);
+      DatabaseTD mapped = new DatabaseTD(file);
+
+      assertEquals(DatabaseTD.Storage.COLUMNS, mapped.storage());
+      assertEquals(json.size(), mapped.size());
+      for (String[] nameValues : QUERIES) {
+        Map<String, List<String>> queryParams = query(nameValues);
+        Todo[] expected = json.listTodos(queryParams);
+        Todo[] actual = mapped.listTodos(queryParams);
+        assertEquals(expected.length, actual.length, "Different todos for " + queryParams);
+        for (int i = 0; i < expected.length; i++) {
+          assertArrayEquals(json.getTodoJson(expected[i]._id), mapped.getTodoJson(actual[i]._id),
+            "Different todos for " + queryParams);
+        }
+      }
+      assertNull(mapped.getTodo("nonexistent"));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void snapshotsKeepTheirIndexesAndSortOrders() throws IOException {
+    DatabaseTD json = new DatabaseTD("/todos.json");
+    Path file = Files.createTempFile("todos", ".bin");
+    Path copy = Files.createTempFile("copy", ".bin");
+    try {
+      json.writeSnapshot(file);
+      ColumnarTodoStore store = ColumnarTodoStore.read(file);
+      int size = store.size();
+
+      assertEquals(BitmapIndex.build(size, store::owner).counts(TodoStore.NONE),
+        store.ownerIndex().counts(TodoStore.NONE));
+      assertEquals(BitmapIndex.build(size, store::category).counts(TodoStore.NONE),
+        store.categoryIndex().counts(TodoStore.NONE));
+      assertEquals(BitmapIndex.build(size, store::status).counts(TodoStore.NONE),
+        store.statusIndex().counts(TodoStore.NONE));
+      TextIndex built = TextIndex.build(size, store::body);
+      for (String needle : new String[] { "Lorem", "ipsum dolor", "sunt", "zzz", "a" }) {
+        assertEquals(built.candidates(needle), store.bodyIndex().candidates(needle), needle);
+      }
+      // The sort orders are read from the mapped file, not copied out of it
+      for (String field : DatabaseTD.ORDERINGS.keySet()) {
+        assertTrue(store.sortOrder(field).isDirect(), field);
+      }
+
+      // A snapshot opened from a file can be saved again
+      DatabaseTD mapped = new DatabaseTD(file);
+      mapped.writeSnapshot(copy);
+      DatabaseTD copied = new DatabaseTD(copy);
+      for (String[] nameValues : QUERIES) {
+        Map<String, List<String>> queryParams = query(nameValues);
+        assertArrayEquals(ids(json.listTodos(queryParams)), ids(copied.listTodos(queryParams)),
+          "Different todos for " + queryParams);
+      }
+    } finally {
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(copy);
+    }
+  }
+
+  private static String[] ids(Todo[] todos) {
+    String[] ids = new String[todos.length];
+    for (int i = 0; i < todos.length; i++) {
+      ids[i] = todos[i]._id;
+    }
+    return ids;
+  }
+
+  @Test
+  public void rowStorageCopiesSnapshotIntoRows() throws IOException {
+    DatabaseTD json = new DatabaseTD("/todos.json");
+    Path file = Files.createTempFile("todos", ".bin");
+    try {
+      json.writeSnapshot(file);
+      DatabaseTD rows = new DatabaseTD(file, DatabaseTD.Storage.ROWS);
+
+      assertEquals(DatabaseTD.Storage.ROWS, rows.storage());
+      assertTrue(rows.snapshot().store() instanceof RowTodoStore);
+      for (String[] nameValues : QUERIES) {
+        Map<String, List<String>> queryParams = query(nameValues);
+        Todo[] expected = json.listTodos(queryParams);
+        Todo[] actual = rows.listTodos(queryParams);
+        assertEquals(expected.length, actual.length, "Different todos for " + queryParams);
+        for (int i = 0; i < expected.length; i++) {
+          assertArrayEquals(json.getTodoJson(expected[i]._id), rows.getTodoJson(actual[i]._id),
+            "Different todos for " + queryParams);
+        }
+      }
+
+      // Reloading keeps the storage that was asked for
+      DatabaseTD columns = new DatabaseTD(new Todo[0], DatabaseTD.Storage.COLUMNS);
+      columns.reload(file);
+      assertTrue(columns.snapshot().store() instanceof ColumnarTodoStore);
+      rows.reload(file);
+      assertTrue(rows.snapshot().store() instanceof RowTodoStore);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void otherFilesAreRejected() throws IOException {
+    Path file = Files.createTempFile("todos", ".bin");
+    try {
+      Files.write(file, "[{\"_id\": \"not a snapshot\"}]".getBytes());
+      assertThrows(IOException.class, () -> new DatabaseTD(file));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
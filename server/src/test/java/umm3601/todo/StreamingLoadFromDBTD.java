@@ -0,0 +1,78 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests streaming todos into umm3601.todo.DatabaseTD from JSON
+ */
+public class StreamingLoadFromDBTD {
+
+  private static final String TODOS = "["
+    + "{\"_id\": \"a\", \"owner\": \"Blanche\", \"status\": false, \"body\": \"one\", \"category\": \"homework\"},"
+    + "{\"_id\": \"b\", \"owner\": \"Blanche\", \"status\": true, \"body\": \"two\", \"category\": \"homework\"}"
+    + "]";
+
+  /**
+   * A reader that remembers whether it was closed.
+   */
+  private static class TrackingReader extends StringReader {
+    boolean closed;
+
+    TrackingReader(String text) {
+      super(text);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      super.close();
+    }
+  }
+
+  @Test
+  public void loadsEveryTodoAndClosesTheReader() throws IOException {
+    for (DatabaseTD.Storage storage : DatabaseTD.Storage.values()) {
+      TrackingReader reader = new TrackingReader(TODOS);
+      DatabaseTD db = new DatabaseTD(reader, storage);
+
+      assertTrue(reader.closed, "The reader was left open for " + storage);
+      assertEquals(2, db.size());
+      assertEquals("two", db.getTodo("b").body);
+      assertEquals(2, db.loadReport().records);
+    }
+  }
+
+  @Test
+  public void repeatedOwnersAndCategoriesAreShared() throws IOException {
+    DatabaseTD db = new DatabaseTD(new StringReader(TODOS), DatabaseTD.Storage.ROWS);
+    Todo[] todos = db.listTodos(new HashMap<>());
+    assertSame(todos[0].owner, todos[1].owner);
+    assertSame(todos[0].category, todos[1].category);
+  }
+
+  @Test
+  public void bundledTodosAreReported() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    assertNotNull(db.loadReport());
+    assertEquals(300, db.loadReport().records);
+  }
+
+  @Test
+  public void badInputIsAnIOException() {
+    TrackingReader reader = new TrackingReader("[{\"_id\": \"a\"}, {\"_id\": ");
+    assertThrows(IOException.class, () -> new DatabaseTD(reader, DatabaseTD.Storage.ROWS));
+    assertTrue(reader.closed);
+    assertThrows(IOException.class, () -> new DatabaseTD(new StringReader("{}"), DatabaseTD.Storage.ROWS));
+    assertThrows(IOException.class, () -> new DatabaseTD("/nonexistent.json"));
+  }
+}
@@ -3,11 +3,16 @@ package umm3601.todo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -18,6 +23,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import io.javalin.core.validation.Validator;
 import io.javalin.http.BadRequestResponse;
 import io.javalin.http.Context;
@@ -45,15 +52,28 @@ public class TodoControllerSpec {
     todoController = new TodoController(db);
   }
 
+  /**
+   * Read back the todos the controller streamed out as its JSON result.
+   */
+  private Todo[] streamedTodos() {
+    ArgumentCaptor<InputStream> argument = ArgumentCaptor.forClass(InputStream.class);
+    verify(ctx).contentType("application/json");
+    verify(ctx).result(argument.capture());
+    try {
+      return new ObjectMapper().readValue(argument.getValue(), Todo[].class);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   @Test
   public void GET_to_request_all_todos() throws IOException {
     // Call the method on the mock controller
     todoController.getTodos(ctx);
 
-    // The `json` should have been called with all the todos.
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    assertEquals(db.size(), argument.getValue().length);
+    // All the todos should have been streamed out.
+    Todo[] todos = streamedTodos();
+    assertEquals(db.size(), todos.length);
   }
 
   @Test
@@ -64,10 +84,9 @@ public class TodoControllerSpec {
     when(ctx.queryParamMap()).thenReturn(queryParams);
     todoController.getTodos(ctx);
 
-    // All the todos passed to `json` should be owned by Blanche.
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    for (Todo todo : argument.getValue()) {
+    // All the todos streamed out should be owned by Blanche.
+    Todo[] todos = streamedTodos();
+    for (Todo todo : todos) {
       assertEquals("Blanche", todo.owner);
     }
   }
@@ -82,9 +101,8 @@ public class TodoControllerSpec {
     todoController.getTodos(ctx);
 
     // All todos should be in the groceries category.
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    for (Todo todo : argument.getValue()) {
+    Todo[] todos = streamedTodos();
+    for (Todo todo : todos) {
       assertEquals("groceries", todo.category);
     }
   }
@@ -101,9 +119,8 @@ public class TodoControllerSpec {
     todoController.getTodos(ctx);
 
     // All todos should be owned by Blanche and be in the groceries category.
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    for (Todo todo : argument.getValue()) {
+    Todo[] todos = streamedTodos();
+    for (Todo todo : todos) {
       assertEquals("Blanche", todo.owner);
       assertEquals("groceries", todo.category);
     }
@@ -119,9 +136,8 @@ public class TodoControllerSpec {
     todoController.getTodos(ctx);
 
     // All todos listed should be incomplete.
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    for (Todo todo : argument.getValue()) {
+    Todo[] todos = streamedTodos();
+    for (Todo todo : todos) {
       assertFalse(todo.status);
     }
   }
@@ -136,9 +152,8 @@ public class TodoControllerSpec {
     todoController.getTodos(ctx);
 
     // There should be no todos with "banana" in their bodies.
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    assertEquals(0, argument.getValue().length);
+    Todo[] todos = streamedTodos();
+    assertEquals(0, todos.length);
   }
 
   @Test
@@ -150,9 +165,8 @@ public class TodoControllerSpec {
     todoController.getTodos(ctx);
 
     // This should confirm that 7 entries are being returned.
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    assertEquals(7, argument.getValue().length);
+    Todo[] todos = streamedTodos();
+    assertEquals(7, todos.length);
   }
 
   @Test
@@ -177,9 +191,8 @@ public class TodoControllerSpec {
     todoController.getTodos(ctx);
 
     // All todos in the list should be ordered by owner.
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    int max = argument.getValue().length;
+    Todo[] todos = streamedTodos();
+    int max = todos.length;
     for (int i = 0; i < max-1; i++) {
       Integer f = i;
       Integer s = i + 1;
@@ -196,9 +209,8 @@ public class TodoControllerSpec {
     todoController.getTodos(ctx);
 
     // All todos in the list should be ordered by status.
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    int max = argument.getValue().length;
+    Todo[] todos = streamedTodos();
+    int max = todos.length;
     for (int i = 0; i < max-1; i++) {
       Integer f = i;
       Integer s = i + 1;
@@ -215,9 +227,8 @@ public class TodoControllerSpec {
     todoController.getTodos(ctx);
 
     // All todos in the list should be ordered by body.
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    int max = argument.getValue().length;
+    Todo[] todos = streamedTodos();
+    int max = todos.length;
     for (int i = 0; i < max-1; i++) {
       Integer f = i;
       Integer s = i + 1;
@@ -237,14 +248,13 @@ public class TodoControllerSpec {
     todoController.getTodos(ctx);
 
     // All todos should be owned by Blanche and be incomplete
-    ArgumentCaptor<Todo[]> argument = ArgumentCaptor.forClass(Todo[].class);
-    verify(ctx).json(argument.capture());
-    for (Todo todo : argument.getValue()) {
+    Todo[] todos = streamedTodos();
+    for (Todo todo : todos) {
       assertEquals("Blanche", todo.owner);
       assertFalse(todo.status);
     }
     // There should be 12 todos in total, and they should be ordered by category.
-    assertEquals(12, argument.getValue().length);
+    assertEquals(12, todos.length);
     for (int i = 0; i < 10; i++) {
       Integer f = i;
       Integer s = i + 1;
@@ -257,6 +267,12 @@ public class TodoControllerSpec {
     when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("58895985f0a4bbea24084abf", "", "id"));
     todoController.getTodo(ctx);
     verify(ctx).status(201);
+
+    // The cached JSON for that todo should have been written out.
+    ArgumentCaptor<InputStream> argument = ArgumentCaptor.forClass(InputStream.class);
+    verify(ctx).result(argument.capture());
+    Todo todo = new ObjectMapper().readValue(argument.getValue(), Todo.class);
+    assertEquals("58895985f0a4bbea24084abf", todo._id);
   }
 
   @Test
@@ -266,4 +282,211 @@ public class TodoControllerSpec {
       todoController.getTodo(ctx);
     });
   }
+
+  /**
+   * Get the ETag the controller sent with its last response.
+   */
+  private static String sentETag(Context context) {
+    ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+    verify(context).header(eq("ETag"), etag.capture());
+    return etag.getValue();
+  }
+
+  @Test
+  public void GET_to_request_todos_with_current_etag() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("owner", Arrays.asList(new String[] { "Blanche" }));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    todoController.getTodos(ctx);
+    String etag = sentETag(ctx);
+    verify(ctx).header("Cache-Control", "no-cache");
+
+    // Asking again with that tag should get a 304 and no body.
+    Context revalidation = mock(Context.class);
+    when(revalidation.queryParamMap()).thenReturn(queryParams);
+    when(revalidation.header("If-None-Match")).thenReturn(etag);
+    todoController.getTodos(revalidation);
+    verify(revalidation).status(304);
+    verify(revalidation, never()).result(any(InputStream.class));
+  }
+
+  @Test
+  public void GET_to_request_todos_with_stale_etag() throws IOException {
+    todoController.getTodos(ctx);
+    String etag = sentETag(ctx);
+
+    // Publishing new data should change the tag and send the full response.
+    db.publish(db.listTodos(new HashMap<>()));
+    Context revalidation = mock(Context.class);
+    when(revalidation.header("If-None-Match")).thenReturn(etag);
+    todoController.getTodos(revalidation);
+    verify(revalidation, never()).status(304);
+    assertFalse(etag.equals(sentETag(revalidation)));
+    verify(revalidation).result(any(InputStream.class));
+  }
+
+  @Test
+  public void GET_to_request_todos_with_different_query_etag() throws IOException {
+    todoController.getTodos(ctx);
+    String etag = sentETag(ctx);
+
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("limit", Arrays.asList(new String[] { "3" }));
+    Context other = mock(Context.class);
+    when(other.queryParamMap()).thenReturn(queryParams);
+    when(other.header("If-None-Match")).thenReturn(etag);
+    todoController.getTodos(other);
+    verify(other, never()).status(304);
+    assertFalse(etag.equals(sentETag(other)));
+  }
+
+  @Test
+  public void GET_to_request_todo_with_current_etag() throws IOException {
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("58895985f0a4bbea24084abf", "", "id"));
+    todoController.setItemCacheControl("max-age=60");
+    todoController.getTodo(ctx);
+    String etag = sentETag(ctx);
+    verify(ctx).header("Cache-Control", "max-age=60");
+
+    Context revalidation = mock(Context.class);
+    when(revalidation.pathParam("id", String.class)).thenReturn(new Validator<String>("58895985f0a4bbea24084abf", "", "id"));
+    when(revalidation.header("If-None-Match")).thenReturn("W/" + etag);
+    todoController.getTodo(revalidation);
+    verify(revalidation).status(304);
+    verify(revalidation, never()).result(any(InputStream.class));
+    verify(revalidation).header("Vary", "Accept-Encoding");
+  }
+
+  @Test
+  public void GET_to_request_missing_todo_with_wildcard_etag() throws IOException {
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("nonexistent", "", "id"));
+    when(ctx.header("If-None-Match")).thenReturn("*");
+    Assertions.assertThrows(NotFoundResponse.class, () -> {
+      todoController.getTodo(ctx);
+    });
+    verify(ctx, never()).status(304);
+  }
+
+  @Test
+  public void GET_to_request_todo_with_wildcard_etag() throws IOException {
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("58895985f0a4bbea24084abf", "", "id"));
+    when(ctx.header("If-None-Match")).thenReturn("*");
+    todoController.getTodo(ctx);
+    verify(ctx).status(304);
+  }
+
+  @Test
+  public void POST_to_add_todo() throws IOException {
+    when(ctx.body()).thenReturn(
+      "{\"owner\": \"Fry\", \"status\": false, \"body\": \"Deliver the package\", \"category\": \"work\"}");
+    todoController.addTodo(ctx);
+    verify(ctx).status(201);
+
+    ArgumentCaptor<Todo> argument = ArgumentCaptor.forClass(Todo.class);
+    verify(ctx).json(argument.capture());
+    Todo added = argument.getValue();
+    assertEquals("Fry", added.owner);
+    assertEquals(301, db.size());
+    assertEquals("Deliver the package", db.getTodo(added._id).body);
+  }
+
+  @Test
+  public void POST_to_add_incomplete_todo() throws IOException {
+    when(ctx.body()).thenReturn("{\"owner\": \"Fry\", \"body\": \"Deliver the package\"}");
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      todoController.addTodo(ctx);
+    });
+    assertEquals(300, db.size());
+  }
+
+  @Test
+  public void PUT_to_store_todo() throws IOException {
+    String id = "5f3a9c0e0000000000000001";
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>(id, "", "id"));
+    when(ctx.body()).thenReturn(
+      "{\"owner\": \"Fry\", \"status\": false, \"body\": \"Deliver the package\", \"category\": \"work\"}");
+    todoController.putTodo(ctx);
+    verify(ctx).status(201);
+    assertEquals(301, db.size());
+    assertEquals("Deliver the package", db.getTodo(id).body);
+  }
+
+  @Test
+  public void PUT_to_reserved_or_malformed_ids() throws IOException {
+    when(ctx.body()).thenReturn(
+      "{\"owner\": \"Fry\", \"status\": false, \"body\": \"Deliver the package\", \"category\": \"work\"}");
+    for (String id : new String[] { "_stats", "_batch", "fresh", "58895985F0A4BBEA24084ABF", "58895985f0a4bbea24084abf0" }) {
+      when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>(id, "", "id"));
+      Assertions.assertThrows(BadRequestResponse.class, () -> {
+        todoController.putTodo(ctx);
+      });
+    }
+    assertEquals(300, db.size());
+  }
+
+  @Test
+  public void PATCH_to_complete_todo() throws IOException {
+    String id = "58895985f0a4bbea24084abf";
+    boolean status = db.getTodo(id).status;
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>(id, "", "id"));
+    when(ctx.body()).thenReturn("{\"status\": " + !status + "}");
+    todoController.patchTodo(ctx);
+
+    assertEquals(!status, db.getTodo(id).status);
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("status", Arrays.asList(status ? "incomplete" : "complete"));
+    assertTrue(Arrays.stream(db.listTodos(queryParams)).anyMatch(todo -> todo._id.equals(id)));
+  }
+
+  @Test
+  public void PATCH_with_wrongly_typed_field() throws IOException {
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("58895985f0a4bbea24084abf", "", "id"));
+    when(ctx.body()).thenReturn("{\"status\": \"done\"}");
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      todoController.patchTodo(ctx);
+    });
+  }
+
+  @Test
+  public void DELETE_todo() throws IOException {
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("58895985f0a4bbea24084abf", "", "id"));
+    todoController.deleteTodo(ctx);
+    verify(ctx).status(204);
+    assertEquals(299, db.size());
+
+    Assertions.assertThrows(NotFoundResponse.class, () -> {
+      todoController.deleteTodo(ctx);
+    });
+  }
+
+  @Test
+  public void POST_to_request_todos_by_ids() throws IOException {
+    when(ctx.body()).thenReturn("[\"58895985f0a4bbea24084abf\", \"nonexistent\", \"58895985a22c04e761776d54\"]");
+    todoController.getTodosByIds(ctx);
+
+    Todo[] todos = streamedTodos();
+    assertEquals(2, todos.length);
+    assertEquals("58895985f0a4bbea24084abf", todos[0]._id);
+    assertEquals("58895985a22c04e761776d54", todos[1]._id);
+  }
+
+  @Test
+  public void POST_to_request_todos_by_ids_with_non_string_ids() throws IOException {
+    when(ctx.body()).thenReturn("[\"58895985f0a4bbea24084abf\", 7]");
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      todoController.getTodosByIds(ctx);
+    });
+  }
+
+  @Test
+  public void GET_to_request_todo_stats() throws IOException {
+    todoController.getTodoStats(ctx);
+
+    ArgumentCaptor<InputStream> argument = ArgumentCaptor.forClass(InputStream.class);
+    verify(ctx).contentType("application/json");
+    verify(ctx).result(argument.capture());
+    Map<?, ?> stats = new ObjectMapper().readValue(argument.getValue(), Map.class);
+    assertEquals(db.size(), stats.get("total"));
+    assertEquals(Map.of("complete", 143, "incomplete", 157), stats.get("status"));
+  }
 }
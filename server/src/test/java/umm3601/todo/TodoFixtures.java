@@ -0,0 +1,39 @@
+package umm3601.todo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helpers shared by the todo database tests
+ */
+final class TodoFixtures {
+
+  private TodoFixtures() {
+  }
+
+  /**
+   * Build query params from alternating names and values, e.g.
+   * `query("owner", "Fry", "limit", "5")`.
+   */
+  static Map<String, List<String>> query(String... nameValues) {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    for (int i = 0; i < nameValues.length; i += 2) {
+      queryParams.put(nameValues[i], Arrays.asList(nameValues[i + 1]));
+    }
+    return queryParams;
+  }
+
+  /**
+   * Make a new todo, without an id.
+   */
+  static Todo todo(String owner, boolean status, String body, String category) {
+    Todo todo = new Todo();
+    todo.owner = owner;
+    todo.status = status;
+    todo.body = body;
+    todo.category = category;
+    return todo;
+  }
+}
@@ -0,0 +1,144 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static umm3601.todo.TodoFixtures.todo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests logging umm3601.todo.DatabaseTD writes to disk and recovering them
+ * after a restart
+ */
+public class TodoLogFromDBTD {
+
+  private static void makeWrites(DatabaseTD db, int count) {
+    for (int i = 0; i < count; i++) {
+      Todo added = db.addTodo(todo("Fry", false, "Logged write " + i, "work"));
+      if (i % 3 == 0) {
+        db.updateTodo(added._id, todo -> {
+          todo.status = true;
+          return todo;
+        });
+      }
+      if (i % 5 == 0) {
+        db.deleteTodo(added._id);
+      }
+    }
+    db.deleteTodo("58895985f0a4bbea24084abf");
+  }
+
+  /**
+   * Check that two databases hold the same todos, in the same order.
+   */
+  private static void assertSameTodos(DatabaseTD expected, DatabaseTD actual) {
+    Todo[] expectedTodos = expected.listTodos(new HashMap<>());
+    Todo[] actualTodos = actual.listTodos(new HashMap<>());
+    assertEquals(expectedTodos.length, actualTodos.length);
+    for (int i = 0; i < expectedTodos.length; i++) {
+      assertArrayEquals(expected.getTodoJson(expectedTodos[i]._id), actual.getTodoJson(actualTodos[i]._id));
+    }
+  }
+
+  private static List<Path> files(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static void delete(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  public void writesSurviveARestart() throws IOException {
+    // With and without group commit
+    for (int maxBatch : new int[] { 1, DatabaseTD.DEFAULT_WRITE_BATCH }) {
+      Path directory = Files.createTempDirectory("todo-log");
+      try {
+        DatabaseTD db = new DatabaseTD("/todos.json");
+        db.openLog(directory, maxBatch);
+        makeWrites(db, 30);
+        db.close();
+
+        DatabaseTD restarted = new DatabaseTD("/todos.json");
+        restarted.openLog(directory, maxBatch);
+        assertNull(restarted.getTodo("58895985f0a4bbea24084abf"));
+        assertSameTodos(db, restarted);
+        restarted.close();
+      } finally {
+        delete(directory);
+      }
+    }
+  }
+
+  @Test
+  public void compactionSnapshotsTheLog() throws Exception {
+    for (DatabaseTD.Storage storage : DatabaseTD.Storage.values()) {
+      Path directory = Files.createTempDirectory("todo-log");
+      try {
+        DatabaseTD db = new DatabaseTD("/todos.json", storage);
+        db.openLog(directory, DatabaseTD.DEFAULT_WRITE_BATCH, 8, Long.MAX_VALUE);
+        makeWrites(db, 40);
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (db.snapshot().patches() >= 8 && System.currentTimeMillis() < deadline) {
+          Thread.sleep(10);
+        }
+        db.close();
+
+        // Only the segments written since the last compaction are kept
+        List<Path> files = files(directory);
+        assertTrue(files.contains(directory.resolve(TodoWriter.SNAPSHOT_FILE)), "No snapshot in " + files);
+        assertTrue(files.size() <= 3, "Old segments were kept: " + files);
+
+        DatabaseTD restarted = new DatabaseTD("/todos.json", storage);
+        restarted.openLog(directory, DatabaseTD.DEFAULT_WRITE_BATCH);
+        assertSameTodos(db, restarted);
+        WriteTodosFromDBTD.assertMatchesRebuild(restarted);
+        restarted.close();
+      } finally {
+        delete(directory);
+      }
+    }
+  }
+
+  @Test
+  public void tornRecordsAreIgnored() throws IOException {
+    Path directory = Files.createTempDirectory("todo-log");
+    try {
+      DatabaseTD db = new DatabaseTD("/todos.json");
+      db.openLog(directory, DatabaseTD.DEFAULT_WRITE_BATCH);
+      Todo added = db.addTodo(todo("Fry", false, "Survives the crash", "work"));
+      db.close();
+
+      // A crash part way through appending the next record
+      Path segment = files(directory).get(0);
+      Files.write(segment, new byte[] { 40, 0, 0, 0, 1, 2, 3, 4, '{' }, StandardOpenOption.APPEND);
+
+      DatabaseTD restarted = new DatabaseTD("/todos.json");
+      restarted.openLog(directory, DatabaseTD.DEFAULT_WRITE_BATCH);
+      assertNotNull(restarted.getTodo(added._id));
+      assertEquals(301, restarted.size());
+      restarted.close();
+    } finally {
+      delete(directory);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests umm3601.todo.DatabaseTD getStatsJson
+ */
+public class TodoStatsFromDBTD {
+
+  private static JsonObject stats(DatabaseTD db) {
+    return JsonParser.parseString(new String(db.getStatsJson(), StandardCharsets.UTF_8)).getAsJsonObject();
+  }
+
+  /**
+   * Count the todos the slow way, for comparison with the index counts.
+   */
+  private static void assertCountsMatch(DatabaseTD db) {
+    Map<String, Integer> owners = new HashMap<>();
+    Map<String, Integer> categories = new HashMap<>();
+    int complete = 0;
+    Todo[] todos = db.listTodos(new HashMap<>());
+    for (Todo todo : todos) {
+      owners.merge(todo.owner, 1, Integer::sum);
+      categories.merge(todo.category, 1, Integer::sum);
+      complete += todo.status ? 1 : 0;
+    }
+
+    JsonObject stats = stats(db);
+    assertEquals(todos.length, stats.get("total").getAsInt(), "Incorrect total");
+    JsonObject ownerCounts = stats.getAsJsonObject("owner");
+    assertEquals(owners.size(), ownerCounts.size(), "Incorrect number of owners");
+    owners.forEach((owner, count) ->
+      assertEquals((int) count, ownerCounts.get(owner).getAsInt(), "Incorrect count for " + owner));
+    JsonObject categoryCounts = stats.getAsJsonObject("category");
+    assertEquals(categories.size(), categoryCounts.size(), "Incorrect number of categories");
+    categories.forEach((category, count) ->
+      assertEquals((int) count, categoryCounts.get(category).getAsInt(), "Incorrect count for " + category));
+    JsonObject statusCounts = stats.getAsJsonObject("status");
+    assertEquals(complete, statusCounts.get("complete").getAsInt(), "Incorrect number complete");
+    assertEquals(todos.length - complete, statusCounts.get("incomplete").getAsInt(), "Incorrect number incomplete");
+  }
+
+  @Test
+  public void countTodos() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    assertCountsMatch(db);
+
+    JsonObject stats = stats(db);
+    assertEquals(300, stats.get("total").getAsInt(), "Incorrect total");
+    assertEquals(143, stats.getAsJsonObject("status").get("complete").getAsInt(), "Incorrect number complete");
+    assertEquals(157, stats.getAsJsonObject("status").get("incomplete").getAsInt(), "Incorrect number incomplete");
+  }
+
+  @Test
+  public void countColumnarTodos() throws IOException {
+    assertCountsMatch(new DatabaseTD("/todos.json", DatabaseTD.Storage.COLUMNS));
+  }
+
+  @Test
+  public void countsAreCachedUntilTheTodosChange() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    byte[] stats = db.getStatsJson();
+    assertSame(stats, db.getStatsJson(), "The counts should only be worked out once");
+
+    Todo todo = new Todo();
+    todo.owner = "Nobody";
+    todo.category = "chores";
+    todo.body = "Count me";
+    db.addTodo(todo);
+    db.deleteTodo("58895985a22c04e761776d54");
+    assertNotSame(stats, db.getStatsJson(), "The counts should be redone after a write");
+    assertCountsMatch(db);
+    assertEquals(1, stats(db).getAsJsonObject("owner").get("Nobody").getAsInt(), "The new todo wasn't counted");
+  }
+}
@@ -0,0 +1,261 @@
+package umm3601.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static umm3601.todo.TodoFixtures.query;
+import static umm3601.todo.TodoFixtures.todo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+import umm3601.SyntheticData;
+
+/**
+ * Tests writing todos to umm3601.todo.DatabaseTD, checking that the indexes
+ * it updates incrementally answer queries exactly like freshly built ones
+ */
+public class WriteTodosFromDBTD {
+
+  private static final String[][] QUERIES = {
+    {},
+    { "owner", "Fry" },
+    { "owner", "Blanche", "status", "complete" },
+    { "category", "video games", "orderBy", "body" },
+    { "status", "incomplete", "orderBy", "owner" },
+    { "contains", "Lorem", "orderBy", "category" },
+    { "contains", "package", "containsMode", "ignoreCase" },
+    { "contains", "deliver package", "containsMode", "words", "orderBy", "status" },
+    { "orderBy", "body", "limit", "20", "offset", "5" },
+  };
+
+  private static String[] ids(Todo[] todos) {
+    return Arrays.stream(todos).map(todo -> todo._id).toArray(String[]::new);
+  }
+
+  /**
+   * Check that every query gives the same todos, in the same order, as a
+   * database built from scratch over the same todos.
+   */
+  static void assertMatchesRebuild(DatabaseTD db) {
+    DatabaseTD rebuilt = new DatabaseTD(db.listTodos(new HashMap<>()), db.storage());
+    assertEquals(rebuilt.size(), db.size());
+    for (String[] nameValues : QUERIES) {
+      Map<String, List<String>> queryParams = query(nameValues);
+      assertArrayEquals(ids(rebuilt.listTodos(queryParams)), ids(db.listTodos(queryParams)),
+        "Different todos for " + queryParams);
+      assertEquals(rebuilt.countTodos(queryParams), db.countTodos(queryParams),
+        "Different count for " + queryParams);
+    }
+  }
+
+  private static void makeWrites(DatabaseTD db) {
+    Todo added = db.addTodo(todo("Fry", false, "Deliver the package to Omicron Persei 8", "work"));
+    db.addTodo(todo("Leela", true, "Pilot the ship", "work"));
+    assertFalse(db.putTodo(added._id, todo("Fry", true, "Delivered the package", "video games")));
+    assertTrue(db.putTodo("fresh", todo("Bender", false, "Lorem package", "homework")));
+
+    Todo[] blanche = db.listTodos(query("owner", "Blanche", "limit", "5"));
+    for (Todo todo : blanche) {
+      db.updateTodo(todo._id, changed -> {
+        changed.status = !changed.status;
+        return changed;
+      });
+    }
+    db.updateTodo(blanche[0]._id, changed -> {
+      changed.owner = "Fry";
+      changed.body = "Deliver another package";
+      return changed;
+    });
+    assertTrue(db.deleteTodo(blanche[1]._id));
+    assertTrue(db.deleteTodo("fresh"));
+    assertTrue(db.putTodo("fresh", todo("Bender", true, "Bend things", "groceries")));
+  }
+
+  @Test
+  public void writesUpdateIndexesLikeARebuild() throws IOException {
+    for (DatabaseTD.Storage storage : DatabaseTD.Storage.values()) {
+      DatabaseTD db = new DatabaseTD("/todos.json", storage);
+      makeWrites(db);
+      assertEquals(302, db.size());
+      assertMatchesRebuild(db);
+      db.close();
+    }
+  }
+
+  @Test
+  public void writesUpdateTextIndexesBuiltBeforeThem() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    // Build the indexes for the opt-in modes before writing
+    db.listTodos(query("contains", "package", "containsMode", "ignoreCase"));
+    db.listTodos(query("contains", "deliver package", "containsMode", "words"));
+    makeWrites(db);
+    assertMatchesRebuild(db);
+    db.close();
+  }
+
+  @Test
+  public void manyWritesUpdateIndexesLikeARebuild() throws IOException {
+    // Enough todos for the sort orders to be split into several chunks
+    Todo[] todos = SyntheticData.todos(5_000, SyntheticData.DEFAULT_SEED);
+    String[] owners = { "Fry", "Blanche", "Leela" };
+    for (DatabaseTD.Storage storage : DatabaseTD.Storage.values()) {
+      DatabaseTD db = new DatabaseTD(todos, storage);
+      Random random = new Random(42);
+      List<String> deleted = new ArrayList<>();
+      for (int round = 0; round < 10; round++) {
+        for (int i = 0; i < 50; i++) {
+          db.updateTodo(todos[random.nextInt(todos.length)]._id, changed -> {
+            changed.owner = owners[random.nextInt(owners.length)];
+            changed.status = !changed.status;
+            changed.body = changed.body + " package";
+            return changed;
+          });
+        }
+        for (int i = 0; i < 10; i++) {
+          db.addTodo(todo(owners[random.nextInt(owners.length)], random.nextBoolean(), "Lorem package " + i, "work"));
+          String id = todos[random.nextInt(todos.length)]._id;
+          if (db.deleteTodo(id)) {
+            deleted.add(id);
+          }
+        }
+        if (!deleted.isEmpty()) {
+          db.putTodo(deleted.remove(0), todo("Bender", true, "Bend things", "groceries"));
+        }
+      }
+      assertMatchesRebuild(db);
+      db.close();
+    }
+  }
+
+  @Test
+  public void writesCanBeReadBack() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    long version = db.version();
+    Todo added = db.addTodo(todo("Fry", false, "Deliver the package", "work"));
+
+    assertNotNull(added._id);
+    assertTrue(db.version() > version);
+    assertEquals("Deliver the package", db.getTodo(added._id).body);
+    assertEquals(true, db.updateTodo(added._id, todo -> {
+      todo.status = true;
+      return todo;
+    }).status);
+    assertTrue(db.getTodo(added._id).status);
+    assertNull(db.updateTodo("nonexistent", todo -> todo));
+    db.close();
+  }
+
+  @Test
+  public void deletedTodosAreGone() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    String id = "58895985f0a4bbea24084abf";
+    assertTrue(db.deleteTodo(id));
+
+    assertNull(db.getTodo(id));
+    assertNull(db.getTodoJson(id));
+    assertEquals(299, db.size());
+    assertEquals(299, db.listTodos(new HashMap<>()).length);
+    assertEquals(299, db.countTodos(new HashMap<>()));
+    assertFalse(Arrays.asList(ids(db.listTodos(query("orderBy", "owner")))).contains(id));
+    assertFalse(db.deleteTodo(id));
+    db.close();
+  }
+
+  @Test
+  public void cursorsResumeAfterDeletedTodos() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    String[][] orderings = { {}, { "orderBy", "owner" }, { "orderBy", "body" }, { "orderBy", "status" } };
+    for (String[] ordering : orderings) {
+      List<String> before = Arrays.asList(ids(db.listTodos(query(ordering))));
+      String cursor = before.get(10);
+      assertTrue(db.deleteTodo(cursor));
+
+      String[] withCursor = Arrays.copyOf(ordering, ordering.length + 2);
+      withCursor[ordering.length] = "after";
+      withCursor[ordering.length + 1] = cursor;
+      assertArrayEquals(before.subList(11, before.size()).toArray(), ids(db.listTodos(query(withCursor))),
+        "Different todos after " + cursor + " for " + Arrays.toString(ordering));
+    }
+    db.close();
+  }
+
+  @Test
+  public void cursorsOfTodosDeletedBeforeCompactionAreRejected() throws Exception {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    db.openLog(null, DatabaseTD.DEFAULT_WRITE_BATCH, 1, Long.MAX_VALUE);
+    String id = "58895985f0a4bbea24084abf";
+    assertTrue(db.deleteTodo(id));
+    long deadline = System.currentTimeMillis() + 30_000;
+    while (db.snapshot().patches() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, db.snapshot().patches());
+    assertThrows(BadRequestResponse.class, () -> db.listTodos(query("after", id)));
+    db.close();
+  }
+
+  @Test
+  public void incompleteTodosAreRejected() throws IOException {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    assertThrows(IllegalArgumentException.class, () -> db.addTodo(todo("Fry", false, null, "work")));
+    assertEquals(300, db.size());
+    db.close();
+  }
+
+  @Test
+  public void concurrentWritesAreAllApplied() throws Exception {
+    DatabaseTD db = new DatabaseTD("/todos.json");
+    ExecutorService writers = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Todo>> added = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        boolean status = i % 2 == 0;
+        String body = "Concurrent write " + i;
+        added.add(writers.submit(() -> db.addTodo(todo("Fry", status, body, "work"))));
+      }
+      for (Future<Todo> todo : added) {
+        assertNotNull(db.getTodo(todo.get()._id));
+      }
+    } finally {
+      writers.shutdown();
+    }
+    assertEquals(500, db.size());
+    assertEquals(200, db.countTodos(query("contains", "Concurrent write")));
+    assertMatchesRebuild(db);
+    db.close();
+  }
+
+  @Test
+  public void compactionFoldsInTheWrites() throws Exception {
+    for (DatabaseTD.Storage storage : DatabaseTD.Storage.values()) {
+      DatabaseTD db = new DatabaseTD("/todos.json", storage);
+      db.openLog(null, DatabaseTD.DEFAULT_WRITE_BATCH, 4, Long.MAX_VALUE);
+      makeWrites(db);
+      // Compaction runs in the background, and repeats until fewer than 4
+      // writes are left over
+      long deadline = System.currentTimeMillis() + 30_000;
+      while (db.snapshot().patches() >= 4 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(db.snapshot().patches() < 4);
+      assertMatchesRebuild(db);
+      db.close();
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package umm3601.user;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -10,9 +12,11 @@ import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 
+import umm3601.SyntheticData;
+
 /**
- * Tests umm3601.user.Database filterUsersByAge and listUsers with _age_ query
- * parameters
+ * Tests umm3601.user.Database filterUsersByAge and listUsers with _age_,
+ * _minAge_ and _maxAge_ query parameters
  */
 public class FilterUsersByAgeFromDB {
 
@@ -28,6 +32,15 @@ public class FilterUsersByAgeFromDB {
     assertEquals(1, age33Users.length, "Incorrect number of users with age 33");
   }
 
+  @Test
+  public void filterManyUsersByAge() {
+    // Enough users to be split across cores where there are several
+    User[] users = SyntheticData.users(200_000, SyntheticData.DEFAULT_SEED);
+    Database db = new Database(users);
+    User[] expected = Arrays.stream(users).filter(user -> user.age == 27).toArray(User[]::new);
+    assertArrayEquals(expected, db.filterUsersByAge(users, 27));
+  }
+
   @Test
   public void listUsersWithAgeFilter() throws IOException {
     Database db = new Database("/users.json");
@@ -41,4 +54,40 @@ public class FilterUsersByAgeFromDB {
     User[] age33Users = db.listUsers(queryParams);
     assertEquals(1, age33Users.length, "Incorrect number of users with age 33");
   }
+
+  @Test
+  public void listUsersWithAgeRange() throws IOException {
+    Database db = new Database("/users.json");
+    User[] allUsers = db.listUsers(new HashMap<>());
+    Map<String, List<String>> queryParams = new HashMap<>();
+
+    queryParams.put("minAge", Arrays.asList(new String[] { "25" }));
+    queryParams.put("maxAge", Arrays.asList(new String[] { "33" }));
+    assertArrayEquals(db.filterUsersByAgeRange(allUsers, 25, 33), db.listUsers(queryParams),
+      "Incorrect users aged 25 to 33");
+    assertEquals(6, db.listUsers(queryParams).length, "Incorrect number of users aged 25 to 33");
+    assertEquals(6, db.countUsers(queryParams), "Incorrect count of users aged 25 to 33");
+
+    queryParams.remove("maxAge");
+    assertArrayEquals(db.filterUsersByAgeRange(allUsers, 25, Integer.MAX_VALUE), db.listUsers(queryParams),
+      "Incorrect users aged 25 or over");
+
+    queryParams.clear();
+    queryParams.put("maxAge", Arrays.asList(new String[] { "24" }));
+    assertEquals(1, db.listUsers(queryParams).length, "Incorrect number of users aged 24 or under");
+  }
+
+  @Test
+  public void listUsersWithSeveralAges() throws IOException {
+    Database db = new Database("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+
+    queryParams.put("age", Arrays.asList(new String[] { "27", "33", "27", "99" }));
+    User[] users = db.listUsers(queryParams);
+    assertEquals(4, users.length, "Incorrect number of users with age 27 or 33");
+    assertEquals(4, db.countUsers(queryParams), "Incorrect count of users with age 27 or 33");
+    for (User user : users) {
+      assertTrue(user.age == 27 || user.age == 33, "Incorrect age " + user.age);
+    }
+  }
 }
@@ -1,6 +1,7 @@
 package umm3601.user;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -36,4 +37,36 @@ public class FilterUsersByCombinedFiltersFromDB {
     User[] ohmnetAge25Users = db.listUsers(queryParams);
     assertEquals(1, ohmnetAge25Users.length, "Incorrect number of users with company OHMNET and age 25");
   }
+
+  @Test
+  public void filtersAreCheckedAgainstTheSmallestPostingList() throws IOException {
+    Database db = new Database("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("company", Arrays.asList(new String[] { "OHMNET" }));
+    queryParams.put("age", Arrays.asList(new String[] { "25" }));
+
+    // Neither posting list becomes a bitmap; the other filter is checked
+    // against the driver's rows instead
+    String plan = db.snapshot().planUsers(queryParams).toString();
+    assertTrue(plan.endsWith(" test age=25") || plan.endsWith(" test company=OHMNET"),
+      "Posting lists should be probed, not intersected: " + plan);
+  }
+
+  @Test
+  public void listUsersAtSeveralCompaniesInAnAgeRange() throws IOException {
+    Database db = new Database("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("company", Arrays.asList(new String[] { "OHMNET", "VINCH", "NOBODY" }));
+    User[] users = db.listUsers(queryParams);
+    assertEquals(3, users.length, "Incorrect number of users at OHMNET or VINCH");
+
+    queryParams.put("minAge", Arrays.asList(new String[] { "26" }));
+    User[] older = db.listUsers(queryParams);
+    for (User user : older) {
+      assertTrue(user.age >= 26, "Incorrect age " + user.age);
+      assertTrue(user.company.equals("OHMNET") || user.company.equals("VINCH"), "Incorrect company " + user.company);
+    }
+    assertEquals(db.filterUsersByAgeRange(users, 26, Integer.MAX_VALUE).length, older.length,
+      "Incorrect number of users aged 26 or over at OHMNET or VINCH");
+  }
 }
@@ -1,8 +1,11 @@
 package umm3601.user;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
@@ -24,4 +27,16 @@ public class GetUserByIDFromDB {
     User user = db.getUser("588935f5556f992bf8f37c01");
     assertEquals("Bolton Monroe", user.name, "Incorrect name");
   }
+
+  @Test
+  public void getUsersJsonByIds() throws IOException {
+    Database db = new Database("/users.json");
+    List<byte[]> found = new ArrayList<>();
+    db.getUsersJson(List.of("588935f5556f992bf8f37c01", "nonexistent", "588935f52787254123f71fed"))
+      .forEachRemaining(found::add);
+
+    assertEquals(2, found.size(), "Missing ids should be skipped");
+    assertSame(db.getUserJson("588935f5556f992bf8f37c01"), found.get(0), "Wrong user or order");
+    assertSame(db.getUserJson("588935f52787254123f71fed"), found.get(1), "Wrong user or order");
+  }
 }
@@ -0,0 +1,42 @@
+package umm3601.user;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests umm3601.user.Database listUsers with _limit_, _offset_ and _after_
+ * query parameters
+ */
+public class PageUsersFromDB {
+
+  @Test
+  public void limitAndOffset() throws IOException {
+    Database db = new Database("/users.json");
+    User[] allUsers = db.listUsers(new HashMap<>());
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("limit", Arrays.asList(new String[] { "4" }));
+    assertArrayEquals(Arrays.copyOfRange(allUsers, 0, 4), db.listUsers(queryParams), "Incorrect first page");
+
+    queryParams.put("offset", Arrays.asList(new String[] { "8" }));
+    assertArrayEquals(Arrays.copyOfRange(allUsers, 8, 10), db.listUsers(queryParams), "Incorrect last page");
+  }
+
+  @Test
+  public void cursorAfterFilteredUser() throws IOException {
+    Database db = new Database("/users.json");
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("age", Arrays.asList(new String[] { "25" }));
+    User[] age25Users = db.listUsers(queryParams);
+
+    queryParams.put("after", Arrays.asList(new String[] { age25Users[0]._id }));
+    assertArrayEquals(Arrays.copyOfRange(age25Users, 1, age25Users.length), db.listUsers(queryParams),
+      "Incorrect users after the first user aged 25");
+  }
+}
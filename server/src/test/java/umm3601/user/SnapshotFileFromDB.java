@@ -0,0 +1,38 @@
+package umm3601.user;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests saving umm3601.user.Database as a binary snapshot file and reading it
+ * back
+ */
+public class SnapshotFileFromDB {
+
+  @Test
+  public void snapshotRoundTripsEveryUser() throws IOException {
+    Database json = new Database("/users.json");
+    Path file = Files.createTempFile("users", ".bin");
+    try {
+      json.writeSnapshot(file);
+      Database loaded = new Database(file);
+
+      User[] expected = json.listUsers(new HashMap<>());
+      User[] actual = loaded.listUsers(new HashMap<>());
+      assertEquals(expected.length, actual.length);
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i]._id, actual[i]._id);
+        assertArrayEquals(json.getUserJson(expected[i]._id), loaded.getUserJson(actual[i]._id));
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
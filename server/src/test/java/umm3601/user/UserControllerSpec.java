@@ -1,11 +1,16 @@
 package umm3601.user;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -16,6 +21,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import io.javalin.core.validation.Validator;
 import io.javalin.http.BadRequestResponse;
 import io.javalin.http.Context;
@@ -43,15 +50,28 @@ public class UserControllerSpec {
     userController = new UserController(db);
   }
 
+  /**
+   * Read back the users the controller streamed out as its JSON result.
+   */
+  private User[] streamedUsers() {
+    ArgumentCaptor<InputStream> argument = ArgumentCaptor.forClass(InputStream.class);
+    verify(ctx).contentType("application/json");
+    verify(ctx).result(argument.capture());
+    try {
+      return new ObjectMapper().readValue(argument.getValue(), User[].class);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   @Test
   public void GET_to_request_all_users() throws IOException {
     // Call the method on the mock controller
     userController.getUsers(ctx);
 
-    // Confirm that `json` was called with all the users.
-    ArgumentCaptor<User[]> argument = ArgumentCaptor.forClass(User[].class);
-    verify(ctx).json(argument.capture());
-    assertEquals(db.size(), argument.getValue().length);
+    // Confirm that all the users were streamed out.
+    User[] users = streamedUsers();
+    assertEquals(db.size(), users.length);
   }
 
   @Test
@@ -62,10 +82,9 @@ public class UserControllerSpec {
     when(ctx.queryParamMap()).thenReturn(queryParams);
     userController.getUsers(ctx);
 
-    // Confirm that all the users passed to `json` have age 25.
-    ArgumentCaptor<User[]> argument = ArgumentCaptor.forClass(User[].class);
-    verify(ctx).json(argument.capture());
-    for (User user : argument.getValue()) {
+    // Confirm that all the users streamed out have age 25.
+    User[] users = streamedUsers();
+    for (User user : users) {
       assertEquals(25, user.age);
     }
   }
@@ -90,6 +109,17 @@ public class UserControllerSpec {
     });
   }
 
+  @Test
+  public void GET_to_request_users_with_illegal_minAge() {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("minAge", Arrays.asList(new String[] { "twenty" }));
+
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      userController.getUsers(ctx);
+    });
+  }
+
   @Test
   public void GET_to_request_company_OHMNET_users() throws IOException {
 
@@ -99,10 +129,9 @@ public class UserControllerSpec {
     when(ctx.queryParamMap()).thenReturn(queryParams);
     userController.getUsers(ctx);
 
-    // Confirm that all the users passed to `json` work for OHMNET.
-    ArgumentCaptor<User[]> argument = ArgumentCaptor.forClass(User[].class);
-    verify(ctx).json(argument.capture());
-    for (User user : argument.getValue()) {
+    // Confirm that all the users streamed out work for OHMNET.
+    User[] users = streamedUsers();
+    for (User user : users) {
       assertEquals("OHMNET", user.company);
     }
   }
@@ -118,11 +147,10 @@ public class UserControllerSpec {
     when(ctx.queryParamMap()).thenReturn(queryParams);
     userController.getUsers(ctx);
 
-    // Confirm that all the users passed to `json` work for OHMNET
+    // Confirm that all the users streamed out work for OHMNET
     // and have age 25.
-    ArgumentCaptor<User[]> argument = ArgumentCaptor.forClass(User[].class);
-    verify(ctx).json(argument.capture());
-    for (User user : argument.getValue()) {
+    User[] users = streamedUsers();
+    for (User user : users) {
       assertEquals(25, user.age);
       assertEquals("OHMNET", user.company);
     }
@@ -133,6 +161,12 @@ public class UserControllerSpec {
     when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("588935f5c668650dc77df581", "", "id"));
     userController.getUser(ctx);
     verify(ctx).status(201);
+
+    // The cached JSON for that user should have been written out.
+    ArgumentCaptor<InputStream> argument = ArgumentCaptor.forClass(InputStream.class);
+    verify(ctx).result(argument.capture());
+    User user = new ObjectMapper().readValue(argument.getValue(), User.class);
+    assertEquals("588935f5c668650dc77df581", user._id);
   }
 
   @Test
@@ -142,4 +176,88 @@ public class UserControllerSpec {
       userController.getUser(ctx);
     });
   }
+
+  @Test
+  public void GET_to_request_users_with_current_etag() throws IOException {
+    Map<String, List<String>> queryParams = new HashMap<>();
+    queryParams.put("company", Arrays.asList(new String[] { "OHMNET" }));
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    userController.getUsers(ctx);
+    ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+    verify(ctx).header(eq("ETag"), etag.capture());
+
+    // Asking again with that tag should get a 304 and no body.
+    Context revalidation = mock(Context.class);
+    when(revalidation.queryParamMap()).thenReturn(queryParams);
+    when(revalidation.header("If-None-Match")).thenReturn(etag.getValue());
+    userController.getUsers(revalidation);
+    verify(revalidation).status(304);
+    verify(revalidation, never()).result(any(InputStream.class));
+  }
+
+  @Test
+  public void GET_to_request_user_with_current_etag() throws IOException {
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("588935f5c668650dc77df581", "", "id"));
+    userController.getUser(ctx);
+    ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+    verify(ctx).header(eq("ETag"), etag.capture());
+
+    Context revalidation = mock(Context.class);
+    when(revalidation.pathParam("id", String.class)).thenReturn(new Validator<String>("588935f5c668650dc77df581", "", "id"));
+    when(revalidation.header("If-None-Match")).thenReturn(etag.getValue());
+    userController.getUser(revalidation);
+    verify(revalidation).status(304);
+    verify(revalidation, never()).result(any(InputStream.class));
+    verify(revalidation).header("Vary", "Accept-Encoding");
+  }
+
+  @Test
+  public void GET_to_request_missing_user_with_wildcard_etag() throws IOException {
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("nonexistent", "", "id"));
+    when(ctx.header("If-None-Match")).thenReturn("*");
+    Assertions.assertThrows(NotFoundResponse.class, () -> {
+      userController.getUser(ctx);
+    });
+    verify(ctx, never()).status(304);
+  }
+
+  @Test
+  public void GET_to_request_user_with_wildcard_etag() throws IOException {
+    when(ctx.pathParam("id", String.class)).thenReturn(new Validator<String>("588935f5c668650dc77df581", "", "id"));
+    when(ctx.header("If-None-Match")).thenReturn("*");
+    userController.getUser(ctx);
+    verify(ctx).status(304);
+  }
+
+  @Test
+  public void POST_to_request_users_by_ids() throws IOException {
+    when(ctx.body()).thenReturn("[\"588935f5556f992bf8f37c01\", \"nonexistent\", \"588935f52787254123f71fed\"]");
+    userController.getUsersByIds(ctx);
+
+    User[] users = streamedUsers();
+    assertEquals(2, users.length);
+    assertEquals("Bolton Monroe", users[0].name);
+    assertEquals("Stokes Clayton", users[1].name);
+  }
+
+  @Test
+  public void POST_to_request_users_by_ids_without_a_list() throws IOException {
+    when(ctx.body()).thenReturn("{\"ids\": \"588935f5556f992bf8f37c01\"}");
+    Assertions.assertThrows(BadRequestResponse.class, () -> {
+      userController.getUsersByIds(ctx);
+    });
+  }
+
+  @Test
+  public void GET_to_request_user_stats() throws IOException {
+    userController.getUserStats(ctx);
+
+    ArgumentCaptor<InputStream> argument = ArgumentCaptor.forClass(InputStream.class);
+    verify(ctx).contentType("application/json");
+    verify(ctx).result(argument.capture());
+    Map<?, ?> stats = new ObjectMapper().readValue(argument.getValue(), Map.class);
+    assertEquals(db.size(), stats.get("total"));
+    assertEquals(db.listUsers(Map.of("company", List.of("OHMNET"))).length,
+      ((Map<?, ?>) stats.get("company")).get("OHMNET"));
+  }
 }
@@ -0,0 +1,54 @@
+package umm3601.user;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests umm3601.user.Database getStatsJson
+ */
+public class UserStatsFromDB {
+
+  @Test
+  public void countUsers() throws IOException {
+    Database db = new Database("/users.json");
+    Map<Integer, Integer> ages = new HashMap<>();
+    Map<String, Integer> companies = new HashMap<>();
+    User[] users = db.listUsers(new HashMap<>());
+    for (User user : users) {
+      ages.merge(user.age, 1, Integer::sum);
+      companies.merge(user.company, 1, Integer::sum);
+    }
+
+    JsonObject stats = JsonParser.parseString(new String(db.getStatsJson(), StandardCharsets.UTF_8))
+      .getAsJsonObject();
+    assertEquals(users.length, stats.get("total").getAsInt(), "Incorrect total");
+    JsonObject ageCounts = stats.getAsJsonObject("age");
+    assertEquals(ages.size(), ageCounts.size(), "Incorrect number of ages");
+    ages.forEach((age, count) ->
+      assertEquals((int) count, ageCounts.get(age.toString()).getAsInt(), "Incorrect count for age " + age));
+    JsonObject companyCounts = stats.getAsJsonObject("company");
+    assertEquals(companies.size(), companyCounts.size(), "Incorrect number of companies");
+    companies.forEach((company, count) ->
+      assertEquals((int) count, companyCounts.get(company).getAsInt(), "Incorrect count for " + company));
+  }
+
+  @Test
+  public void countsAreCachedPerVersion() throws IOException {
+    Database db = new Database("/users.json");
+    byte[] stats = db.getStatsJson();
+    assertSame(stats, db.getStatsJson(), "The counts should only be worked out once");
+
+    db.publish(new User[0]);
+    assertEquals("{\"total\":0,\"age\":{},\"company\":{}}", new String(db.getStatsJson(), StandardCharsets.UTF_8));
+  }
+}